@@ -0,0 +1,96 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.benchmarks;
+
+import static java.util.Collections.singletonList;
+import static org.forgerock.audit.events.AccessAuditEventBuilder.accessEvent;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.audit.events.AccessAuditEventBuilder.ResponseStatus;
+import org.forgerock.audit.events.AuditEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the building of access events by {@link org.forgerock.audit.events.AccessAuditEventBuilder}, as done by
+ * the products for each request they audit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccessAuditEventBuilderBenchmark {
+
+    private final Map<String, List<String>> queryParameters = new LinkedHashMap<>();
+
+    /**
+     * Creates the benchmark.
+     */
+    public AccessAuditEventBuilderBenchmark() {
+        queryParameters.put("_queryFilter", singletonList("true"));
+        queryParameters.put("_fields", singletonList("userName,mail"));
+    }
+
+    /**
+     * Builds an event with the mandatory fields only.
+     *
+     * @return the event.
+     */
+    @Benchmark
+    public AuditEvent minimalEvent() {
+        return accessEvent()
+                .transactionId("transaction-1")
+                .eventName("AM-ACCESS-ATTEMPT")
+                .toEvent();
+    }
+
+    /**
+     * Builds the event of an HTTP request.
+     *
+     * @return the event.
+     */
+    @Benchmark
+    public AuditEvent httpEvent() {
+        // the builder removes the cookies from the headers, hence a new map for each event
+        final Map<String, List<String>> headers = new LinkedHashMap<>();
+        headers.put("Accept", singletonList("application/json"));
+        headers.put("Cookie", singletonList("session=abcdef; lang=en"));
+        return accessEvent()
+                .transactionId("transaction-1")
+                .eventName("AM-ACCESS-OUTCOME")
+                .userId("id=bjensen,ou=user,dc=example,dc=com")
+                .trackingId("12345678-9abc-def0-1234-56789abcdef0")
+                .server("10.0.0.1", 8443)
+                .client("192.168.0.12", 54321)
+                .request("CREST", "QUERY")
+                .httpRequest(true, "GET", "/json/users", queryParameters, headers)
+                .response(ResponseStatus.SUCCESSFUL, "200", 12, TimeUnit.MILLISECONDS)
+                .toEvent();
+    }
+}
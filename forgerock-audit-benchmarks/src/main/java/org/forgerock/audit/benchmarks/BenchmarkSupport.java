@@ -0,0 +1,147 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.benchmarks;
+
+import static java.util.Collections.singletonList;
+import static org.forgerock.audit.events.AccessAuditEventBuilder.accessEvent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.forgerock.audit.events.AccessAuditEventBuilder.ResponseStatus;
+import org.forgerock.audit.events.EventTopicsMetaData;
+import org.forgerock.audit.events.EventTopicsMetaDataBuilder;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.CreateRequest;
+import org.forgerock.json.resource.Requests;
+
+/**
+ * Events and files shared by the benchmarks.
+ */
+final class BenchmarkSupport {
+
+    /** The topic of the published events. */
+    static final String ACCESS_TOPIC = "access";
+
+    private static final AtomicLong TRANSACTION_IDS = new AtomicLong();
+
+    private BenchmarkSupport() {
+        // utility class
+    }
+
+    /**
+     * Gets the meta-data of the core topics.
+     *
+     * @return the meta-data.
+     */
+    static EventTopicsMetaData coreTopics() {
+        return EventTopicsMetaDataBuilder.coreTopicSchemas().build();
+    }
+
+    /**
+     * Builds an access event as recorded for an HTTP request, with a new transaction id.
+     *
+     * @return the content of the event.
+     */
+    static JsonValue newAccessEvent() {
+        final Map<String, List<String>> queryParameters = new LinkedHashMap<>();
+        queryParameters.put("_queryFilter", singletonList("true"));
+        final Map<String, List<String>> headers = new LinkedHashMap<>();
+        headers.put("Accept", singletonList("application/json"));
+        headers.put("User-Agent", singletonList("benchmark"));
+        return accessEvent()
+                .transactionId("transaction-" + TRANSACTION_IDS.incrementAndGet())
+                .eventName("AM-ACCESS-OUTCOME")
+                .userId("id=bjensen,ou=user,dc=example,dc=com")
+                .trackingId("12345678-9abc-def0-1234-56789abcdef0")
+                .server("10.0.0.1", 8443)
+                .client("192.168.0.12", 54321)
+                .request("CREST", "READ")
+                .httpRequest(true, "GET", "/json/users/bjensen", queryParameters, headers)
+                .response(ResponseStatus.SUCCESSFUL, "200", 12, TimeUnit.MILLISECONDS)
+                .toEvent()
+                .getValue();
+    }
+
+    /**
+     * Creates the request publishing an event to the access topic.
+     *
+     * @param event
+     *          The content of the event, which the audit service completes with its id.
+     * @return the request.
+     */
+    static CreateRequest newAccessCreateRequest(JsonValue event) {
+        return Requests.newCreateRequest(ACCESS_TOPIC, event);
+    }
+
+    /**
+     * Copies a resource of the benchmarks to a file.
+     *
+     * @param name
+     *          The name of the resource.
+     * @param directory
+     *          The directory of the file, named after the resource.
+     * @return the file.
+     * @throws IOException
+     *          If the resource can't be copied.
+     */
+    static File extractResource(String name, Path directory) throws IOException {
+        final Path file = directory.resolve(name);
+        try (InputStream resource = BenchmarkSupport.class.getResourceAsStream("/" + name)) {
+            Files.copy(resource, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file.toFile();
+    }
+
+    /**
+     * Deletes a directory and the files it contains.
+     *
+     * @param directory
+     *          The directory, may be {@code null}.
+     * @throws IOException
+     *          If a file can't be deleted.
+     */
+    static void deleteRecursively(Path directory) throws IOException {
+        if (directory == null || !Files.exists(directory)) {
+            return;
+        }
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.benchmarks;
+
+import static org.forgerock.audit.benchmarks.BenchmarkSupport.deleteRecursively;
+import static org.forgerock.audit.benchmarks.BenchmarkSupport.extractResource;
+import static org.forgerock.audit.benchmarks.BenchmarkSupport.newAccessCreateRequest;
+import static org.forgerock.audit.benchmarks.BenchmarkSupport.newAccessEvent;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.audit.AuditService;
+import org.forgerock.audit.AuditServiceBuilder;
+import org.forgerock.audit.events.EventTopicsMetaData;
+import org.forgerock.audit.handlers.csv.CsvAuditEventHandler;
+import org.forgerock.audit.handlers.csv.CsvAuditEventHandlerConfiguration;
+import org.forgerock.audit.handlers.csv.CsvAuditEventHandlerConfiguration.CsvSecurity;
+import org.forgerock.audit.handlers.csv.CsvAuditEventHandlerConfiguration.EventBufferingConfiguration;
+import org.forgerock.audit.providers.DefaultKeyStoreHandlerProvider;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.services.context.Context;
+import org.forgerock.services.context.RootContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the publishing of access events through the audit service to a CSV handler, from the create request to
+ * the completion of the handler's promise.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CsvPublishBenchmark {
+
+    /** The password of the keystore holding the keys of the tamper evident files. */
+    private static final String KEYSTORE_PASSWORD = "password";
+
+    /** Plain files flushed after each event, buffered files, or tamper evident files. */
+    @Param({ "plain", "buffered", "secure" })
+    private String mode;
+
+    private Path directory;
+    private AuditService auditService;
+    private JsonValue event;
+    private final Context context = new RootContext();
+
+    /**
+     * Starts the audit service, logging to a new directory.
+     *
+     * @throws Exception
+     *          If the service can't be started.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("CsvPublishBenchmark");
+        final EventTopicsMetaData topics = BenchmarkSupport.coreTopics();
+        final CsvAuditEventHandlerConfiguration configuration = new CsvAuditEventHandlerConfiguration();
+        configuration.setName("csv");
+        configuration.setTopics(topics.getTopics());
+        configuration.setLogDirectory(directory.toString());
+        if ("buffered".equals(mode)) {
+            final EventBufferingConfiguration buffering = new EventBufferingConfiguration();
+            buffering.setEnabled(true);
+            buffering.setAutoFlush(true);
+            configuration.setBufferingConfiguration(buffering);
+        } else if ("secure".equals(mode)) {
+            final CsvSecurity security = new CsvSecurity();
+            security.setEnabled(true);
+            security.setFilename(extractResource("keystore-signature.jks", directory).getPath());
+            security.setPassword(KEYSTORE_PASSWORD);
+            security.setSignatureInterval("1 second");
+            configuration.setSecurity(security);
+        }
+        auditService = AuditServiceBuilder.newAuditService()
+                .withEventTopicsMetaData(topics)
+                .withAuditEventHandler(new CsvAuditEventHandler(configuration, topics,
+                        new DefaultKeyStoreHandlerProvider()))
+                .build();
+        auditService.startup();
+        event = newAccessEvent();
+    }
+
+    /**
+     * Stops the audit service and deletes the files.
+     *
+     * @throws Exception
+     *          If the files can't be deleted.
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        auditService.shutdown();
+        deleteRecursively(directory);
+    }
+
+    /**
+     * Publishes an event.
+     *
+     * @return the response of the audit service.
+     * @throws Exception
+     *          If the event can't be published.
+     */
+    @Benchmark
+    public ResourceResponse publish() throws Exception {
+        return auditService.handleCreate(context, newAccessCreateRequest(event.copy())).getOrThrow();
+    }
+}
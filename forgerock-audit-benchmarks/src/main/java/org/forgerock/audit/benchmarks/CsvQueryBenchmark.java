@@ -0,0 +1,179 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.benchmarks;
+
+import static org.forgerock.audit.benchmarks.BenchmarkSupport.ACCESS_TOPIC;
+import static org.forgerock.audit.benchmarks.BenchmarkSupport.deleteRecursively;
+import static org.forgerock.audit.benchmarks.BenchmarkSupport.newAccessEvent;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.audit.events.EventTopicsMetaData;
+import org.forgerock.audit.handlers.csv.CsvAuditEventHandler;
+import org.forgerock.audit.handlers.csv.CsvAuditEventHandlerConfiguration;
+import org.forgerock.audit.handlers.csv.CsvAuditEventHandlerConfiguration.CsvQuerying;
+import org.forgerock.audit.providers.DefaultKeyStoreHandlerProvider;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.QueryFilters;
+import org.forgerock.json.resource.QueryRequest;
+import org.forgerock.json.resource.QueryResourceHandler;
+import org.forgerock.json.resource.QueryResponse;
+import org.forgerock.json.resource.Requests;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.services.context.Context;
+import org.forgerock.services.context.RootContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the reads by id and the queries of a CSV handler on a file of access events.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CsvQueryBenchmark {
+
+    /** The number of events in the file. */
+    @Param({ "10000" })
+    private int events;
+
+    /** Whether the queries scan the file through memory mappings. */
+    @Param({ "false", "true" })
+    private boolean memoryMapped;
+
+    private Path directory;
+    private CsvAuditEventHandler handler;
+    private String[] ids;
+    private String[] transactionIds;
+    private final Context context = new RootContext();
+
+    /**
+     * Writes the events.
+     *
+     * @throws Exception
+     *          If the events can't be written.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("CsvQueryBenchmark");
+        final EventTopicsMetaData topics = BenchmarkSupport.coreTopics();
+        final CsvAuditEventHandlerConfiguration configuration = new CsvAuditEventHandlerConfiguration();
+        configuration.setName("csv");
+        configuration.setTopics(topics.getTopics());
+        configuration.setLogDirectory(directory.toString());
+        final CsvQuerying querying = new CsvQuerying();
+        querying.setMemoryMapped(memoryMapped);
+        configuration.setQuerying(querying);
+        handler = new CsvAuditEventHandler(configuration, topics, new DefaultKeyStoreHandlerProvider());
+        handler.startup();
+
+        ids = new String[events];
+        transactionIds = new String[events];
+        for (int i = 0; i < events; i++) {
+            final JsonValue event = newAccessEvent();
+            ids[i] = "event-" + i;
+            transactionIds[i] = event.get("transactionId").asString();
+            event.put("_id", ids[i]);
+            handler.publishEvent(context, ACCESS_TOPIC, event).getOrThrow();
+        }
+    }
+
+    /**
+     * Stops the handler and deletes the files.
+     *
+     * @throws Exception
+     *          If the files can't be deleted.
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        handler.shutdown();
+        deleteRecursively(directory);
+    }
+
+    /**
+     * Reads a random event by id.
+     *
+     * @return the event.
+     * @throws Exception
+     *          If the event can't be read.
+     */
+    @Benchmark
+    public ResourceResponse readById() throws Exception {
+        final String id = ids[ThreadLocalRandom.current().nextInt(ids.length)];
+        return handler.readEvent(context, ACCESS_TOPIC, id).getOrThrow();
+    }
+
+    /**
+     * Queries the events of a random transaction.
+     *
+     * @param blackhole
+     *          Consumes the events.
+     * @return the response of the query.
+     * @throws Exception
+     *          If the events can't be queried.
+     */
+    @Benchmark
+    public QueryResponse queryByTransactionId(Blackhole blackhole) throws Exception {
+        final String transactionId = transactionIds[ThreadLocalRandom.current().nextInt(transactionIds.length)];
+        final QueryRequest request = Requests.newQueryRequest(ACCESS_TOPIC)
+                .setQueryFilter(QueryFilters.parse("/transactionId eq \"" + transactionId + "\""));
+        return handler.queryEvents(context, ACCESS_TOPIC, request, consumeInto(blackhole)).getOrThrow();
+    }
+
+    /**
+     * Queries the first page of the failed requests, which are absent from the file, hence a full scan.
+     *
+     * @param blackhole
+     *          Consumes the events.
+     * @return the response of the query.
+     * @throws Exception
+     *          If the events can't be queried.
+     */
+    @Benchmark
+    public QueryResponse queryFullScan(Blackhole blackhole) throws Exception {
+        final QueryRequest request = Requests.newQueryRequest(ACCESS_TOPIC)
+                .setQueryFilter(QueryFilters.parse("/response/status eq \"FAILED\""))
+                .setPageSize(10);
+        return handler.queryEvents(context, ACCESS_TOPIC, request, consumeInto(blackhole)).getOrThrow();
+    }
+
+    private static QueryResourceHandler consumeInto(final Blackhole blackhole) {
+        return new QueryResourceHandler() {
+            @Override
+            public boolean handleResource(ResourceResponse resource) {
+                blackhole.consume(resource);
+                return true;
+            }
+        };
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.benchmarks;
+
+import static java.util.Arrays.asList;
+import static org.forgerock.audit.benchmarks.BenchmarkSupport.ACCESS_TOPIC;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.audit.filter.Filter;
+import org.forgerock.audit.filter.FilterChainBuilder;
+import org.forgerock.audit.filter.FilterPolicy;
+import org.forgerock.json.JsonValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the evaluation of the filter chain on access events.
+ * <p>
+ * Filtering modifies the events, so each invocation filters a copy of the event; {@link #copy()} measures the copy
+ * alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterChainBenchmark {
+
+    /** The policies of the chain: none, field exclusions, field and value exclusions, or all kinds of policies. */
+    @Param({ "none", "exclude", "excludeValues", "all" })
+    private String policies;
+
+    private Filter filter;
+    private JsonValue event;
+
+    /**
+     * Builds the filter chain and the event.
+     */
+    @Setup
+    public void setUp() {
+        final Map<String, FilterPolicy> filterPolicies = new LinkedHashMap<>();
+        switch (policies) {
+        case "none":
+            break;
+        case "exclude":
+            filterPolicies.put("field", policy(asList("/access/http/request/headers", "/access/trackingIds"),
+                    null, null, null));
+            break;
+        case "excludeValues":
+            filterPolicies.put("field", policy(asList("/access/http/request/headers", "/access/trackingIds"),
+                    null, null, null));
+            filterPolicies.put("value", policy(asList("/access/http/request/queryParameters/_queryFilter"),
+                    null, null, null));
+            break;
+        case "all":
+            filterPolicies.put("field", policy(asList("/access/http/request/headers"),
+                    asList("/access/http", "/access/userId", "/access/response"),
+                    asList("/access/userId"),
+                    asList("/access/http/request/queryParameters")));
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown policies " + policies);
+        }
+        filter = new FilterChainBuilder()
+                .withAuditTopics(BenchmarkSupport.coreTopics().getTopics())
+                .withPolicies(filterPolicies)
+                .build();
+        event = BenchmarkSupport.newAccessEvent();
+        event.put("_id", "a6a5b1f0-5b71-4a34-9b8a-0e7d1c2f3a4b");
+    }
+
+    private static FilterPolicy policy(List<String> exclusions, List<String> inclusions, List<String> hashes,
+            List<String> redactions) {
+        final FilterPolicy policy = new FilterPolicy();
+        policy.setExcludeIf(orEmpty(exclusions));
+        policy.setIncludeIf(orEmpty(inclusions));
+        policy.setHashIf(orEmpty(hashes));
+        policy.setRedactIf(orEmpty(redactions));
+        return policy;
+    }
+
+    private static List<String> orEmpty(List<String> pointers) {
+        return pointers != null ? pointers : Collections.<String>emptyList();
+    }
+
+    /**
+     * Copies the event, the baseline of {@link #filter()}.
+     *
+     * @return the copy.
+     */
+    @Benchmark
+    public JsonValue copy() {
+        return event.copy();
+    }
+
+    /**
+     * Filters a copy of the event.
+     *
+     * @return the filtered copy.
+     */
+    @Benchmark
+    public JsonValue filter() {
+        final JsonValue copy = event.copy();
+        filter.doFilter(ACCESS_TOPIC, copy);
+        return copy;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.benchmarks;
+
+import static org.forgerock.audit.benchmarks.BenchmarkSupport.newAccessCreateRequest;
+import static org.forgerock.audit.benchmarks.BenchmarkSupport.newAccessEvent;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.audit.AuditService;
+import org.forgerock.audit.AuditServiceBuilder;
+import org.forgerock.audit.events.EventTopicsMetaData;
+import org.forgerock.audit.handlers.jdbc.JdbcAuditEventHandler;
+import org.forgerock.audit.handlers.jdbc.JdbcAuditEventHandlerConfiguration;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.services.context.Context;
+import org.forgerock.services.context.RootContext;
+import org.h2.tools.RunScript;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Measures the publishing of access events through the audit service to a JDBC handler writing to an in-memory H2
+ * database.
+ * <p>
+ * With buffering, the measured publish returns once the event is queued; the rows are inserted in batches by the
+ * writer threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JdbcPublishBenchmark {
+
+    private static final String H2_DRIVER = "org.h2.Driver";
+
+    @Param({ "false", "true" })
+    private boolean buffered;
+
+    /** Keeps the in-memory database open until the tear down. */
+    private Connection connection;
+    private AuditService auditService;
+    private JsonValue event;
+    private final Context context = new RootContext();
+
+    /**
+     * Creates the table of the access events and starts the audit service.
+     *
+     * @throws Exception
+     *          If the database or the service can't be started.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        final JdbcAuditEventHandlerConfiguration configuration;
+        try (InputStream input = getClass().getResourceAsStream("/jdbc-handler-config.json")) {
+            configuration = new ObjectMapper().readValue(input, JdbcAuditEventHandlerConfiguration.class);
+        }
+        configuration.getBuffering().setEnabled(buffered);
+
+        Class.forName(H2_DRIVER);
+        connection = DriverManager.getConnection(configuration.getConnectionPool().getJdbcUrl());
+        try (Reader script = new InputStreamReader(getClass().getResourceAsStream("/h2-access.sql"),
+                StandardCharsets.UTF_8)) {
+            RunScript.execute(connection, script);
+        }
+
+        final EventTopicsMetaData topics = BenchmarkSupport.coreTopics();
+        configuration.setTopics(Collections.singleton(BenchmarkSupport.ACCESS_TOPIC));
+        auditService = AuditServiceBuilder.newAuditService()
+                .withEventTopicsMetaData(topics)
+                .withAuditEventHandler(new JdbcAuditEventHandler(configuration, topics, null))
+                .build();
+        auditService.startup();
+        event = newAccessEvent();
+    }
+
+    /**
+     * Stops the audit service and drops the database.
+     *
+     * @throws Exception
+     *          If the database can't be dropped.
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        auditService.shutdown();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Publishes an event, the audit service giving it a new id.
+     *
+     * @return the response of the audit service.
+     * @throws Exception
+     *          If the event can't be published.
+     */
+    @Benchmark
+    public ResourceResponse publish() throws Exception {
+        return auditService.handleCreate(context, newAccessCreateRequest(event.copy())).getOrThrow();
+    }
+}
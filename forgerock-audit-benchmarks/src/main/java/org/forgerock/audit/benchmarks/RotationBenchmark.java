@@ -0,0 +1,122 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.benchmarks;
+
+import static org.forgerock.audit.benchmarks.BenchmarkSupport.deleteRecursively;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.audit.events.handlers.FileBasedEventHandlerConfiguration;
+import org.forgerock.audit.events.handlers.FileBasedEventHandlerConfiguration.FileRetention;
+import org.forgerock.audit.events.handlers.FileBasedEventHandlerConfiguration.FileRotation;
+import org.forgerock.audit.events.handlers.writers.RotatableWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures concurrent writes to a {@link RotatableWriter} whose size limit makes it rotate every few thousand
+ * writes, so that the writes waiting for the rotations and the retention checks are part of the measure.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class RotationBenchmark {
+
+    /** A record the size of a CSV access event. */
+    private static final String RECORD;
+
+    static {
+        final StringBuilder record = new StringBuilder();
+        while (record.length() < 800) {
+            record.append("\"a6a5b1f0-5b71-4a34-9b8a-0e7d1c2f3a4b\",\"2015-11-02T10:15:30.123Z\",");
+        }
+        RECORD = record.append(System.lineSeparator()).toString();
+    }
+
+    /** The size of the files, in bytes. */
+    @Param({ "1048576", "8388608" })
+    private long maxFileSize;
+
+    @Param({ "false", "true" })
+    private boolean archiveCompression;
+
+    private Path directory;
+    private RotatableWriter writer;
+
+    /**
+     * Opens the writer in a new directory.
+     *
+     * @throws Exception
+     *          If the writer can't be opened.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("RotationBenchmark");
+        final FileRotation rotation = new FileRotation();
+        rotation.setRotationEnabled(true);
+        rotation.setMaxFileSize(maxFileSize);
+        rotation.setRotationInterval("disabled");
+        rotation.setArchiveCompressionEnabled(archiveCompression);
+        final FileRetention retention = new FileRetention();
+        // keeps the disk usage bounded
+        retention.setMaxNumberOfHistoryFiles(10);
+        final FileBasedEventHandlerConfiguration configuration = new FileBasedEventHandlerConfiguration();
+        configuration.setFileRotation(rotation);
+        configuration.setFileRetention(retention);
+        configuration.setRotationRetentionCheckInterval("1 second");
+        writer = new RotatableWriter(directory.resolve("access.csv").toFile(), configuration, false);
+    }
+
+    /**
+     * Closes the writer and deletes the files.
+     *
+     * @throws Exception
+     *          If the files can't be deleted.
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        writer.shutdown();
+        deleteRecursively(directory);
+    }
+
+    /**
+     * Writes a record, rotating the file if it is full.
+     *
+     * @throws Exception
+     *          If the record can't be written.
+     */
+    @Benchmark
+    public void write() throws Exception {
+        writer.write(RECORD);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.benchmarks;
+
+import static org.forgerock.audit.benchmarks.BenchmarkSupport.newAccessCreateRequest;
+import static org.forgerock.audit.benchmarks.BenchmarkSupport.newAccessEvent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.audit.AuditService;
+import org.forgerock.audit.AuditServiceBuilder;
+import org.forgerock.audit.events.EventTopicsMetaData;
+import org.forgerock.audit.handlers.syslog.Facility;
+import org.forgerock.audit.handlers.syslog.SyslogAuditEventHandler;
+import org.forgerock.audit.handlers.syslog.SyslogAuditEventHandlerConfiguration;
+import org.forgerock.audit.handlers.syslog.SyslogAuditEventHandlerConfiguration.EventBufferingConfiguration;
+import org.forgerock.audit.handlers.syslog.TransportProtocol;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.services.context.Context;
+import org.forgerock.services.context.RootContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the publishing of access events through the audit service to a syslog handler, sending to a local sink
+ * that discards the messages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SyslogPublishBenchmark {
+
+    @Param({ "UDP", "TCP" })
+    private TransportProtocol protocol;
+
+    @Param({ "false", "true" })
+    private boolean buffered;
+
+    private Sink sink;
+    private AuditService auditService;
+    private JsonValue event;
+    private final Context context = new RootContext();
+
+    /**
+     * Starts the sink and the audit service.
+     *
+     * @throws Exception
+     *          If the sink or the service can't be started.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        sink = protocol == TransportProtocol.UDP ? new UdpSink() : new TcpSink();
+        final EventTopicsMetaData topics = BenchmarkSupport.coreTopics();
+        final SyslogAuditEventHandlerConfiguration configuration = new SyslogAuditEventHandlerConfiguration();
+        configuration.setName("syslog");
+        configuration.setTopics(topics.getTopics());
+        configuration.setProtocol(protocol);
+        configuration.setHost(InetAddress.getLoopbackAddress().getHostAddress());
+        configuration.setPort(sink.getPort());
+        configuration.setConnectTimeout(30000);
+        configuration.setFacility(Facility.LOCAL0);
+        final EventBufferingConfiguration buffering = new EventBufferingConfiguration();
+        buffering.setEnabled(buffered);
+        configuration.setBufferingConfiguration(buffering);
+        auditService = AuditServiceBuilder.newAuditService()
+                .withEventTopicsMetaData(topics)
+                .withAuditEventHandler(new SyslogAuditEventHandler(configuration, topics, null, null, null))
+                .build();
+        auditService.startup();
+        event = newAccessEvent();
+    }
+
+    /**
+     * Stops the audit service and the sink.
+     *
+     * @throws Exception
+     *          If the sink can't be stopped.
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        auditService.shutdown();
+        sink.close();
+    }
+
+    /**
+     * Publishes an event.
+     *
+     * @return the response of the audit service.
+     * @throws Exception
+     *          If the event can't be published.
+     */
+    @Benchmark
+    public ResourceResponse publish() throws Exception {
+        return auditService.handleCreate(context, newAccessCreateRequest(event.copy())).getOrThrow();
+    }
+
+    /**
+     * Receives and discards the syslog messages on a thread of its own.
+     */
+    private abstract static class Sink implements Runnable, Closeable {
+        private final Thread thread = new Thread(this, "SyslogSink");
+        volatile boolean closed;
+
+        void start() {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        abstract int getPort();
+
+        @Override
+        public void run() {
+            try {
+                receive();
+            } catch (IOException e) {
+                if (!closed) {
+                    throw new IllegalStateException("The syslog sink failed", e);
+                }
+            }
+        }
+
+        abstract void receive() throws IOException;
+    }
+
+    private static final class UdpSink extends Sink {
+        private final DatagramSocket socket;
+
+        UdpSink() throws IOException {
+            socket = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            start();
+        }
+
+        @Override
+        int getPort() {
+            return socket.getLocalPort();
+        }
+
+        @Override
+        void receive() throws IOException {
+            final DatagramPacket packet = new DatagramPacket(new byte[64 * 1024], 64 * 1024);
+            while (!closed) {
+                socket.receive(packet);
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            socket.close();
+        }
+    }
+
+    private static final class TcpSink extends Sink {
+        private final ServerSocket serverSocket;
+
+        TcpSink() throws IOException {
+            serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+            start();
+        }
+
+        @Override
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        @Override
+        void receive() throws IOException {
+            final byte[] buffer = new byte[64 * 1024];
+            while (!closed) {
+                try (Socket socket = serverSocket.accept();
+                     InputStream input = socket.getInputStream()) {
+                    while (input.read(buffer) != -1) {
+                        // discard the messages
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            serverSocket.close();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+-- H2 version of the access table of db/mysql/audit.sql, for the JDBC benchmarks
+CREATE TABLE IF NOT EXISTS auditaccess (
+  id VARCHAR(56) NOT NULL,
+  timestamp_ VARCHAR(29) NULL,
+  transactionid VARCHAR(255) NULL,
+  eventname VARCHAR(255),
+  userid VARCHAR(255) NULL,
+  trackingids CLOB,
+  server_ip VARCHAR(40),
+  server_port VARCHAR(5),
+  client_host VARCHAR(255),
+  client_ip VARCHAR(40),
+  client_port VARCHAR(5),
+  request_protocol VARCHAR(255) NULL,
+  request_operation VARCHAR(255) NULL,
+  request_detail CLOB NULL,
+  http_request_secure BOOLEAN NULL,
+  http_request_method VARCHAR(7) NULL,
+  http_request_path VARCHAR(255) NULL,
+  http_request_queryparameters CLOB NULL,
+  http_request_headers CLOB NULL,
+  http_request_cookies CLOB NULL,
+  http_response_headers CLOB NULL,
+  response_status VARCHAR(10) NULL,
+  response_statuscode VARCHAR(255) NULL,
+  response_elapsedtime VARCHAR(255) NULL,
+  response_elapsedtimeunits VARCHAR(255) NULL,
+  PRIMARY KEY (id)
+);
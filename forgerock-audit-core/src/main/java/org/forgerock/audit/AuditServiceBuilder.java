@@ -23,12 +23,17 @@ import org.forgerock.audit.events.handlers.AuditEventHandler;
 import org.forgerock.audit.events.handlers.AuditEventHandlerFactory;
 import org.forgerock.audit.events.handlers.DependencyProviderAuditEventHandlerFactory;
 import org.forgerock.audit.events.handlers.EventHandlerConfiguration;
+import org.forgerock.audit.metrics.InMemoryMetricRegistry;
+import org.forgerock.audit.metrics.MetricRegistry;
+import org.forgerock.audit.providers.DefaultHostNameResolver;
+import org.forgerock.audit.providers.HostNameResolver;
 import org.forgerock.json.resource.ServiceUnavailableException;
 import org.forgerock.util.Reject;
 import org.forgerock.util.annotations.VisibleForTesting;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
@@ -41,10 +46,16 @@ public final class AuditServiceBuilder {
 
     private static final Logger logger = LoggerFactory.getLogger(AuditServiceBuilder.class);
 
+    /**
+     * The registry of the AuditServices built without a {@link MetricRegistry} dependency, shared so that the
+     * handlers of an AuditService can be carried over by the AuditService replacing it.
+     */
+    private static final MetricRegistry DEFAULT_METRIC_REGISTRY = new InMemoryMetricRegistry();
+
     private final AuditServiceFactory auditServiceFactory;
     private AuditServiceConfiguration auditServiceConfiguration = new AuditServiceConfiguration();
-    private AuditEventHandlerFactory auditEventHandlerFactory =
-            new DependencyProviderAuditEventHandlerFactory(new DependencyProviderBase());
+    private DependencyProvider dependencyProvider = new DependencyProviderBase();
+    private AuditEventHandlerFactory auditEventHandlerFactory;
     private Map<String, HandlerRegistration> handlerRegistrations = new LinkedHashMap<>();
     private Set<AuditEventHandler> prebuiltHandlers = new LinkedHashSet<>();
     private EventTopicsMetaData eventTopicsMetaData = coreTopicSchemas().build();
@@ -88,6 +99,13 @@ public final class AuditServiceBuilder {
      * Register the DependencyProvider, after which, an AuditEventHandler can be registered and
      * receive this provider.  The dependency provider allows the handler to obtain resources or
      * objects from the product which integrates the Audit Service.
+     * <p/>
+     * If the provider has a {@link MetricRegistry}, the metrics of the AuditService and its handlers are recorded
+     * into it; otherwise they are kept in an {@link InMemoryMetricRegistry} shared by the AuditServices built without
+     * one, which is then provided to the handlers. Handlers are only carried over from an AuditService to the one
+     * replacing it when both record their metrics into the same registry.
+     * Likewise, a {@link HostNameResolver} of the provider replaces the {@link DefaultHostNameResolver} used to fill
+     * the client host of the access events requiring a reverse DNS lookup.
      *
      * @param dependencyProvider
      *            the DependencyProvider to register.
@@ -95,7 +113,8 @@ public final class AuditServiceBuilder {
      */
     public AuditServiceBuilder withDependencyProvider(DependencyProvider dependencyProvider) {
         Reject.ifNull(dependencyProvider, "Audit event handler DependencyProvider cannot be null");
-        this.auditEventHandlerFactory = new DependencyProviderAuditEventHandlerFactory(dependencyProvider);
+        this.dependencyProvider = dependencyProvider;
+        this.auditEventHandlerFactory = null;
         return this;
     }
 
@@ -168,9 +187,10 @@ public final class AuditServiceBuilder {
      * <p/>
      * Instances receive their configuration when constructed and cannot be reconfigured. Where "hot-swappable"
      * reconfiguration is required, an instance of {@link AuditServiceProxy} should be used as a proxy. The old
-     * AuditService should fully shutdown before the new instance is started. Care must be taken to ensure that
-     * no other threads can interact with this object while {@link AuditService#startup()} and
-     * {@link AuditService#shutdown()} methods are running.
+     * AuditService should fully shutdown before the new instance is started, except for the handlers that the
+     * new instance carries over from the old one because their class and configuration are unchanged. Care must
+     * be taken to ensure that no other threads can interact with this object while {@link AuditService#startup()}
+     * and {@link AuditService#shutdown()} methods are running.
      * <p/>
      * After construction, the AuditService will be in the 'STARTING' state until {@link AuditService#startup()}
      * is called. When in the 'STARTING' state, a call to any method other than {@link AuditService#startup()}
@@ -190,12 +210,44 @@ public final class AuditServiceBuilder {
      * @return a new AuditService instance.
      */
     public AuditService build() {
-        Set<AuditEventHandler> handlers = buildAuditEventHandlers(eventTopicsMetaData);
-        return auditServiceFactory.newAuditService(auditServiceConfiguration, eventTopicsMetaData, handlers);
+        MetricRegistry metricRegistry = getMetricRegistry();
+        AuditEventHandlerFactory handlerFactory = auditEventHandlerFactory != null
+                ? auditEventHandlerFactory
+                : new DependencyProviderAuditEventHandlerFactory(
+                        new MetricRegistryDependencyProvider(dependencyProvider, metricRegistry));
+        Map<String, HandlerSignature> handlerSignatures = new HashMap<>();
+        Set<AuditEventHandler> handlers =
+                buildAuditEventHandlers(handlerFactory, eventTopicsMetaData, handlerSignatures);
+        return auditServiceFactory.newAuditService(auditServiceConfiguration, eventTopicsMetaData, handlers,
+                metricRegistry, getHostNameResolver(), handlerSignatures);
     }
 
+    private MetricRegistry getMetricRegistry() {
+        try {
+            MetricRegistry metricRegistry = dependencyProvider.getDependency(MetricRegistry.class);
+            if (metricRegistry != null) {
+                return metricRegistry;
+            }
+        } catch (ClassNotFoundException e) {
+            logger.debug("No {} provided; using default.", MetricRegistry.class.getSimpleName());
+        }
+        return DEFAULT_METRIC_REGISTRY;
+    }
+
+    private HostNameResolver getHostNameResolver() {
+        try {
+            HostNameResolver hostNameResolver = dependencyProvider.getDependency(HostNameResolver.class);
+            if (hostNameResolver != null) {
+                return hostNameResolver;
+            }
+        } catch (ClassNotFoundException e) {
+            logger.debug("No {} provided; using default.", HostNameResolver.class.getSimpleName());
+        }
+        return new DefaultHostNameResolver();
+    }
 
-    private Set<AuditEventHandler> buildAuditEventHandlers(final EventTopicsMetaData eventTopicsMetaData) {
+    private Set<AuditEventHandler> buildAuditEventHandlers(final AuditEventHandlerFactory auditEventHandlerFactory,
+            final EventTopicsMetaData eventTopicsMetaData, final Map<String, HandlerSignature> handlerSignatures) {
         Set<AuditEventHandler> handlers = new LinkedHashSet<>(prebuiltHandlers);
         for (HandlerRegistration handlerRegistration : handlerRegistrations.values()) {
             logger.debug("Registering handler '{}' for {} topics",
@@ -207,6 +259,11 @@ public final class AuditServiceBuilder {
                         handlerRegistration.clazz,
                         handlerRegistration.configuration,
                         eventTopicsMetaData));
+                HandlerSignature signature =
+                        HandlerSignature.of(handlerRegistration.clazz, handlerRegistration.configuration);
+                if (signature != null) {
+                    handlerSignatures.put(handlerRegistration.configuration.getName(), signature);
+                }
             } catch (AuditException e) {
                 logger.error(e.getMessage(), e);
             }
@@ -234,6 +291,29 @@ public final class AuditServiceBuilder {
         }
     }
 
+    /**
+     * Provides the {@link MetricRegistry} of the AuditService to the handlers, along with the dependencies of the
+     * product.
+     */
+    private static class MetricRegistryDependencyProvider implements DependencyProvider {
+
+        private final DependencyProvider delegate;
+        private final MetricRegistry metricRegistry;
+
+        private MetricRegistryDependencyProvider(DependencyProvider delegate, MetricRegistry metricRegistry) {
+            this.delegate = delegate;
+            this.metricRegistry = metricRegistry;
+        }
+
+        @Override
+        public <T> T getDependency(Class<T> clazz) throws ClassNotFoundException {
+            if (clazz.equals(MetricRegistry.class)) {
+                return clazz.cast(metricRegistry);
+            }
+            return delegate.getDependency(clazz);
+        }
+    }
+
     /**
      * This class exists solely to provide a 'seam' that can be mocked during unit testing.
      */
@@ -243,8 +323,12 @@ public final class AuditServiceBuilder {
         AuditService newAuditService(
                 final AuditServiceConfiguration configuration,
                 final EventTopicsMetaData eventTopicsMetaData,
-                final Set<AuditEventHandler> auditEventHandlers) {
-            return new AuditServiceImpl(configuration, eventTopicsMetaData, auditEventHandlers);
+                final Set<AuditEventHandler> auditEventHandlers,
+                final MetricRegistry metricRegistry,
+                final HostNameResolver hostNameResolver,
+                final Map<String, HandlerSignature> handlerSignatures) {
+            return new AuditServiceImpl(configuration, eventTopicsMetaData, auditEventHandlers, metricRegistry,
+                    hostNameResolver, handlerSignatures);
         }
     }
 }
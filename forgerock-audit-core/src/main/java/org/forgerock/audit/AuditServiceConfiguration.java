@@ -23,6 +23,7 @@ import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyDescription;
+import org.forgerock.audit.filter.DropPolicy;
 import org.forgerock.audit.filter.FilterPolicy;
 
 /**
@@ -49,6 +50,29 @@ import org.forgerock.audit.filter.FilterPolicy;
  *                  "/access/filter/value"
  *             ]
  *         }
+ *     },
+ *     "filterHashKey" : "bGlua2FibGUgYWNyb3NzIHJlc3RhcnRzIGtleQ==",
+ *     "reverseDnsLookup" : {
+ *         "enabled" : true,
+ *         "threads" : 4,
+ *         "cacheTtl" : "1 hour",
+ *         "deadline" : "500 milliseconds"
+ *     },
+ *     "handlerStartup" : {
+ *         "timeout" : "30 seconds",
+ *         "queueSize" : 10000
+ *     },
+ *     "dropPolicies" : {
+ *         "access" : {
+ *             "dropIf" : [
+ *                  "/request/operation eq \"HEALTHCHECK\""
+ *             ],
+ *             "sampleOneIn" : 10,
+ *             "rateLimit" : {
+ *                  "eventsPerSecond" : 1000,
+ *                  "burst" : 2000
+ *             }
+ *         }
  *     }
  *   }
  * </pre>
@@ -65,6 +89,18 @@ public class AuditServiceConfiguration {
     @JsonPropertyDescription("audit.service.filter.policies")
     private Map<String, FilterPolicy> filterPolicies = new LinkedHashMap<>();
 
+    @JsonPropertyDescription("audit.service.filter.hashKey")
+    private String filterHashKey;
+
+    @JsonPropertyDescription("audit.service.reverseDnsLookup")
+    private ReverseDnsLookup reverseDnsLookup = new ReverseDnsLookup();
+
+    @JsonPropertyDescription("audit.service.handlerStartup")
+    private HandlerStartup handlerStartup = new HandlerStartup();
+
+    @JsonPropertyDescription("audit.service.drop.policies")
+    private Map<String, DropPolicy> dropPolicies = new LinkedHashMap<>();
+
     /**
      * Empty constructor.
      */
@@ -80,6 +116,10 @@ public class AuditServiceConfiguration {
     public AuditServiceConfiguration(AuditServiceConfiguration config) {
         handlerForQueries = config.getHandlerForQueries();
         availableAuditEventHandlers = config.availableAuditEventHandlers;
+        filterHashKey = config.filterHashKey;
+        reverseDnsLookup = config.reverseDnsLookup;
+        handlerStartup = config.handlerStartup;
+        dropPolicies.putAll(config.dropPolicies);
     }
 
     /**
@@ -130,4 +170,289 @@ public class AuditServiceConfiguration {
     public void setFilterPolicies(Map<String, FilterPolicy> filterPolicies) {
         this.filterPolicies.putAll(filterPolicies);
     }
+
+    /**
+     * Returns the Base64 encoded secret key of the HMAC-SHA256 hashes of the hashIf values of the filter policies.
+     * The key must stay the same for the hashes of a value to stay equal, and the events carrying it linkable, across
+     * restarts. A random key is drawn once per process when none is set.
+     *
+     * @return the hash key, or {@code null} if none is set.
+     */
+    public String getFilterHashKey() {
+        return filterHashKey;
+    }
+
+    /**
+     * Sets the Base64 encoded secret key of the HMAC-SHA256 hashes of the hashIf values of the filter policies.
+     *
+     * @param filterHashKey the hash key.
+     */
+    public void setFilterHashKey(String filterHashKey) {
+        this.filterHashKey = filterHashKey;
+    }
+
+    /**
+     * Returns the configuration of the reverse DNS lookup of the {@code client.host} of the access events.
+     *
+     * @return the reverse DNS lookup configuration.
+     */
+    public ReverseDnsLookup getReverseDnsLookup() {
+        return reverseDnsLookup;
+    }
+
+    /**
+     * Sets the configuration of the reverse DNS lookup of the {@code client.host} of the access events.
+     *
+     * @param reverseDnsLookup the reverse DNS lookup configuration.
+     */
+    public void setReverseDnsLookup(ReverseDnsLookup reverseDnsLookup) {
+        this.reverseDnsLookup = reverseDnsLookup;
+    }
+
+    /**
+     * Returns the configuration of the startup of the audit event handlers.
+     *
+     * @return the handler startup configuration.
+     */
+    public HandlerStartup getHandlerStartup() {
+        return handlerStartup;
+    }
+
+    /**
+     * Sets the configuration of the startup of the audit event handlers.
+     *
+     * @param handlerStartup the handler startup configuration.
+     */
+    public void setHandlerStartup(HandlerStartup handlerStartup) {
+        this.handlerStartup = handlerStartup;
+    }
+
+    /**
+     * Returns the policies dropping events before they are published to the handlers, by topic.
+     *
+     * @return the drop policies.
+     */
+    public Map<String, DropPolicy> getDropPolicies() {
+        return dropPolicies;
+    }
+
+    /**
+     * Sets the policies dropping events before they are published to the handlers, by topic.
+     *
+     * @param dropPolicies the drop policies.
+     */
+    public void setDropPolicies(Map<String, DropPolicy> dropPolicies) {
+        this.dropPolicies.putAll(dropPolicies);
+    }
+
+    /**
+     * Configuration of the reverse DNS lookup of the {@code client.host} of the events built with
+     * {@code AccessAuditEventBuilder.withReverseDnsLookup()}.
+     * <p>
+     * Lookups are performed by a bounded pool of resolver threads, and their results, including the addresses
+     * without a name, are cached. An event is published without its host if the lookup does not complete within
+     * the deadline, or if the resolver queue is full.
+     */
+    public static class ReverseDnsLookup {
+
+        @JsonPropertyDescription("audit.service.reverseDnsLookup.enabled")
+        private boolean enabled = true;
+
+        @JsonPropertyDescription("audit.service.reverseDnsLookup.threads")
+        private int threads = 2;
+
+        @JsonPropertyDescription("audit.service.reverseDnsLookup.queueSize")
+        private int queueSize = 1000;
+
+        @JsonPropertyDescription("audit.service.reverseDnsLookup.cacheSize")
+        private int cacheSize = 10000;
+
+        @JsonPropertyDescription("audit.service.reverseDnsLookup.cacheTtl")
+        private String cacheTtl = "1 hour";
+
+        @JsonPropertyDescription("audit.service.reverseDnsLookup.negativeCacheTtl")
+        private String negativeCacheTtl = "5 minutes";
+
+        @JsonPropertyDescription("audit.service.reverseDnsLookup.deadline")
+        private String deadline = "500 milliseconds";
+
+        /**
+         * Indicates if the reverse DNS lookups are enabled.
+         *
+         * @return {@code true} if the lookups are enabled.
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Sets if the reverse DNS lookups are enabled; when disabled, events are published without their host.
+         *
+         * @param enabled {@code true} if the lookups are enabled.
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Returns the number of resolver threads.
+         *
+         * @return the number of resolver threads.
+         */
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * Sets the number of resolver threads.
+         *
+         * @param threads the number of resolver threads.
+         */
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        /**
+         * Returns the maximum number of lookups waiting for a resolver thread.
+         *
+         * @return the size of the lookup queue.
+         */
+        public int getQueueSize() {
+            return queueSize;
+        }
+
+        /**
+         * Sets the maximum number of lookups waiting for a resolver thread.
+         *
+         * @param queueSize the size of the lookup queue.
+         */
+        public void setQueueSize(int queueSize) {
+            this.queueSize = queueSize;
+        }
+
+        /**
+         * Returns the maximum number of addresses kept in the cache.
+         *
+         * @return the size of the cache.
+         */
+        public int getCacheSize() {
+            return cacheSize;
+        }
+
+        /**
+         * Sets the maximum number of addresses kept in the cache; the least recently used are evicted first.
+         *
+         * @param cacheSize the size of the cache.
+         */
+        public void setCacheSize(int cacheSize) {
+            this.cacheSize = cacheSize;
+        }
+
+        /**
+         * Returns the duration during which a resolved host name is cached.
+         *
+         * @return the duration, e.g. {@code 1 hour}.
+         */
+        public String getCacheTtl() {
+            return cacheTtl;
+        }
+
+        /**
+         * Sets the duration during which a resolved host name is cached.
+         *
+         * @param cacheTtl the duration, e.g. {@code 1 hour}.
+         */
+        public void setCacheTtl(String cacheTtl) {
+            this.cacheTtl = cacheTtl;
+        }
+
+        /**
+         * Returns the duration during which an address without a host name is cached.
+         *
+         * @return the duration, e.g. {@code 5 minutes}.
+         */
+        public String getNegativeCacheTtl() {
+            return negativeCacheTtl;
+        }
+
+        /**
+         * Sets the duration during which an address without a host name is cached.
+         *
+         * @param negativeCacheTtl the duration, e.g. {@code 5 minutes}.
+         */
+        public void setNegativeCacheTtl(String negativeCacheTtl) {
+            this.negativeCacheTtl = negativeCacheTtl;
+        }
+
+        /**
+         * Returns the maximum duration an event waits for the lookup of its host before being published.
+         *
+         * @return the duration, e.g. {@code 500 milliseconds}.
+         */
+        public String getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * Sets the maximum duration an event waits for the lookup of its host before being published.
+         *
+         * @param deadline the duration, e.g. {@code 500 milliseconds}.
+         */
+        public void setDeadline(String deadline) {
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Configuration of the startup of the audit event handlers.
+     * <p>
+     * Handlers are started in parallel, and the audit service waits for them up to the timeout. A handler still
+     * starting after the timeout keeps on starting in the background: the events published to it are held in a
+     * bounded queue and passed to it once it is ready, while its reads and queries are rejected. The events exceeding
+     * the size of the queue are rejected.
+     */
+    public static class HandlerStartup {
+
+        @JsonPropertyDescription("audit.service.handlerStartup.timeout")
+        private String timeout = "30 seconds";
+
+        @JsonPropertyDescription("audit.service.handlerStartup.queueSize")
+        private int queueSize = 10000;
+
+        /**
+         * Returns the maximum duration the startup of the audit service waits for the handlers to start.
+         *
+         * @return the duration, e.g. {@code 30 seconds}.
+         */
+        public String getTimeout() {
+            return timeout;
+        }
+
+        /**
+         * Sets the maximum duration the startup of the audit service waits for the handlers to start.
+         *
+         * @param timeout the duration, e.g. {@code 30 seconds}.
+         */
+        public void setTimeout(String timeout) {
+            this.timeout = timeout;
+        }
+
+        /**
+         * Returns the maximum number of events held for each handler still starting.
+         *
+         * @return the size of the queue of each handler.
+         */
+        public int getQueueSize() {
+            return queueSize;
+        }
+
+        /**
+         * Sets the maximum number of events held for each handler still starting.
+         *
+         * @param queueSize the size of the queue of each handler.
+         */
+        public void setQueueSize(int queueSize) {
+            this.queueSize = queueSize;
+        }
+    }
 }
@@ -19,23 +19,46 @@ import static java.lang.String.format;
 import static org.forgerock.audit.AuditServiceProxy.ACTION_PARAM_TARGET_HANDLER;
 import static org.forgerock.audit.events.AuditEventBuilder.TIMESTAMP;
 import static org.forgerock.audit.events.AuditEventBuilder.TRANSACTION_ID;
+import static org.forgerock.audit.metrics.Metrics.name;
 import static org.forgerock.audit.util.ResourceExceptionsUtil.adapt;
 import static org.forgerock.audit.util.ResourceExceptionsUtil.notSupported;
 import static org.forgerock.json.JsonValue.json;
 import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.json.resource.Responses.newActionResponse;
 import static org.forgerock.json.resource.Responses.newResourceResponse;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.forgerock.audit.events.CompactAuditEvent;
 import org.forgerock.audit.events.EventTopicsMetaData;
 import org.forgerock.audit.events.handlers.AuditEventHandler;
+import org.forgerock.audit.events.handlers.CompactAuditEventHandler;
+import org.forgerock.audit.events.handlers.FallThroughAuditEventHandler;
+import org.forgerock.audit.filter.EventDropper;
 import org.forgerock.audit.filter.Filter;
 import org.forgerock.audit.filter.FilterChainBuilder;
+import org.forgerock.audit.metrics.Counter;
+import org.forgerock.audit.metrics.Gauge;
+import org.forgerock.audit.metrics.InMemoryMetricRegistry;
+import org.forgerock.audit.metrics.LatencyHistogram;
+import org.forgerock.audit.metrics.MetricRegistry;
+import org.forgerock.audit.providers.DefaultHostNameResolver;
+import org.forgerock.audit.providers.HostNameResolver;
 import org.forgerock.json.JsonValue;
 import org.forgerock.json.resource.ActionRequest;
 import org.forgerock.json.resource.ActionResponse;
@@ -54,8 +77,12 @@ import org.forgerock.json.resource.ResourceResponse;
 import org.forgerock.json.resource.ServiceUnavailableException;
 import org.forgerock.json.resource.UpdateRequest;
 import org.forgerock.services.context.Context;
+import org.forgerock.util.AsyncFunction;
 import org.forgerock.util.generator.IdGenerator;
+import org.forgerock.util.promise.ExceptionHandler;
 import org.forgerock.util.promise.Promise;
+import org.forgerock.util.promise.ResultHandler;
+import org.forgerock.util.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -73,7 +100,10 @@ import org.slf4j.LoggerFactory;
  * {@link ServiceUnavailableException}.
  * <p/>
  * After {@link #startup()} is called, assuming startup succeeds, the AuditService will then be in the
- * 'RUNNING' state and further calls to {@link #startup()} will be ignored.
+ * 'RUNNING' state and further calls to {@link #startup()} will be ignored. The handlers are started in parallel,
+ * and {@link #startup()} waits for them up to the timeout of {@link AuditServiceConfiguration.HandlerStartup}:
+ * until a handler is started, the events published to it are held in a bounded queue, and its reads, queries and
+ * actions are rejected with a {@link ServiceUnavailableException}.
  * <p/>
  * Calling {@link #shutdown()} will put the AuditService into the 'SHUTDOWN' state; once shutdown, the
  * AuditService will remain in this state and cannot be restarted. Further calls to {@link #shutdown()}
@@ -82,11 +112,24 @@ import org.slf4j.LoggerFactory;
  * <p/>
  * When instances are no longer needed, {@link #shutdown()} should be called to ensure that any buffered
  * audit events are flushed and that all open file handles or connections are closed.
+ * <p/>
+ * The latency of the publication of the events of each topic, and of the publication, reads and queries of each
+ * handler, are recorded in the {@link MetricRegistry}, along with the number of events and failures. A snapshot of
+ * the metrics is returned by the {@value #ACTION_METRICS} action on the audit service.
+ * <p/>
+ * The access events marked for a reverse DNS lookup of their client host are only cascaded to the handlers once the
+ * lookup completes, or its deadline expires; the lookup itself never blocks the caller.
+ * <p/>
+ * The events cut by the {@link AuditServiceConfiguration#getDropPolicies() drop policies} of their topic are
+ * dropped before being filtered or published, and acknowledged as unhandled events.
  */
 final class AuditServiceImpl implements AuditService {
 
     private static final Logger logger = LoggerFactory.getLogger(AuditServiceImpl.class);
 
+    /** The action returning a snapshot of the metrics of the audit service and its handlers. */
+    static final String ACTION_METRICS = "metrics";
+
     /**
      * User-facing configuration.
      */
@@ -106,7 +149,7 @@ final class AuditServiceImpl implements AuditService {
     /**
      * The AuditEventHandler to use for queries.
      */
-    private final AuditEventHandler queryHandler;
+    private AuditEventHandler queryHandler;
     /**
      * Indicates the current lifecycle state of this AuditService.
      */
@@ -115,6 +158,63 @@ final class AuditServiceImpl implements AuditService {
      * The filters to apply to the audit event.
      */
     private final Filter filters;
+    /**
+     * Drops the events cut by the drop policies, before they are filtered.
+     */
+    private final EventDropper eventDropper;
+    /**
+     * The registry of the metrics of this AuditService and its handlers.
+     */
+    private final MetricRegistry metricRegistry;
+    /**
+     * The metrics of each topic.
+     */
+    private final Map<String, TopicMetrics> topicMetrics;
+    /**
+     * The metrics of each handler.
+     */
+    private final Map<AuditEventHandler, HandlerMetrics> handlerMetrics;
+    /**
+     * Fills the client host of the access events before they are published.
+     */
+    private final ReverseDnsEnricher reverseDnsEnricher;
+    /**
+     * The readiness of each handler, holding its events until its startup completes.
+     */
+    private final Map<AuditEventHandler, HandlerReadiness> handlerReadiness;
+    /**
+     * The startup of each handler by name, once the startup of this AuditService is called.
+     */
+    private final Map<String, Future<?>> handlerStartups = new LinkedHashMap<>();
+    /**
+     * How each handler built from a registration was created, by name.
+     */
+    private final Map<String, HandlerSignature> handlerSignatures;
+    /**
+     * The names of the running handlers carried over from the previous AuditService, which are not started again.
+     */
+    private final Set<String> carriedOverHandlers = new HashSet<>();
+    /**
+     * The handlers carried over by the next AuditService, which are not shut down with this one.
+     */
+    private final Set<AuditEventHandler> handedOverHandlers = new HashSet<>();
+
+    /**
+     * Constructs a new instance, keeping its metrics in memory.
+     *
+     * @param configuration
+     *          User-facing configuration.
+     * @param eventTopicsMetaData
+     *          Meta-data describing the types of events this AuditService can receive.
+     * @param auditEventHandlers
+     *          List of all configured AuditEventHandlers.
+     */
+    public AuditServiceImpl(
+            final AuditServiceConfiguration configuration,
+            final EventTopicsMetaData eventTopicsMetaData,
+            final Set<AuditEventHandler> auditEventHandlers) {
+        this(configuration, eventTopicsMetaData, auditEventHandlers, new InMemoryMetricRegistry());
+    }
 
     /**
      * Constructs a new instance.
@@ -127,40 +227,251 @@ final class AuditServiceImpl implements AuditService {
      *          it nor its contents should not be updated further by code outside of this class thereafter.
      * @param auditEventHandlers
      *          List of all configured AuditEventHandlers.
+     * @param metricRegistry
+     *          The registry of the metrics of this AuditService and its handlers.
      */
     public AuditServiceImpl(
             final AuditServiceConfiguration configuration,
             final EventTopicsMetaData eventTopicsMetaData,
-            final Set<AuditEventHandler> auditEventHandlers) {
+            final Set<AuditEventHandler> auditEventHandlers,
+            final MetricRegistry metricRegistry) {
+        this(configuration, eventTopicsMetaData, auditEventHandlers, metricRegistry, new DefaultHostNameResolver());
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param configuration
+     *          User-facing configuration.
+     * @param eventTopicsMetaData
+     *          Meta-data describing the types of events this AuditService can receive.
+     *          Passing the map to this constructor effectively transfers ownership to this object and neither
+     *          it nor its contents should not be updated further by code outside of this class thereafter.
+     * @param auditEventHandlers
+     *          List of all configured AuditEventHandlers.
+     * @param metricRegistry
+     *          The registry of the metrics of this AuditService and its handlers.
+     * @param hostNameResolver
+     *          The resolver of the client host of the access events requiring a reverse DNS lookup.
+     */
+    public AuditServiceImpl(
+            final AuditServiceConfiguration configuration,
+            final EventTopicsMetaData eventTopicsMetaData,
+            final Set<AuditEventHandler> auditEventHandlers,
+            final MetricRegistry metricRegistry,
+            final HostNameResolver hostNameResolver) {
+        this(configuration, eventTopicsMetaData, auditEventHandlers, metricRegistry, hostNameResolver,
+                Collections.<String, HandlerSignature>emptyMap());
+    }
+
+    /**
+     * Constructs a new instance, recording how its handlers were created so that a later AuditService can carry
+     * over the unchanged ones.
+     *
+     * @param configuration
+     *          User-facing configuration.
+     * @param eventTopicsMetaData
+     *          Meta-data describing the types of events this AuditService can receive.
+     * @param auditEventHandlers
+     *          List of all configured AuditEventHandlers.
+     * @param metricRegistry
+     *          The registry of the metrics of this AuditService and its handlers.
+     * @param hostNameResolver
+     *          The resolver of the client host of the access events requiring a reverse DNS lookup.
+     * @param handlerSignatures
+     *          The signatures of the handlers built from a registration, by name.
+     */
+    AuditServiceImpl(
+            final AuditServiceConfiguration configuration,
+            final EventTopicsMetaData eventTopicsMetaData,
+            final Set<AuditEventHandler> auditEventHandlers,
+            final MetricRegistry metricRegistry,
+            final HostNameResolver hostNameResolver,
+            final Map<String, HandlerSignature> handlerSignatures) {
 
         this.config = new AuditServiceConfiguration(configuration);
         this.eventTopicsMetaData = eventTopicsMetaData;
-        this.auditEventHandlersByName = getAuditEventHandlersByName(auditEventHandlers);
-        this.auditEventHandlersByTopic = getAuditEventHandlersByTopic(auditEventHandlers, eventTopicsMetaData);
-
-        String queryHandlerName = configuration.getHandlerForQueries();
-        if (queryHandlerName != null && this.auditEventHandlersByName.containsKey(queryHandlerName)) {
-            queryHandler = this.auditEventHandlersByName.get(queryHandlerName);
-        } else {
-            queryHandler = new NullQueryHandler(config.getHandlerForQueries());
-        }
+        this.handlerSignatures = new HashMap<>(handlerSignatures);
+        this.auditEventHandlersByName = new LinkedHashMap<>();
+        this.auditEventHandlersByTopic = new HashMap<>();
 
         this.filters = new FilterChainBuilder()
                 .withAuditTopics(eventTopicsMetaData.getTopics())
                 .withPolicies(configuration.getFilterPolicies())
+                .withHashKey(configuration.getFilterHashKey())
                 .build();
+
+        this.metricRegistry = metricRegistry;
+        this.eventDropper = new EventDropper(config.getDropPolicies(), eventTopicsMetaData.getTopics(), metricRegistry);
+        this.topicMetrics = new HashMap<>();
+        for (String topic : eventTopicsMetaData.getTopics()) {
+            topicMetrics.put(topic, new TopicMetrics(metricRegistry, topic));
+        }
+        this.handlerMetrics = new HashMap<>();
+        this.reverseDnsEnricher =
+                new ReverseDnsEnricher(config.getReverseDnsLookup(), hostNameResolver, metricRegistry);
+        this.handlerReadiness = new HashMap<>();
+        setAuditEventHandlers(auditEventHandlers);
+    }
+
+    /**
+     * Routes the events, queries and metrics to the given handlers, replacing any handler previously set.
+     */
+    private void setAuditEventHandlers(final Collection<AuditEventHandler> auditEventHandlers) {
+        auditEventHandlersByName.clear();
+        auditEventHandlersByName.putAll(getAuditEventHandlersByName(auditEventHandlers));
+        auditEventHandlersByTopic.clear();
+        auditEventHandlersByTopic.putAll(getAuditEventHandlersByTopic(auditEventHandlers, eventTopicsMetaData));
+        setFallThroughHandlers(auditEventHandlers);
+
+        String queryHandlerName = config.getHandlerForQueries();
+        if (queryHandlerName != null && auditEventHandlersByName.containsKey(queryHandlerName)) {
+            queryHandler = auditEventHandlersByName.get(queryHandlerName);
+        } else {
+            queryHandler = new NullQueryHandler(queryHandlerName);
+        }
+
+        handlerMetrics.clear();
+        handlerReadiness.clear();
+        for (AuditEventHandler handler : auditEventHandlers) {
+            handlerMetrics.put(handler, new HandlerMetrics(metricRegistry, handler.getName()));
+            handlerReadiness.put(handler, newHandlerReadiness(handler));
+        }
+    }
+
+    /**
+     * Carries over the running handlers of the previous AuditService that this one would otherwise create again.
+     * <p/>
+     * A handler is carried over when it is the same instance in both services, or when it was created with the same
+     * class and configuration; in both cases, the two services must also share the same event topics schemas and
+     * {@link MetricRegistry}, these being given to the handler when it is created. The carried over handlers keep
+     * their open files, connections and buffers: this AuditService does not start them again, and the previous one
+     * does not shut them down. The handlers which failed to start in the previous AuditService are not carried over,
+     * and the handlers this AuditService created in place of the carried over ones are shut down without being
+     * started.
+     * <p/>
+     * This method must be called before this AuditService is started, while no thread interacts with either
+     * service, which {@link AuditServiceProxy#setDelegate(AuditService)} ensures.
+     *
+     * @param previous
+     *          The running AuditService being replaced by this one.
+     * @return the names of the handlers carried over
+     */
+    Set<String> carryOverHandlers(final AuditServiceImpl previous) {
+        if (lifecycleState != LifecycleState.STARTING || previous.lifecycleState != LifecycleState.RUNNING
+                || previous.metricRegistry != metricRegistry
+                || !haveSameTopicSchemas(previous.eventTopicsMetaData, eventTopicsMetaData)) {
+            return Collections.emptySet();
+        }
+        final List<AuditEventHandler> handlers = new ArrayList<>(auditEventHandlersByName.size());
+        for (Map.Entry<String, AuditEventHandler> entry : auditEventHandlersByName.entrySet()) {
+            final String handlerName = entry.getKey();
+            final AuditEventHandler handler = entry.getValue();
+            final AuditEventHandler runningHandler = previous.auditEventHandlersByName.get(handlerName);
+            final HandlerSignature signature = handlerSignatures.get(handlerName);
+            if (runningHandler != null && (runningHandler == handler
+                    || (signature != null && signature.equals(previous.handlerSignatures.get(handlerName))))
+                    && previous.hasStarted(handlerName, runningHandler)) {
+                previous.handedOverHandlers.add(runningHandler);
+                carriedOverHandlers.add(handlerName);
+                handlers.add(runningHandler);
+                if (runningHandler != handler) {
+                    discardUnstartedHandler(handlerName, handler);
+                }
+            } else {
+                handlers.add(handler);
+            }
+        }
+        if (!carriedOverHandlers.isEmpty()) {
+            setAuditEventHandlers(handlers);
+            logger.info("Carrying over the running handlers {}", carriedOverHandlers);
+        }
+        return Collections.unmodifiableSet(carriedOverHandlers);
+    }
+
+    /**
+     * Waits for the handler to complete its startup, and indicates if it started successfully.
+     */
+    private boolean hasStarted(String handlerName, AuditEventHandler handler) {
+        awaitHandlerStartup(handlerName);
+        final HandlerReadiness readiness = handlerReadiness.get(handler);
+        return readiness != null && readiness.isReady();
+    }
+
+    /**
+     * Shuts down a handler replaced by a carried over one, releasing what its constructor may hold, such as the
+     * threads of its buffers.
+     */
+    private static void discardUnstartedHandler(String handlerName, AuditEventHandler handler) {
+        try {
+            handler.shutdown();
+        } catch (ResourceException e) {
+            logger.warn("Unable to shutdown the replaced handler " + handlerName, e);
+        }
+    }
+
+    private static boolean haveSameTopicSchemas(EventTopicsMetaData first, EventTopicsMetaData second) {
+        if (first == second) {
+            return true;
+        }
+        if (!first.getTopics().equals(second.getTopics())) {
+            return false;
+        }
+        for (String topic : first.getTopics()) {
+            if (!first.getSchema(topic).getObject().equals(second.getSchema(topic).getObject())) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    private Map<String, AuditEventHandler> getAuditEventHandlersByName(Set<AuditEventHandler> handlers) {
-        Map<String, AuditEventHandler> handlersByName = new HashMap<>(handlers.size());
+    private HandlerReadiness newHandlerReadiness(final AuditEventHandler handler) {
+        final HandlerReadiness readiness = new HandlerReadiness(handler.getName(),
+                config.getHandlerStartup().getQueueSize(), new HandlerReadiness.Publisher() {
+                    @Override
+                    public Promise<ResourceResponse, ResourceException> publish(Context context, String topic,
+                            JsonValue event) {
+                        return publishEventToHandler(handler, context, topic, event, null);
+                    }
+                });
+        metricRegistry.registerGauge(name("handler", handler.getName(), "pending"), new Gauge() {
+            @Override
+            public long getValue() {
+                return readiness.getPendingEventCount();
+            }
+        });
+        return readiness;
+    }
+
+    private Map<String, AuditEventHandler> getAuditEventHandlersByName(Collection<AuditEventHandler> handlers) {
+        Map<String, AuditEventHandler> handlersByName = new LinkedHashMap<>(handlers.size());
         for (AuditEventHandler handler : handlers) {
             handlersByName.put(handler.getName(), handler);
         }
         return handlersByName;
     }
 
+    private void setFallThroughHandlers(Collection<AuditEventHandler> handlers) {
+        for (AuditEventHandler handler : handlers) {
+            if (!(handler instanceof FallThroughAuditEventHandler)) {
+                continue;
+            }
+            final FallThroughAuditEventHandler fallThroughHandler = (FallThroughAuditEventHandler) handler;
+            final String name = fallThroughHandler.getFallThroughHandlerName();
+            if (name == null) {
+                continue;
+            }
+            final AuditEventHandler target = auditEventHandlersByName.get(name);
+            if (target == null || target == handler) {
+                logger.error("Handler '{}' can't fall through to handler '{}'", handler.getName(), name);
+            } else {
+                fallThroughHandler.setFallThroughHandler(target);
+            }
+        }
+    }
+
     private Map<String, Set<AuditEventHandler>> getAuditEventHandlersByTopic(
-            final Set<AuditEventHandler> handlers,
+            final Collection<AuditEventHandler> handlers,
             final EventTopicsMetaData eventTopicsMetaData) {
 
         Map<String, Set<AuditEventHandler>> handlersByTopic = new HashMap<>();
@@ -189,7 +500,8 @@ final class AuditServiceImpl implements AuditService {
             }
             final String id = request.getResourcePathObject().tail(1).toString();
             final String topic = establishTopic(request.getResourcePathObject(), true);
-            return queryHandler.readEvent(context, topic, id);
+            checkHandlerIsReady(queryHandler);
+            return recordQuery(queryHandler, queryHandler.readEvent(context, topic, id));
         } catch (Exception e) {
             return adapt(e).asPromise();
         }
@@ -207,13 +519,31 @@ final class AuditServiceImpl implements AuditService {
                 return newUnhandledEventResponse().asPromise();
             }
 
+            final long start = System.nanoTime();
             final String topic = establishTopic(request.getResourcePathObject(), true);
             rejectIfMissingTransactionIdOrTimestamp(request);
+            if (eventDropper.dropEvent(topic, request.getContent())) {
+                return newUnhandledEventResponse().asPromise();
+            }
             establishAuditEventId(request);
             filters.doFilter(topic, request.getContent());
 
-            Collection<AuditEventHandler> auditEventHandlersForEvent = getAuditEventHandlersForEvent(topic);
-            return publishEventToHandlers(context, request.getContent(), topic, auditEventHandlersForEvent);
+            final Collection<AuditEventHandler> auditEventHandlersForEvent = getAuditEventHandlersForEvent(topic);
+            // the handlers are called once the client host is resolved, which is immediate for most events
+            final Promise<ResourceResponse, ResourceException> promise = reverseDnsEnricher.enrich(request.getContent())
+                    .thenAsync(new AsyncFunction<JsonValue, ResourceResponse, ResourceException>() {
+                        @Override
+                        public Promise<ResourceResponse, ResourceException> apply(JsonValue event) {
+                            return publishEventToHandlers(context, event, topic, auditEventHandlersForEvent);
+                        }
+                    });
+            final TopicMetrics metrics = topicMetrics.get(topic);
+            metrics.events.increment();
+            if (auditEventHandlersForEvent.isEmpty()) {
+                metrics.unhandled.increment();
+            }
+            metrics.publish.recordSince(start);
+            return promise;
         } catch (Exception e) {
             logger.warn(e.getMessage());
             return adapt(e).asPromise();
@@ -269,13 +599,22 @@ final class AuditServiceImpl implements AuditService {
         // Otherwise, return the result generated by the handler used for queries or a generic response if
         // that handler isn't bound to the event's topic
         logger.debug("Cascading the event of topic {} to the handlers : {}", topic, auditEventHandlersForEvent);
+        // the compact form is built once, on behalf of the first handler able to use it
+        CompactAuditEvent compactEvent = null;
         for (AuditEventHandler auditEventHandler : auditEventHandlersForEvent) {
-            Promise<ResourceResponse, ResourceException> handlerResult;
-            try {
-                handlerResult = auditEventHandler.publishEvent(context, topic, event);
-            } catch (Exception ex) {
-                logger.warn(ex.getMessage());
-                handlerResult = adapt(ex).asPromise();
+            if (eventDropper.dropEventForHandler(topic, auditEventHandler.getName())) {
+                continue;
+            }
+            final HandlerReadiness readiness = handlerReadiness.get(auditEventHandler);
+            final Promise<ResourceResponse, ResourceException> handlerResult;
+            if (readiness.isReady()) {
+                if (auditEventHandler instanceof CompactAuditEventHandler && compactEvent == null) {
+                    compactEvent = CompactAuditEvent.wrap(eventTopicsMetaData.getTopicSchema(topic), event);
+                }
+                handlerResult = publishEventToHandler(auditEventHandler, context, topic, event, compactEvent);
+            } else {
+                // the handler is still starting: the event is held until it is ready
+                handlerResult = readiness.publish(context, topic, event);
             }
             if (auditEventHandler == queryHandler) {
                 promise = handlerResult;
@@ -284,6 +623,37 @@ final class AuditServiceImpl implements AuditService {
         return promise;
     }
 
+    /**
+     * Publishes the event to the handler, in its compact form if the handler supports it.
+     *
+     * @param compactEvent the compact form of the event, or {@code null} to build it if needed
+     */
+    private Promise<ResourceResponse, ResourceException> publishEventToHandler(AuditEventHandler auditEventHandler,
+            Context context, String topic, JsonValue event, CompactAuditEvent compactEvent) {
+        final HandlerMetrics metrics = handlerMetrics.get(auditEventHandler);
+        final long start = System.nanoTime();
+        Promise<ResourceResponse, ResourceException> handlerResult;
+        try {
+            if (auditEventHandler instanceof CompactAuditEventHandler) {
+                final CompactAuditEvent compact = compactEvent != null
+                        ? compactEvent
+                        : CompactAuditEvent.wrap(eventTopicsMetaData.getTopicSchema(topic), event);
+                handlerResult = ((CompactAuditEventHandler) auditEventHandler)
+                        .publishCompactEvent(context, topic, compact);
+            } else {
+                handlerResult = auditEventHandler.publishEvent(context, topic, event);
+            }
+            if (handlerResult != null) {
+                metrics.record(handlerResult, metrics.publish, start);
+            }
+        } catch (Exception ex) {
+            logger.warn(ex.getMessage());
+            metrics.failures.increment();
+            handlerResult = adapt(ex).asPromise();
+        }
+        return handlerResult;
+    }
+
     @Override
     public Promise<ResourceResponse, ResourceException> handleUpdate(
             final Context context, final UpdateRequest request) {
@@ -307,7 +677,8 @@ final class AuditServiceImpl implements AuditService {
             logger.debug("Audit query called for {}", request.getResourcePath());
             checkLifecycleStateIsRunning();
             final String topic = establishTopic(request.getResourcePathObject(), true);
-            return queryHandler.queryEvents(context, topic, request, handler);
+            checkHandlerIsReady(queryHandler);
+            return recordQuery(queryHandler, queryHandler.queryEvents(context, topic, request, handler));
         } catch (Exception e) {
             return adapt(e).asPromise();
         }
@@ -317,6 +688,9 @@ final class AuditServiceImpl implements AuditService {
     public Promise<ActionResponse, ResourceException> handleAction(final Context context, final ActionRequest request) {
         try {
             String handlerName = request.getAdditionalParameter(ACTION_PARAM_TARGET_HANDLER);
+            if (handlerName == null && ACTION_METRICS.equals(request.getAction())) {
+                return newActionResponse(metricRegistry.snapshot()).asPromise();
+            }
             String topic = establishTopic(request.getResourcePathObject(), false);
             if (handlerName == null) {
                 // no action is currently managed at the audit service level, so throw an exception
@@ -328,12 +702,22 @@ final class AuditServiceImpl implements AuditService {
                 return new BadRequestException(format("Action references an unknown handler name: %s", handlerName))
                         .asPromise();
             }
+            checkHandlerIsReady(handler);
             return handler.handleAction(context, topic, request);
         } catch (Exception e) {
             return adapt(e).asPromise();
         }
     }
 
+    private <V> Promise<V, ResourceException> recordQuery(final AuditEventHandler handler,
+            final Promise<V, ResourceException> promise) {
+        final HandlerMetrics metrics = handlerMetrics.get(handler);
+        if (metrics != null && promise != null) {
+            metrics.record(promise, metrics.query, System.nanoTime());
+        }
+        return promise;
+    }
+
     private Collection<AuditEventHandler> getAuditEventHandlersForEvent(final String auditEvent) {
         if (auditEventHandlersByTopic.containsKey(auditEvent)) {
             return auditEventHandlersByTopic.get(auditEvent);
@@ -370,15 +754,7 @@ final class AuditServiceImpl implements AuditService {
     public void startup() throws ServiceUnavailableException {
         switch (lifecycleState) {
             case STARTING:
-                for (Map.Entry<String, AuditEventHandler> entry : auditEventHandlersByName.entrySet()) {
-                    String handlerName = entry.getKey();
-                    AuditEventHandler handler = entry.getValue();
-                    try {
-                        handler.startup();
-                    } catch (ResourceException e) {
-                        logger.warn("Unable to startup handler " + handlerName,  e);
-                    }
-                }
+                startupHandlers();
                 lifecycleState = LifecycleState.RUNNING;
                 break;
             case RUNNING:
@@ -402,12 +778,18 @@ final class AuditServiceImpl implements AuditService {
     public void shutdown() {
         switch (lifecycleState) {
             case STARTING:
+                reverseDnsEnricher.shutdown();
                 lifecycleState = LifecycleState.SHUTDOWN;
                 break;
             case RUNNING:
+                reverseDnsEnricher.shutdown();
                 for (Map.Entry<String, AuditEventHandler> entry : auditEventHandlersByName.entrySet()) {
                     String handlerName = entry.getKey();
                     AuditEventHandler handler = entry.getValue();
+                    if (handedOverHandlers.contains(handler)) {
+                        continue;
+                    }
+                    awaitHandlerStartup(handlerName);
                     try {
                         handler.shutdown();
                     } catch (ResourceException e) {
@@ -424,6 +806,94 @@ final class AuditServiceImpl implements AuditService {
         }
     }
 
+    /**
+     * Starts the handlers in parallel, waiting for them up to the configured timeout. The handlers still starting
+     * after the timeout complete their startup in the background, their events being held until they are ready.
+     */
+    private void startupHandlers() {
+        final ExecutorService executor =
+                Executors.newCachedThreadPool(new DaemonThreadFactory("Audit handler startup"));
+        for (Map.Entry<String, AuditEventHandler> entry : auditEventHandlersByName.entrySet()) {
+            final String handlerName = entry.getKey();
+            final AuditEventHandler handler = entry.getValue();
+            if (carriedOverHandlers.contains(handlerName)) {
+                handlerReadiness.get(handler).setReady();
+                continue;
+            }
+            handlerStartups.put(handlerName, executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        handler.startup();
+                    } catch (Exception e) {
+                        logger.warn("Unable to startup handler " + handlerName,  e);
+                        handlerReadiness.get(handler).setFailed();
+                        return;
+                    }
+                    handlerReadiness.get(handler).setReady();
+                }
+            }));
+        }
+        // the threads terminate once the handlers are started
+        executor.shutdown();
+
+        final String timeout = config.getHandlerStartup().getTimeout();
+        final long deadline = System.nanoTime() + getStartupTimeoutNanos(timeout);
+        for (Map.Entry<String, Future<?>> entry : handlerStartups.entrySet()) {
+            try {
+                entry.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                logger.warn("Handler {} is still starting after {}, its events are held until it is ready",
+                        entry.getKey(), timeout);
+            } catch (ExecutionException e) {
+                logger.warn("Unable to startup handler " + entry.getKey(), e.getCause());
+            } catch (InterruptedException e) {
+                logger.warn("Interrupted while waiting for the handlers to start");
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static long getStartupTimeoutNanos(String timeout) {
+        Duration duration;
+        try {
+            duration = Duration.duration(timeout);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid handler startup timeout value: '{}'", timeout);
+            duration = Duration.duration("30 seconds");
+        }
+        return duration.isUnlimited() ? Long.MAX_VALUE / 2 : duration.to(TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Waits for the handler to complete its startup, so that it is not shut down while starting.
+     */
+    private void awaitHandlerStartup(String handlerName) {
+        final Future<?> startup = handlerStartups.get(handlerName);
+        if (startup == null) {
+            return;
+        }
+        try {
+            startup.get();
+        } catch (ExecutionException e) {
+            // already logged by the startup
+            logger.trace("Handler {} failed to startup", handlerName, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkHandlerIsReady(AuditEventHandler handler) throws ServiceUnavailableException {
+        final HandlerReadiness readiness = handlerReadiness.get(handler);
+        if (readiness != null && readiness.isFailed()) {
+            throw new ServiceUnavailableException("Handler " + handler.getName() + " failed to start");
+        }
+        if (readiness != null && !readiness.isReady()) {
+            throw new ServiceUnavailableException("Handler " + handler.getName() + " is starting");
+        }
+    }
+
     @Override
     public boolean isRunning() {
         return lifecycleState == LifecycleState.RUNNING;
@@ -443,6 +913,52 @@ final class AuditServiceImpl implements AuditService {
         STARTING, RUNNING, SHUTDOWN
     }
 
+    /**
+     * Metrics of the events of a topic.
+     */
+    private static final class TopicMetrics {
+        private final Counter events;
+        private final Counter unhandled;
+        private final LatencyHistogram publish;
+
+        private TopicMetrics(MetricRegistry metricRegistry, String topic) {
+            this.events = metricRegistry.counter(name("topic", topic, "events"));
+            this.unhandled = metricRegistry.counter(name("topic", topic, "unhandled"));
+            this.publish = metricRegistry.latencyHistogram(name("topic", topic, "publish"));
+        }
+    }
+
+    /**
+     * Metrics of the operations of a handler, measured until the completion of their promise.
+     */
+    private static final class HandlerMetrics {
+        private final Counter failures;
+        private final LatencyHistogram publish;
+        private final LatencyHistogram query;
+
+        private HandlerMetrics(MetricRegistry metricRegistry, String handlerName) {
+            this.failures = metricRegistry.counter(name("handler", handlerName, "failures"));
+            this.publish = metricRegistry.latencyHistogram(name("handler", handlerName, "publish"));
+            this.query = metricRegistry.latencyHistogram(name("handler", handlerName, "query"));
+        }
+
+        private <V> void record(final Promise<V, ResourceException> promise, final LatencyHistogram latency,
+                final long start) {
+            promise.thenOnResult(new ResultHandler<V>() {
+                @Override
+                public void handleResult(V result) {
+                    latency.recordSince(start);
+                }
+            }).thenOnException(new ExceptionHandler<ResourceException>() {
+                @Override
+                public void handleException(ResourceException exception) {
+                    latency.recordSince(start);
+                    failures.increment();
+                }
+            });
+        }
+    }
+
     /**
      * Substitute {@link AuditEventHandler} to use when no query handler is available.
      */
@@ -45,6 +45,10 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * <p/>
  * Thread-safety is achieved by blocking proxied calls until the old AuditService has flushed all buffers
  * and closed any open file or network connections.
+ * <p/>
+ * When both AuditServices are built by {@link AuditServiceBuilder}, the handlers whose class and configuration are
+ * unchanged are carried over to the new AuditService while running, with their open files, connections and
+ * buffers; only the other handlers are shut down and started.
  */
 public class AuditServiceProxy implements AuditService {
 
@@ -75,7 +79,8 @@ public class AuditServiceProxy implements AuditService {
      * Sets the AuditService this object proxies.
      * <p/>
      * Thread-safety is achieved by blocking proxied calls until the old AuditService has flushed all buffers
-     * and closed any open file or network connections.
+     * and closed any open file or network connections. The handlers that the new AuditService carries over from the
+     * old one keep running across the swap.
      *
      * @param newDelegate
      *          A new AuditService instance with updated configuration.
@@ -88,6 +93,9 @@ public class AuditServiceProxy implements AuditService {
             if (oldDelegate == newDelegate) {
                 return;
             }
+            if (oldDelegate instanceof AuditServiceImpl && newDelegate instanceof AuditServiceImpl) {
+                ((AuditServiceImpl) newDelegate).carryOverHandlers((AuditServiceImpl) oldDelegate);
+            }
             oldDelegate.shutdown();
             newDelegate.startup();
             this.delegate = newDelegate;
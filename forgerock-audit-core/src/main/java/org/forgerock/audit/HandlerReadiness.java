@@ -0,0 +1,214 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit;
+
+import static org.forgerock.audit.util.ResourceExceptionsUtil.adapt;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.json.resource.ServiceUnavailableException;
+import org.forgerock.services.context.Context;
+import org.forgerock.util.promise.ExceptionHandler;
+import org.forgerock.util.promise.Promise;
+import org.forgerock.util.promise.PromiseImpl;
+import org.forgerock.util.promise.ResultHandler;
+
+/**
+ * Tracks whether an audit event handler has completed its startup, and holds the events published to it in the
+ * meantime in a bounded queue.
+ * <p>
+ * Once the handler is ready, the held events are passed to it in the order they were published, before any event
+ * published afterwards; the promises returned for the held events are then completed with the results of the
+ * handler. If the handler fails to start, the held events and the events published afterwards are rejected.
+ */
+final class HandlerReadiness {
+
+    /**
+     * Publishes an event to the handler.
+     */
+    interface Publisher {
+        /**
+         * Publishes an event to the handler.
+         *
+         * @param context The context of the event.
+         * @param topic The topic of the event.
+         * @param event The event.
+         * @return the result of the handler.
+         */
+        Promise<ResourceResponse, ResourceException> publish(Context context, String topic, JsonValue event);
+    }
+
+    private final String handlerName;
+    private final int capacity;
+    private final Publisher publisher;
+    /** The held events, guarded by this. */
+    private final Queue<PendingEvent> pendingEvents = new ArrayDeque<>();
+    private volatile boolean ready;
+    /** Whether the startup of the handler failed, set under this. */
+    private volatile boolean failed;
+
+    /**
+     * Creates the readiness of a handler which is not started yet.
+     *
+     * @param handlerName The name of the handler.
+     * @param capacity The maximum number of events to hold until the handler is ready.
+     * @param publisher The publisher of the events to the handler.
+     */
+    HandlerReadiness(String handlerName, int capacity, Publisher publisher) {
+        this.handlerName = handlerName;
+        this.capacity = capacity;
+        this.publisher = publisher;
+    }
+
+    /**
+     * Indicates if the handler has completed its startup and accepts events.
+     *
+     * @return {@code true} if the handler is ready.
+     */
+    boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Indicates if the startup of the handler failed, its events being rejected.
+     *
+     * @return {@code true} if the handler failed to start.
+     */
+    boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Returns the number of events held until the handler is ready.
+     *
+     * @return the number of held events.
+     */
+    synchronized int getPendingEventCount() {
+        return pendingEvents.size();
+    }
+
+    /**
+     * Publishes the event to the handler if it is ready, or else holds it until it is ready.
+     *
+     * @param context The context of the event.
+     * @param topic The topic of the event.
+     * @param event The event.
+     * @return the result of the handler, completed once the handler is ready if the event is held, or a
+     *         {@link ServiceUnavailableException} if the queue of held events is full or the handler failed to start.
+     */
+    Promise<ResourceResponse, ResourceException> publish(Context context, String topic, JsonValue event) {
+        if (!ready) {
+            synchronized (this) {
+                if (failed) {
+                    return newStartupFailedException().asPromise();
+                }
+                if (!ready) {
+                    if (pendingEvents.size() >= capacity) {
+                        return new ServiceUnavailableException("Handler " + handlerName
+                                + " is starting and can't hold more events").asPromise();
+                    }
+                    final PendingEvent pendingEvent = new PendingEvent(context, topic, event);
+                    pendingEvents.add(pendingEvent);
+                    return pendingEvent.promise;
+                }
+            }
+        }
+        return publisher.publish(context, topic, event);
+    }
+
+    /**
+     * Marks the handler as ready, after passing it the held events.
+     */
+    void setReady() {
+        while (true) {
+            final PendingEvent pendingEvent;
+            synchronized (this) {
+                pendingEvent = pendingEvents.poll();
+                if (pendingEvent == null) {
+                    ready = true;
+                    return;
+                }
+            }
+            pendingEvent.publish();
+        }
+    }
+
+    /**
+     * Marks the startup of the handler as failed, rejecting the held events and the events published afterwards.
+     */
+    void setFailed() {
+        final List<PendingEvent> rejectedEvents;
+        synchronized (this) {
+            failed = true;
+            rejectedEvents = new ArrayList<>(pendingEvents);
+            pendingEvents.clear();
+        }
+        for (PendingEvent pendingEvent : rejectedEvents) {
+            pendingEvent.promise.handleException(newStartupFailedException());
+        }
+    }
+
+    private ServiceUnavailableException newStartupFailedException() {
+        return new ServiceUnavailableException("Handler " + handlerName + " failed to start");
+    }
+
+    /**
+     * An event held until the handler is ready.
+     */
+    private final class PendingEvent {
+        private final Context context;
+        private final String topic;
+        private final JsonValue event;
+        private final PromiseImpl<ResourceResponse, ResourceException> promise = PromiseImpl.create();
+
+        private PendingEvent(Context context, String topic, JsonValue event) {
+            this.context = context;
+            this.topic = topic;
+            this.event = event;
+        }
+
+        private void publish() {
+            final Promise<ResourceResponse, ResourceException> result;
+            try {
+                result = publisher.publish(context, topic, event);
+            } catch (Exception e) {
+                promise.handleException(adapt(e));
+                return;
+            }
+            if (result == null) {
+                promise.handleResult(null);
+                return;
+            }
+            result.thenOnResult(new ResultHandler<ResourceResponse>() {
+                @Override
+                public void handleResult(ResourceResponse response) {
+                    promise.handleResult(response);
+                }
+            }).thenOnException(new ExceptionHandler<ResourceException>() {
+                @Override
+                public void handleException(ResourceException exception) {
+                    promise.handleException(exception);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+
+package org.forgerock.audit;
+
+import org.forgerock.audit.events.handlers.AuditEventHandler;
+import org.forgerock.audit.events.handlers.EventHandlerConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Identifies how a handler was created: its class and a snapshot of its configuration, taken when the
+ * AuditService is built so that later changes to the configuration bean are not missed.
+ * <p/>
+ * Two handlers with equal signatures are interchangeable, which allows a reconfigured AuditService to carry over
+ * the running handler instead of restarting it.
+ */
+final class HandlerSignature {
+
+    private static final Logger logger = LoggerFactory.getLogger(HandlerSignature.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Class<? extends AuditEventHandler> handlerClass;
+    private final JsonNode configuration;
+
+    private HandlerSignature(Class<? extends AuditEventHandler> handlerClass, JsonNode configuration) {
+        this.handlerClass = handlerClass;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Returns the signature of a handler.
+     *
+     * @param handlerClass
+     *          The class of the handler.
+     * @param configuration
+     *          The configuration of the handler.
+     * @return the signature, or {@code null} if the configuration cannot be captured
+     */
+    static HandlerSignature of(Class<? extends AuditEventHandler> handlerClass,
+            EventHandlerConfiguration configuration) {
+        try {
+            return new HandlerSignature(handlerClass, MAPPER.<JsonNode>valueToTree(configuration));
+        } catch (IllegalArgumentException e) {
+            logger.debug("Unable to capture the configuration of handler {}", configuration.getName(), e);
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof HandlerSignature)) {
+            return false;
+        }
+        HandlerSignature that = (HandlerSignature) o;
+        return handlerClass.equals(that.handlerClass) && configuration.equals(that.configuration);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * handlerClass.hashCode() + configuration.hashCode();
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit;
+
+import static org.forgerock.audit.events.AccessAuditEventBuilder.CLIENT;
+import static org.forgerock.audit.events.AccessAuditEventBuilder.HOST;
+import static org.forgerock.audit.events.AccessAuditEventBuilder.IP;
+import static org.forgerock.audit.metrics.Metrics.name;
+import static org.forgerock.util.promise.Promises.newResultPromise;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.forgerock.audit.AuditServiceConfiguration.ReverseDnsLookup;
+import org.forgerock.audit.metrics.Counter;
+import org.forgerock.audit.metrics.MetricRegistry;
+import org.forgerock.audit.providers.HostNameResolver;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.util.promise.NeverThrowsException;
+import org.forgerock.util.promise.Promise;
+import org.forgerock.util.promise.PromiseImpl;
+import org.forgerock.util.promise.ResultHandler;
+import org.forgerock.util.time.Duration;
+import org.forgerock.util.time.TimeService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fills the {@code client.host} of the access events from their {@code client.ip}, without blocking the
+ * publishing thread.
+ * <p>
+ * The events to enrich are the ones marked with a null {@code client.host} by
+ * {@code AccessAuditEventBuilder.withReverseDnsLookup()}. Lookups are performed by a bounded pool of resolver
+ * threads, and concurrent lookups of the same address are shared. Resolved names are kept in a LRU cache for the
+ * configured TTL, and addresses without a name for the negative TTL. An event is released without its host if the
+ * lookup does not complete within the deadline, or if it can't be queued; its null {@code client.host} is then
+ * removed. The events waiting for a lookup are released by their own pool of threads, so that the handlers they
+ * are then published to never run on the resolver or deadline threads.
+ */
+final class ReverseDnsEnricher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReverseDnsEnricher.class);
+
+    private static final Duration DEFAULT_CACHE_TTL = Duration.duration("1 hour");
+    private static final Duration DEFAULT_NEGATIVE_CACHE_TTL = Duration.duration("5 minutes");
+    private static final Duration DEFAULT_DEADLINE = Duration.duration("500 milliseconds");
+
+    private final boolean enabled;
+    private final HostNameResolver resolver;
+    private final TimeService time;
+    private final long cacheTtl;
+    private final long negativeCacheTtl;
+    private final long deadline;
+    private final Map<String, CachedHostName> cache;
+    private final ConcurrentMap<String, PromiseImpl<String, NeverThrowsException>> lookups =
+            new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor resolverPool;
+    private final ScheduledThreadPoolExecutor deadlineTimer;
+    private final ExecutorService releasePool;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter timeouts;
+    private final Counter rejections;
+
+    /**
+     * Creates an enricher.
+     *
+     * @param config The configuration of the reverse DNS lookups.
+     * @param resolver The resolver of the host names.
+     * @param metricRegistry The registry of the metrics of the audit service.
+     */
+    ReverseDnsEnricher(ReverseDnsLookup config, HostNameResolver resolver, MetricRegistry metricRegistry) {
+        this(config, resolver, metricRegistry, TimeService.SYSTEM);
+    }
+
+    ReverseDnsEnricher(ReverseDnsLookup config, HostNameResolver resolver, MetricRegistry metricRegistry,
+            TimeService time) {
+        this.enabled = config.isEnabled();
+        this.resolver = resolver;
+        this.time = time;
+        this.cacheTtl = parseDuration("cache TTL", config.getCacheTtl(), DEFAULT_CACHE_TTL);
+        this.negativeCacheTtl =
+                parseDuration("negative cache TTL", config.getNegativeCacheTtl(), DEFAULT_NEGATIVE_CACHE_TTL);
+        this.deadline = parseDuration("deadline", config.getDeadline(), DEFAULT_DEADLINE);
+
+        final int cacheSize = Math.max(config.getCacheSize(), 0);
+        this.cache = new LinkedHashMap<String, CachedHostName>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedHostName> eldest) {
+                return size() > cacheSize;
+            }
+        };
+
+        final int threads = Math.max(config.getThreads(), 1);
+        this.resolverPool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(config.getQueueSize(), 1)),
+                new DaemonThreadFactory("Audit reverse DNS resolver"));
+        this.deadlineTimer = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("Audit reverse DNS deadline"));
+        this.deadlineTimer.setRemoveOnCancelPolicy(true);
+        this.releasePool = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("Audit reverse DNS release"));
+
+        this.hits = metricRegistry.counter(name("enrichment", "dns", "hits"));
+        this.misses = metricRegistry.counter(name("enrichment", "dns", "misses"));
+        this.timeouts = metricRegistry.counter(name("enrichment", "dns", "timeouts"));
+        this.rejections = metricRegistry.counter(name("enrichment", "dns", "rejections"));
+    }
+
+    private static long parseDuration(String description, String duration, Duration defaultValue) {
+        Duration value;
+        try {
+            value = Duration.duration(duration);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid reverse DNS lookup {} value: '{}'", description, duration);
+            value = defaultValue;
+        }
+        return value.isUnlimited() ? Long.MAX_VALUE : value.to(TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Fills the {@code client.host} of the provided event, if it was marked for a reverse DNS lookup.
+     *
+     * @param event The event to enrich.
+     * @return A promise completed with the provided event once its host is filled, or at the deadline. The promise
+     *         is already completed if the event does not need a lookup, or if its address is cached.
+     */
+    Promise<JsonValue, ResourceException> enrich(final JsonValue event) {
+        final JsonValue client = event.get(CLIENT);
+        if (!client.isDefined(HOST) || client.get(HOST).isNotNull()) {
+            return newResultPromise(event);
+        }
+        final String ip = client.get(IP).isString() ? client.get(IP).asString() : null;
+        if (!enabled || ip == null) {
+            setHost(client, null);
+            return newResultPromise(event);
+        }
+
+        final CachedHostName cached = getCachedHostName(ip);
+        if (cached != null) {
+            hits.increment();
+            setHost(client, cached.hostName);
+            return newResultPromise(event);
+        }
+        misses.increment();
+
+        final PromiseImpl<JsonValue, ResourceException> enriched = PromiseImpl.create();
+        final AtomicBoolean released = new AtomicBoolean();
+        final ScheduledFuture<?> expiry = deadlineTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (released.compareAndSet(false, true)) {
+                    timeouts.increment();
+                    logger.debug("Reverse DNS lookup of {} did not complete within {} ms", ip, deadline);
+                    setHost(client, null);
+                    release(enriched, event);
+                }
+            }
+        }, deadline, TimeUnit.MILLISECONDS);
+        lookup(ip).thenOnResult(new ResultHandler<String>() {
+            @Override
+            public void handleResult(String hostName) {
+                if (released.compareAndSet(false, true)) {
+                    expiry.cancel(false);
+                    setHost(client, hostName);
+                    release(enriched, event);
+                }
+            }
+        });
+        return enriched;
+    }
+
+    /**
+     * Completes the enrichment of the event on a release thread, where its continuations run.
+     */
+    private void release(final PromiseImpl<JsonValue, ResourceException> enriched, final JsonValue event) {
+        try {
+            releasePool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    enriched.handleResult(event);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // shut down
+            enriched.handleResult(event);
+        }
+    }
+
+    /**
+     * Sets the host of the client, or removes the marker of the lookup if the host is unknown.
+     */
+    private static void setHost(JsonValue client, String hostName) {
+        if (hostName == null) {
+            client.remove(HOST);
+        } else {
+            client.put(HOST, hostName);
+        }
+    }
+
+    private CachedHostName getCachedHostName(String ip) {
+        synchronized (cache) {
+            final CachedHostName cached = cache.get(ip);
+            if (cached == null) {
+                return null;
+            }
+            if (cached.expiry <= time.now()) {
+                cache.remove(ip);
+                return null;
+            }
+            return cached;
+        }
+    }
+
+    private void cacheHostName(String ip, String hostName) {
+        final long ttl = hostName != null ? cacheTtl : negativeCacheTtl;
+        final long now = time.now();
+        final long expiry = ttl > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + ttl;
+        synchronized (cache) {
+            cache.put(ip, new CachedHostName(hostName, expiry));
+        }
+    }
+
+    /**
+     * Returns the pending lookup of the provided address, queuing a new one if there is none.
+     */
+    private Promise<String, NeverThrowsException> lookup(final String ip) {
+        final PromiseImpl<String, NeverThrowsException> lookup = PromiseImpl.create();
+        final PromiseImpl<String, NeverThrowsException> pending = lookups.putIfAbsent(ip, lookup);
+        if (pending != null) {
+            return pending;
+        }
+        try {
+            resolverPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    String hostName = null;
+                    try {
+                        hostName = resolver.resolveHostName(ip);
+                        cacheHostName(ip, hostName);
+                    } catch (RuntimeException e) {
+                        logger.warn("Unable to resolve the host name of {}", ip, e);
+                    } finally {
+                        lookups.remove(ip);
+                        lookup.handleResult(hostName);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejections.increment();
+            logger.debug("Reverse DNS lookup queue is full; {} is not resolved", ip);
+            lookups.remove(ip);
+            lookup.handleResult(null);
+        }
+        return lookup;
+    }
+
+    /**
+     * Stops the resolver threads; the events waiting for a lookup are released without their host.
+     */
+    void shutdown() {
+        resolverPool.shutdownNow();
+        for (Runnable release : deadlineTimer.shutdownNow()) {
+            release.run();
+        }
+        // the release threads terminate once the released events are published
+        releasePool.shutdown();
+    }
+
+    /**
+     * A host name, or the absence of host name, cached until its expiry time.
+     */
+    private static final class CachedHostName {
+
+        private final String hostName;
+        private final long expiry;
+
+        private CachedHostName(String hostName, long expiry) {
+            this.hostName = hostName;
+            this.expiry = expiry;
+        }
+    }
+}
@@ -75,6 +75,7 @@ public class AccessAuditEventBuilder<T extends AccessAuditEventBuilder<T>> exten
     public static final String CLIENT = "client";
     public static final String IP = "ip";
     public static final String PORT = "port";
+    public static final String HOST = "host";
     public static final String REQUEST = "request";
     public static final String PROTOCOL = "protocol";
     public static final String OPERATION = "operation";
@@ -116,6 +117,9 @@ public class AccessAuditEventBuilder<T extends AccessAuditEventBuilder<T>> exten
 
     /**
      * Instructs the builder to lookup client.host from client.ip when populating client details.
+     * <p>
+     * The lookup is not performed by the builder, as it would block the caller; instead, the event is marked
+     * with a null client.host, that the audit service fills asynchronously before publishing the event.
      *
      * @return this builder
      */
@@ -131,6 +135,20 @@ public class AccessAuditEventBuilder<T extends AccessAuditEventBuilder<T>> exten
         return performReverseDnsLookup;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setDefaults() {
+        super.setDefaults();
+        if (performReverseDnsLookup) {
+            final JsonValue client = jsonValue.get(CLIENT);
+            if (client.isDefined(IP) && !client.isDefined(HOST)) {
+                client.put(HOST, null);
+            }
+        }
+    }
+
     /**
      * Sets the provided server values for the event.
      *
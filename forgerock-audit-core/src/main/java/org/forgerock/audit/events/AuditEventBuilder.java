@@ -17,7 +17,7 @@ package org.forgerock.audit.events;
 
 import static org.forgerock.json.JsonValue.*;
 
-import org.forgerock.audit.util.DateUtil;
+import org.forgerock.audit.util.UtcTimestampFormatter;
 import org.forgerock.json.JsonValue;
 import org.forgerock.services.context.Context;
 import org.forgerock.services.context.TransactionIdContext;
@@ -156,7 +156,7 @@ public abstract class AuditEventBuilder<T extends AuditEventBuilder<T>> {
      */
     public final T timestamp(long timestamp) {
         Reject.ifTrue(timestamp <= 0, "The timestamp has to be greater than 0.");
-        jsonValue.put(TIMESTAMP, DateUtil.getDateUtil("UTC").formatDateTime(timestamp));
+        jsonValue.put(TIMESTAMP, UtcTimestampFormatter.format(timestamp));
         return self();
     }
 
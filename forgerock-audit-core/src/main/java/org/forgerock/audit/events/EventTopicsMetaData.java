@@ -19,6 +19,7 @@ import org.forgerock.json.JsonValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -30,15 +31,28 @@ public final class EventTopicsMetaData {
 
     private static final Logger logger = LoggerFactory.getLogger(EventTopicsMetaData.class);
     private final Map<String, JsonValue> eventTopicsMetaData;
+    private final Map<String, TopicSchema> topicSchemas;
 
     /**
      * Create a new EventTopicsMetaData.
+     * <p>
+     * The schema of each topic is compiled once, see {@link #getTopicSchema(String)}.
      *
      * @param eventTopicsMetaData
      *          Event topic schemas mapped by event topic name.
      */
     public EventTopicsMetaData(Map<String, JsonValue> eventTopicsMetaData) {
         this.eventTopicsMetaData = eventTopicsMetaData;
+        final Map<String, TopicSchema> topicSchemas = new HashMap<>();
+        for (Map.Entry<String, JsonValue> entry : eventTopicsMetaData.entrySet()) {
+            topicSchemas.put(entry.getKey(), TopicSchema.compile(entry.getKey(), entry.getValue()));
+        }
+        this.topicSchemas = Collections.unmodifiableMap(topicSchemas);
+    }
+
+    private EventTopicsMetaData(Map<String, JsonValue> eventTopicsMetaData, Map<String, TopicSchema> topicSchemas) {
+        this.eventTopicsMetaData = eventTopicsMetaData;
+        this.topicSchemas = Collections.unmodifiableMap(topicSchemas);
     }
 
     /**
@@ -64,6 +78,18 @@ public final class EventTopicsMetaData {
         return eventTopicsMetaData.get(topic);
     }
 
+    /**
+     * Returns the compiled schema of the requested topic if this object has meta-data for that topic.
+     * Otherwise, null is returned.
+     *
+     * @param topic
+     *          The name of the topic.
+     * @return the compiled schema if this object has meta-data for the specified topic; <tt>null</tt> otherwise.
+     */
+    public TopicSchema getTopicSchema(String topic) {
+        return topicSchemas.get(topic);
+    }
+
     /**
      * Returns the names of the set of topics for which this object has meta-data.
      *
@@ -86,13 +112,15 @@ public final class EventTopicsMetaData {
      */
     public EventTopicsMetaData filter(Set<String> topics) {
         Map<String, JsonValue> filteredTopicSchemas = new HashMap<>();
+        Map<String, TopicSchema> filteredCompiledSchemas = new HashMap<>();
         for (String topic : topics) {
             if (!containsTopic(topic)) {
                 logger.error("unknown audit event topic : {}", topic);
                 continue;
             }
             filteredTopicSchemas.put(topic, getSchema(topic));
+            filteredCompiledSchemas.put(topic, getTopicSchema(topic));
         }
-        return new EventTopicsMetaData(filteredTopicSchemas);
+        return new EventTopicsMetaData(filteredTopicSchemas, filteredCompiledSchemas);
     }
 }
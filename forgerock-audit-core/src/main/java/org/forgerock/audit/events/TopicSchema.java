@@ -0,0 +1,327 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.events;
+
+import static org.forgerock.audit.events.AuditEventHelper.ARRAY_TYPE;
+import static org.forgerock.audit.events.AuditEventHelper.OBJECT_TYPE;
+import static org.forgerock.audit.events.AuditEventHelper.jsonPointerToDotNotation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.forgerock.audit.util.JsonSchemaUtils;
+import org.forgerock.json.JsonPointer;
+import org.forgerock.json.JsonValue;
+
+/**
+ * Schema of an event topic compiled into an ordered list of field slots.
+ * <p>
+ * The slots are the leaf fields of the schema, in the order of
+ * {@link JsonSchemaUtils#generateJsonPointers(JsonValue)}. Each of them holds its parsed {@link JsonPointer}, its
+ * declared type and its dot-notation name, so that handlers can resolve their columns or parameters once and then
+ * read the values of each event by slot index, without walking the schema or parsing pointers again.
+ * <p>
+ * Objects of this type are immutable and can be freely shared across threads.
+ */
+public final class TopicSchema {
+
+    private static final String SCHEMA = "schema";
+    private static final String PROPERTIES = "properties";
+    private static final String TYPE = "type";
+
+    /**
+     * A leaf field of the schema.
+     */
+    public static final class Field {
+        private final int index;
+        private final String path;
+        private final JsonPointer pointer;
+        private final String dotNotation;
+        private final String type;
+
+        private Field(int index, String path, JsonPointer pointer, String type) {
+            this.index = index;
+            this.path = path;
+            this.pointer = pointer;
+            this.dotNotation = jsonPointerToDotNotation(path);
+            this.type = type;
+        }
+
+        /**
+         * Returns the slot of this field, its position in the list of fields of the schema.
+         *
+         * @return the slot index.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns the path of this field, as generated by {@link JsonSchemaUtils#generateJsonPointers(JsonValue)}.
+         *
+         * @return the path, in JSON pointer form.
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Returns the parsed pointer to this field.
+         *
+         * @return the pointer.
+         */
+        public JsonPointer getPointer() {
+            return pointer;
+        }
+
+        /**
+         * Returns the name of this field in dot-notation.
+         *
+         * @return the dot-notation name.
+         */
+        public String getDotNotation() {
+            return dotNotation;
+        }
+
+        /**
+         * Returns the type declared by the schema for this field.
+         *
+         * @return the type, or {@code null} if none is declared.
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * Indicates if this field holds an object or an array.
+         *
+         * @return {@code true} if the values of this field are objects or arrays.
+         */
+        public boolean isJson() {
+            return OBJECT_TYPE.equals(type) || ARRAY_TYPE.equals(type);
+        }
+
+        /**
+         * Gets the value of this field in an event.
+         *
+         * @param event
+         *          The audit event.
+         * @return the value, or {@code null} if the event has no such field.
+         */
+        public JsonValue getValue(JsonValue event) {
+            return event.get(pointer);
+        }
+
+        @Override
+        public String toString() {
+            return path;
+        }
+    }
+
+    /**
+     * Node of the tree of the fields, used to map the members of the events to the slots without parsing pointers.
+     * Nodes are only modified while compiling the schema.
+     */
+    static final class Node {
+        /** The slot of the leaf field of this node, or {@code -1} for the inner nodes. */
+        private int slot = -1;
+        private final Map<String, Node> children = new HashMap<>();
+
+        /**
+         * Returns the slot of the leaf field of this node.
+         *
+         * @return the slot index, or {@code -1} if this node is not a leaf field.
+         */
+        int getSlot() {
+            return slot;
+        }
+
+        /**
+         * Returns the child node of a member.
+         *
+         * @param key
+         *          The name of the member.
+         * @return the node, or {@code null} if the schema has no leaf field under this member.
+         */
+        Node getChild(String key) {
+            return children.get(key);
+        }
+
+        private Node getOrCreateChild(String key) {
+            Node child = children.get(key);
+            if (child == null) {
+                child = new Node();
+                children.put(key, child);
+            }
+            return child;
+        }
+    }
+
+    private final String topic;
+    private final List<Field> fields;
+    private final Map<String, Field> fieldsByPath;
+    private final Map<JsonPointer, String> typesByPointer;
+    private final Node root;
+
+    private TopicSchema(String topic, List<Field> fields, Map<String, Field> fieldsByPath,
+            Map<JsonPointer, String> typesByPointer, Node root) {
+        this.topic = topic;
+        this.fields = Collections.unmodifiableList(fields);
+        this.fieldsByPath = Collections.unmodifiableMap(fieldsByPath);
+        this.typesByPointer = Collections.unmodifiableMap(typesByPointer);
+        this.root = root;
+    }
+
+    /**
+     * Compiles the schema of a topic.
+     *
+     * @param topic
+     *          The name of the topic.
+     * @param topicMetaData
+     *          The meta-data of the topic, holding its schema.
+     * @return the compiled schema; it has no fields if the meta-data holds no schema.
+     */
+    public static TopicSchema compile(String topic, JsonValue topicMetaData) {
+        final List<Field> fields = new ArrayList<>();
+        final Map<String, Field> fieldsByPath = new HashMap<>();
+        final Map<JsonPointer, String> typesByPointer = new HashMap<>();
+        final Node root = new Node();
+        final JsonValue schema = topicMetaData == null ? null : topicMetaData.get(SCHEMA);
+        if (schema != null && schema.isMap() && isMap(schema.get(PROPERTIES))) {
+            collectTypes(new ArrayList<String>(), schema.get(PROPERTIES), typesByPointer);
+            for (String path : JsonSchemaUtils.generateJsonPointers(schema)) {
+                final JsonPointer pointer = new JsonPointer(path);
+                final Field field = new Field(fields.size(), path, pointer, typesByPointer.get(pointer));
+                fields.add(field);
+                fieldsByPath.put(path, field);
+                Node node = root;
+                for (String token : pointer) {
+                    node = node.getOrCreateChild(token);
+                }
+                node.slot = field.getIndex();
+            }
+        }
+        return new TopicSchema(topic, fields, fieldsByPath, typesByPointer, root);
+    }
+
+    private static boolean isMap(JsonValue value) {
+        return value != null && value.isMap();
+    }
+
+    private static void collectTypes(List<String> parent, JsonValue properties,
+            Map<JsonPointer, String> typesByPointer) {
+        for (String key : properties.keys()) {
+            final JsonValue property = properties.get(key);
+            final List<String> tokens = new ArrayList<>(parent);
+            tokens.add(key);
+            typesByPointer.put(new JsonPointer(tokens.toArray(new String[tokens.size()])),
+                    property.get(TYPE).asString());
+            if (isMap(property.get(PROPERTIES))) {
+                collectTypes(tokens, property.get(PROPERTIES), typesByPointer);
+            }
+        }
+    }
+
+    /**
+     * Returns the name of the topic.
+     *
+     * @return the topic.
+     */
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * Returns the leaf fields of the schema, ordered by slot index.
+     *
+     * @return an unmodifiable list of fields.
+     */
+    public List<Field> getFields() {
+        return fields;
+    }
+
+    /**
+     * Returns the root of the tree of the fields.
+     *
+     * @return the root node.
+     */
+    Node getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns the number of field slots.
+     *
+     * @return the number of fields.
+     */
+    public int size() {
+        return fields.size();
+    }
+
+    /**
+     * Returns the field of a slot.
+     *
+     * @param index
+     *          The slot index.
+     * @return the field.
+     * @throws IndexOutOfBoundsException
+     *          If there is no such slot.
+     */
+    public Field getField(int index) {
+        return fields.get(index);
+    }
+
+    /**
+     * Returns a leaf field of the schema.
+     *
+     * @param path
+     *          The path of the field, in JSON pointer form, with or without a leading slash.
+     * @return the field, or {@code null} if the schema has no such leaf field.
+     */
+    public Field getField(String path) {
+        final Field field = fieldsByPath.get(path);
+        if (field != null || path == null) {
+            return field;
+        }
+        final JsonPointer pointer = new JsonPointer(path);
+        return pointer.size() == 0 ? null : fieldsByPath.get(pointer.toString());
+    }
+
+    /**
+     * Gets the type declared for a property, be it a leaf field or an object containing other fields.
+     *
+     * @param pointer
+     *          The pointer to the property.
+     * @return the type, or {@code null} if the schema has no such property.
+     */
+    public String getPropertyType(JsonPointer pointer) {
+        return typesByPointer.get(pointer);
+    }
+
+    /**
+     * Indicates if the schema declares a property, be it a leaf field or an object containing other fields.
+     *
+     * @param pointer
+     *          The pointer to the property.
+     * @return {@code true} if the property is declared.
+     */
+    public boolean hasProperty(JsonPointer pointer) {
+        return typesByPointer.containsKey(pointer);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+
+package org.forgerock.audit.events.handlers;
+
+import org.forgerock.audit.AuditException;
+import org.forgerock.audit.DependencyProvider;
+import org.forgerock.audit.events.EventTopicsMetaData;
+import org.forgerock.util.Reject;
+
+/**
+ * Service provider creating instances of one type of {@link AuditEventHandler} without reflection.
+ * <p>
+ * Implementations are discovered with {@link java.util.ServiceLoader} by listing them in a
+ * {@code META-INF/services/org.forgerock.audit.events.handlers.AuditEventHandlerProvider} file; they must be
+ * public and have a public no-argument constructor. When a provider is available for a handler class,
+ * {@link DependencyProviderAuditEventHandlerFactory} uses it instead of injecting the handler's constructor.
+ *
+ * @param <H>
+ *          The type of audit event handler created by this provider.
+ * @param <C>
+ *          The type of configuration accepted by the audit event handler.
+ * @see AuditEventHandlerProviders
+ */
+public abstract class AuditEventHandlerProvider<H extends AuditEventHandler, C extends EventHandlerConfiguration> {
+
+    private final Class<H> handlerClass;
+    private final Class<C> configurationClass;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param handlerClass
+     *          The class of the audit event handler created by this provider.
+     * @param configurationClass
+     *          The class of the configuration accepted by the audit event handler.
+     */
+    protected AuditEventHandlerProvider(Class<H> handlerClass, Class<C> configurationClass) {
+        Reject.ifNull(handlerClass, configurationClass);
+        this.handlerClass = handlerClass;
+        this.configurationClass = configurationClass;
+    }
+
+    /**
+     * Returns the class of the audit event handler created by this provider.
+     *
+     * @return the handler class
+     */
+    public final Class<H> getHandlerClass() {
+        return handlerClass;
+    }
+
+    /**
+     * Returns the class of the configuration accepted by the audit event handler.
+     *
+     * @return the configuration class
+     */
+    public final Class<C> getConfigurationClass() {
+        return configurationClass;
+    }
+
+    /**
+     * Creates a new audit event handler.
+     *
+     * @param configuration
+     *          The configuration of the handler, which must be an instance of {@link #getConfigurationClass()}.
+     * @param eventTopicsMetaData
+     *          Meta-data for all audit event topics.
+     * @param dependencyProvider
+     *          Dependency lookup abstraction for obtaining the resources required by the handler.
+     * @return the new handler
+     * @throws AuditException
+     *          If the configuration is of the wrong type or the handler cannot be created.
+     */
+    public final H create(EventHandlerConfiguration configuration, EventTopicsMetaData eventTopicsMetaData,
+            DependencyProvider dependencyProvider) throws AuditException {
+        if (!configurationClass.isInstance(configuration)) {
+            throw new AuditException("Unable to create " + handlerClass.getSimpleName() + ": expected a "
+                    + configurationClass.getSimpleName() + " configuration");
+        }
+        try {
+            return newHandler(configurationClass.cast(configuration), eventTopicsMetaData, dependencyProvider);
+        } catch (RuntimeException e) {
+            throw new AuditException("Unable to create " + handlerClass.getSimpleName() + " '"
+                    + configuration.getName() + "': " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Creates a new audit event handler from a configuration of the expected type.
+     *
+     * @param configuration
+     *          The configuration of the handler.
+     * @param eventTopicsMetaData
+     *          Meta-data for all audit event topics.
+     * @param dependencyProvider
+     *          Dependency lookup abstraction for obtaining the resources required by the handler.
+     * @return the new handler
+     * @throws AuditException
+     *          If the handler cannot be created.
+     */
+    protected abstract H newHandler(C configuration, EventTopicsMetaData eventTopicsMetaData,
+            DependencyProvider dependencyProvider) throws AuditException;
+
+    /**
+     * Looks up an optional dependency, returning {@code null} when the dependency provider does not have it.
+     *
+     * @param <T>
+     *          The type of the dependency.
+     * @param dependencyProvider
+     *          The dependency provider, may be {@code null}.
+     * @param clazz
+     *          The class of the dependency.
+     * @return the dependency, or {@code null} if it is not available
+     */
+    protected static <T> T getDependency(DependencyProvider dependencyProvider, Class<T> clazz) {
+        if (dependencyProvider == null) {
+            return null;
+        }
+        try {
+            return dependencyProvider.getDependency(clazz);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+}
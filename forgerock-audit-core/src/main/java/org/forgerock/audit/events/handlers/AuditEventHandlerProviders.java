@@ -0,0 +1,81 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+
+package org.forgerock.audit.events.handlers;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Locates the {@link AuditEventHandlerProvider} registered with {@link ServiceLoader} for a handler class.
+ * <p>
+ * Providers are looked up in the class loader of the handler class, once per handler class: the result of the
+ * lookup, including the absence of a provider, is cached for the lifetime of the class.
+ */
+public final class AuditEventHandlerProviders {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditEventHandlerProviders.class);
+
+    private static final ClassValue<AuditEventHandlerProvider<?, ?>> PROVIDERS =
+            new ClassValue<AuditEventHandlerProvider<?, ?>>() {
+                @Override
+                protected AuditEventHandlerProvider<?, ?> computeValue(Class<?> handlerClass) {
+                    return loadProvider(handlerClass);
+                }
+            };
+
+    private AuditEventHandlerProviders() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns the provider registered for the given handler class.
+     *
+     * @param <H>
+     *          The type of audit event handler.
+     * @param handlerClass
+     *          The class of the audit event handler.
+     * @return the provider, or {@code null} if none is registered for this class
+     */
+    @SuppressWarnings("unchecked")
+    public static <H extends AuditEventHandler> AuditEventHandlerProvider<H, ?> getProvider(Class<H> handlerClass) {
+        return (AuditEventHandlerProvider<H, ?>) PROVIDERS.get(handlerClass);
+    }
+
+    private static AuditEventHandlerProvider<?, ?> loadProvider(Class<?> handlerClass) {
+        ClassLoader classLoader = handlerClass.getClassLoader();
+        if (classLoader == null) {
+            return null;
+        }
+        try {
+            Iterator<AuditEventHandlerProvider> providers =
+                    ServiceLoader.load(AuditEventHandlerProvider.class, classLoader).iterator();
+            while (providers.hasNext()) {
+                AuditEventHandlerProvider<?, ?> provider = providers.next();
+                if (provider.getHandlerClass().equals(handlerClass)) {
+                    return provider;
+                }
+            }
+        } catch (ServiceConfigurationError e) {
+            logger.error("Unable to load the audit event handler providers of " + handlerClass.getName(), e);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.events.handlers;
+
+import org.forgerock.audit.events.CompactAuditEvent;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.services.context.Context;
+import org.forgerock.util.promise.Promise;
+
+/**
+ * An {@link AuditEventHandler} able to publish events in their {@link CompactAuditEvent compact form}.
+ * <p/>
+ * The audit service builds the compact form of an event at most once, from the compiled schema of its topic, and
+ * passes it to all the handlers of the topic implementing this interface instead of calling
+ * {@link AuditEventHandler#publishEvent}. Handlers read the values of the fields by slot, and should fall back to
+ * the JSON form of the event if its schema is not the one they were built with.
+ */
+public interface CompactAuditEventHandler extends AuditEventHandler {
+
+    /**
+     * Publishes an event, in its compact form, to the provided topic.
+     *
+     * @param context
+     *          The context chain that initiated the event.
+     * @param topic
+     *          The topic where to publish the event.
+     * @param event
+     *          The event to publish.
+     * @return a promise with either a response or an exception
+     */
+    Promise<ResourceResponse, ResourceException> publishCompactEvent(Context context, String topic,
+            CompactAuditEvent event);
+}
@@ -21,15 +21,29 @@ import org.forgerock.audit.DependencyProvider;
 import org.forgerock.audit.events.EventTopicsMetaData;
 
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import javax.inject.Inject;
 
 /**
  * AuditEventFactory capable of performing construction injection by resolving dependencies using a DependencyProvider.
+ * <p>
+ * Handlers having an {@link AuditEventHandlerProvider} registered with {@link java.util.ServiceLoader} are created
+ * by that provider. Other handlers are created through their injectable constructor: the constructor and the
+ * binding of its parameters are resolved once per handler class and cached, and the constructor is invoked
+ * through a {@link MethodHandle}.
  */
 public class DependencyProviderAuditEventHandlerFactory implements AuditEventHandlerFactory {
 
+    private static final ClassValue<InjectionPoint> INJECTION_POINTS = new ClassValue<InjectionPoint>() {
+        @Override
+        protected InjectionPoint computeValue(Class<?> clazz) {
+            return new InjectionPoint(clazz);
+        }
+    };
+
     private final DependencyProvider dependencyProvider;
 
     /**
@@ -50,69 +64,133 @@ public class DependencyProviderAuditEventHandlerFactory implements AuditEventHan
             EventHandlerConfiguration configuration,
             EventTopicsMetaData eventTopicsMetaData) throws AuditException {
 
-        Constructor<T> constructor = getConstructorForInjection(clazz);
-        Object[] parameters = getConstructorParameters(constructor, name, configuration, eventTopicsMetaData);
+        AuditEventHandlerProvider<T, ?> provider = AuditEventHandlerProviders.getProvider(clazz);
+        if (provider != null) {
+            return provider.create(configuration, eventTopicsMetaData, dependencyProvider);
+        }
 
+        InjectionPoint injectionPoint = INJECTION_POINTS.get(clazz);
+        Object[] parameters = injectionPoint.getParameters(name, configuration, eventTopicsMetaData,
+                dependencyProvider);
         try {
-            return constructor.newInstance(parameters);
-        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            return clazz.cast(injectionPoint.newInstance(parameters));
+        } catch (Throwable e) {
             String errorMessage = "Unable to create " + clazz.getSimpleName() + " '" + name + "': " + e.getMessage();
             throw new AuditException(errorMessage, e);
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private <T extends AuditEventHandler>Constructor<T> getConstructorForInjection(Class<T> clazz) {
-        Constructor<?>[] constructors = clazz.getConstructors();
-        if (constructors.length == 1) {
-            return (Constructor<T>) constructors[0];
-        }
-        for (Constructor<?> candidateConstructor : constructors) {
-            if (hasInjectAnnotation(candidateConstructor)) {
-                // TODO: Ensure that only one constructor is marked with the @Inject annotation
-                return (Constructor<T>) candidateConstructor;
+    /** The parameter bindings of an injectable constructor. */
+    private enum Binding {
+        /** The name of the handler. */
+        NAME,
+        /** The meta-data of the event topics. */
+        EVENT_TOPICS_META_DATA,
+        /** The configuration of the handler if assignable, a dependency otherwise. */
+        CONFIGURATION_OR_DEPENDENCY
+    }
+
+    /**
+     * The injectable constructor of a handler class, resolved once per class.
+     */
+    private static final class InjectionPoint {
+
+        private final Class<?>[] parameterTypes;
+        private final Binding[] bindings;
+        private final MethodHandle constructor;
+        private final RuntimeException error;
+
+        InjectionPoint(Class<?> clazz) {
+            Constructor<?> injectable = null;
+            MethodHandle handle = null;
+            RuntimeException failure = null;
+            try {
+                injectable = getConstructorForInjection(clazz);
+                int arity = injectable.getParameterTypes().length;
+                handle = MethodHandles.publicLookup().unreflectConstructor(injectable)
+                        .asType(MethodType.genericMethodType(arity))
+                        .asSpreader(Object[].class, arity);
+            } catch (IllegalStateException e) {
+                failure = e;
+            } catch (IllegalAccessException e) {
+                failure = new IllegalStateException(clazz.getSimpleName() + " constructor is not accessible", e);
+            }
+            this.parameterTypes = injectable != null ? injectable.getParameterTypes() : new Class<?>[0];
+            this.bindings = new Binding[parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (parameterTypes[i].equals(String.class)) {
+                    bindings[i] = Binding.NAME;
+                } else if (parameterTypes[i].equals(EventTopicsMetaData.class)) {
+                    bindings[i] = Binding.EVENT_TOPICS_META_DATA;
+                } else {
+                    bindings[i] = Binding.CONFIGURATION_OR_DEPENDENCY;
+                }
             }
+            this.constructor = handle;
+            this.error = failure;
         }
-        throw new IllegalStateException(clazz.getSimpleName() +
-                " should have a single public constructor. If multiple public constructors " +
-                "are required, annotate one with @Inject.");
-    }
 
-    private boolean hasInjectAnnotation(Constructor<?> constructor) {
-        for (Annotation annotation : constructor.getDeclaredAnnotations()) {
-            if (annotation.annotationType().equals(Inject.class)) {
-                return true;
+        Object[] getParameters(String name, EventHandlerConfiguration configuration,
+                EventTopicsMetaData eventTopicsMetaData, DependencyProvider dependencyProvider) {
+            if (error != null) {
+                throw error;
+            }
+            final Object[] parameters = new Object[parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                switch (bindings[i]) {
+                case NAME:
+                    parameters[i] = name;
+                    break;
+                case EVENT_TOPICS_META_DATA:
+                    parameters[i] = eventTopicsMetaData;
+                    break;
+                default:
+                    if (parameterTypes[i].isAssignableFrom(configuration.getClass())) {
+                        parameters[i] = configuration;
+                    } else {
+                        parameters[i] = getDependency(dependencyProvider, parameterTypes[i]);
+                    }
+                    break;
+                }
             }
+            return parameters;
         }
-        return false;
-    }
 
-    private <T extends AuditEventHandler> Object[] getConstructorParameters(
-            Constructor<T> constructor,
-            String name,
-            EventHandlerConfiguration configuration,
-            EventTopicsMetaData eventTopicsMetaData) throws AuditException {
+        Object newInstance(Object[] parameters) throws Throwable {
+            return (Object) constructor.invokeExact(parameters);
+        }
 
-        final Class<?>[] parameterTypes = constructor.getParameterTypes();
-        final Object[] parameters = new Object[parameterTypes.length];
-
-        for (int i = 0; i < parameterTypes.length; i++) {
-            if (parameterTypes[i].equals(String.class)) {
-                parameters[i] = name;
-            } else if (parameterTypes[i].isAssignableFrom(configuration.getClass())) {
-                parameters[i] = configuration;
-            } else if (parameterTypes[i].equals(EventTopicsMetaData.class)) {
-                parameters[i] = eventTopicsMetaData;
-            } else {
-                try {
-                    parameters[i] = dependencyProvider.getDependency(parameterTypes[i]);
-                } catch (ClassNotFoundException e) {
-                    parameters[i] = null;
+        private static Object getDependency(DependencyProvider dependencyProvider, Class<?> type) {
+            try {
+                return dependencyProvider.getDependency(type);
+            } catch (ClassNotFoundException e) {
+                return null;
+            }
+        }
+
+        private static Constructor<?> getConstructorForInjection(Class<?> clazz) {
+            Constructor<?>[] constructors = clazz.getConstructors();
+            if (constructors.length == 1) {
+                return constructors[0];
+            }
+            for (Constructor<?> candidateConstructor : constructors) {
+                if (hasInjectAnnotation(candidateConstructor)) {
+                    // TODO: Ensure that only one constructor is marked with the @Inject annotation
+                    return candidateConstructor;
                 }
             }
+            throw new IllegalStateException(clazz.getSimpleName() +
+                    " should have a single public constructor. If multiple public constructors " +
+                    "are required, annotate one with @Inject.");
         }
 
-        return parameters;
+        private static boolean hasInjectAnnotation(Constructor<?> constructor) {
+            for (Annotation annotation : constructor.getDeclaredAnnotations()) {
+                if (annotation.annotationType().equals(Inject.class)) {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
-
 }
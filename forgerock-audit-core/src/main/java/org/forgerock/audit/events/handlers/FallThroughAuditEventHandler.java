@@ -0,0 +1,41 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.events.handlers;
+
+/**
+ * An {@link AuditEventHandler} that only keeps part of the events, typically the most recent ones, and relies on
+ * another handler of the audit service to read and query the others.
+ * <p/>
+ * When the audit service is created, it passes the handler named by {@link #getFallThroughHandlerName()} to
+ * {@link #setFallThroughHandler(AuditEventHandler)}, before {@link AuditEventHandler#startup()} is called.
+ */
+public interface FallThroughAuditEventHandler extends AuditEventHandler {
+
+    /**
+     * Returns the name of the handler holding the events this handler doesn't keep.
+     *
+     * @return the name of the handler, or {@code null} if the handler answers all the reads and queries itself.
+     */
+    String getFallThroughHandlerName();
+
+    /**
+     * Sets the handler to which reads and queries are delegated when this handler may not have the events.
+     *
+     * @param handler
+     *          The handler holding the events this handler doesn't keep.
+     */
+    void setFallThroughHandler(AuditEventHandler handler);
+}
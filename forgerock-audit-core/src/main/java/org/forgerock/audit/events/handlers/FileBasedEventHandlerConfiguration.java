@@ -137,6 +137,12 @@ public class FileBasedEventHandlerConfiguration extends EventHandlerConfiguratio
         @JsonPropertyDescription("audit.handlers.file.rotationInterval")
         private String rotationInterval = "disabled";
 
+        @JsonPropertyDescription("audit.handlers.file.segmentWriterEnabled")
+        private boolean segmentWriterEnabled = false;
+
+        @JsonPropertyDescription("audit.handlers.file.archiveCompressionEnabled")
+        private boolean archiveCompressionEnabled = false;
+
         /**
          * Gets log rotation enabled state. By default log rotation is disabled.
          * @return True - If log rotation is enabled.
@@ -270,6 +276,52 @@ public class FileBasedEventHandlerConfiguration extends EventHandlerConfiguratio
         public void setRotationTimes(List<String> rotationTimes) {
             this.rotationTimes.addAll(rotationTimes);
         }
+
+        /**
+         * Gets the segment writer enabled state. By default the segment writer is disabled.
+         * <p/>
+         * The segment writer appends to the audit file through a file channel, and opens the file following the next
+         * rotation ahead of time, so that rotating only renames files.
+         *
+         * @return True - If the segment writer is enabled.
+         *         False - If the segment writer is disabled.
+         */
+        public boolean isSegmentWriterEnabled() {
+            return segmentWriterEnabled;
+        }
+
+        /**
+         * Sets the segment writer enabled state. By default the segment writer is disabled.
+         *
+         * @param segmentWriterEnabled True - Enables the segment writer.
+         *                             False - Disables the segment writer.
+         */
+        public void setSegmentWriterEnabled(boolean segmentWriterEnabled) {
+            this.segmentWriterEnabled = segmentWriterEnabled;
+        }
+
+        /**
+         * Gets the archive compression enabled state. By default the archives are not compressed.
+         * <p/>
+         * Once rotated, the archived files are then compressed with gzip in the background; the compressed archives
+         * are named after the archived files, followed by ".gz".
+         *
+         * @return True - If the archived files are compressed.
+         *         False - If the archived files are left uncompressed.
+         */
+        public boolean isArchiveCompressionEnabled() {
+            return archiveCompressionEnabled;
+        }
+
+        /**
+         * Sets the archive compression enabled state. By default the archives are not compressed.
+         *
+         * @param archiveCompressionEnabled True - Compresses the archived files.
+         *                                  False - Leaves the archived files uncompressed.
+         */
+        public void setArchiveCompressionEnabled(boolean archiveCompressionEnabled) {
+            this.archiveCompressionEnabled = archiveCompressionEnabled;
+        }
     }
 
     /**
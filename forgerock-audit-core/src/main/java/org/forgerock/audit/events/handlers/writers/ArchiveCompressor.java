@@ -0,0 +1,123 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.events.handlers.writers;
+
+import static org.forgerock.audit.util.ArchiveCompression.getCompressedFile;
+import static org.forgerock.audit.util.ArchiveCompression.isCompressed;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import org.forgerock.audit.retention.CachingFileNamingPolicy;
+import org.forgerock.audit.util.ArchiveCompression;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compresses the archived files of a {@link RotatableWriter} on a low priority background thread.
+ * <p>
+ * An archive is first compressed into a hidden temporary file, which is then renamed after the archive with the
+ * {@link ArchiveCompression#COMPRESSED_ARCHIVE_SUFFIX} suffix before the archive is deleted. The compressed archive
+ * takes the place of the archive in the catalog of the naming policy; if the archive has been deleted by the
+ * retention policies in the meantime, the compressed archive is deleted too.
+ */
+final class ArchiveCompressor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveCompressor.class);
+
+    private final CachingFileNamingPolicy fileNamingPolicy;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "Audit archive compressor");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    /**
+     * Creates a compressor of the archives of the provided policy, and schedules the compression of the archives
+     * that are not compressed yet.
+     *
+     * @param fileNamingPolicy The naming policy of the archives.
+     */
+    ArchiveCompressor(CachingFileNamingPolicy fileNamingPolicy) {
+        this.fileNamingPolicy = fileNamingPolicy;
+        for (File archive : fileNamingPolicy.listFiles()) {
+            if (!isCompressed(archive)) {
+                compress(archive);
+            }
+        }
+    }
+
+    /**
+     * Schedules the compression of an archive.
+     *
+     * @param archive The uncompressed archive.
+     */
+    void compress(final File archive) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        compressArchive(archive);
+                    } catch (IOException e) {
+                        logger.error("Unable to compress the audit archive {}", archive, e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.debug("The compression of {} is skipped as the writer is closed", archive);
+        }
+    }
+
+    /**
+     * Stops accepting archives; the archives already scheduled are still compressed.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private void compressArchive(final File archive) throws IOException {
+        if (!archive.exists()) {
+            return;
+        }
+        final File compressed = getCompressedFile(archive);
+        final File temporary = new File(archive.getParentFile(), "." + compressed.getName() + ".tmp");
+        try {
+            ArchiveCompression.compress(archive, temporary);
+            if (!temporary.renameTo(compressed)) {
+                throw new IOException("Unable to rename " + temporary + " to " + compressed);
+            }
+        } finally {
+            if (temporary.exists() && !temporary.delete()) {
+                logger.warn("Could not delete file {}", temporary.getAbsolutePath());
+            }
+        }
+        if (!archive.delete() && archive.exists()) {
+            logger.warn("Could not delete file {}", archive.getAbsolutePath());
+        }
+        if (!fileNamingPolicy.replaced(archive, compressed) && !compressed.delete()) {
+            logger.warn("Could not delete file {}", compressed.getAbsolutePath());
+        }
+        logger.trace("Compressed {} into {}", archive, compressed);
+    }
+}
@@ -164,6 +164,15 @@ public class AsynchronousTextWriter implements TextWriter {
         }
     }
 
+    /**
+     * Returns the number of records waiting to be written.
+     *
+     * @return the size of the queue.
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
     @Override
     public void flush() {
         try {
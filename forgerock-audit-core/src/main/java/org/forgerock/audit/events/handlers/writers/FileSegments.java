@@ -0,0 +1,155 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.events.handlers.writers;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opens the successive segments of a rotated file.
+ * <p>
+ * The segment following the current one is created and opened in the background, under a hidden name in the
+ * directory of the file. Once the current segment has been archived, the next segment only has to be renamed to take
+ * its place, and its channel is already open.
+ * <p>
+ * The segments are not preallocated: the file being written is read concurrently by the handlers (to query events or
+ * verify secure files), which must not see padding past the last record.
+ */
+final class FileSegments {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileSegments.class);
+
+    private final Path file;
+    private final Path nextFile;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private Future<FileChannel> next;
+
+    /**
+     * Creates the segments of the provided file.
+     *
+     * @param file
+     *            The file being written.
+     */
+    FileSegments(File file) {
+        this.file = file.toPath();
+        this.nextFile = this.file.resolveSibling("." + this.file.getFileName() + ".next");
+    }
+
+    /**
+     * Opens the current segment, and starts preparing the next one.
+     *
+     * @param append
+     *            Whether to append to the current segment or to truncate it.
+     * @return the channel of the current segment, positioned at its end.
+     * @throws IOException
+     *             If the segment can't be opened.
+     */
+    synchronized FileChannel open(boolean append) throws IOException {
+        final FileChannel channel = append
+                ? FileChannel.open(file, CREATE, WRITE, APPEND)
+                : FileChannel.open(file, CREATE, WRITE, TRUNCATE_EXISTING);
+        if (next == null) {
+            prepareNext();
+        }
+        return channel;
+    }
+
+    /**
+     * Moves the next segment in place of the current one, which must have been archived, and starts preparing the
+     * following segment.
+     *
+     * @return the channel of the new current segment.
+     * @throws IOException
+     *             If the segment can't be moved or opened.
+     */
+    synchronized FileChannel openNext() throws IOException {
+        FileChannel channel = null;
+        try {
+            channel = next.get();
+            Files.move(nextFile, file);
+        } catch (ExecutionException | IOException e) {
+            logger.warn("Unable to use the prepared segment for file {}", file, e);
+            closeQuietly(channel);
+            Files.deleteIfExists(nextFile);
+            channel = FileChannel.open(file, CREATE_NEW, WRITE, APPEND);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the next segment of " + file, e);
+        }
+        prepareNext();
+        return channel;
+    }
+
+    /**
+     * Releases the segment being prepared.
+     */
+    synchronized void close() {
+        if (next != null && !next.cancel(false)) {
+            try {
+                closeQuietly(next.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.debug("Preparation of the next segment of {} failed", file, e);
+            }
+        }
+        next = null;
+        executor.shutdown();
+        try {
+            Files.deleteIfExists(nextFile);
+        } catch (IOException e) {
+            logger.warn("Unable to delete {}", nextFile, e);
+        }
+    }
+
+    private void prepareNext() {
+        next = executor.submit(new Callable<FileChannel>() {
+            @Override
+            public FileChannel call() throws IOException {
+                // a segment left by a previous process may have been written to, start afresh
+                Files.deleteIfExists(nextFile);
+                return FileChannel.open(nextFile, CREATE_NEW, WRITE, APPEND);
+            }
+        });
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("Unable to close a file channel", e);
+            }
+        }
+    }
+}
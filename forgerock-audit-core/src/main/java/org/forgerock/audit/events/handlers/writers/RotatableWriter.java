@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -38,6 +39,9 @@ import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import org.forgerock.audit.events.handlers.FileBasedEventHandlerConfiguration;
 import org.forgerock.audit.events.handlers.FileBasedEventHandlerConfiguration.FileRetention;
 import org.forgerock.audit.events.handlers.FileBasedEventHandlerConfiguration.FileRotation;
+import org.forgerock.audit.metrics.LatencyHistogram;
+import org.forgerock.audit.metrics.Metrics;
+import org.forgerock.audit.retention.CachingFileNamingPolicy;
 import org.forgerock.audit.retention.DiskSpaceUsedRetentionPolicy;
 import org.forgerock.audit.retention.FileNamingPolicy;
 import org.forgerock.audit.retention.FreeDiskSpaceRetentionPolicy;
@@ -51,6 +55,7 @@ import org.forgerock.audit.rotation.RotationHooks;
 import org.forgerock.audit.rotation.RotationPolicy;
 import org.forgerock.audit.rotation.SizeBasedRotationPolicy;
 import org.forgerock.audit.rotation.TimeLimitRotationPolicy;
+import org.forgerock.util.Reject;
 import org.forgerock.util.annotations.VisibleForTesting;
 import org.forgerock.util.time.Duration;
 import org.joda.time.DateTime;
@@ -69,19 +74,30 @@ public class RotatableWriter implements TextWriter, RotatableObject {
 
     private final List<RotationPolicy> rotationPolicies = new LinkedList<>();
     private final List<RetentionPolicy> retentionPolicies = new LinkedList<>();
-    private final FileNamingPolicy fileNamingPolicy;
+    /** Names the archived files and keeps track of them, so that retention checks don't list the directory. */
+    private final CachingFileNamingPolicy fileNamingPolicy;
     private ScheduledExecutorService rotator;
     private DateTime lastRotationTime;
+    /** The size from which the file must be rotated, {@link Long#MAX_VALUE} if there is no size limit. */
+    private long rotationSizeThreshold = Long.MAX_VALUE;
+    /** The time at which the file must be rotated, {@link Long#MAX_VALUE} if the rotation is not time based. */
+    private volatile long nextRotationTime = Long.MAX_VALUE;
     private final boolean rotationEnabled;
     private final File file;
     private RotationHooks rotationHooks = new RotationHooks.NoOpRotatationHooks();
     private final AtomicBoolean isRotating = new AtomicBoolean(false);
     /** The underlying output stream. */
-    private MeteredStream meteredStream;
+    private volatile MeteredStream meteredStream;
     /** The underlying buffered writer using the output stream. */
     private BufferedWriter writer;
     private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+    /** The segments of the file, {@code null} if the segment writer is disabled. */
+    private final FileSegments segments;
+    /** Compresses the archived files, {@code null} if the archives are not compressed. */
+    private final ArchiveCompressor archiveCompressor;
     private final RolloverLifecycleHook rolloverLifecycleHook;
+    /** Records how long the rotations take, while the writes are blocked. */
+    private volatile LatencyHistogram rotationLatency = Metrics.noOpRegistry().latencyHistogram("rotation");
 
     /**
      * Constructs a {@link RotatableWriter} given an initial file to manage rotation/retention, and
@@ -126,16 +142,21 @@ public class RotatableWriter implements TextWriter, RotatableObject {
             final boolean append, final FileNamingPolicy fileNamingPolicy,
             final RolloverLifecycleHook rolloverLifecycleHook) throws IOException {
         this.file = file;
-        this.fileNamingPolicy = fileNamingPolicy;
+        this.fileNamingPolicy = new CachingFileNamingPolicy(fileNamingPolicy);
         this.rotationEnabled = configuration.getFileRotation().isRotationEnabled();
         final long lastModified = file.lastModified();
         this.lastRotationTime = lastModified > 0
                 ? new DateTime(file.lastModified(), DateTimeZone.UTC)
                 : DateTime.now(DateTimeZone.UTC);
         this.rolloverLifecycleHook = rolloverLifecycleHook;
+        this.segments = configuration.getFileRotation().isSegmentWriterEnabled() ? new FileSegments(file) : null;
         this.writer = constructWriter(file, append);
+        this.archiveCompressor = configuration.getFileRotation().isArchiveCompressionEnabled()
+                ? new ArchiveCompressor(this.fileNamingPolicy)
+                : null;
         addRetentionPolicies(configuration.getFileRetention());
         addRotationPolicies(configuration.getFileRotation());
+        updateNextRotationTime();
         scheduleRotationAndRetentionChecks(configuration);
     }
 
@@ -154,7 +175,7 @@ public class RotatableWriter implements TextWriter, RotatableObject {
      */
     @Override
     public void rotateIfNeeded() throws IOException {
-        if (!rotationEnabled || isRotating.get()) {
+        if (!rotationEnabled || isRotating.get() || !isRotationDue()) {
             return;
         }
         readWriteLock.writeLock().lock();
@@ -165,7 +186,10 @@ public class RotatableWriter implements TextWriter, RotatableObject {
                         logger.trace("Must rotate: {}", file.getAbsolutePath());
                     }
                     isRotating.set(true);
-                    if (rotate()) {
+                    final long start = System.nanoTime();
+                    final boolean rotated = rotate();
+                    rotationLatency.recordSince(start);
+                    if (rotated) {
                         if (logger.isTraceEnabled()) {
                             logger.trace("Finished rotation for: {}", file.getAbsolutePath());
                         }
@@ -179,16 +203,41 @@ public class RotatableWriter implements TextWriter, RotatableObject {
         }
     }
 
-    /** Delete files if they need to be deleted as per enabled retention policies. */
-    private void deleteFilesIfNeeded() throws IOException {
-        readWriteLock.writeLock().lock();
-        try {
-            Set<File> filesToDelete = checkRetention(); // return the files to delete, but do not delete them
-            if (!filesToDelete.isEmpty()) {
-                deleteFiles(filesToDelete);
+    /**
+     * Tells if a rotation policy may require a rotation, without evaluating the policies.
+     * <p>
+     * The size threshold and the time of the next rotation are computed from the policies after each rotation, so
+     * that writes only need to compare them with the current size and time.
+     */
+    private boolean isRotationDue() {
+        return meteredStream.getBytesWritten() >= rotationSizeThreshold
+                || System.currentTimeMillis() >= nextRotationTime;
+    }
+
+    private void updateNextRotationTime() {
+        final long lastRotation = lastRotationTime.getMillis();
+        long next = Long.MAX_VALUE;
+        for (RotationPolicy rotationPolicy : rotationPolicies) {
+            if (rotationPolicy instanceof TimeLimitRotationPolicy) {
+                next = Math.min(next, ((TimeLimitRotationPolicy) rotationPolicy).getNextRotationTime(lastRotation));
+            } else if (rotationPolicy instanceof FixedTimeRotationPolicy) {
+                next = Math.min(next, ((FixedTimeRotationPolicy) rotationPolicy).getNextRotationTime(lastRotation));
             }
-        } finally {
-            readWriteLock.writeLock().unlock();
+        }
+        nextRotationTime = next;
+    }
+
+    /**
+     * Delete files if they need to be deleted as per enabled retention policies.
+     * <p>
+     * Only archived files are deleted, so this does not need to block the writes. This method is only called by the
+     * rotator thread.
+     */
+    private void deleteFilesIfNeeded() throws IOException {
+        fileNamingPolicy.refreshIfStale();
+        Set<File> filesToDelete = checkRetention(); // return the files to delete, but do not delete them
+        if (!filesToDelete.isEmpty()) {
+            deleteFiles(filesToDelete);
         }
     }
 
@@ -208,8 +257,11 @@ public class RotatableWriter implements TextWriter, RotatableObject {
             }
             if (currentFile.renameTo(newFile)) {
                 rotationHappened = true;
-                if (currentFile.createNewFile()) {
-                    writer = constructWriter(currentFile, true);
+                fileNamingPolicy.archived(newFile);
+                if (archiveCompressor != null) {
+                    archiveCompressor.compress(newFile);
+                }
+                if (openNextFile(currentFile)) {
                     context.setWriter(writer);
                     rotationHooks.postRotationAction(context);
                 } else {
@@ -222,10 +274,31 @@ public class RotatableWriter implements TextWriter, RotatableObject {
                 writer = constructWriter(currentFile, true);
             }
             lastRotationTime = DateTime.now(DateTimeZone.UTC);
+            updateNextRotationTime();
         }
         return rotationHappened;
     }
 
+    /**
+     * Opens a new file once the current one has been archived.
+     */
+    private boolean openNextFile(File currentFile) throws IOException {
+        if (segments != null) {
+            try {
+                writer = constructWriter(segments.openNext());
+                return true;
+            } catch (IOException e) {
+                logger.error("Unable to open the next segment of {}", currentFile, e);
+                return false;
+            }
+        }
+        if (currentFile.createNewFile()) {
+            writer = constructWriter(currentFile, true);
+            return true;
+        }
+        return false;
+    }
+
     private Set<File> checkRetention() throws IOException {
         Set<File> filesToDelete = new HashSet<>();
         for (RetentionPolicy retentionPolicy : retentionPolicies) {
@@ -239,7 +312,9 @@ public class RotatableWriter implements TextWriter, RotatableObject {
             if (logger.isInfoEnabled()) {
                 logger.info("Deleting file {}", file.getAbsolutePath());
             }
-            if (!file.delete()) {
+            if (file.delete() || !file.exists()) {
+                fileNamingPolicy.deleted(file);
+            } else {
                 if (logger.isWarnEnabled()) {
                     logger.warn("Could not delete file {}", file.getAbsolutePath());
                 }
@@ -285,7 +360,16 @@ public class RotatableWriter implements TextWriter, RotatableObject {
                 }
             }
         }
-        writer.close();
+        if (archiveCompressor != null) {
+            archiveCompressor.shutdown();
+        }
+        try {
+            writer.close();
+        } finally {
+            if (segments != null) {
+                segments.close();
+            }
+        }
     }
 
     @Override
@@ -305,6 +389,16 @@ public class RotatableWriter implements TextWriter, RotatableObject {
         this.rotationHooks = rotationHooks;
     }
 
+    /**
+     * Sets the histogram recording the duration of the rotations.
+     *
+     * @param rotationLatency
+     *          The histogram, not {@code null}.
+     */
+    public void setRotationLatency(final LatencyHistogram rotationLatency) {
+        this.rotationLatency = Reject.checkNotNull(rotationLatency);
+    }
+
     @Override
     public void write(String str) throws IOException {
         ReadLock lock = readWriteLock.readLock();
@@ -344,17 +438,27 @@ public class RotatableWriter implements TextWriter, RotatableObject {
 
     private BufferedWriter constructWriter(File csvFile, boolean append)
             throws IOException {
+        if (segments != null) {
+            return constructWriter(segments.open(append));
+        }
         FileOutputStream stream = new FileOutputStream(csvFile, append);
         meteredStream = new MeteredStream(stream, file.length());
         OutputStreamWriter osw = new OutputStreamWriter(meteredStream, StandardCharsets.UTF_8);
         return new BufferedWriter(osw);
     }
 
+    private BufferedWriter constructWriter(FileChannel channel) throws IOException {
+        meteredStream = new MeteredStream(new ChannelOutputStream(channel), channel.size());
+        OutputStreamWriter osw = new OutputStreamWriter(meteredStream, StandardCharsets.UTF_8);
+        return new BufferedWriter(osw);
+    }
+
     private void addRotationPolicies(final FileRotation fileRotation) {
         // add SizeBasedRotationPolicy if a non zero size is supplied
         final long maxFileSize = fileRotation.getMaxFileSize();
         if (maxFileSize > 0) {
             rotationPolicies.add(new SizeBasedRotationPolicy(maxFileSize));
+            rotationSizeThreshold = maxFileSize;
         }
 
         // add FixedTimeRotationPolicy
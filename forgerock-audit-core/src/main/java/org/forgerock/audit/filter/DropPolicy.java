@@ -0,0 +1,199 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+
+package org.forgerock.audit.filter;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonPropertyDescription;
+
+/**
+ * Represents a DropPolicy, which cuts the volume of the events of a topic before they reach the handlers. The dropIf
+ * property lists CREST query filter expressions; an event matching any of them is dropped. The sampleRate and
+ * sampleOneIn properties keep respectively a fraction, and one in N, of the transactions: the decision depends on
+ * the transactionId of the event only, so that all the events of a transaction, including those of its
+ * sub-transactions, are kept or dropped together. The rateLimit property caps the number of events of the topic
+ * published per second, and the handlerRateLimits property caps the events of the topic published to each handler.
+ *
+ * The checks are applied in this order, an event dropped by one not reaching the next.
+ *
+ * The following is an example DropPolicy in json format, for the access topic.
+ * <pre>
+ *     {
+ *         "dropIf" : [
+ *              "/request/operation eq \"HEALTHCHECK\""
+ *         ],
+ *         "sampleRate" : 0.5,
+ *         "sampleOneIn" : 1,
+ *         "rateLimit" : {
+ *              "eventsPerSecond" : 1000,
+ *              "burst" : 2000
+ *         },
+ *         "handlerRateLimits" : {
+ *              "syslog" : {
+ *                  "eventsPerSecond" : 100,
+ *                  "burst" : 100
+ *              }
+ *         }
+ *     }
+ * </pre>
+ */
+public class DropPolicy {
+    @JsonPropertyDescription("audit.service.drop.policies.dropIf")
+    private List<String> dropIf;
+
+    @JsonPropertyDescription("audit.service.drop.policies.sampleRate")
+    private double sampleRate = 1.0;
+
+    @JsonPropertyDescription("audit.service.drop.policies.sampleOneIn")
+    private int sampleOneIn = 1;
+
+    @JsonPropertyDescription("audit.service.drop.policies.rateLimit")
+    private RateLimit rateLimit;
+
+    @JsonPropertyDescription("audit.service.drop.policies.handlerRateLimits")
+    private Map<String, RateLimit> handlerRateLimits;
+
+    /**
+     * Gets the dropIf list. The dropIf is a list of query filters matching the events to drop; an equality only matches
+     * the events in which its field is present.
+     * @return The list of dropIfs.
+     */
+    public List<String> getDropIf() {
+        return dropIf == null ? Collections.<String>emptyList() : dropIf;
+    }
+
+    /**
+     * Sets the dropIf list. The dropIf is a list of query filters matching the events to drop.
+     * @param dropIf The list of dropIfs.
+     */
+    public void setDropIf(Collection<String> dropIf) {
+        this.dropIf = new LinkedList<>(dropIf);
+    }
+
+    /**
+     * Gets the fraction of the transactions whose events are kept, between 0 and 1.
+     * @return The sample rate.
+     */
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Sets the fraction of the transactions whose events are kept, between 0 and 1.
+     * @param sampleRate The sample rate.
+     */
+    public void setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Gets N, such that the events of one in N transactions are kept.
+     * @return The sampling interval.
+     */
+    public int getSampleOneIn() {
+        return sampleOneIn;
+    }
+
+    /**
+     * Sets N, such that the events of one in N transactions are kept.
+     * @param sampleOneIn The sampling interval.
+     */
+    public void setSampleOneIn(int sampleOneIn) {
+        this.sampleOneIn = sampleOneIn;
+    }
+
+    /**
+     * Gets the limit of the events of the topic published per second.
+     * @return The rate limit, or {@code null} if the topic is not rate limited.
+     */
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * Sets the limit of the events of the topic published per second.
+     * @param rateLimit The rate limit, or {@code null} if the topic is not rate limited.
+     */
+    public void setRateLimit(RateLimit rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
+    /**
+     * Gets the limits of the events of the topic published per second to each handler, by handler name.
+     * @return The rate limits of the handlers.
+     */
+    public Map<String, RateLimit> getHandlerRateLimits() {
+        return handlerRateLimits == null ? Collections.<String, RateLimit>emptyMap() : handlerRateLimits;
+    }
+
+    /**
+     * Sets the limits of the events of the topic published per second to each handler, by handler name.
+     * @param handlerRateLimits The rate limits of the handlers.
+     */
+    public void setHandlerRateLimits(Map<String, RateLimit> handlerRateLimits) {
+        this.handlerRateLimits = new LinkedHashMap<>(handlerRateLimits);
+    }
+
+    /**
+     * A token bucket limit: tokens are added at the rate of events per second, up to the burst, and each event
+     * published takes one token; the events arriving while the bucket is empty are dropped.
+     */
+    public static class RateLimit {
+        @JsonPropertyDescription("audit.service.drop.policies.rateLimit.eventsPerSecond")
+        private double eventsPerSecond;
+
+        @JsonPropertyDescription("audit.service.drop.policies.rateLimit.burst")
+        private int burst = 1;
+
+        /**
+         * Gets the number of events allowed per second.
+         * @return The sustained rate of events.
+         */
+        public double getEventsPerSecond() {
+            return eventsPerSecond;
+        }
+
+        /**
+         * Sets the number of events allowed per second.
+         * @param eventsPerSecond The sustained rate of events.
+         */
+        public void setEventsPerSecond(double eventsPerSecond) {
+            this.eventsPerSecond = eventsPerSecond;
+        }
+
+        /**
+         * Gets the number of events allowed at once, after a quiet period.
+         * @return The size of the bucket.
+         */
+        public int getBurst() {
+            return burst;
+        }
+
+        /**
+         * Sets the number of events allowed at once, after a quiet period.
+         * @param burst The size of the bucket.
+         */
+        public void setBurst(int burst) {
+            this.burst = burst;
+        }
+    }
+}
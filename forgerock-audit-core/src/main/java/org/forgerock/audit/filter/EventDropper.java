@@ -0,0 +1,330 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+
+package org.forgerock.audit.filter;
+
+import static org.forgerock.audit.events.AuditEventBuilder.TRANSACTION_ID;
+import static org.forgerock.audit.metrics.Metrics.name;
+import static org.forgerock.audit.util.JsonValueUtils.JSONVALUE_FILTER_VISITOR;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.audit.filter.DropPolicy.RateLimit;
+import org.forgerock.audit.metrics.Counter;
+import org.forgerock.audit.metrics.MetricRegistry;
+import org.forgerock.json.JsonPointer;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.QueryFilters;
+import org.forgerock.util.Reject;
+import org.forgerock.util.query.QueryFilter;
+import org.forgerock.util.query.QueryFilterVisitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drops the events of the topics having a {@link DropPolicy}, before they are filtered and published to the handlers.
+ * <p>
+ * The events dropped are counted in the {@link MetricRegistry}, per topic and reason:
+ * {@code topic.<topic>.dropped.predicate}, {@code topic.<topic>.dropped.sampled} and
+ * {@code topic.<topic>.dropped.rateLimited}, and per handler: {@code handler.<handler>.dropped.rateLimited}.
+ * The events of the topics without policy are not affected, at the cost of a map lookup.
+ */
+public final class EventDropper {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventDropper.class);
+
+    /** The number of sampling buckets; the hash of a transactionId is a 32-bit unsigned value. */
+    private static final double HASH_RANGE = 1L << 32;
+
+    private final Map<String, TopicDropper> topicDroppers = new HashMap<>();
+
+    /**
+     * Creates the droppers of the topics having a policy.
+     *
+     * @param policies
+     *          The drop policies, by topic.
+     * @param topics
+     *          The known topics; the policies of other topics are ignored.
+     * @param metricRegistry
+     *          The registry of the counters of the dropped events.
+     */
+    public EventDropper(Map<String, DropPolicy> policies, Collection<String> topics, MetricRegistry metricRegistry) {
+        Reject.ifNull(policies, topics, metricRegistry);
+        for (Map.Entry<String, DropPolicy> entry : policies.entrySet()) {
+            if (!topics.contains(entry.getKey())) {
+                logger.warn("Ignoring the drop policy of unknown topic '{}'", entry.getKey());
+                continue;
+            }
+            topicDroppers.put(entry.getKey(), new TopicDropper(entry.getKey(), entry.getValue(), metricRegistry));
+        }
+    }
+
+    /**
+     * Indicates if the event must be dropped, rather than published to the handlers.
+     *
+     * @param topic
+     *          The topic of the event.
+     * @param event
+     *          The event, which must have a transactionId.
+     * @return {@code true} if the event is dropped.
+     */
+    public boolean dropEvent(String topic, JsonValue event) {
+        final TopicDropper dropper = topicDroppers.get(topic);
+        return dropper != null && dropper.dropEvent(event);
+    }
+
+    /**
+     * Indicates if an event kept by {@link #dropEvent(String, JsonValue)} must not be published to the handler,
+     * because the rate limit of the handler for the topic is exceeded.
+     *
+     * @param topic
+     *          The topic of the event.
+     * @param handlerName
+     *          The name of the handler.
+     * @return {@code true} if the event is dropped for this handler.
+     */
+    public boolean dropEventForHandler(String topic, String handlerName) {
+        final TopicDropper dropper = topicDroppers.get(topic);
+        return dropper != null && dropper.dropEventForHandler(handlerName);
+    }
+
+    /**
+     * Returns the 32-bit hash of the root transaction of the transactionId, spread by the finalizer of MurmurHash3.
+     * The identifiers of sub-transactions are built by appending a suffix to the identifier of their parent,
+     * separated by a '/'.
+     */
+    static long transactionHash(String transactionId) {
+        final int separator = transactionId.indexOf('/');
+        int h = (separator < 0 ? transactionId : transactionId.substring(0, separator)).hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h & 0xffffffffL;
+    }
+
+    /**
+     * Applies the policy of a topic.
+     */
+    private static final class TopicDropper {
+        private final List<QueryFilter<JsonPointer>> dropIf = new ArrayList<>();
+        private final long sampleThreshold;
+        private final int sampleOneIn;
+        private final TokenBucket rateLimit;
+        private final Map<String, TokenBucket> handlerRateLimits = new HashMap<>();
+        private final Map<String, Counter> handlerDropped = new HashMap<>();
+        private final Counter droppedByPredicate;
+        private final Counter droppedBySampling;
+        private final Counter droppedByRateLimit;
+
+        private TopicDropper(String topic, DropPolicy policy, MetricRegistry metricRegistry) {
+            for (String expression : policy.getDropIf()) {
+                try {
+                    dropIf.add(QueryFilters.parse(expression));
+                } catch (IllegalArgumentException e) {
+                    logger.error("Ignoring invalid dropIf filter '{}' of topic '{}'", expression, topic, e);
+                }
+            }
+            double sampleRate = policy.getSampleRate();
+            if (sampleRate < 0 || sampleRate > 1) {
+                logger.warn("Invalid sampleRate {} of topic '{}', keeping all the events", sampleRate, topic);
+                sampleRate = 1;
+            }
+            this.sampleThreshold = (long) (sampleRate * HASH_RANGE);
+            if (policy.getSampleOneIn() < 1) {
+                logger.warn("Invalid sampleOneIn {} of topic '{}', keeping all the events",
+                        policy.getSampleOneIn(), topic);
+            }
+            this.sampleOneIn = Math.max(1, policy.getSampleOneIn());
+            this.rateLimit = TokenBucket.of(policy.getRateLimit(), topic);
+            for (Map.Entry<String, RateLimit> entry : policy.getHandlerRateLimits().entrySet()) {
+                final TokenBucket bucket = TokenBucket.of(entry.getValue(), topic);
+                if (bucket != null) {
+                    handlerRateLimits.put(entry.getKey(), bucket);
+                    handlerDropped.put(entry.getKey(),
+                            metricRegistry.counter(name("handler", entry.getKey(), "dropped", "rateLimited")));
+                }
+            }
+            this.droppedByPredicate = metricRegistry.counter(name("topic", topic, "dropped", "predicate"));
+            this.droppedBySampling = metricRegistry.counter(name("topic", topic, "dropped", "sampled"));
+            this.droppedByRateLimit = metricRegistry.counter(name("topic", topic, "dropped", "rateLimited"));
+        }
+
+        private boolean dropEvent(JsonValue event) {
+            for (QueryFilter<JsonPointer> filter : dropIf) {
+                if (filter.accept(DROP_IF_VISITOR, event)) {
+                    droppedByPredicate.increment();
+                    return true;
+                }
+            }
+            if (sampleThreshold < HASH_RANGE || sampleOneIn > 1) {
+                final long hash = transactionHash(String.valueOf(event.get(TRANSACTION_ID).getObject()));
+                if (hash >= sampleThreshold || hash % sampleOneIn != 0) {
+                    droppedBySampling.increment();
+                    return true;
+                }
+            }
+            if (rateLimit != null && !rateLimit.tryAcquire()) {
+                droppedByRateLimit.increment();
+                return true;
+            }
+            return false;
+        }
+
+        private boolean dropEventForHandler(String handlerName) {
+            final TokenBucket bucket = handlerRateLimits.get(handlerName);
+            if (bucket != null && !bucket.tryAcquire()) {
+                handlerDropped.get(handlerName).increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Evaluates the dropIf filters like {@link org.forgerock.audit.util.JsonValueUtils#JSONVALUE_FILTER_VISITOR},
+     * except that an equality requires the field to be present: the generic visitor accepts an equality on a missing
+     * field, which would drop every event without the field.
+     */
+    private static final QueryFilterVisitor<Boolean, JsonValue, JsonPointer> DROP_IF_VISITOR =
+            new QueryFilterVisitor<Boolean, JsonValue, JsonPointer>() {
+                @Override
+                public Boolean visitAndFilter(JsonValue p, List<QueryFilter<JsonPointer>> subFilters) {
+                    for (QueryFilter<JsonPointer> subFilter : subFilters) {
+                        if (!subFilter.accept(this, p)) {
+                            return Boolean.FALSE;
+                        }
+                    }
+                    return Boolean.TRUE;
+                }
+
+                @Override
+                public Boolean visitBooleanLiteralFilter(JsonValue p, boolean value) {
+                    return value;
+                }
+
+                @Override
+                public Boolean visitContainsFilter(JsonValue p, JsonPointer field, Object valueAssertion) {
+                    return JSONVALUE_FILTER_VISITOR.visitContainsFilter(p, field, valueAssertion);
+                }
+
+                @Override
+                public Boolean visitEqualsFilter(JsonValue p, JsonPointer field, Object valueAssertion) {
+                    final JsonValue value = p.get(field);
+                    if (value == null || (value.isList() && value.size() == 0)) {
+                        return Boolean.FALSE;
+                    }
+                    return JSONVALUE_FILTER_VISITOR.visitEqualsFilter(p, field, valueAssertion);
+                }
+
+                @Override
+                public Boolean visitExtendedMatchFilter(JsonValue p, JsonPointer field, String matchingRuleId,
+                        Object valueAssertion) {
+                    return JSONVALUE_FILTER_VISITOR.visitExtendedMatchFilter(p, field, matchingRuleId, valueAssertion);
+                }
+
+                @Override
+                public Boolean visitGreaterThanFilter(JsonValue p, JsonPointer field, Object valueAssertion) {
+                    return JSONVALUE_FILTER_VISITOR.visitGreaterThanFilter(p, field, valueAssertion);
+                }
+
+                @Override
+                public Boolean visitGreaterThanOrEqualToFilter(JsonValue p, JsonPointer field, Object valueAssertion) {
+                    return JSONVALUE_FILTER_VISITOR.visitGreaterThanOrEqualToFilter(p, field, valueAssertion);
+                }
+
+                @Override
+                public Boolean visitLessThanFilter(JsonValue p, JsonPointer field, Object valueAssertion) {
+                    return JSONVALUE_FILTER_VISITOR.visitLessThanFilter(p, field, valueAssertion);
+                }
+
+                @Override
+                public Boolean visitLessThanOrEqualToFilter(JsonValue p, JsonPointer field, Object valueAssertion) {
+                    return JSONVALUE_FILTER_VISITOR.visitLessThanOrEqualToFilter(p, field, valueAssertion);
+                }
+
+                @Override
+                public Boolean visitNotFilter(JsonValue p, QueryFilter<JsonPointer> subFilter) {
+                    return !subFilter.accept(this, p);
+                }
+
+                @Override
+                public Boolean visitOrFilter(JsonValue p, List<QueryFilter<JsonPointer>> subFilters) {
+                    for (QueryFilter<JsonPointer> subFilter : subFilters) {
+                        if (subFilter.accept(this, p)) {
+                            return Boolean.TRUE;
+                        }
+                    }
+                    return Boolean.FALSE;
+                }
+
+                @Override
+                public Boolean visitPresentFilter(JsonValue p, JsonPointer field) {
+                    return JSONVALUE_FILTER_VISITOR.visitPresentFilter(p, field);
+                }
+
+                @Override
+                public Boolean visitStartsWithFilter(JsonValue p, JsonPointer field, Object valueAssertion) {
+                    return JSONVALUE_FILTER_VISITOR.visitStartsWithFilter(p, field, valueAssertion);
+                }
+            };
+
+    /**
+     * A token bucket, refilled continuously at a fixed rate up to its capacity.
+     */
+    static final class TokenBucket {
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(double eventsPerSecond, int burst) {
+            this.tokensPerNano = eventsPerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = burst;
+            this.tokens = burst;
+            this.lastRefill = System.nanoTime();
+        }
+
+        private static TokenBucket of(RateLimit rateLimit, String topic) {
+            if (rateLimit == null) {
+                return null;
+            }
+            if (rateLimit.getEventsPerSecond() <= 0 || rateLimit.getBurst() < 1) {
+                logger.warn("Ignoring invalid rate limit of topic '{}': eventsPerSecond must be positive, "
+                        + "and burst at least 1", topic);
+                return null;
+            }
+            return new TokenBucket(rateLimit.getEventsPerSecond(), rateLimit.getBurst());
+        }
+
+        synchronized boolean tryAcquire() {
+            final long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+    }
+}
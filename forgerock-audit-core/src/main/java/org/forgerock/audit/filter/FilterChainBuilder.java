@@ -15,23 +15,60 @@
  */
 package org.forgerock.audit.filter;
 
+import static org.forgerock.audit.events.AuditEventBuilder.TIMESTAMP;
+import static org.forgerock.audit.events.AuditEventBuilder.TRANSACTION_ID;
+import static org.forgerock.json.resource.ResourceResponse.FIELD_CONTENT_ID;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
 
 import org.forgerock.audit.AuditException;
 import org.forgerock.audit.filter.Filters.FilterNames;
+import org.forgerock.json.JsonPointer;
 import org.forgerock.json.JsonValue;
 import org.forgerock.util.Reject;
+import org.forgerock.util.encode.Base64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * A builder that builds a filter chain.
  */
 public class FilterChainBuilder {
+    private static final Logger logger = LoggerFactory.getLogger(FilterChainBuilder.class);
+
+    /** The fields always kept by the inclusion policies. */
+    private static final String[] MANDATORY_FIELDS = { FIELD_CONTENT_ID, TIMESTAMP, TRANSACTION_ID };
+
+    /** The filter of the topics whose events are not filtered. */
+    private static final Filter NO_OP = new Filter() {
+        @Override
+        public void doFilter(String auditTopic, JsonValue auditEvent) {
+            // nothing to filter
+        }
+    };
+
+    /**
+     * The key of the hashes when none is configured. It is drawn once per process, so that the hashes stay linkable
+     * across reconfigurations of the audit service, but not across restarts.
+     */
+    private static final SecretKey PROCESS_HASH_KEY = randomHashKey();
+
     private Map<String, FilterPolicy> policies;
     private List<String> auditTopics;
+    private String hashKey;
 
     /**
      * Adds the topics this filter chain is for.
@@ -56,46 +93,156 @@ public class FilterChainBuilder {
         return this;
     }
 
+    /**
+     * Sets the secret key of the HMAC-SHA256 hashes of the hashIf values. The hashes of a value are only equal while
+     * the key is the same, so the key must be kept, and shared by the instances writing to the same logs, for the
+     * events carrying a value to stay linkable across restarts. When no key is set, or the key is invalid, a random
+     * key is drawn once per process.
+     * @param hashKey The Base64 encoded key.
+     * @return This FilterChainBuilder.
+     */
+    public FilterChainBuilder withHashKey(final String hashKey) {
+        this.hashKey = hashKey;
+        return this;
+    }
+
     /**
      * Builds the FilterChain.
+     * <p>
+     * The policies are compiled into a plan per topic: the pointers of all the policies are merged, dropping
+     * duplicates and pointers within an included or excluded field, so that filtering an event takes a single lookup
+     * of its topic and a loop over each kind of pointers. The events of unfiltered topics are left untouched by a
+     * shared no-op filter.
+     *
      * @return The FilterChain as a {@link Filter}.
      */
     public Filter build() {
-        final List<Filter> filters = new LinkedList<>();
-        // create Filters
+        final Map<String, TopicPolicies> policiesByTopic = new LinkedHashMap<>();
         if (policies != null && auditTopics != null) {
+            for (final String auditTopic : auditTopics) {
+                policiesByTopic.put(auditTopic, new TopicPolicies());
+            }
             for (final Map.Entry<String, FilterPolicy> policyEntry : policies.entrySet()) {
                 try {
-                    filters.add(Filters.newFilter(policyEntry.getKey(), auditTopics, policyEntry.getValue()));
+                    final FilterPolicy policy = policyEntry.getValue();
+                    final ValueOrFieldFilter filter = Filters.newFilter(policyEntry.getKey(), auditTopics, policy);
+                    final Map<String, List<JsonPointer>> inclusions =
+                            Filters.pointerListPerTopic(auditTopics, policy.getIncludeIf());
+                    final Map<String, List<JsonPointer>> hashes =
+                            Filters.pointerListPerTopic(auditTopics, policy.getHashIf());
+                    final Map<String, List<JsonPointer>> redactions =
+                            Filters.pointerListPerTopic(auditTopics, policy.getRedactIf());
+                    for (final Map.Entry<String, TopicPolicies> topicEntry : policiesByTopic.entrySet()) {
+                        final String auditTopic = topicEntry.getKey();
+                        final TopicPolicies topicPolicies = topicEntry.getValue();
+                        topicPolicies.inclusions.addAll(inclusions.get(auditTopic));
+                        topicPolicies.exclusions.addAll(filter.getExclusions(auditTopic));
+                        topicPolicies.hashes.addAll(hashes.get(auditTopic));
+                        topicPolicies.redactions.addAll(redactions.get(auditTopic));
+                    }
                 } catch (AuditException e) {
                     // Do nothing. The exception has been logged.
                 }
             }
         }
-        return new FilterChain(filters);
+        final SecretKey key = decodeHashKey(hashKey);
+        final Map<String, Filter> filtersByTopic = new HashMap<>(policiesByTopic.size() * 2);
+        for (final Map.Entry<String, TopicPolicies> topicEntry : policiesByTopic.entrySet()) {
+            final TopicFilter filter = topicEntry.getValue().compile(key);
+            filtersByTopic.put(topicEntry.getKey(), filter.isEmpty() ? NO_OP : filter);
+        }
+        return new FilterChain(filtersByTopic);
+    }
+
+    /**
+     * The pointers of all the policies for a topic.
+     */
+    private static final class TopicPolicies {
+        private final Set<JsonPointer> inclusions = new LinkedHashSet<>();
+        private final Set<JsonPointer> exclusions = new LinkedHashSet<>();
+        private final Set<JsonPointer> hashes = new LinkedHashSet<>();
+        private final Set<JsonPointer> redactions = new LinkedHashSet<>();
+
+        TopicFilter compile(final SecretKey hashKey) {
+            if (!inclusions.isEmpty()) {
+                // the events can't be processed without these fields
+                for (final String field : MANDATORY_FIELDS) {
+                    inclusions.add(new JsonPointer(field));
+                }
+            }
+            return new TopicFilter(merge(inclusions), merge(exclusions), toArray(hashes), toArray(redactions),
+                    hashKey);
+        }
+    }
+
+    private static SecretKey decodeHashKey(final String hashKey) {
+        if (hashKey == null) {
+            return PROCESS_HASH_KEY;
+        }
+        final byte[] key = Base64.decode(hashKey);
+        if (key == null || key.length == 0) {
+            logger.error("Invalid hash key, it is not Base64 encoded; hashing with a random key instead");
+            return PROCESS_HASH_KEY;
+        }
+        return new SecretKeySpec(key, TopicFilter.HASH_ALGORITHM);
+    }
+
+    private static SecretKey randomHashKey() {
+        final byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return new SecretKeySpec(key, TopicFilter.HASH_ALGORITHM);
+    }
+
+    private static JsonPointer[] toArray(final Set<JsonPointer> pointers) {
+        return pointers.toArray(new JsonPointer[pointers.size()]);
+    }
+
+    /**
+     * Drops the pointers to fields within other listed fields, as they are included or excluded along with their
+     * parent.
+     */
+    private static JsonPointer[] merge(final Set<JsonPointer> pointers) {
+        final List<JsonPointer> merged = new ArrayList<>(pointers.size());
+        for (final JsonPointer pointer : pointers) {
+            if (!hasListedAncestor(pointer, pointers)) {
+                merged.add(pointer);
+            }
+        }
+        return merged.toArray(new JsonPointer[merged.size()]);
+    }
+
+    private static boolean hasListedAncestor(final JsonPointer pointer, final Set<JsonPointer> pointers) {
+        final String[] tokens = pointer.toArray();
+        for (int i = 1; i < tokens.length; i++) {
+            if (pointers.contains(new JsonPointer(Arrays.copyOfRange(tokens, 0, i)))) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * Chains together multiple filters and runs them all.
+     * Runs the filters compiled for the topic of each audit event.
      */
     public static class FilterChain implements Filter {
-        private final List<Filter> filters;
+        private final Map<String, Filter> filtersByTopic;
 
         /**
-         * Creates a filter chain from a given list of filters.
-         * @param filters The list of filters to chain.
+         * Creates a filter chain from the filters compiled for each topic.
+         * @param filtersByTopic The filter of each topic.
          */
-        FilterChain(List<Filter> filters) {
-            this.filters = new LinkedList<>(filters);
+        FilterChain(Map<String, Filter> filtersByTopic) {
+            this.filtersByTopic = filtersByTopic;
         }
 
         /**
-         * Runs the filters in the filter chain.
+         * Runs the filters compiled for the topic of the audit event.
          * {@inheritDoc}
          */
         @Override
         public void doFilter(String auditTopic, JsonValue auditEvent) {
-            for (final Filter filter: filters) {
+            final Filter filter = filtersByTopic.get(auditTopic);
+            if (filter != null) {
                 filter.doFilter(auditTopic, auditEvent);
             }
         }
@@ -24,10 +24,13 @@ import com.fasterxml.jackson.annotation.JsonPropertyDescription;
 import org.forgerock.json.JsonPointer;
 
 /**
- * Represents a FilterPolicy which contains the includeIf and excludeIf values for the filter. The includeIf property
- * lists fields/values in {@link JsonPointer} syntax to include for the audit event. By default all audit event fields
- * are included. The excludeIf property lists fields/values in {@link JsonPointer} syntax to exclude for the audit
- * event.
+ * Represents a FilterPolicy which contains the includeIf, excludeIf, hashIf and redactIf values for the filter. The
+ * includeIf property lists fields/values in {@link JsonPointer} syntax to include for the audit event. By default all
+ * audit event fields are included; once fields are listed, the other fields are removed, except for the _id,
+ * timestamp and transactionId fields. The excludeIf property lists fields/values in {@link JsonPointer} syntax to
+ * exclude for the audit event. The hashIf and redactIf properties list values in {@link JsonPointer} syntax to
+ * respectively replace by their HMAC-SHA256 hash, keyed with the filterHashKey of the audit service configuration, or
+ * to mask, in the audit event.
  *
  * The listed fields/values should be prefixed with the topic the {@link JsonPointer} applies to. For example, the
  * following excludeIf value:
@@ -45,6 +48,12 @@ import org.forgerock.json.JsonPointer;
  *         ],
  *         "includeIf" : [
  *              "/access/include/field"
+ *         ],
+ *         "hashIf" : [
+ *              "/access/include/field/userName"
+ *         ],
+ *         "redactIf" : [
+ *              "/access/include/field/password"
  *         ]
  *     }
  * </pre>
@@ -56,6 +65,12 @@ public class FilterPolicy {
     @JsonPropertyDescription("audit.events.filter.policies.exclude")
     private List<String> excludeIf;
 
+    @JsonPropertyDescription("audit.events.filter.policies.hash")
+    private List<String> hashIf;
+
+    @JsonPropertyDescription("audit.events.filter.policies.redact")
+    private List<String> redactIf;
+
     /**
      * Gets the includeIf list. The includeIf is a list of values to include in the audit event.
      * @return The list of includeIfs.
@@ -87,4 +102,36 @@ public class FilterPolicy {
     public void setExcludeIf(Collection<String> excludeIf) {
         this.excludeIf = new LinkedList<>(excludeIf);
     }
+
+    /**
+     * Gets the hashIf list. The hashIf is a list of values to replace by their hash in the audit event.
+     * @return The list of hashIfs.
+     */
+    public List<String> getHashIf() {
+        return hashIf == null ? Collections.<String>emptyList() : hashIf;
+    }
+
+    /**
+     * Sets the hashIf list. The hashIf is a list of values to replace by their hash in the audit event.
+     * @param hashIf The list of hashIfs.
+     */
+    public void setHashIf(Collection<String> hashIf) {
+        this.hashIf = new LinkedList<>(hashIf);
+    }
+
+    /**
+     * Gets the redactIf list. The redactIf is a list of values to mask in the audit event.
+     * @return The list of redactIfs.
+     */
+    public List<String> getRedactIf() {
+        return redactIf == null ? Collections.<String>emptyList() : redactIf;
+    }
+
+    /**
+     * Sets the redactIf list. The redactIf is a list of values to mask in the audit event.
+     * @param redactIf The list of redactIfs.
+     */
+    public void setRedactIf(Collection<String> redactIf) {
+        this.redactIf = new LinkedList<>(redactIf);
+    }
 }
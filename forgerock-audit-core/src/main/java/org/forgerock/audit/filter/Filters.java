@@ -57,8 +57,16 @@ public class Filters {
 
     private static Map<String, List<JsonPointer>> exclusionListPerTopic(final List<String> auditTopicsList,
             final FilterPolicy policy) {
+        return pointerListPerTopic(auditTopicsList, policy.getExcludeIf());
+    }
+
+    /**
+     * Splits policy values prefixed with their topic into the pointers of each topic.
+     */
+    static Map<String, List<JsonPointer>> pointerListPerTopic(final List<String> auditTopicsList,
+            final List<String> values) {
         final Map<String, List<JsonPointer>> topicMap = initializeTopicMap(auditTopicsList);
-        for (final String value : policy.getExcludeIf()) {
+        for (final String value : values) {
             addToTopicMap(value, topicMap);
         }
         return topicMap;
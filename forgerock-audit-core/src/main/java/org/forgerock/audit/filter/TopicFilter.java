@@ -0,0 +1,132 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.filter;
+
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+import org.forgerock.json.JsonPointer;
+import org.forgerock.json.JsonValue;
+import org.forgerock.util.encode.Base64;
+
+/**
+ * The filters of all the policies compiled for the events of a topic. An event is first projected onto the included
+ * fields, if any, then the excluded fields are removed, and finally the values to hash and to redact are replaced.
+ * <p>
+ * The values are hashed with HMAC-SHA256, so that they can't be recovered by hashing a dictionary of candidate values
+ * without the key. The hashes of a value are only equal, and the events carrying it linkable, while the key is the
+ * same.
+ */
+final class TopicFilter implements Filter {
+
+    /** The value replacing the redacted values. */
+    static final String REDACTED_VALUE = "*****";
+
+    /** The algorithm hashing the values. */
+    static final String HASH_ALGORITHM = "HmacSHA256";
+
+    private final JsonPointer[] inclusions;
+    private final JsonPointer[] exclusions;
+    private final JsonPointer[] hashes;
+    private final JsonPointer[] redactions;
+    private final ThreadLocal<Mac> hmac;
+
+    /**
+     * Creates the filter of a topic.
+     * @param inclusions The fields to keep, all the fields are kept if empty.
+     * @param exclusions The fields to remove.
+     * @param hashes The values to replace by their hash.
+     * @param redactions The values to mask.
+     * @param hashKey The {@value #HASH_ALGORITHM} key of the hashes.
+     */
+    TopicFilter(JsonPointer[] inclusions, JsonPointer[] exclusions, JsonPointer[] hashes, JsonPointer[] redactions,
+            final SecretKey hashKey) {
+        this.inclusions = inclusions;
+        this.exclusions = exclusions;
+        this.hashes = hashes;
+        this.redactions = redactions;
+        this.hmac = new ThreadLocal<Mac>() {
+            @Override
+            protected Mac initialValue() {
+                try {
+                    final Mac mac = Mac.getInstance(HASH_ALGORITHM);
+                    mac.init(hashKey);
+                    return mac;
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Tells if the filter leaves the events untouched.
+     * @return {@code true} if there is nothing to filter.
+     */
+    boolean isEmpty() {
+        return inclusions.length == 0 && exclusions.length == 0 && hashes.length == 0 && redactions.length == 0;
+    }
+
+    @Override
+    public void doFilter(String auditTopic, JsonValue auditEvent) {
+        if (inclusions.length > 0) {
+            project(auditEvent);
+        }
+        for (final JsonPointer exclusion : exclusions) {
+            auditEvent.remove(exclusion);
+        }
+        for (final JsonPointer pointer : hashes) {
+            final JsonValue value = auditEvent.get(pointer);
+            if (value != null && value.getObject() != null) {
+                auditEvent.put(pointer, hash(String.valueOf(value.getObject())));
+            }
+        }
+        for (final JsonPointer pointer : redactions) {
+            final JsonValue value = auditEvent.get(pointer);
+            if (value != null && value.getObject() != null) {
+                auditEvent.put(pointer, REDACTED_VALUE);
+            }
+        }
+    }
+
+    /**
+     * Replaces the content of the event by its included fields. The included values are not copied, only the
+     * objects containing them are rebuilt.
+     */
+    private void project(final JsonValue auditEvent) {
+        final JsonValue projection = json(object());
+        for (final JsonPointer inclusion : inclusions) {
+            final JsonValue value = auditEvent.get(inclusion);
+            if (value != null) {
+                projection.putPermissive(inclusion, value.getObject());
+            }
+        }
+        final Map<String, Object> fields = auditEvent.asMap();
+        fields.clear();
+        fields.putAll(projection.asMap());
+    }
+
+    private String hash(final String value) {
+        return Base64.encode(hmac.get().doFinal(value.getBytes(StandardCharsets.UTF_8)));
+    }
+}
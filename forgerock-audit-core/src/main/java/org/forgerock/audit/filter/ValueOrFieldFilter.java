@@ -15,6 +15,7 @@
  */
 package org.forgerock.audit.filter;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +39,16 @@ class ValueOrFieldFilter implements Filter {
         this.exclusions = new LinkedHashMap<>(exclusions);
     }
 
+    /**
+     * Gets the pointers excluded from the events of a topic.
+     * @param auditTopic The topic.
+     * @return The exclusion pointers, empty if the events of the topic are not filtered.
+     */
+    List<JsonPointer> getExclusions(final String auditTopic) {
+        final List<JsonPointer> exclusionList = exclusions.get(auditTopic);
+        return exclusionList == null ? Collections.<JsonPointer>emptyList() : exclusionList;
+    }
+
     /**
      * Excludes various values/fields from the given audit event.
      * {@inheritDoc}
@@ -0,0 +1,107 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.metrics;
+
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.forgerock.json.JsonValue;
+
+/**
+ * Default {@link MetricRegistry}, keeping the metrics in memory so that they can be read through the audit service.
+ * <p>
+ * The snapshot holds, for each metric name in alphabetical order, an object with the {@code count} of a counter, the
+ * {@code value} of a gauge, or the {@code count}, {@code min}, {@code max}, {@code mean}, {@code p50}, {@code p90},
+ * {@code p99} and {@code p999} durations of a latency histogram, in nanoseconds.
+ */
+public class InMemoryMetricRegistry implements MetricRegistry {
+
+    private final ConcurrentMap<String, AtomicCounter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LogLinearHistogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    @Override
+    public Counter counter(String name) {
+        AtomicCounter counter = counters.get(name);
+        if (counter == null) {
+            counter = new AtomicCounter();
+            final AtomicCounter existing = counters.putIfAbsent(name, counter);
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        return counter;
+    }
+
+    @Override
+    public LatencyHistogram latencyHistogram(String name) {
+        LogLinearHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = new LogLinearHistogram();
+            final LogLinearHistogram existing = histograms.putIfAbsent(name, histogram);
+            if (existing != null) {
+                histogram = existing;
+            }
+        }
+        return histogram;
+    }
+
+    @Override
+    public void registerGauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    @Override
+    public JsonValue snapshot() {
+        final Map<String, Object> metrics = new TreeMap<>();
+        for (Map.Entry<String, AtomicCounter> entry : counters.entrySet()) {
+            metrics.put(entry.getKey(), object(field("count", entry.getValue().getCount())));
+        }
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            metrics.put(entry.getKey(), object(field("value", entry.getValue().getValue())));
+        }
+        for (Map.Entry<String, LogLinearHistogram> entry : histograms.entrySet()) {
+            metrics.put(entry.getKey(), entry.getValue().snapshot().getObject());
+        }
+        return json(metrics);
+    }
+
+    private static final class AtomicCounter extends AtomicLong implements Counter {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void increment() {
+            incrementAndGet();
+        }
+
+        @Override
+        public void add(long count) {
+            addAndGet(count);
+        }
+
+        @Override
+        public long getCount() {
+            return get();
+        }
+    }
+}
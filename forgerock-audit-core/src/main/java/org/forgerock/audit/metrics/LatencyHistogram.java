@@ -0,0 +1,43 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.metrics;
+
+/**
+ * The distribution of the durations of an operation, such as publishing an event or rotating a file.
+ */
+public interface LatencyHistogram {
+
+    /**
+     * Records the duration of an operation.
+     *
+     * @param durationNanos The duration, in nanoseconds.
+     */
+    void record(long durationNanos);
+
+    /**
+     * Records the duration of an operation that started at the provided time.
+     *
+     * @param startNanos The start of the operation, as returned by {@link System#nanoTime()}.
+     */
+    void recordSince(long startNanos);
+
+    /**
+     * Gets the number of recorded durations.
+     *
+     * @return The number of durations.
+     */
+    long getCount();
+}
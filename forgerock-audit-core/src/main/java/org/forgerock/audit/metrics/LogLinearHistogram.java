@@ -0,0 +1,133 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.metrics;
+
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.forgerock.json.JsonValue;
+
+/**
+ * Latency histogram with buckets of logarithmically increasing widths, in the manner of HDR histograms: each power
+ * of two is split in {@value #SUB_BUCKET_COUNT} buckets, so that any recorded duration is known with a relative
+ * error below 1/{@value #SUB_BUCKET_COUNT}, whatever its magnitude, in a fixed amount of memory.
+ * <p>
+ * Recording a duration only increments atomic counters. Snapshots are not atomic: they may miss durations recorded
+ * while they are being taken.
+ */
+final class LogLinearHistogram implements LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /** One range of sub-buckets for the values below {@link #SUB_BUCKET_COUNT}, then one per power of two. */
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+    private static final String[] PERCENTILE_FIELDS = { "p50", "p90", "p99", "p999" };
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong();
+
+    @Override
+    public void record(long durationNanos) {
+        final long value = Math.max(durationNanos, 0);
+        counts.incrementAndGet(bucketIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value < (current = min.get()) && !min.compareAndSet(current, value)) {
+            // retry
+        }
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // retry
+        }
+    }
+
+    @Override
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Gets the value below which fall the provided percentage of the recorded durations.
+     *
+     * @param percentile The percentage, between 0 and 100.
+     * @return The highest value equivalent to the bucket of the percentile, 0 if nothing was recorded.
+     */
+    long getValueAtPercentile(double percentile) {
+        final long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        final long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long cumulated = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulated += counts.get(i);
+            if (cumulated >= target) {
+                return Math.min(highestEquivalentValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Gets the JSON representation of the histogram, its values being in nanoseconds.
+     */
+    JsonValue snapshot() {
+        final long total = count.get();
+        final JsonValue snapshot = json(object());
+        snapshot.put("count", total);
+        snapshot.put("min", total == 0 ? 0 : min.get());
+        snapshot.put("max", max.get());
+        snapshot.put("mean", total == 0 ? 0 : sum.get() / total);
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            snapshot.put(PERCENTILE_FIELDS[i], getValueAtPercentile(PERCENTILES[i]));
+        }
+        return snapshot;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long lowestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        final long subBucket = index % SUB_BUCKET_COUNT;
+        return (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    static long highestEquivalentValue(int index) {
+        return index + 1 < BUCKET_COUNT ? lowestEquivalentValue(index + 1) - 1 : Long.MAX_VALUE;
+    }
+}
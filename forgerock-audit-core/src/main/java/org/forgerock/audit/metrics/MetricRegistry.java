@@ -0,0 +1,63 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.metrics;
+
+import org.forgerock.json.JsonValue;
+
+/**
+ * Registry of the metrics recorded by the audit service and its handlers.
+ * <p>
+ * An implementation can be made available to the audit service through its
+ * {@link org.forgerock.audit.DependencyProvider}, for instance to publish the metrics to the monitoring system of
+ * the product; {@link InMemoryMetricRegistry} is used otherwise. Metric names are dot separated, see
+ * {@link Metrics#name(String...)}.
+ * <p>
+ * Implementations must be thread-safe, and should make recording a value as cheap as possible as metrics are
+ * recorded while publishing each audit event.
+ */
+public interface MetricRegistry {
+
+    /**
+     * Gets the counter with the provided name, creating it if needed.
+     *
+     * @param name The name of the counter.
+     * @return The counter.
+     */
+    Counter counter(String name);
+
+    /**
+     * Gets the latency histogram with the provided name, creating it if needed.
+     *
+     * @param name The name of the histogram.
+     * @return The histogram.
+     */
+    LatencyHistogram latencyHistogram(String name);
+
+    /**
+     * Registers a gauge, replacing any gauge previously registered with the same name.
+     *
+     * @param name The name of the gauge.
+     * @param gauge The gauge.
+     */
+    void registerGauge(String name, Gauge gauge);
+
+    /**
+     * Takes a snapshot of the current values of all the metrics.
+     *
+     * @return A JSON object with a field per metric.
+     */
+    JsonValue snapshot();
+}
@@ -0,0 +1,158 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.metrics;
+
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
+import org.forgerock.json.JsonValue;
+
+/**
+ * Utility methods for {@link MetricRegistry}.
+ */
+public final class Metrics {
+
+    private static final Counter NO_OP_COUNTER = new Counter() {
+        @Override
+        public void increment() {
+            // not recorded
+        }
+
+        @Override
+        public void add(long count) {
+            // not recorded
+        }
+
+        @Override
+        public long getCount() {
+            return 0;
+        }
+    };
+
+    private static final LatencyHistogram NO_OP_HISTOGRAM = new LatencyHistogram() {
+        @Override
+        public void record(long durationNanos) {
+            // not recorded
+        }
+
+        @Override
+        public void recordSince(long startNanos) {
+            // not recorded
+        }
+
+        @Override
+        public long getCount() {
+            return 0;
+        }
+    };
+
+    private static final MetricRegistry NO_OP_REGISTRY = new MetricRegistry() {
+        @Override
+        public Counter counter(String name) {
+            return NO_OP_COUNTER;
+        }
+
+        @Override
+        public LatencyHistogram latencyHistogram(String name) {
+            return NO_OP_HISTOGRAM;
+        }
+
+        @Override
+        public void registerGauge(String name, Gauge gauge) {
+            // not recorded
+        }
+
+        @Override
+        public JsonValue snapshot() {
+            return json(object());
+        }
+    };
+
+    private Metrics() {
+        // Prevent from instantiating
+    }
+
+    /**
+     * Builds a metric name from its parts, separated with dots.
+     *
+     * @param parts The parts of the name, such as {@code "handler"}, the name of the handler, and {@code "publish"}.
+     * @return The metric name.
+     */
+    public static String name(String... parts) {
+        final StringBuilder name = new StringBuilder();
+        for (String part : parts) {
+            if (name.length() > 0) {
+                name.append('.');
+            }
+            name.append(part);
+        }
+        return name.toString();
+    }
+
+    /**
+     * Gets a registry that records nothing, for components created without a registry.
+     *
+     * @return The no-op registry.
+     */
+    public static MetricRegistry noOpRegistry() {
+        return NO_OP_REGISTRY;
+    }
+
+    /**
+     * Gets the provided registry, or the no-op registry if it is {@code null}.
+     *
+     * @param registry The registry, may be {@code null}.
+     * @return A registry that is never {@code null}.
+     */
+    public static MetricRegistry orNoOp(MetricRegistry registry) {
+        return registry == null ? NO_OP_REGISTRY : registry;
+    }
+
+    /**
+     * Gets a view of a registry that prefixes the names of the metrics, so that a component can name its metrics
+     * without knowing the name of the handler or topic it records them for.
+     *
+     * @param registry The registry holding the metrics.
+     * @param prefix The prefix, without the trailing dot.
+     * @return The prefixing registry, whose snapshot is the snapshot of the whole registry.
+     */
+    public static MetricRegistry prefixed(final MetricRegistry registry, final String prefix) {
+        if (registry == NO_OP_REGISTRY) {
+            return registry;
+        }
+        return new MetricRegistry() {
+            @Override
+            public Counter counter(String name) {
+                return registry.counter(name(prefix, name));
+            }
+
+            @Override
+            public LatencyHistogram latencyHistogram(String name) {
+                return registry.latencyHistogram(name(prefix, name));
+            }
+
+            @Override
+            public void registerGauge(String name, Gauge gauge) {
+                registry.registerGauge(name(prefix, name), gauge);
+            }
+
+            @Override
+            public JsonValue snapshot() {
+                return registry.snapshot();
+            }
+        };
+    }
+}
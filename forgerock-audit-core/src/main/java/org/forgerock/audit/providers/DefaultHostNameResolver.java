@@ -0,0 +1,43 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.providers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Default implementation of {@link HostNameResolver} using {@link InetAddress} to perform reverse DNS lookups.
+ */
+public class DefaultHostNameResolver implements HostNameResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(DefaultHostNameResolver.class);
+
+    @Override
+    public String resolveHostName(String ip) {
+        try {
+            InetAddress address = InetAddress.getByName(ip);
+            String hostName = address.getCanonicalHostName();
+            // InetAddress returns the textual address when the lookup fails or is not allowed
+            return hostName.equals(address.getHostAddress()) ? null : hostName;
+        } catch (UnknownHostException uhe) {
+            logger.debug("Cannot resolve host name of {}", ip, uhe);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.providers;
+
+/**
+ * Strategy for resolving the host name of a client from its IP address.
+ * <p>
+ * Implementations may block; the audit service only calls them from its own resolver threads.
+ */
+public interface HostNameResolver {
+
+    /**
+     * Looks up the host name of the provided IP address.
+     *
+     * @param ip The IP address of the host.
+     * @return The host name, or {@code null} if the address has no name.
+     */
+    String resolveHostName(String ip);
+}
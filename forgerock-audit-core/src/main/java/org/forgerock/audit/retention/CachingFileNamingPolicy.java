@@ -0,0 +1,192 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.retention;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link FileNamingPolicy} that keeps an in-memory catalog of the archived files and of their sizes.
+ * <p>
+ * Listing the archived files of the decorated policy means listing the whole directory and parsing the name of each
+ * file, which gets costly when many archives are retained. Instead, the archived files are listed once, then the
+ * catalog is updated as files are archived and deleted. The directory is listed again, to pick up the changes made
+ * by other processes, when {@link #refreshIfStale()} is called after the refresh interval has elapsed.
+ * <p>
+ * Objects of this type are threadsafe.
+ */
+public class CachingFileNamingPolicy implements FileNamingPolicy {
+
+    /** Default interval between two listings of the archived files. */
+    public static final long DEFAULT_REFRESH_INTERVAL_NANOS = MINUTES.toNanos(1);
+
+    private final FileNamingPolicy delegate;
+    private final long refreshIntervalNanos;
+    /** The size of the archived files, from the oldest to the newest file. */
+    private Map<File, Long> lengthByFile;
+    private long lastRefresh;
+
+    /**
+     * Constructs a {@link CachingFileNamingPolicy} listing the archived files at the default interval.
+     *
+     * @param delegate The policy naming and listing the archived files.
+     */
+    public CachingFileNamingPolicy(final FileNamingPolicy delegate) {
+        this(delegate, DEFAULT_REFRESH_INTERVAL_NANOS);
+    }
+
+    /**
+     * Constructs a {@link CachingFileNamingPolicy}.
+     *
+     * @param delegate The policy naming and listing the archived files.
+     * @param refreshInterval The interval between two listings of the archived files, in nanoseconds.
+     */
+    public CachingFileNamingPolicy(final FileNamingPolicy delegate, final long refreshInterval) {
+        this.delegate = delegate;
+        this.refreshIntervalNanos = refreshInterval;
+        refresh();
+    }
+
+    @Override
+    public File getInitialName() {
+        return delegate.getInitialName();
+    }
+
+    @Override
+    public File getNextName() {
+        return delegate.getNextName();
+    }
+
+    /**
+     * Lists the archived files known to the catalog, from the oldest to the newest.
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized List<File> listFiles() {
+        return new ArrayList<>(lengthByFile.keySet());
+    }
+
+    /**
+     * Gets the size of an archived file, as recorded when it was added to the catalog.
+     *
+     * @param file The archived file.
+     * @return The size of the file in bytes, read from the file system if the file is not in the catalog.
+     */
+    public synchronized long length(final File file) {
+        final Long length = lengthByFile.get(file);
+        return length != null ? length : file.length();
+    }
+
+    /**
+     * Records a newly archived file, which becomes the newest archive.
+     *
+     * @param file The archived file.
+     */
+    public void archived(final File file) {
+        final long length = file.length();
+        synchronized (this) {
+            lengthByFile.remove(file);
+            lengthByFile.put(file, length);
+        }
+    }
+
+    /**
+     * Records that an archived file has been replaced by another one, such as its compressed form, keeping its
+     * position in the catalog.
+     *
+     * @param file The replaced file.
+     * @param replacement The file replacing it.
+     * @return {@code false} if the replaced file is not in the catalog any more, as it has been deleted.
+     */
+    public boolean replaced(final File file, final File replacement) {
+        final long length = replacement.length();
+        synchronized (this) {
+            if (!lengthByFile.containsKey(file)) {
+                return false;
+            }
+            final Map<File, Long> lengthByFile = new LinkedHashMap<>();
+            for (Map.Entry<File, Long> entry : this.lengthByFile.entrySet()) {
+                if (entry.getKey().equals(file)) {
+                    lengthByFile.put(replacement, length);
+                } else if (!entry.getKey().equals(replacement)) {
+                    lengthByFile.put(entry.getKey(), entry.getValue());
+                }
+            }
+            this.lengthByFile = lengthByFile;
+            return true;
+        }
+    }
+
+    /**
+     * Records the deletion of an archived file.
+     *
+     * @param file The deleted file.
+     */
+    public synchronized void deleted(final File file) {
+        lengthByFile.remove(file);
+    }
+
+    /**
+     * Lists the archived files again if the refresh interval has elapsed since the last listing.
+     */
+    public void refreshIfStale() {
+        final long lastRefresh;
+        synchronized (this) {
+            lastRefresh = this.lastRefresh;
+        }
+        if (System.nanoTime() - lastRefresh >= refreshIntervalNanos) {
+            refresh();
+        }
+    }
+
+    /**
+     * Lists the archived files again.
+     */
+    public void refresh() {
+        final long now = System.nanoTime();
+        final Map<File, Long> lengthByFile = new LinkedHashMap<>();
+        for (File file : delegate.listFiles()) {
+            lengthByFile.put(file, file.length());
+        }
+        synchronized (this) {
+            if (this.lengthByFile != null) {
+                // keep the files archived while the directory was being listed
+                for (Map.Entry<File, Long> entry : this.lengthByFile.entrySet()) {
+                    if (!lengthByFile.containsKey(entry.getKey()) && entry.getKey().exists()) {
+                        lengthByFile.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            this.lengthByFile = lengthByFile;
+            this.lastRefresh = now;
+        }
+    }
+
+    /**
+     * Gets the size of an archived file, using the catalog of the policy if it has one.
+     */
+    static long length(final FileNamingPolicy fileNamingPolicy, final File file) {
+        if (fileNamingPolicy instanceof CachingFileNamingPolicy) {
+            return ((CachingFileNamingPolicy) fileNamingPolicy).length(file);
+        }
+        return file.length();
+    }
+}
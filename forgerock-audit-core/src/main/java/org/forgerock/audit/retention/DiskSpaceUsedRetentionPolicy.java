@@ -43,7 +43,7 @@ public class DiskSpaceUsedRetentionPolicy implements RetentionPolicy {
         final List<File> archivedFiles = fileNamingPolicy.listFiles();
         long currentDiskSpaceUsed = 0L;
         for (final File file: archivedFiles) {
-           currentDiskSpaceUsed += file.length();
+           currentDiskSpaceUsed += CachingFileNamingPolicy.length(fileNamingPolicy, file);
         }
 
         if (currentDiskSpaceUsed <= maxDiskSpaceToUse) {
@@ -57,7 +57,7 @@ public class DiskSpaceUsedRetentionPolicy implements RetentionPolicy {
         List<File> filesToDelete = new LinkedList<>();
         for (File file : archivedFiles) {
             filesToDelete.add(file);
-            freedSpace += file.length();
+            freedSpace += CachingFileNamingPolicy.length(fileNamingPolicy, file);
             if (freedSpace >= freeSpaceNeeded) {
                 break;
             }
@@ -61,7 +61,7 @@ public class FreeDiskSpaceRetentionPolicy implements RetentionPolicy {
         List<File> filesToDelete = new LinkedList<>();
         for (File file : archivedFiles) {
             filesToDelete.add(file);
-            freedSpace += file.length();
+            freedSpace += CachingFileNamingPolicy.length(fileNamingPolicy, file);
             if (freedSpace >= freeSpaceNeeded) {
                 break;
             }
@@ -15,20 +15,20 @@
  */
 package org.forgerock.audit.retention;
 
+import static org.forgerock.audit.util.ArchiveCompression.COMPRESSED_ARCHIVE_SUFFIX;
+
 import java.io.File;
 import java.io.FilenameFilter;
-import java.nio.file.Path;
 
 import org.joda.time.format.DateTimeFormatter;
 
 /**
  * A {@link FilenameFilter} that matches historical log files. The {@link FilenameFilter} matches a filename with a
- * given prefix, filename and timestamp.
+ * given prefix, filename and timestamp, optionally followed by the suffix of compressed archives.
  */
 public class TimestampFilenameFilter implements FilenameFilter {
 
-    private final File initialFile;
-    private final String prefix;
+    private final String archivePrefix;
     private final DateTimeFormatter suffixDateFormat;
 
     /**
@@ -39,8 +39,8 @@ public class TimestampFilenameFilter implements FilenameFilter {
      */
     public TimestampFilenameFilter(final File initialFile, final String prefix,
             final DateTimeFormatter suffixDateFormat) {
-        this.initialFile = initialFile;
-        this.prefix = prefix;
+        final String fileName = initialFile.toPath().getFileName().toString();
+        this.archivePrefix = prefix != null ? prefix + fileName : fileName;
         this.suffixDateFormat = suffixDateFormat;
     }
 
@@ -50,33 +50,24 @@ public class TimestampFilenameFilter implements FilenameFilter {
      */
     @Override
     public boolean accept(File dir, String name) {
-        // create prefix + filename string
-        final StringBuilder newFileNameBuilder = new StringBuilder();
-        final Path path = initialFile.toPath();
-
-        if (prefix != null) {
-            newFileNameBuilder.append(prefix);
+        // the file must start with the prefix + initial filename
+        if (!name.startsWith(archivePrefix)) {
+            return false;
         }
-        newFileNameBuilder.append(path.getFileName());
-        final String newFileName = newFileNameBuilder.toString();
 
-        if (name.length() < newFileName.length()) {
-            // the filename is smaller or equal to the prefix + filename
+        final int end = name.endsWith(COMPRESSED_ARCHIVE_SUFFIX)
+                ? name.length() - COMPRESSED_ARCHIVE_SUFFIX.length()
+                : name.length();
+        if (end < archivePrefix.length()) {
             return false;
         }
-
-        final String timestamp = name.substring(newFileName.length());
+        final String timestamp = name.substring(archivePrefix.length(), end);
         try {
             suffixDateFormat.parseDateTime(timestamp);
         } catch (IllegalArgumentException | UnsupportedOperationException e) {
             // not a valid timestamp for the given timestamp suffix
             return false;
         }
-
-        // if the file starts with the prefix + initial filename match it.
-        if (name.startsWith(newFileName)) {
-            return true;
-        }
-        return false;
+        return true;
     }
 }
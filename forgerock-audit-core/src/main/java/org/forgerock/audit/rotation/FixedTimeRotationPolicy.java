@@ -20,7 +20,6 @@ import java.util.concurrent.TimeUnit;
 
 import org.forgerock.util.time.Duration;
 import org.joda.time.DateMidnight;
-import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,6 +29,7 @@ import org.slf4j.LoggerFactory;
 public class FixedTimeRotationPolicy implements RotationPolicy {
     private static final Logger logger = LoggerFactory.getLogger(FixedTimeRotationPolicy.class);
     private final List<Duration> dailyRotationTimes;
+    private final long[] dailyRotationTimesInMillis;
 
     /**
      * Constructs a {@link FixedTimeRotationPolicy} given a list of milliseconds after midnight to rotateIfNeeded the files.
@@ -38,6 +38,11 @@ public class FixedTimeRotationPolicy implements RotationPolicy {
      */
     public FixedTimeRotationPolicy(final List<Duration> rotationTimes) {
         dailyRotationTimes = rotationTimes;
+        dailyRotationTimesInMillis = new long[rotationTimes.size()];
+        int i = 0;
+        for (final Duration dailyRotationTime : rotationTimes) {
+            dailyRotationTimesInMillis[i++] = dailyRotationTime.to(TimeUnit.MILLISECONDS);
+        }
     }
 
     /**
@@ -45,15 +50,28 @@ public class FixedTimeRotationPolicy implements RotationPolicy {
      */
     @Override
     public boolean shouldRotateFile(RotatableObject rotatable) {
-        final DateTime currentTime = new DateTime();
-        final DateTime midnight = new DateMidnight().toDateTime();
-        for (final Duration dailyRotationTime : dailyRotationTimes) {
-            final DateTime nextRotationTime = midnight.plus(dailyRotationTime.to(TimeUnit.MILLISECONDS));
-            if (currentTime.isAfter(nextRotationTime) && rotatable.getLastRotationTime().isBefore(nextRotationTime)) {
-                return true;
+        return System.currentTimeMillis() > getNextRotationTime(rotatable.getLastRotationTime().getMillis());
+    }
+
+    /**
+     * Gets the first daily rotation time following the provided time of the last rotation.
+     *
+     * @param lastRotationTime The time of the last rotation, in milliseconds since the epoch.
+     * @return The time of the next rotation, in milliseconds since the epoch, or {@link Long#MAX_VALUE} if there
+     *         are no daily rotation times.
+     */
+    public long getNextRotationTime(long lastRotationTime) {
+        final DateMidnight midnight = new DateMidnight(lastRotationTime);
+        final DateMidnight nextMidnight = midnight.plusDays(1);
+        long nextRotationTime = Long.MAX_VALUE;
+        for (final long dailyRotationTime : dailyRotationTimesInMillis) {
+            long rotationTime = midnight.getMillis() + dailyRotationTime;
+            if (rotationTime <= lastRotationTime) {
+                rotationTime = nextMidnight.getMillis() + dailyRotationTime;
             }
+            nextRotationTime = Math.min(nextRotationTime, rotationTime);
         }
-        return false;
+        return nextRotationTime;
     }
 
     public List<Duration> getDailyRotationTimes() {
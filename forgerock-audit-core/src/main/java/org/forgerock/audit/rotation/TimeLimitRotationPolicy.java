@@ -18,8 +18,6 @@ package org.forgerock.audit.rotation;
 import java.util.concurrent.TimeUnit;
 
 import org.forgerock.util.time.Duration;
-import org.joda.time.DateTime;
-import org.joda.time.DateTimeZone;
 
 /**
  * Creates a rotation policy based on a time duration. Once the duration has passed the policy will indicate a
@@ -46,14 +44,21 @@ public class TimeLimitRotationPolicy implements RotationPolicy {
      */
     @Override
     public boolean shouldRotateFile(RotatableObject rotatable) {
+        return System.currentTimeMillis() >= getNextRotationTime(rotatable.getLastRotationTime().getMillis());
+    }
+
+    /**
+     * Gets the time at which a file last rotated at the provided time must be rotated again.
+     *
+     * @param lastRotationTime The time of the last rotation, in milliseconds since the epoch.
+     * @return The time of the next rotation, in milliseconds since the epoch, or {@link Long#MAX_VALUE} if the
+     *         policy is disabled.
+     */
+    public long getNextRotationTime(long lastRotationTime) {
         if (rotationInterval.isZero() || rotationInterval.isUnlimited()) {
-            return false;
-        } else {
-            final DateTime now = DateTime.now(DateTimeZone.UTC);
-            final DateTime lastRotationTime = rotatable.getLastRotationTime();
-            final org.joda.time.Duration timeSinceLastRotation = new org.joda.time.Duration(lastRotationTime, now);
-            return timeSinceLastRotation.getMillis() >= rotationIntervalInMillis;
+            return Long.MAX_VALUE;
         }
+        return lastRotationTime + rotationIntervalInMillis;
     }
 
     /**
@@ -0,0 +1,119 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Utility methods for gzip compressed archives of audit files.
+ * <p>
+ * A compressed archive is named after the uncompressed archive, followed by {@link #COMPRESSED_ARCHIVE_SUFFIX}.
+ */
+public final class ArchiveCompression {
+
+    /** The suffix of the names of the compressed archives. */
+    public static final String COMPRESSED_ARCHIVE_SUFFIX = ".gz";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ArchiveCompression() {
+        // Prevent from instantiating
+    }
+
+    /**
+     * Tells if an archive is compressed.
+     *
+     * @param archive The archive.
+     * @return {@code true} if the archive is compressed.
+     */
+    public static boolean isCompressed(final File archive) {
+        return archive.getName().endsWith(COMPRESSED_ARCHIVE_SUFFIX);
+    }
+
+    /**
+     * Gets the name of an archive before its compression.
+     *
+     * @param archive The archive, compressed or not.
+     * @return The uncompressed archive.
+     */
+    public static File getUncompressedFile(final File archive) {
+        if (!isCompressed(archive)) {
+            return archive;
+        }
+        final String path = archive.getPath();
+        return new File(path.substring(0, path.length() - COMPRESSED_ARCHIVE_SUFFIX.length()));
+    }
+
+    /**
+     * Gets the name of the compressed form of an archive.
+     *
+     * @param archive The uncompressed archive.
+     * @return The compressed archive.
+     */
+    public static File getCompressedFile(final File archive) {
+        return new File(archive.getPath() + COMPRESSED_ARCHIVE_SUFFIX);
+    }
+
+    /**
+     * Opens an archive for reading, decompressing it while it is read if needed.
+     *
+     * @param archive The archive, compressed or not.
+     * @return The uncompressed content of the archive.
+     * @throws IOException If the archive can't be opened.
+     */
+    public static InputStream openArchive(final File archive) throws IOException {
+        final InputStream in = new FileInputStream(archive);
+        if (!isCompressed(archive)) {
+            return in;
+        }
+        try {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Compresses an archive into another file. The compressed file gets the last modification time of the archive,
+     * which is left untouched.
+     *
+     * @param archive The uncompressed archive.
+     * @param target The file to write the compressed content to.
+     * @throws IOException If the archive can't be compressed.
+     */
+    public static void compress(final File archive, final File target) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(archive), BUFFER_SIZE);
+                OutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(target)),
+                        BUFFER_SIZE)) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        target.setLastModified(archive.lastModified());
+    }
+}
@@ -34,7 +34,12 @@ import org.joda.time.format.ISODateTimeFormat;
  * 2011-09-09T14:58:17.654Z
  */
 public final class DateUtil {
-    private Chronology chrono;
+    /** DateUtil instances are immutable, so the UTC one is shared. */
+    private static final DateUtil UTC = new DateUtil(DateTimeZone.UTC);
+
+    private final Chronology chrono;
+    /** Whether the timestamps are formatted by the {@link UtcTimestampFormatter}. */
+    private final boolean utc;
 
     /**
      * Fetches a DateUtil that is set in the default timezone.
@@ -53,7 +58,7 @@ public final class DateUtil {
      * @return DateUtil set with the supplied timezone
      */
     public static DateUtil getDateUtil(final String zone) {
-        return new DateUtil(zone);
+        return "UTC".equals(zone) ? UTC : new DateUtil(zone);
     }
 
     /**
@@ -64,7 +69,7 @@ public final class DateUtil {
      * @return DateUtil set with the supplied timezone
      */
     public static DateUtil getDateUtil(final DateTimeZone zone) {
-        return new DateUtil(zone);
+        return DateTimeZone.UTC.equals(zone) ? UTC : new DateUtil(zone);
     }
 
     /**
@@ -96,6 +101,7 @@ public final class DateUtil {
      */
     private DateUtil(final DateTimeZone zone) {
         chrono = ISOChronology.getInstance(zone);
+        utc = DateTimeZone.UTC.equals(zone);
     }
 
     /**
@@ -104,6 +110,9 @@ public final class DateUtil {
      * @return String containing a timestamp
      */
     public String now() {
+        if (utc) {
+            return UtcTimestampFormatter.now();
+        }
         return new DateTime(chrono).toString();
     }
 
@@ -134,6 +143,9 @@ public final class DateUtil {
      * @return String containing the formatted timestamp
      */
     public String formatDateTime(final Date date) {
+        if (utc && date != null) {
+            return UtcTimestampFormatter.format(date.getTime());
+        }
         final DateTime dt = new DateTime(date, chrono);
         return dt.toString();
     }
@@ -146,6 +158,9 @@ public final class DateUtil {
      * @return String containing the formatted timestamp
      */
     public String formatDateTime(final long timestamp) {
+        if (utc) {
+            return UtcTimestampFormatter.format(timestamp);
+        }
         final DateTime dt = new DateTime(timestamp, chrono);
         return dt.toString();
     }
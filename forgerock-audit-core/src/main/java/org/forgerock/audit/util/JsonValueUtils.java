@@ -133,7 +133,20 @@ public final class JsonValueUtils {
      *         a null value, an empty string will be returned.
      */
     public static String extractValueAsString(final JsonValue json, final String fieldName) {
-        JsonValue value = json.get(new JsonPointer(fieldName));
+        return extractValueAsString(json, new JsonPointer(fieldName));
+    }
+
+    /**
+     * Extracts String representation of field identified by <code>field</code> from <code>json</code> object.
+     *
+     * @param json the {@link JsonValue} object from which to extract a value.
+     * @param field the pointer to the field.
+     *
+     * @return A String representation of the field's value, or null if the specified field is not present or has
+     *         a null value.
+     */
+    public static String extractValueAsString(final JsonValue json, final JsonPointer field) {
+        JsonValue value = json.get(field);
         if (value == null || value.isNull()) {
             return null;
         } else if (value.isString()) {
@@ -143,7 +156,7 @@ public final class JsonValueUtils {
             try {
                 rawStr = mapper.writeValueAsString(value.getObject());
             } catch (JsonProcessingException e) {
-                logger.error("Unable to write the value for field {} as a string.", fieldName);
+                logger.error("Unable to write the value for field {} as a string.", field);
             }
             return rawStr;
         }
@@ -0,0 +1,282 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.util;
+
+import java.util.Comparator;
+import java.util.List;
+
+import org.forgerock.json.JsonPointer;
+import org.forgerock.util.query.QueryFilter;
+import org.forgerock.util.query.QueryFilterVisitor;
+
+/**
+ * Range of timestamps that an event must fall in to match a query filter.
+ * <p>
+ * The range is derived from the comparisons made on the {@code /timestamp} field, and lets the handlers skip the
+ * files, segments or events whose timestamps are all outside of it. Timestamps are compared the same way the query
+ * filters compare strings, that is ignoring case; any part of the filter that can't be expressed as a range leaves
+ * it unbounded.
+ */
+public final class TimestampRange {
+
+    /** The range of the filters that don't restrict the timestamp of the events. */
+    public static final TimestampRange UNBOUNDED = new TimestampRange(null, false, null, false);
+
+    private static final JsonPointer TIMESTAMP = new JsonPointer("/timestamp");
+    /** Compares the timestamps the same way the query filters compare strings. */
+    public static final Comparator<String> ORDER = String.CASE_INSENSITIVE_ORDER;
+
+    private final String lower;
+    private final boolean lowerInclusive;
+    private final String upper;
+    private final boolean upperInclusive;
+
+    private TimestampRange(String lower, boolean lowerInclusive, String upper, boolean upperInclusive) {
+        this.lower = lower;
+        this.lowerInclusive = lowerInclusive;
+        this.upper = upper;
+        this.upperInclusive = upperInclusive;
+    }
+
+    /**
+     * Computes the range of timestamps accepted by the filter.
+     *
+     * @param filter
+     *          The query filter.
+     * @return the range, {@link #UNBOUNDED} if the filter doesn't restrict the timestamps.
+     */
+    public static TimestampRange of(QueryFilter<JsonPointer> filter) {
+        final TimestampRange range = filter.accept(RANGE_VISITOR, null);
+        return range == null ? UNBOUNDED : range;
+    }
+
+    /**
+     * Returns the lower bound of the range.
+     *
+     * @return the smallest timestamp of the range, or {@code null} if the range has no lower bound.
+     */
+    public String getLower() {
+        return lower;
+    }
+
+    /**
+     * Indicates if this range restricts the timestamps at all.
+     *
+     * @return {@code true} if the range has a lower or an upper bound.
+     */
+    public boolean isBounded() {
+        return lower != null || upper != null;
+    }
+
+    /**
+     * Indicates if all the timestamps of this range are after the provided one.
+     *
+     * @param timestamp
+     *          A timestamp.
+     * @return {@code true} if no event at or before the timestamp can match.
+     */
+    public boolean isAfter(String timestamp) {
+        if (lower == null) {
+            return false;
+        }
+        final int comparison = ORDER.compare(lower, timestamp);
+        return comparison > 0 || (comparison == 0 && !lowerInclusive);
+    }
+
+    /**
+     * Indicates if some timestamps in {@code [min, max]} may be part of this range.
+     *
+     * @param min
+     *          The smallest timestamp of a set of events, or {@code null} if the events have no timestamps.
+     * @param max
+     *          The greatest timestamp of a set of events, or {@code null} if the events have no timestamps.
+     * @return {@code false} if no timestamp of the events can match.
+     */
+    public boolean overlaps(String min, String max) {
+        if (!isBounded()) {
+            return true;
+        }
+        if (min == null || max == null) {
+            // events without timestamp never match a comparison on the timestamp
+            return false;
+        }
+        if (lower != null) {
+            final int comparison = ORDER.compare(max, lower);
+            if (comparison < 0 || (comparison == 0 && !lowerInclusive)) {
+                return false;
+            }
+        }
+        if (upper != null) {
+            final int comparison = ORDER.compare(min, upper);
+            if (comparison > 0 || (comparison == 0 && !upperInclusive)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static TimestampRange intersection(TimestampRange first, TimestampRange second) {
+        String lower = first.lower;
+        boolean lowerInclusive = first.lowerInclusive;
+        if (second.lower != null) {
+            final int comparison = lower == null ? -1 : ORDER.compare(lower, second.lower);
+            if (comparison < 0) {
+                lower = second.lower;
+                lowerInclusive = second.lowerInclusive;
+            } else if (comparison == 0) {
+                lowerInclusive &= second.lowerInclusive;
+            }
+        }
+        String upper = first.upper;
+        boolean upperInclusive = first.upperInclusive;
+        if (second.upper != null) {
+            final int comparison = upper == null ? 1 : ORDER.compare(upper, second.upper);
+            if (comparison > 0) {
+                upper = second.upper;
+                upperInclusive = second.upperInclusive;
+            } else if (comparison == 0) {
+                upperInclusive &= second.upperInclusive;
+            }
+        }
+        return new TimestampRange(lower, lowerInclusive, upper, upperInclusive);
+    }
+
+    private static TimestampRange union(TimestampRange first, TimestampRange second) {
+        String lower = null;
+        boolean lowerInclusive = false;
+        if (first.lower != null && second.lower != null) {
+            final int comparison = ORDER.compare(first.lower, second.lower);
+            lower = comparison <= 0 ? first.lower : second.lower;
+            lowerInclusive = comparison < 0 ? first.lowerInclusive
+                    : comparison > 0 ? second.lowerInclusive
+                    : first.lowerInclusive || second.lowerInclusive;
+        }
+        String upper = null;
+        boolean upperInclusive = false;
+        if (first.upper != null && second.upper != null) {
+            final int comparison = ORDER.compare(first.upper, second.upper);
+            upper = comparison >= 0 ? first.upper : second.upper;
+            upperInclusive = comparison > 0 ? first.upperInclusive
+                    : comparison < 0 ? second.upperInclusive
+                    : first.upperInclusive || second.upperInclusive;
+        }
+        return new TimestampRange(lower, lowerInclusive, upper, upperInclusive);
+    }
+
+    /**
+     * Computes the range of a filter, {@code null} meaning that the filter doesn't restrict the timestamps.
+     */
+    private static final QueryFilterVisitor<TimestampRange, Void, JsonPointer> RANGE_VISITOR =
+            new QueryFilterVisitor<TimestampRange, Void, JsonPointer>() {
+
+                @Override
+                public TimestampRange visitAndFilter(Void p, List<QueryFilter<JsonPointer>> subFilters) {
+                    TimestampRange result = null;
+                    for (QueryFilter<JsonPointer> subFilter : subFilters) {
+                        final TimestampRange range = subFilter.accept(this, p);
+                        if (range != null) {
+                            result = result == null ? range : intersection(result, range);
+                        }
+                    }
+                    return result;
+                }
+
+                @Override
+                public TimestampRange visitOrFilter(Void p, List<QueryFilter<JsonPointer>> subFilters) {
+                    TimestampRange result = null;
+                    for (QueryFilter<JsonPointer> subFilter : subFilters) {
+                        final TimestampRange range = subFilter.accept(this, p);
+                        if (range == null) {
+                            return null;
+                        }
+                        result = result == null ? range : union(result, range);
+                    }
+                    return result;
+                }
+
+                @Override
+                public TimestampRange visitBooleanLiteralFilter(Void p, boolean value) {
+                    return null;
+                }
+
+                @Override
+                public TimestampRange visitEqualsFilter(Void p, JsonPointer field, Object valueAssertion) {
+                    return isTimestamp(field, valueAssertion)
+                            ? new TimestampRange((String) valueAssertion, true, (String) valueAssertion, true)
+                            : null;
+                }
+
+                @Override
+                public TimestampRange visitGreaterThanFilter(Void p, JsonPointer field, Object valueAssertion) {
+                    return isTimestamp(field, valueAssertion)
+                            ? new TimestampRange((String) valueAssertion, false, null, false)
+                            : null;
+                }
+
+                @Override
+                public TimestampRange visitGreaterThanOrEqualToFilter(Void p, JsonPointer field,
+                        Object valueAssertion) {
+                    return isTimestamp(field, valueAssertion)
+                            ? new TimestampRange((String) valueAssertion, true, null, false)
+                            : null;
+                }
+
+                @Override
+                public TimestampRange visitLessThanFilter(Void p, JsonPointer field, Object valueAssertion) {
+                    return isTimestamp(field, valueAssertion)
+                            ? new TimestampRange(null, false, (String) valueAssertion, false)
+                            : null;
+                }
+
+                @Override
+                public TimestampRange visitLessThanOrEqualToFilter(Void p, JsonPointer field,
+                        Object valueAssertion) {
+                    return isTimestamp(field, valueAssertion)
+                            ? new TimestampRange(null, false, (String) valueAssertion, true)
+                            : null;
+                }
+
+                @Override
+                public TimestampRange visitContainsFilter(Void p, JsonPointer field, Object valueAssertion) {
+                    return null;
+                }
+
+                @Override
+                public TimestampRange visitExtendedMatchFilter(Void p, JsonPointer field, String matchingRuleId,
+                        Object valueAssertion) {
+                    return null;
+                }
+
+                @Override
+                public TimestampRange visitNotFilter(Void p, QueryFilter<JsonPointer> subFilter) {
+                    return null;
+                }
+
+                @Override
+                public TimestampRange visitPresentFilter(Void p, JsonPointer field) {
+                    return null;
+                }
+
+                @Override
+                public TimestampRange visitStartsWithFilter(Void p, JsonPointer field, Object valueAssertion) {
+                    return null;
+                }
+
+                private boolean isTimestamp(JsonPointer field, Object valueAssertion) {
+                    return TIMESTAMP.equals(field) && valueAssertion instanceof String;
+                }
+            };
+}
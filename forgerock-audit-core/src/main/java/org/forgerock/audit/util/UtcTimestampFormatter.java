@@ -0,0 +1,98 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.util;
+
+import java.util.Arrays;
+
+import org.forgerock.util.annotations.VisibleForTesting;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+/**
+ * Formats timestamps in ISO8601 format in the UTC time zone, such as {@code 2011-09-09T14:58:17.654Z}.
+ * <p>
+ * The formatted output is the same as {@link DateUtil} set in the UTC time zone, but the date and time up to the
+ * seconds are formatted once per second and shared by the threads: formatting a timestamp within the same second as
+ * the last formatted one only appends the milliseconds. The last formatted second always replaces the shared one, so
+ * that an odd timestamp far from the current time only costs the formatting of the next second.
+ */
+public final class UtcTimestampFormatter {
+
+    private static final DateTimeFormatter FORMATTER = ISODateTimeFormat.dateTime().withZoneUTC();
+    private static final DateTimeFormatter SECONDS_FORMATTER =
+            ISODateTimeFormat.dateHourMinuteSecond().withZoneUTC();
+
+    /** The prefix of the last second that was formatted. */
+    private static volatile FormattedSecond latestSecond = new FormattedSecond(0);
+
+    private UtcTimestampFormatter() {
+        // utility class
+    }
+
+    /**
+     * Formats the current time.
+     *
+     * @return the formatted timestamp.
+     */
+    public static String now() {
+        return format(System.currentTimeMillis());
+    }
+
+    /**
+     * Formats a timestamp.
+     *
+     * @param timestamp
+     *          The number of milliseconds since the epoch.
+     * @return the formatted timestamp.
+     */
+    public static String format(final long timestamp) {
+        if (timestamp < 0) {
+            return FORMATTER.print(timestamp);
+        }
+        final long second = timestamp / 1000;
+        FormattedSecond formattedSecond = latestSecond;
+        if (formattedSecond.second != second) {
+            formattedSecond = new FormattedSecond(second);
+            latestSecond = formattedSecond;
+        }
+        final int millis = (int) (timestamp - second * 1000);
+        final int length = formattedSecond.prefix.length;
+        final char[] chars = Arrays.copyOf(formattedSecond.prefix, length + 4);
+        chars[length] = (char) ('0' + millis / 100);
+        chars[length + 1] = (char) ('0' + millis / 10 % 10);
+        chars[length + 2] = (char) ('0' + millis % 10);
+        chars[length + 3] = 'Z';
+        return new String(chars);
+    }
+
+    @VisibleForTesting
+    static long getCachedSecond() {
+        return latestSecond.second;
+    }
+
+    /**
+     * The date and time of a second, up to the dot preceding the milliseconds.
+     */
+    private static final class FormattedSecond {
+        private final long second;
+        private final char[] prefix;
+
+        FormattedSecond(long second) {
+            this.second = second;
+            this.prefix = (SECONDS_FORMATTER.print(second * 1000) + ".").toCharArray();
+        }
+    }
+}
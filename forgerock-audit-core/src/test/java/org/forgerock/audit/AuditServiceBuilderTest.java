@@ -28,6 +28,8 @@ import org.forgerock.audit.events.EventTopicsMetaData;
 import org.forgerock.audit.events.handlers.AuditEventHandlerFactory;
 import org.forgerock.audit.events.handlers.impl.PassThroughAuditEventHandler;
 import org.forgerock.audit.events.handlers.impl.PassThroughAuditEventHandlerConfiguration;
+import org.forgerock.audit.metrics.MetricRegistry;
+import org.forgerock.audit.providers.HostNameResolver;
 import org.forgerock.json.JsonPointer;
 import org.forgerock.json.JsonValue;
 import org.mockito.ArgumentCaptor;
@@ -101,7 +103,10 @@ public class AuditServiceBuilderTest {
         verify(factory).newAuditService(
                 any(AuditServiceConfiguration.class),
                 topicSchemasCaptor.capture(),
-                any(Set.class));
+                any(Set.class),
+                any(MetricRegistry.class),
+                any(HostNameResolver.class),
+                anyMap());
 
         JsonValue accessSchema = (JsonValue) topicSchemasCaptor.getValue().getSchema("access");
         assertThat(accessSchema.get(pointer("schema/properties")).isDefined("extraField")).isTrue();
@@ -122,7 +127,10 @@ public class AuditServiceBuilderTest {
         verify(factory).newAuditService(
                 any(AuditServiceConfiguration.class),
                 topicSchemasCaptor.capture(),
-                any(Set.class));
+                any(Set.class),
+                any(MetricRegistry.class),
+                any(HostNameResolver.class),
+                anyMap());
 
         assertThat(topicSchemasCaptor.getValue().getTopics()).doesNotContain("customTopic");
     }
@@ -141,7 +149,10 @@ public class AuditServiceBuilderTest {
         verify(factory).newAuditService(
                 any(AuditServiceConfiguration.class),
                 topicSchemasCaptor.capture(),
-                any(Set.class));
+                any(Set.class),
+                any(MetricRegistry.class),
+                any(HostNameResolver.class),
+                anyMap());
 
         JsonValue accessSchema = topicSchemasCaptor.getValue().getSchema("access");
         assertThat(accessSchema.get(pointer("schema/properties/server")).isDefined("name")).isFalse();
@@ -160,7 +171,10 @@ public class AuditServiceBuilderTest {
         verify(factory).newAuditService(
                 any(AuditServiceConfiguration.class),
                 topicSchemasCaptor.capture(),
-                any(Set.class));
+                any(Set.class),
+                any(MetricRegistry.class),
+                any(HostNameResolver.class),
+                anyMap());
 
         JsonValue accessSchema = topicSchemasCaptor.getValue().getSchema("access");
         assertThat(accessSchema.get(pointer("schema/properties")).isDefined("extraField")).isFalse();
@@ -182,7 +196,10 @@ public class AuditServiceBuilderTest {
         verify(factory).newAuditService(
                 any(AuditServiceConfiguration.class),
                 topicSchemasCaptor.capture(),
-                any(Set.class));
+                any(Set.class),
+                any(MetricRegistry.class),
+                any(HostNameResolver.class),
+                anyMap());
 
         JsonValue accessSchema = topicSchemasCaptor.getValue().getSchema("access");
         assertThat(accessSchema.get(pointer("schema/properties")).isDefined("extraField")).isFalse();
@@ -204,7 +221,10 @@ public class AuditServiceBuilderTest {
         verify(factory).newAuditService(
                 any(AuditServiceConfiguration.class),
                 topicSchemasCaptor.capture(),
-                any(Set.class));
+                any(Set.class),
+                any(MetricRegistry.class),
+                any(HostNameResolver.class),
+                anyMap());
 
         JsonValue accessSchema = topicSchemasCaptor.getValue().getSchema("access");
         assertThat(accessSchema.get(pointer("schema/properties")).isDefined("extraField")).isFalse();
@@ -225,7 +245,10 @@ public class AuditServiceBuilderTest {
         verify(factory).newAuditService(
                 any(AuditServiceConfiguration.class),
                 topicSchemasCaptor.capture(),
-                any(Set.class));
+                any(Set.class),
+                any(MetricRegistry.class),
+                any(HostNameResolver.class),
+                anyMap());
 
         JsonValue customTopic = topicSchemasCaptor.getValue().getSchema("customTopic");
         assertThat(customTopic.get(pointer("schema/properties")).isDefined("_id")).isTrue();
@@ -249,7 +272,10 @@ public class AuditServiceBuilderTest {
         verify(factory).newAuditService(
                 any(AuditServiceConfiguration.class),
                 topicSchemasCaptor.capture(),
-                any(Set.class));
+                any(Set.class),
+                any(MetricRegistry.class),
+                any(HostNameResolver.class),
+                anyMap());
 
         JsonValue accessSchema = topicSchemasCaptor.getValue().getSchema("access");
         assertThat(accessSchema.get(pointer("schema/properties")).isDefined("customField")).isFalse();
@@ -271,7 +297,10 @@ public class AuditServiceBuilderTest {
         verify(factory).newAuditService(
                 any(AuditServiceConfiguration.class),
                 topicSchemasCaptor.capture(),
-                any(Set.class));
+                any(Set.class),
+                any(MetricRegistry.class),
+                any(HostNameResolver.class),
+                anyMap());
 
         assertThat(topicSchemasCaptor.getValue().getTopics()).doesNotContain("customTopic");
     }
@@ -292,7 +321,10 @@ public class AuditServiceBuilderTest {
         verify(factory).newAuditService(
                 any(AuditServiceConfiguration.class),
                 topicSchemasCaptor.capture(),
-                any(Set.class));
+                any(Set.class),
+                any(MetricRegistry.class),
+                any(HostNameResolver.class),
+                anyMap());
 
         assertThat(topicSchemasCaptor.getValue().getTopics()).doesNotContain("customTopic");
     }
@@ -19,6 +19,7 @@ package org.forgerock.audit;
 import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
 import static org.forgerock.audit.AuditServiceBuilder.newAuditService;
 import static org.forgerock.audit.events.EventTopicsMetaDataBuilder.coreTopicSchemas;
 import static org.forgerock.json.JsonValue.field;
@@ -31,8 +32,10 @@ import static org.forgerock.json.resource.Responses.newResourceResponse;
 import static org.forgerock.util.test.assertj.AssertJPromiseAssert.assertThat;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
@@ -47,11 +50,17 @@ import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import org.forgerock.audit.events.CompactAuditEvent;
 import org.forgerock.audit.events.EventTopicsMetaData;
 import org.forgerock.audit.events.handlers.AuditEventHandler;
+import org.forgerock.audit.events.handlers.CompactAuditEventHandler;
+import org.forgerock.audit.events.handlers.FallThroughAuditEventHandler;
 import org.forgerock.audit.events.handlers.impl.PassThroughAuditEventHandler;
 import org.forgerock.audit.events.handlers.impl.PassThroughAuditEventHandlerConfiguration;
+import org.forgerock.audit.filter.DropPolicy;
 import org.forgerock.audit.filter.FilterPolicy;
 import org.forgerock.json.JsonValue;
 import org.forgerock.json.resource.ActionResponse;
@@ -70,6 +79,9 @@ import org.forgerock.json.resource.ServiceUnavailableException;
 import org.forgerock.services.context.Context;
 import org.forgerock.services.context.RootContext;
 import org.forgerock.util.promise.Promise;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -221,6 +233,51 @@ public class AuditServiceImplTest {
         assertThat(resource.getContent().asMap()).isEqualTo(createRequest.getContent().asMap());
     }
 
+    @Test
+    public void shouldPublishTheSameCompactEventToAllCompactEventHandlers() throws Exception {
+        //given
+        final AuditServiceConfiguration configuration = getAuditServiceConfiguration(QUERY_HANDLER_NAME, "access");
+        final PassThroughAuditEventHandler queryHandler = spyPassThroughAuditEventHandler(QUERY_HANDLER_NAME);
+        final CompactAuditEventHandler firstHandler = mockCompactAuditEventHandler("firstHandler");
+        final CompactAuditEventHandler secondHandler = mockCompactAuditEventHandler("secondHandler");
+        final Set<AuditEventHandler> handlers = asSet(queryHandler, firstHandler, secondHandler);
+        final AuditService auditService = new AuditServiceImpl(configuration, eventTopicsMetaData, handlers);
+        auditService.startup();
+        final CreateRequest createRequest = makeCreateRequest();
+
+        //when
+        auditService.handleCreate(new RootContext(), createRequest);
+
+        //then
+        final ArgumentCaptor<CompactAuditEvent> firstEvent = ArgumentCaptor.forClass(CompactAuditEvent.class);
+        final ArgumentCaptor<CompactAuditEvent> secondEvent = ArgumentCaptor.forClass(CompactAuditEvent.class);
+        verify(firstHandler).publishCompactEvent(any(Context.class), eq("access"), firstEvent.capture());
+        verify(secondHandler).publishCompactEvent(any(Context.class), eq("access"), secondEvent.capture());
+        verify(firstHandler, never()).publishEvent(any(Context.class), eq("access"), any(JsonValue.class));
+        verify(queryHandler, times(1)).publishEvent(any(Context.class), eq("access"), any(JsonValue.class));
+        assertThat(firstEvent.getValue()).isSameAs(secondEvent.getValue());
+        assertThat(firstEvent.getValue().getSchema()).isSameAs(eventTopicsMetaData.getTopicSchema("access"));
+        assertThat(firstEvent.getValue().getValue()).isSameAs(createRequest.getContent());
+    }
+
+    @Test
+    public void shouldPassTheNamedFallThroughHandler() throws Exception {
+        //given
+        final AuditServiceConfiguration configuration = getAuditServiceConfiguration(QUERY_HANDLER_NAME, "access");
+        final PassThroughAuditEventHandler queryHandler = spyPassThroughAuditEventHandler(QUERY_HANDLER_NAME);
+        final FallThroughAuditEventHandler fallThroughHandler = mock(FallThroughAuditEventHandler.class);
+        given(fallThroughHandler.isEnabled()).willReturn(true);
+        given(fallThroughHandler.getName()).willReturn("recent");
+        given(fallThroughHandler.getHandledTopics()).willReturn(new HashSet<>(Arrays.asList("access")));
+        given(fallThroughHandler.getFallThroughHandlerName()).willReturn(QUERY_HANDLER_NAME);
+
+        //when
+        new AuditServiceImpl(configuration, eventTopicsMetaData, asSet(queryHandler, fallThroughHandler));
+
+        //then
+        verify(fallThroughHandler).setFallThroughHandler(queryHandler);
+    }
+
     @Test
     public void shouldDelegateReadRequestToConfiguredHandlerForQueries() throws Exception {
         //given
@@ -319,6 +376,27 @@ public class AuditServiceImplTest {
                 .isInstanceOf(BadRequestException.class);
     }
 
+    @Test
+    public void shouldReturnMetricsSnapshotOnMetricsAction() throws Exception {
+        final String topic = "access";
+        final AuditServiceConfiguration configuration = getAuditServiceConfiguration(QUERY_HANDLER_NAME, topic);
+        final PassThroughAuditEventHandler eventHandler = spyPassThroughAuditEventHandler(QUERY_HANDLER_NAME);
+        final AuditService auditService =
+                new AuditServiceImpl(configuration, eventTopicsMetaData, asSet((AuditEventHandler) eventHandler));
+        auditService.startup();
+        auditService.handleCreate(new RootContext(), makeCreateRequest(topic)).getOrThrow();
+
+        //when
+        final Promise<ActionResponse, ResourceException> promise =
+                auditService.handleAction(new RootContext(), Requests.newActionRequest("", "metrics"));
+
+        //then
+        final JsonValue metrics = promise.getOrThrow().getJsonContent();
+        assertThat(metrics.get("topic.access.events").get("count").asLong()).isEqualTo(1);
+        assertThat(metrics.get("handler." + QUERY_HANDLER_NAME + ".publish").get("count").asLong()).isEqualTo(1);
+        assertThat(metrics.get("handler." + QUERY_HANDLER_NAME + ".failures").get("count").asLong()).isEqualTo(0);
+    }
+
     @Test
     public void shouldDelegateQueryRequestToConfiguredHandlerForQueries() throws Exception {
         final String topic = "access";
@@ -541,6 +619,126 @@ public class AuditServiceImplTest {
         verify(secondHandler, times(0)).shutdown();
     }
 
+    @Test
+    public void shouldNotPublishTheEventsDroppedByTheDropPolicyOfTheirTopic() throws Exception {
+        //given
+        final AuditServiceConfiguration configuration = getAuditServiceConfiguration(QUERY_HANDLER_NAME, null);
+        final DropPolicy dropPolicy = new DropPolicy();
+        dropPolicy.setDropIf(asList("/" + FILTERED_FIELD + " eq \"value\""));
+        configuration.setDropPolicies(Collections.singletonMap("access", dropPolicy));
+        final PassThroughAuditEventHandler eventHandler = spyPassThroughAuditEventHandler(QUERY_HANDLER_NAME);
+        final AuditService auditService = new AuditServiceImpl(configuration, eventTopicsMetaData, asSet(eventHandler));
+        auditService.startup();
+
+        //when
+        final Promise<ResourceResponse, ResourceException> promise =
+                auditService.handleCreate(new RootContext(), makeCreateRequest());
+
+        //then
+        assertThat(promise.get().getContent().asMap()).isEmpty();
+        verify(eventHandler, never()).publishEvent(any(Context.class), eq("access"), any(JsonValue.class));
+    }
+
+    @Test
+    public void shouldHoldTheEventsOfAHandlerStillStartingAfterTheTimeout() throws Exception {
+        //given
+        final AuditServiceConfiguration configuration = getAuditServiceConfiguration(QUERY_HANDLER_NAME, null);
+        configuration.getHandlerStartup().setTimeout("10 milliseconds");
+        final PassThroughAuditEventHandler eventHandler = spyPassThroughAuditEventHandler(QUERY_HANDLER_NAME);
+        final CountDownLatch startupLatch = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                startupLatch.await();
+                return null;
+            }
+        }).when(eventHandler).startup();
+        final AuditService auditService = new AuditServiceImpl(configuration, eventTopicsMetaData, asSet(eventHandler));
+        auditService.startup();
+
+        //when
+        final Promise<ResourceResponse, ResourceException> promise =
+                auditService.handleCreate(new RootContext(), makeCreateRequest());
+
+        //then
+        assertThat(auditService.isRunning()).isTrue();
+        assertThat(promise.isDone()).isFalse();
+        verify(eventHandler, never()).publishEvent(any(Context.class), eq("access"), any(JsonValue.class));
+        assertThat(auditService.handleRead(new RootContext(), Requests.newReadRequest("access", "_id")))
+                .failedWithException().isInstanceOf(ServiceUnavailableException.class);
+
+        startupLatch.countDown();
+        assertThat(promise.get(5, TimeUnit.SECONDS).getId()).isNotNull();
+        verify(eventHandler).publishEvent(any(Context.class), eq("access"), any(JsonValue.class));
+        auditService.shutdown();
+    }
+
+    @Test
+    public void shouldRejectTheEventsOfAStartingHandlerOnceItsQueueIsFull() throws Exception {
+        //given
+        final AuditServiceConfiguration configuration = getAuditServiceConfiguration(QUERY_HANDLER_NAME, null);
+        configuration.getHandlerStartup().setTimeout("10 milliseconds");
+        configuration.getHandlerStartup().setQueueSize(1);
+        final PassThroughAuditEventHandler eventHandler = spyPassThroughAuditEventHandler(QUERY_HANDLER_NAME);
+        final CountDownLatch startupLatch = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                startupLatch.await();
+                return null;
+            }
+        }).when(eventHandler).startup();
+        final AuditService auditService = new AuditServiceImpl(configuration, eventTopicsMetaData, asSet(eventHandler));
+        auditService.startup();
+
+        //when
+        final Promise<ResourceResponse, ResourceException> held =
+                auditService.handleCreate(new RootContext(), makeCreateRequest());
+        final Promise<ResourceResponse, ResourceException> rejected =
+                auditService.handleCreate(new RootContext(), makeCreateRequest());
+
+        //then
+        assertThat(rejected).failedWithException().isInstanceOf(ServiceUnavailableException.class);
+        startupLatch.countDown();
+        assertThat(held.get(5, TimeUnit.SECONDS)).isNotNull();
+        auditService.shutdown();
+    }
+
+    @Test
+    public void shouldRejectTheEventsOfAHandlerWhichFailedToStart() throws Exception {
+        //given
+        final AuditServiceConfiguration configuration = getAuditServiceConfiguration(QUERY_HANDLER_NAME, null);
+        configuration.getHandlerStartup().setTimeout("10 milliseconds");
+        final PassThroughAuditEventHandler eventHandler = spyPassThroughAuditEventHandler(QUERY_HANDLER_NAME);
+        final CountDownLatch startupLatch = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                startupLatch.await();
+                throw new InternalServerErrorException("Unable to open the files");
+            }
+        }).when(eventHandler).startup();
+        final AuditService auditService = new AuditServiceImpl(configuration, eventTopicsMetaData, asSet(eventHandler));
+        auditService.startup();
+        final Promise<ResourceResponse, ResourceException> held =
+                auditService.handleCreate(new RootContext(), makeCreateRequest());
+
+        //when
+        startupLatch.countDown();
+
+        //then
+        try {
+            held.getOrThrow(5, TimeUnit.SECONDS);
+            failBecauseExceptionWasNotThrown(ServiceUnavailableException.class);
+        } catch (ResourceException e) {
+            assertThat(e).isInstanceOf(ServiceUnavailableException.class);
+        }
+        verify(eventHandler, never()).publishEvent(any(Context.class), eq("access"), any(JsonValue.class));
+        assertThat(auditService.handleRead(new RootContext(), Requests.newReadRequest("access", "_id")))
+                .failedWithException().isInstanceOf(ServiceUnavailableException.class);
+        auditService.shutdown();
+    }
+
     @Test
     public void shouldFailCreateRequestIfAuditServiceIsShutdown() throws Exception {
         final AuditService auditService = newAuditService().build();
@@ -799,6 +997,14 @@ public class AuditServiceImplTest {
         return spy(new PassThroughAuditEventHandler(configuration, eventTopicsMetaData));
     }
 
+    private CompactAuditEventHandler mockCompactAuditEventHandler(String name) {
+        final CompactAuditEventHandler handler = mock(CompactAuditEventHandler.class, name);
+        given(handler.isEnabled()).willReturn(true);
+        given(handler.getName()).willReturn(name);
+        given(handler.getHandledTopics()).willReturn(new HashSet<>(Arrays.asList("access")));
+        return handler;
+    }
+
     private Set<AuditEventHandler> asSet(AuditEventHandler... entries) {
         return new HashSet<>(Arrays.asList(entries));
 
@@ -18,9 +18,20 @@ package org.forgerock.audit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.forgerock.audit.AuditServiceImplTest.makeCreateRequest;
+import static java.util.Arrays.asList;
+import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.*;
 
+import org.forgerock.audit.events.EventTopicsMetaData;
+import org.forgerock.audit.events.handlers.AuditEventHandler;
+import org.forgerock.audit.events.handlers.AuditEventHandlerFactory;
+import org.forgerock.audit.events.handlers.EventHandlerConfiguration;
+import org.forgerock.audit.events.handlers.impl.PassThroughAuditEventHandler;
+import org.forgerock.audit.events.handlers.impl.PassThroughAuditEventHandlerConfiguration;
+import org.forgerock.audit.metrics.InMemoryMetricRegistry;
+import org.forgerock.audit.metrics.MetricRegistry;
 import org.forgerock.json.resource.CreateRequest;
+import org.forgerock.json.resource.InternalServerErrorException;
 import org.forgerock.json.resource.ResourceException;
 import org.forgerock.json.resource.ResourceResponse;
 import org.forgerock.json.resource.ServiceUnavailableException;
@@ -31,6 +42,8 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.testng.annotations.Test;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -391,4 +404,117 @@ public class AuditServiceProxyTest {
         // then
         // throw IllegalStateException
     }
+
+    @Test
+    public void shouldCarryOverTheUnchangedHandlersWhenAssigningNewDelegate() throws Exception {
+        // given
+        final DependencyProviderBase dependencyProvider = new DependencyProviderBase();
+        dependencyProvider.register(MetricRegistry.class, new InMemoryMetricRegistry());
+        final PassThroughAuditEventHandler unchangedHandler = mockHandler("unchanged");
+        final PassThroughAuditEventHandler changedHandler = mockHandler("changed");
+        final AuditServiceProxy auditServiceProxy = new AuditServiceProxy(buildAuditService(dependencyProvider,
+                asList(unchangedHandler, changedHandler),
+                configuration("unchanged", "a"), configuration("changed", "a")));
+        auditServiceProxy.startup();
+        final PassThroughAuditEventHandler newUnchangedHandler = mockHandler("unchanged");
+        final PassThroughAuditEventHandler newChangedHandler = mockHandler("changed");
+        final AuditService newAuditService = buildAuditService(dependencyProvider,
+                asList(newUnchangedHandler, newChangedHandler),
+                configuration("unchanged", "a"), configuration("changed", "b"));
+
+        // when
+        auditServiceProxy.setDelegate(newAuditService);
+
+        // then
+        verify(unchangedHandler, never()).shutdown();
+        verify(newUnchangedHandler, never()).startup();
+        verify(newUnchangedHandler).shutdown();
+        verify(changedHandler).shutdown();
+        verify(newChangedHandler).startup();
+        assertThat(auditServiceProxy.getRegisteredHandler("unchanged")).isSameAs(unchangedHandler);
+        assertThat(auditServiceProxy.getRegisteredHandler("changed")).isSameAs(newChangedHandler);
+    }
+
+    @Test
+    public void shouldCarryOverTheUnchangedHandlersWithTheDefaultMetricRegistry() throws Exception {
+        // given
+        final DependencyProviderBase dependencyProvider = new DependencyProviderBase();
+        final PassThroughAuditEventHandler unchangedHandler = mockHandler("unchanged");
+        final AuditServiceProxy auditServiceProxy = new AuditServiceProxy(buildAuditService(dependencyProvider,
+                asList(unchangedHandler), configuration("unchanged", "a")));
+        auditServiceProxy.startup();
+        final PassThroughAuditEventHandler newUnchangedHandler = mockHandler("unchanged");
+        final AuditService newAuditService = buildAuditService(new DependencyProviderBase(),
+                asList(newUnchangedHandler), configuration("unchanged", "a"));
+
+        // when
+        auditServiceProxy.setDelegate(newAuditService);
+
+        // then
+        verify(unchangedHandler, never()).shutdown();
+        verify(newUnchangedHandler, never()).startup();
+        assertThat(auditServiceProxy.getRegisteredHandler("unchanged")).isSameAs(unchangedHandler);
+    }
+
+    @Test
+    public void shouldNotCarryOverAHandlerWhichFailedToStart() throws Exception {
+        // given
+        final DependencyProviderBase dependencyProvider = new DependencyProviderBase();
+        dependencyProvider.register(MetricRegistry.class, new InMemoryMetricRegistry());
+        final PassThroughAuditEventHandler failedHandler = mockHandler("unchanged");
+        doThrow(new InternalServerErrorException("Unable to start")).when(failedHandler).startup();
+        final AuditServiceProxy auditServiceProxy = new AuditServiceProxy(buildAuditService(dependencyProvider,
+                asList(failedHandler), configuration("unchanged", "a")));
+        auditServiceProxy.startup();
+        final PassThroughAuditEventHandler newHandler = mockHandler("unchanged");
+        final AuditService newAuditService = buildAuditService(dependencyProvider,
+                asList(newHandler), configuration("unchanged", "a"));
+
+        // when
+        auditServiceProxy.setDelegate(newAuditService);
+
+        // then
+        verify(failedHandler).shutdown();
+        verify(newHandler).startup();
+        assertThat(auditServiceProxy.getRegisteredHandler("unchanged")).isSameAs(newHandler);
+    }
+
+    private static AuditService buildAuditService(DependencyProvider dependencyProvider,
+            final List<? extends AuditEventHandler> handlers,
+            PassThroughAuditEventHandlerConfiguration... configurations) throws AuditException {
+        final AuditServiceBuilder builder = AuditServiceBuilder.newAuditService()
+                .withDependencyProvider(dependencyProvider)
+                .withAuditEventHandlerFactory(new AuditEventHandlerFactory() {
+                    @Override
+                    public <T extends AuditEventHandler> T create(String name, Class<T> clazz,
+                            EventHandlerConfiguration configuration, EventTopicsMetaData eventTopicsMetaData) {
+                        for (AuditEventHandler handler : handlers) {
+                            if (handler.getName().equals(name)) {
+                                return clazz.cast(handler);
+                            }
+                        }
+                        return null;
+                    }
+                });
+        for (PassThroughAuditEventHandlerConfiguration configuration : configurations) {
+            builder.withAuditEventHandler(PassThroughAuditEventHandler.class, configuration);
+        }
+        return builder.build();
+    }
+
+    private static PassThroughAuditEventHandlerConfiguration configuration(String name, String message) {
+        final PassThroughAuditEventHandlerConfiguration configuration = new PassThroughAuditEventHandlerConfiguration();
+        configuration.setName(name);
+        configuration.setTopics(Collections.singleton("access"));
+        configuration.setMessage(message);
+        return configuration;
+    }
+
+    private static PassThroughAuditEventHandler mockHandler(String name) {
+        final PassThroughAuditEventHandler handler = mock(PassThroughAuditEventHandler.class, name);
+        given(handler.isEnabled()).willReturn(true);
+        given(handler.getName()).willReturn(name);
+        given(handler.getHandledTopics()).willReturn(Collections.singleton("access"));
+        return handler;
+    }
 }
@@ -0,0 +1,199 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.audit.events.AccessAuditEventBuilder.CLIENT;
+import static org.forgerock.audit.events.AccessAuditEventBuilder.HOST;
+import static org.forgerock.audit.events.AccessAuditEventBuilder.IP;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.forgerock.audit.AuditServiceConfiguration.ReverseDnsLookup;
+import org.forgerock.audit.metrics.InMemoryMetricRegistry;
+import org.forgerock.audit.metrics.MetricRegistry;
+import org.forgerock.audit.providers.HostNameResolver;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.util.Function;
+import org.forgerock.util.promise.Promise;
+import org.forgerock.util.time.TimeService;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class ReverseDnsEnricherTest {
+
+    private StubResolver resolver;
+    private MetricRegistry metricRegistry;
+    private ReverseDnsEnricher enricher;
+
+    @BeforeMethod
+    public void setUp() {
+        resolver = new StubResolver();
+        resolver.hostNames.put("10.0.0.1", "host1.example.com");
+        metricRegistry = new InMemoryMetricRegistry();
+        enricher = new ReverseDnsEnricher(new ReverseDnsLookup(), resolver, metricRegistry);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        enricher.shutdown();
+    }
+
+    @Test
+    public void shouldFillTheClientHost() throws Exception {
+        JsonValue event = enricher.enrich(markedEvent("10.0.0.1")).get(1, TimeUnit.SECONDS);
+
+        assertThat(event.get(CLIENT).get(HOST).asString()).isEqualTo("host1.example.com");
+    }
+
+    @Test
+    public void shouldLeaveEventsWithoutMarkerUnchanged() throws Exception {
+        JsonValue event = json(object(field(CLIENT, object(field(IP, "10.0.0.1")))));
+
+        Promise<JsonValue, ResourceException> promise = enricher.enrich(event);
+
+        assertThat(promise.isDone()).isTrue();
+        assertThat(promise.get().get(CLIENT).isDefined(HOST)).isFalse();
+        assertThat(resolver.lookups.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldServeCachedHostsWithoutLookup() throws Exception {
+        enricher.enrich(markedEvent("10.0.0.1")).get(1, TimeUnit.SECONDS);
+
+        Promise<JsonValue, ResourceException> promise = enricher.enrich(markedEvent("10.0.0.1"));
+
+        assertThat(promise.isDone()).isTrue();
+        assertThat(promise.get().get(CLIENT).get(HOST).asString()).isEqualTo("host1.example.com");
+        assertThat(resolver.lookups.get()).isEqualTo(1);
+        assertThat(metricRegistry.counter("enrichment.dns.hits").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldCacheAddressesWithoutHostName() throws Exception {
+        JsonValue event = enricher.enrich(markedEvent("10.0.0.2")).get(1, TimeUnit.SECONDS);
+        Promise<JsonValue, ResourceException> promise = enricher.enrich(markedEvent("10.0.0.2"));
+
+        assertThat(event.get(CLIENT).isDefined(HOST)).isFalse();
+        assertThat(promise.isDone()).isTrue();
+        assertThat(promise.get().get(CLIENT).isDefined(HOST)).isFalse();
+        assertThat(resolver.lookups.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldLookupAgainOnceTheCachedHostExpires() throws Exception {
+        TimeService time = mock(TimeService.class);
+        when(time.now()).thenReturn(0L);
+        ReverseDnsLookup config = new ReverseDnsLookup();
+        config.setCacheTtl("1 minute");
+        enricher.shutdown();
+        enricher = new ReverseDnsEnricher(config, resolver, metricRegistry, time);
+
+        enricher.enrich(markedEvent("10.0.0.1")).get(1, TimeUnit.SECONDS);
+        when(time.now()).thenReturn(TimeUnit.MINUTES.toMillis(1));
+        JsonValue event = enricher.enrich(markedEvent("10.0.0.1")).get(1, TimeUnit.SECONDS);
+
+        assertThat(event.get(CLIENT).get(HOST).asString()).isEqualTo("host1.example.com");
+        assertThat(resolver.lookups.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldReleaseTheEventWithoutHostAtTheDeadline() throws Exception {
+        ReverseDnsLookup config = new ReverseDnsLookup();
+        config.setDeadline("10 milliseconds");
+        enricher.shutdown();
+        enricher = new ReverseDnsEnricher(config, resolver, metricRegistry);
+        resolver.blocked = new CountDownLatch(1);
+
+        try {
+            JsonValue event = enricher.enrich(markedEvent("10.0.0.1")).get(1, TimeUnit.SECONDS);
+
+            assertThat(event.get(CLIENT).isDefined(HOST)).isFalse();
+            assertThat(metricRegistry.counter("enrichment.dns.timeouts").getCount()).isEqualTo(1);
+        } finally {
+            resolver.blocked.countDown();
+        }
+    }
+
+    @Test
+    public void shouldReleaseTheEventsOnTheReleaseThreads() throws Exception {
+        final AtomicReference<String> releasingThread = new AtomicReference<>();
+
+        enricher.enrich(markedEvent("10.0.0.1")).then(new Function<JsonValue, JsonValue, ResourceException>() {
+            @Override
+            public JsonValue apply(JsonValue event) {
+                releasingThread.set(Thread.currentThread().getName());
+                return event;
+            }
+        }).get(1, TimeUnit.SECONDS);
+
+        assertThat(releasingThread.get()).startsWith("Audit reverse DNS release");
+    }
+
+    @Test
+    public void shouldNotLookupWhenDisabled() throws Exception {
+        ReverseDnsLookup config = new ReverseDnsLookup();
+        config.setEnabled(false);
+        enricher.shutdown();
+        enricher = new ReverseDnsEnricher(config, resolver, metricRegistry);
+
+        Promise<JsonValue, ResourceException> promise = enricher.enrich(markedEvent("10.0.0.1"));
+
+        assertThat(promise.isDone()).isTrue();
+        assertThat(promise.get().get(CLIENT).isDefined(HOST)).isFalse();
+        assertThat(resolver.lookups.get()).isEqualTo(0);
+    }
+
+    private static JsonValue markedEvent(String ip) {
+        return json(object(field(CLIENT, object(field(IP, ip), field(HOST, null)))));
+    }
+
+    /**
+     * Resolves the host names of a fixed set of addresses, optionally waiting for a latch to be released.
+     */
+    private static final class StubResolver implements HostNameResolver {
+
+        private final Map<String, String> hostNames = new ConcurrentHashMap<>();
+        private final AtomicInteger lookups = new AtomicInteger();
+        private volatile CountDownLatch blocked;
+
+        @Override
+        public String resolveHostName(String ip) {
+            lookups.incrementAndGet();
+            if (blocked != null) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return hostNames.get(ip);
+        }
+    }
+}
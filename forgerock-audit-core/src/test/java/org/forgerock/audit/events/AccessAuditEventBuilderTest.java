@@ -251,6 +251,31 @@ public class AccessAuditEventBuilderTest {
         assertThat(value.get(CLIENT).get(PORT).asInteger()).isEqualTo(55646);
     }
 
+    @Test
+    public void shouldMarkClientHostForReverseDnsLookup() {
+        AuditEvent event = productAccessEvent()
+                .eventName("IDM-sync-10")
+                .transactionId("transactionId")
+                .client("168.0.0.10", 55646)
+                .withReverseDnsLookup()
+                .toEvent();
+
+        JsonValue client = event.getValue().get(CLIENT);
+        assertThat(client.isDefined(HOST)).isTrue();
+        assertThat(client.get(HOST).isNull()).isTrue();
+    }
+
+    @Test
+    public void shouldNotMarkClientHostWithoutReverseDnsLookup() {
+        AuditEvent event = productAccessEvent()
+                .eventName("IDM-sync-10")
+                .transactionId("transactionId")
+                .client("168.0.0.10", 55646)
+                .toEvent();
+
+        assertThat(event.getValue().get(CLIENT).isDefined(HOST)).isFalse();
+    }
+
     @Test
     public void canPopulateServerFromClientContext() throws Exception {
         // Given
@@ -0,0 +1,59 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.events;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.audit.events.EventTopicsMetaDataBuilder.coreTopicSchemas;
+import static org.forgerock.json.JsonValue.array;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
+import org.forgerock.json.JsonValue;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class CompactAuditEventTest {
+
+    private final TopicSchema schema = coreTopicSchemas().build().getTopicSchema("access");
+
+    @Test
+    public void shouldFillSlotsWhenWrapping() {
+        // given
+        final JsonValue event = newEvent();
+
+        // when
+        final CompactAuditEvent compactEvent = CompactAuditEvent.wrap(schema, event);
+
+        // then
+        assertThat(compactEvent.get(schema.getField("/_id"))).isEqualTo("id1");
+        assertThat(compactEvent.get(schema.getField("/request/protocol"))).isEqualTo("CREST");
+        assertThat(compactEvent.get(schema.getField("/request/operation"))).isNull();
+        assertThat(compactEvent.get(schema.getField("/request/detail").getIndex()))
+                .isEqualTo(event.get("request").get("detail").getObject());
+        assertThat(compactEvent.getValue()).isSameAs(event);
+    }
+
+    private static JsonValue newEvent() {
+        return json(object(
+                field("_id", "id1"),
+                field("request", object(
+                        field("protocol", "CREST"),
+                        field("detail", object(field("code", 200))),
+                        field("undeclared", "value"))),
+                field("extension", array("a", "b"))));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.events;
+
+import static java.util.Collections.singleton;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.audit.events.EventTopicsMetaDataBuilder.coreTopicSchemas;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.forgerock.audit.util.JsonSchemaUtils;
+import org.forgerock.json.JsonPointer;
+import org.forgerock.json.JsonValue;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class TopicSchemaTest {
+
+    private final EventTopicsMetaData eventTopicsMetaData = coreTopicSchemas().build();
+
+    @Test
+    public void shouldOrderSlotsAsGeneratedJsonPointers() throws Exception {
+        // given
+        final TopicSchema schema = eventTopicsMetaData.getTopicSchema("access");
+
+        // when
+        final List<String> paths = new ArrayList<>();
+        for (TopicSchema.Field field : schema.getFields()) {
+            assertThat(field.getIndex()).isEqualTo(paths.size());
+            paths.add(field.getPath());
+        }
+
+        // then
+        assertThat(paths).containsExactlyElementsOf(JsonSchemaUtils.generateJsonPointers(
+                AuditEventHelper.getAuditEventSchema(eventTopicsMetaData.getSchema("access"))));
+        assertThat(schema.size()).isEqualTo(paths.size());
+    }
+
+    @Test
+    public void shouldResolveFieldsAndTypes() {
+        final TopicSchema schema = eventTopicsMetaData.getTopicSchema("access");
+
+        final TopicSchema.Field id = schema.getField("/_id");
+        assertThat(id.getPointer()).isEqualTo(new JsonPointer("/_id"));
+        assertThat(id.getDotNotation()).isEqualTo("_id");
+        assertThat(id.getType()).isEqualTo(AuditEventHelper.STRING_TYPE);
+        assertThat(id.isJson()).isFalse();
+        assertThat(schema.getField("_id")).isSameAs(id);
+        assertThat(schema.getField(id.getIndex())).isSameAs(id);
+
+        final TopicSchema.Field requestDetail = schema.getField("/request/detail");
+        assertThat(requestDetail.getDotNotation()).isEqualTo("request.detail");
+        assertThat(requestDetail.isJson()).isTrue();
+
+        assertThat(schema.getField("/request")).as("objects are not slots").isNull();
+        assertThat(schema.getPropertyType(new JsonPointer("/request"))).isEqualTo(AuditEventHelper.OBJECT_TYPE);
+        assertThat(schema.getField("/unknown")).isNull();
+        assertThat(schema.hasProperty(new JsonPointer("/unknown"))).isFalse();
+    }
+
+    @Test
+    public void shouldExtractValuesBySlot() {
+        final TopicSchema schema = eventTopicsMetaData.getTopicSchema("access");
+        final JsonValue event = json(object(field("_id", "id1"), field("request", object(field("protocol", "CREST")))));
+
+        assertThat(schema.getField("/_id").getValue(event).asString()).isEqualTo("id1");
+        assertThat(schema.getField("/request/protocol").getValue(event).asString()).isEqualTo("CREST");
+        assertThat(schema.getField("/request/operation").getValue(event)).isNull();
+    }
+
+    @Test
+    public void shouldShareCompiledSchemasWithFilteredMetaData() {
+        final EventTopicsMetaData filtered = eventTopicsMetaData.filter(singleton("access"));
+
+        assertThat(filtered.getTopicSchema("access")).isSameAs(eventTopicsMetaData.getTopicSchema("access"));
+        assertThat(filtered.getTopicSchema("activity")).isNull();
+    }
+
+    @Test
+    public void shouldCompileMetaDataWithoutSchemaToNoFields() {
+        assertThat(TopicSchema.compile("topic", json(object())).size()).isZero();
+        assertThat(TopicSchema.compile("topic", null).getFields()).isEmpty();
+    }
+}
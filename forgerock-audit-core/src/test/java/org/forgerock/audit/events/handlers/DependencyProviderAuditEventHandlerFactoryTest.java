@@ -0,0 +1,154 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+
+package org.forgerock.audit.events.handlers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.audit.events.EventTopicsMetaDataBuilder.coreTopicSchemas;
+
+import java.util.Collections;
+
+import org.forgerock.audit.DependencyProvider;
+import org.forgerock.audit.events.EventTopicsMetaData;
+import org.forgerock.audit.events.handlers.impl.PassThroughAuditEventHandler;
+import org.forgerock.audit.events.handlers.impl.PassThroughAuditEventHandlerConfiguration;
+import org.forgerock.audit.metrics.InMemoryMetricRegistry;
+import org.forgerock.audit.metrics.MetricRegistry;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class DependencyProviderAuditEventHandlerFactoryTest {
+
+    private final MetricRegistry metricRegistry = new InMemoryMetricRegistry();
+    private final DependencyProvider dependencyProvider = new DependencyProvider() {
+        @Override
+        public <T> T getDependency(Class<T> clazz) throws ClassNotFoundException {
+            if (clazz.equals(MetricRegistry.class)) {
+                return clazz.cast(metricRegistry);
+            }
+            throw new ClassNotFoundException(clazz.getName());
+        }
+    };
+
+    private DependencyProviderAuditEventHandlerFactory factory;
+    private EventTopicsMetaData eventTopicsMetaData;
+    private PassThroughAuditEventHandlerConfiguration configuration;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        factory = new DependencyProviderAuditEventHandlerFactory(dependencyProvider);
+        eventTopicsMetaData = coreTopicSchemas().build();
+        configuration = new PassThroughAuditEventHandlerConfiguration();
+        configuration.setName("passthrough");
+        configuration.setTopics(Collections.singleton("access"));
+    }
+
+    @Test
+    public void shouldCreateHandlersThroughTheirInjectableConstructor() throws Exception {
+        PassThroughAuditEventHandler first =
+                factory.create("passthrough", PassThroughAuditEventHandler.class, configuration, eventTopicsMetaData);
+        PassThroughAuditEventHandler second =
+                factory.create("passthrough", PassThroughAuditEventHandler.class, configuration, eventTopicsMetaData);
+
+        assertThat(first.getName()).isEqualTo("passthrough");
+        assertThat(second).isNotSameAs(first);
+    }
+
+    @Test
+    public void shouldInjectAvailableDependenciesAndNullForMissingOnes() throws Exception {
+        DependentAuditEventHandler handler =
+                factory.create("dependent", DependentAuditEventHandler.class, configuration, eventTopicsMetaData);
+
+        assertThat(handler.name).isEqualTo("dependent");
+        assertThat(handler.metricRegistry).isSameAs(metricRegistry);
+        assertThat(handler.missing).isNull();
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void shouldRejectHandlersWithoutInjectableConstructor() throws Exception {
+        factory.create("ambiguous", AmbiguousAuditEventHandler.class, configuration, eventTopicsMetaData);
+    }
+
+    @Test
+    public void shouldCreateHandlersThroughTheirRegisteredProvider() throws Exception {
+        assertThat(AuditEventHandlerProviders.getProvider(ProvidedAuditEventHandler.class))
+                .isInstanceOf(ProvidedAuditEventHandlerProvider.class);
+        assertThat(AuditEventHandlerProviders.getProvider(PassThroughAuditEventHandler.class)).isNull();
+
+        ProvidedAuditEventHandler handler =
+                factory.create("provided", ProvidedAuditEventHandler.class, configuration, eventTopicsMetaData);
+
+        assertThat(handler.getName()).isEqualTo("passthrough");
+        assertThat(handler.metricRegistry).isSameAs(metricRegistry);
+    }
+
+    public static class DependentAuditEventHandler extends PassThroughAuditEventHandler {
+        private final String name;
+        private final MetricRegistry metricRegistry;
+        private final Runnable missing;
+
+        public DependentAuditEventHandler(PassThroughAuditEventHandlerConfiguration configuration,
+                EventTopicsMetaData eventTopicsMetaData, String name, MetricRegistry metricRegistry,
+                Runnable missing) {
+            super(configuration, eventTopicsMetaData);
+            this.name = name;
+            this.metricRegistry = metricRegistry;
+            this.missing = missing;
+        }
+    }
+
+    public static class AmbiguousAuditEventHandler extends PassThroughAuditEventHandler {
+        public AmbiguousAuditEventHandler(PassThroughAuditEventHandlerConfiguration configuration,
+                EventTopicsMetaData eventTopicsMetaData) {
+            super(configuration, eventTopicsMetaData);
+        }
+
+        public AmbiguousAuditEventHandler(PassThroughAuditEventHandlerConfiguration configuration) {
+            super(configuration, null);
+        }
+    }
+
+    /** Has no injectable constructor, so it can only be created by its provider. */
+    public static class ProvidedAuditEventHandler extends PassThroughAuditEventHandler {
+        private final MetricRegistry metricRegistry;
+
+        public ProvidedAuditEventHandler(PassThroughAuditEventHandlerConfiguration configuration,
+                EventTopicsMetaData eventTopicsMetaData, MetricRegistry metricRegistry) {
+            super(configuration, eventTopicsMetaData);
+            this.metricRegistry = metricRegistry;
+        }
+
+        public ProvidedAuditEventHandler(PassThroughAuditEventHandlerConfiguration configuration) {
+            this(configuration, null, null);
+        }
+    }
+
+    public static class ProvidedAuditEventHandlerProvider
+            extends AuditEventHandlerProvider<ProvidedAuditEventHandler, PassThroughAuditEventHandlerConfiguration> {
+
+        public ProvidedAuditEventHandlerProvider() {
+            super(ProvidedAuditEventHandler.class, PassThroughAuditEventHandlerConfiguration.class);
+        }
+
+        @Override
+        protected ProvidedAuditEventHandler newHandler(PassThroughAuditEventHandlerConfiguration configuration,
+                EventTopicsMetaData eventTopicsMetaData, DependencyProvider dependencyProvider) {
+            return new ProvidedAuditEventHandler(configuration, eventTopicsMetaData,
+                    getDependency(dependencyProvider, MetricRegistry.class));
+        }
+    }
+}
@@ -22,9 +22,14 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.util.Files.newFile;
 import static org.assertj.core.util.Files.temporaryFolderPath;
 import static org.assertj.core.util.Strings.concat;
+import static org.forgerock.audit.util.ArchiveCompression.getUncompressedFile;
+import static org.forgerock.audit.util.ArchiveCompression.isCompressed;
+import static org.forgerock.audit.util.ArchiveCompression.openArchive;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.Collections;
@@ -290,6 +295,77 @@ public class RotatableWriterTest {
         assertThat(rotatableWriter.getBytesWritten()).isEqualTo(0L);
     }
 
+    @Test
+    public void testRotationWithSegmentWriter() throws Exception {
+        // given
+        final File file = getTempFile();
+        final String prefix = "testRotationWithSegmentWriter";
+        final File nextSegment = new File(file.getParentFile(), "." + file.getName() + ".next");
+        final FileBasedEventHandlerConfiguration configuration = new FileBasedEventHandlerConfiguration();
+        configuration.getFileRotation().setRotationEnabled(true);
+        configuration.getFileRotation().setSegmentWriterEnabled(true);
+        configuration.getFileRotation().setRotationFilePrefix(prefix);
+        configuration.getFileRotation().setRotationFileSuffix(ROTATION_FILE_SUFFIX);
+        rotatableWriter = new RotatableWriter(file, configuration, true);
+        rotatableWriter.write("before");
+        rotatableWriter.flush();
+
+        // when
+        rotatableWriter.forceRotation();
+        rotatableWriter.write("after");
+        rotatableWriter.flush();
+
+        // then
+        final Set<File> historicalFiles = getAllHistoricalFiles(file, prefix, 1, new HashSet<File>());
+        assertThat(historicalFiles).hasSize(1);
+        assertThat(historicalFiles.iterator().next()).hasContent("before");
+        assertThat(file).hasContent("after");
+        assertThat(rotatableWriter.getBytesWritten()).isEqualTo(5L);
+
+        // when
+        rotatableWriter.close();
+        rotatableWriter = null;
+
+        // then
+        assertThat(nextSegment).doesNotExist();
+    }
+
+    @Test
+    public void testRotationWithArchiveCompression() throws Exception {
+        // given
+        final File file = getTempFile();
+        final String prefix = "testRotationWithArchiveCompression";
+        final FileBasedEventHandlerConfiguration configuration = new FileBasedEventHandlerConfiguration();
+        configuration.getFileRotation().setRotationEnabled(true);
+        configuration.getFileRotation().setArchiveCompressionEnabled(true);
+        configuration.getFileRotation().setRotationFilePrefix(prefix);
+        configuration.getFileRotation().setRotationFileSuffix(ROTATION_FILE_SUFFIX);
+        rotatableWriter = new RotatableWriter(file, configuration, true);
+        rotatableWriter.write("before");
+        rotatableWriter.flush();
+
+        // when
+        rotatableWriter.forceRotation();
+        rotatableWriter.write("after");
+        rotatableWriter.flush();
+
+        // then
+        Set<File> historicalFiles = getAllHistoricalFiles(file, prefix, 1, new HashSet<File>());
+        for (int iteration = 0; iteration < 20 && !isCompressed(historicalFiles.iterator().next()); iteration++) {
+            Thread.sleep(50);
+            historicalFiles = getRetainedHistoricalFiles(file, prefix);
+        }
+        assertThat(historicalFiles).hasSize(1);
+        final File archive = historicalFiles.iterator().next();
+        assertThat(isCompressed(archive)).isTrue();
+        assertThat(getUncompressedFile(archive)).doesNotExist();
+        try (InputStream in = openArchive(archive)) {
+            final byte[] content = new byte[16];
+            assertThat(new String(content, 0, in.read(content), StandardCharsets.UTF_8)).isEqualTo("before");
+        }
+        assertThat(file).hasContent("after");
+    }
+
     @Test
     public void testAutomaticallyEvaluatesPolicesPeriodicallyIfRotationIntervalSpecified() throws Exception {
         // given
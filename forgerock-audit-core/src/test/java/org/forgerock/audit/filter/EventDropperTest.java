@@ -0,0 +1,147 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+
+package org.forgerock.audit.filter;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonMap;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
+import org.forgerock.audit.filter.DropPolicy.RateLimit;
+import org.forgerock.audit.metrics.InMemoryMetricRegistry;
+import org.forgerock.json.JsonValue;
+import org.testng.annotations.Test;
+
+public class EventDropperTest {
+
+    private final InMemoryMetricRegistry metricRegistry = new InMemoryMetricRegistry();
+
+    @Test
+    public void testDropsTheEventsMatchingAFilter() {
+        // given
+        final DropPolicy policy = new DropPolicy();
+        policy.setDropIf(asList("/request/operation eq \"HEALTHCHECK\""));
+        final EventDropper dropper = newDropper("access", policy);
+
+        // when / then
+        assertThat(dropper.dropEvent("access", createEvent("tx1", "HEALTHCHECK"))).isTrue();
+        assertThat(dropper.dropEvent("access", createEvent("tx1", "READ"))).isFalse();
+        assertThat(dropper.dropEvent("activity", createEvent("tx1", "HEALTHCHECK"))).isFalse();
+        assertThat(droppedCount("topic.access.dropped.predicate")).isEqualTo(1);
+    }
+
+    @Test
+    public void testKeepsTheEventsWithoutTheFilteredField() {
+        // given
+        final DropPolicy policy = new DropPolicy();
+        policy.setDropIf(asList("/request/operation eq \"HEALTHCHECK\""));
+        final EventDropper dropper = newDropper("access", policy);
+        final JsonValue event = json(object(
+                field("transactionId", "tx1"),
+                field("timestamp", "2015-01-01T00:00:00.000Z")));
+
+        // when / then
+        assertThat(dropper.dropEvent("access", event)).isFalse();
+        assertThat(droppedCount("topic.access.dropped.predicate")).isEqualTo(0);
+    }
+
+    @Test
+    public void testSamplesTheEventsOfATransactionTogether() {
+        // given
+        final DropPolicy policy = new DropPolicy();
+        policy.setSampleOneIn(4);
+        final EventDropper dropper = newDropper("access", policy);
+
+        // when
+        int kept = 0;
+        for (int i = 0; i < 1000; i++) {
+            final String transactionId = "tx" + i;
+            final boolean dropped = dropper.dropEvent("access", createEvent(transactionId, "READ"));
+            assertThat(dropper.dropEvent("access", createEvent(transactionId, "UPDATE"))).isEqualTo(dropped);
+            assertThat(dropper.dropEvent("access", createEvent(transactionId + "/0", "READ"))).isEqualTo(dropped);
+            kept += dropped ? 0 : 1;
+        }
+
+        // then
+        assertThat(kept).isBetween(150, 350);
+        assertThat(droppedCount("topic.access.dropped.sampled")).isEqualTo(3 * (1000 - kept));
+    }
+
+    @Test
+    public void testKeepsNoTransactionWithAZeroSampleRate() {
+        // given
+        final DropPolicy policy = new DropPolicy();
+        policy.setSampleRate(0);
+        final EventDropper dropper = newDropper("access", policy);
+
+        // when / then
+        assertThat(dropper.dropEvent("access", createEvent("tx1", "READ"))).isTrue();
+        assertThat(dropper.dropEvent("access", createEvent("tx2", "READ"))).isTrue();
+    }
+
+    @Test
+    public void testDropsTheEventsExceedingTheRateLimitOfTheTopic() {
+        // given
+        final DropPolicy policy = new DropPolicy();
+        policy.setRateLimit(createRateLimit(0.001, 2));
+        final EventDropper dropper = newDropper("access", policy);
+
+        // when / then
+        assertThat(dropper.dropEvent("access", createEvent("tx1", "READ"))).isFalse();
+        assertThat(dropper.dropEvent("access", createEvent("tx2", "READ"))).isFalse();
+        assertThat(dropper.dropEvent("access", createEvent("tx3", "READ"))).isTrue();
+        assertThat(droppedCount("topic.access.dropped.rateLimited")).isEqualTo(1);
+    }
+
+    @Test
+    public void testDropsTheEventsExceedingTheRateLimitOfAHandler() {
+        // given
+        final DropPolicy policy = new DropPolicy();
+        policy.setHandlerRateLimits(singletonMap("syslog", createRateLimit(0.001, 1)));
+        final EventDropper dropper = newDropper("access", policy);
+
+        // when / then
+        assertThat(dropper.dropEventForHandler("access", "syslog")).isFalse();
+        assertThat(dropper.dropEventForHandler("access", "syslog")).isTrue();
+        assertThat(dropper.dropEventForHandler("access", "csv")).isFalse();
+        assertThat(droppedCount("handler.syslog.dropped.rateLimited")).isEqualTo(1);
+    }
+
+    private EventDropper newDropper(String topic, DropPolicy policy) {
+        return new EventDropper(singletonMap(topic, policy), asList("access", "activity"), metricRegistry);
+    }
+
+    private long droppedCount(String name) {
+        return metricRegistry.snapshot().get(name).get("count").asLong();
+    }
+
+    private static RateLimit createRateLimit(double eventsPerSecond, int burst) {
+        final RateLimit rateLimit = new RateLimit();
+        rateLimit.setEventsPerSecond(eventsPerSecond);
+        rateLimit.setBurst(burst);
+        return rateLimit;
+    }
+
+    private static JsonValue createEvent(String transactionId, String operation) {
+        return json(object(
+                field("transactionId", transactionId),
+                field("timestamp", "2015-01-01T00:00:00.000Z"),
+                field("request", object(field("operation", operation)))));
+    }
+}
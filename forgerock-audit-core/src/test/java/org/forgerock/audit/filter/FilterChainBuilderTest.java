@@ -0,0 +1,202 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.filter;
+
+import static java.util.Arrays.asList;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.json.test.assertj.AssertJJsonValueAssert.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.assertj.core.api.Assertions;
+import org.forgerock.json.JsonPointer;
+import org.forgerock.json.JsonValue;
+import org.forgerock.util.encode.Base64;
+import org.testng.annotations.Test;
+
+public class FilterChainBuilderTest {
+
+    @Test
+    public void testMergesTheExclusionsOfAllPolicies() {
+        // given
+        final Map<String, FilterPolicy> policies = new LinkedHashMap<>();
+        policies.put("field", createPolicy("/topic1/request", "/topic1/request/detail"));
+        policies.put("value", createPolicy("/topic1/response/detail", "/topic1/request"));
+        final Filter filter = new FilterChainBuilder()
+                .withAuditTopics(asList("topic1", "topic2"))
+                .withPolicies(policies)
+                .build();
+        final JsonValue event = createEvent();
+
+        // when
+        filter.doFilter("topic1", event);
+
+        // then
+        assertThat(event).doesNotContain("/request");
+        assertThat(event).doesNotContain("/response/detail");
+        assertThat(event).hasString("/response/status");
+    }
+
+    @Test
+    public void testLeavesTheEventsOfUnfilteredTopicsUntouched() {
+        // given
+        final Map<String, FilterPolicy> policies = new LinkedHashMap<>();
+        policies.put("field", createPolicy("/topic1/request"));
+        final Filter filter = new FilterChainBuilder()
+                .withAuditTopics(asList("topic1", "topic2"))
+                .withPolicies(policies)
+                .build();
+        final JsonValue event = createEvent();
+
+        // when
+        filter.doFilter("topic2", event);
+        filter.doFilter("unregistered", event);
+
+        // then
+        Assertions.assertThat(event.getObject()).isEqualTo(createEvent().getObject());
+    }
+
+    @Test
+    public void testProjectsEventsOntoTheIncludedFields() {
+        // given
+        final FilterPolicy includePolicy = new FilterPolicy();
+        includePolicy.setIncludeIf(asList("/topic1/response", "/topic1/response/status"));
+        final Map<String, FilterPolicy> policies = new LinkedHashMap<>();
+        policies.put("field", includePolicy);
+        policies.put("value", createPolicy("/topic1/response/detail"));
+        final Filter filter = new FilterChainBuilder()
+                .withAuditTopics(asList("topic1"))
+                .withPolicies(policies)
+                .build();
+        final JsonValue event = createEvent();
+        event.put("_id", "id");
+        event.put("timestamp", "timestamp");
+        event.put("transactionId", "transactionId");
+
+        // when
+        filter.doFilter("topic1", event);
+
+        // then
+        Assertions.assertThat(event.keys()).containsOnly("response", "_id", "timestamp", "transactionId");
+        assertThat(event).hasString("/response/status");
+        assertThat(event).doesNotContain("/response/detail");
+    }
+
+    @Test
+    public void testHashesAndRedactsValues() {
+        // given
+        final FilterPolicy policy = new FilterPolicy();
+        policy.setHashIf(asList("/topic1/request/detail", "/topic1/request/missing"));
+        policy.setRedactIf(asList("/topic1/response/detail"));
+        final Map<String, FilterPolicy> policies = new LinkedHashMap<>();
+        policies.put("value", policy);
+        final Filter filter = new FilterChainBuilder()
+                .withAuditTopics(asList("topic1"))
+                .withPolicies(policies)
+                .build();
+        final JsonValue event = createEvent();
+        final JsonValue otherEvent = createEvent();
+
+        // when
+        filter.doFilter("topic1", event);
+        filter.doFilter("topic1", otherEvent);
+
+        // then
+        Assertions.assertThat(stringAt(event, "/request/detail")).isNotEqualTo("value");
+        Assertions.assertThat(stringAt(event, "/request/detail")).isEqualTo(stringAt(otherEvent, "/request/detail"));
+        assertThat(event).doesNotContain("/request/missing");
+        Assertions.assertThat(stringAt(event, "/response/detail")).isEqualTo(TopicFilter.REDACTED_VALUE);
+        Assertions.assertThat(stringAt(event, "/response/status")).isEqualTo("value");
+    }
+
+    @Test
+    public void testHashesValuesWithTheConfiguredKey() throws Exception {
+        // given
+        final byte[] key = "secret".getBytes(StandardCharsets.UTF_8);
+        final Filter filter = createHashFilter(Base64.encode(key));
+        final Filter restartedFilter = createHashFilter(Base64.encode(key));
+        final Filter otherKeyFilter = createHashFilter(Base64.encode("other".getBytes(StandardCharsets.UTF_8)));
+        final JsonValue event = createEvent();
+        final JsonValue restartedEvent = createEvent();
+        final JsonValue otherKeyEvent = createEvent();
+
+        // when
+        filter.doFilter("topic1", event);
+        restartedFilter.doFilter("topic1", restartedEvent);
+        otherKeyFilter.doFilter("topic1", otherKeyEvent);
+
+        // then
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        final String expectedHash = Base64.encode(mac.doFinal("value".getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertThat(stringAt(event, "/request/detail")).isEqualTo(expectedHash);
+        Assertions.assertThat(stringAt(restartedEvent, "/request/detail")).isEqualTo(expectedHash);
+        Assertions.assertThat(stringAt(otherKeyEvent, "/request/detail")).isNotEqualTo(expectedHash);
+    }
+
+    @Test
+    public void testHashesValuesWithTheSameRandomKeyWhenNoneIsConfigured() {
+        // given
+        final Filter filter = createHashFilter(null);
+        final Filter invalidKeyFilter = createHashFilter("not base64!");
+        final JsonValue event = createEvent();
+        final JsonValue invalidKeyEvent = createEvent();
+
+        // when
+        filter.doFilter("topic1", event);
+        invalidKeyFilter.doFilter("topic1", invalidKeyEvent);
+
+        // then
+        Assertions.assertThat(stringAt(event, "/request/detail")).isNotEqualTo("value");
+        Assertions.assertThat(stringAt(event, "/request/detail"))
+                .isEqualTo(stringAt(invalidKeyEvent, "/request/detail"));
+    }
+
+    private static Filter createHashFilter(final String hashKey) {
+        final FilterPolicy policy = new FilterPolicy();
+        policy.setHashIf(asList("/topic1/request/detail"));
+        final Map<String, FilterPolicy> policies = new LinkedHashMap<>();
+        policies.put("value", policy);
+        return new FilterChainBuilder()
+                .withAuditTopics(asList("topic1"))
+                .withPolicies(policies)
+                .withHashKey(hashKey)
+                .build();
+    }
+
+    private static FilterPolicy createPolicy(final String... excludeIf) {
+        final FilterPolicy filterPolicy = new FilterPolicy();
+        filterPolicy.setExcludeIf(asList(excludeIf));
+        return filterPolicy;
+    }
+
+    private static String stringAt(final JsonValue event, final String pointer) {
+        return event.get(new JsonPointer(pointer)).asString();
+    }
+
+    private static JsonValue createEvent() {
+        return json(object(
+                field("request", object(field("detail", "value"))),
+                field("response", object(field("status", "value"), field("detail", "value")))));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.forgerock.json.JsonValue;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class InMemoryMetricRegistryTest {
+
+    @Test
+    public void shouldShareTheMetricsRegisteredUnderTheSameName() {
+        // given
+        final MetricRegistry registry = new InMemoryMetricRegistry();
+
+        // when
+        registry.counter("events").increment();
+        registry.counter("events").add(2);
+
+        // then
+        assertThat(registry.counter("events").getCount()).isEqualTo(3);
+        assertThat(registry.snapshot().get("events").get("count").asLong()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldReadGaugesWhenTakingSnapshots() {
+        // given
+        final MetricRegistry registry = new InMemoryMetricRegistry();
+        final AtomicLong queueSize = new AtomicLong(5);
+        registry.registerGauge("queue", new Gauge() {
+            @Override
+            public long getValue() {
+                return queueSize.get();
+            }
+        });
+
+        // when
+        queueSize.set(7);
+
+        // then
+        assertThat(registry.snapshot().get("queue").get("value").asLong()).isEqualTo(7);
+    }
+
+    @Test
+    public void shouldApproximatePercentilesWithinTheResolutionOfTheHistogram() {
+        // given
+        final MetricRegistry registry = new InMemoryMetricRegistry();
+        final LatencyHistogram histogram = registry.latencyHistogram("publish");
+
+        // when
+        for (long duration = 1; duration <= 1000; duration++) {
+            histogram.record(duration);
+        }
+
+        // then
+        final JsonValue snapshot = registry.snapshot().get("publish");
+        assertThat(snapshot.get("count").asLong()).isEqualTo(1000);
+        assertThat(snapshot.get("min").asLong()).isEqualTo(1);
+        assertThat(snapshot.get("max").asLong()).isEqualTo(1000);
+        assertThat(snapshot.get("mean").asLong()).isEqualTo(500);
+        assertThat(snapshot.get("p50").asLong()).isBetween(500L, 520L);
+        assertThat(snapshot.get("p99").asLong()).isBetween(990L, 1000L);
+    }
+
+    @Test
+    public void shouldMapEachValueToABucketContainingIt() {
+        for (long value : new long[] { 0, 1, 31, 32, 33, 100, 1000, 123456789L, Long.MAX_VALUE }) {
+            final int index = LogLinearHistogram.bucketIndex(value);
+            assertThat(LogLinearHistogram.lowestEquivalentValue(index)).isLessThanOrEqualTo(value);
+            assertThat(LogLinearHistogram.highestEquivalentValue(index)).isGreaterThanOrEqualTo(value);
+        }
+    }
+
+    @Test
+    public void shouldPrefixTheNamesOfTheMetrics() {
+        // given
+        final MetricRegistry registry = new InMemoryMetricRegistry();
+
+        // when
+        Metrics.prefixed(registry, Metrics.name("handler", "csv")).counter("failures").increment();
+
+        // then
+        assertThat(registry.counter("handler.csv.failures").getCount()).isEqualTo(1);
+    }
+}
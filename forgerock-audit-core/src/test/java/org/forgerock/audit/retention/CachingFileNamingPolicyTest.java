@@ -0,0 +1,80 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.retention;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.testng.annotations.Test;
+
+public class CachingFileNamingPolicyTest {
+
+    @Test
+    public void testMaintainsCatalogWithoutListingFiles() throws Exception {
+        // given
+        final File oldest = createFile(10);
+        final File newest = createFile(20);
+        final FileNamingPolicy delegate = mock(FileNamingPolicy.class);
+        when(delegate.listFiles()).thenReturn(asList(oldest));
+        final CachingFileNamingPolicy policy = new CachingFileNamingPolicy(delegate);
+
+        // when
+        policy.archived(newest);
+        policy.refreshIfStale();
+
+        // then
+        assertThat(policy.listFiles()).containsExactly(oldest, newest);
+        assertThat(policy.length(newest)).isEqualTo(20);
+        verify(delegate, times(1)).listFiles();
+
+        // when
+        policy.deleted(oldest);
+
+        // then
+        assertThat(policy.listFiles()).containsExactly(newest);
+    }
+
+    @Test
+    public void testRefreshesCatalogOnceStale() throws Exception {
+        // given
+        final File archived = createFile(10);
+        final File external = createFile(30);
+        final FileNamingPolicy delegate = mock(FileNamingPolicy.class);
+        when(delegate.listFiles()).thenReturn(asList(archived), asList(archived, external));
+        final CachingFileNamingPolicy policy = new CachingFileNamingPolicy(delegate, 0L);
+
+        // when
+        policy.refreshIfStale();
+
+        // then
+        assertThat(policy.listFiles()).containsExactly(archived, external);
+        assertThat(new DiskSpaceUsedRetentionPolicy(35L).deleteFiles(policy)).hasSize(1);
+    }
+
+    private File createFile(int length) throws Exception {
+        final File file = Files.createTempFile("CachingFileNamingPolicyTest", ".log").toFile();
+        file.deleteOnExit();
+        Files.write(file.toPath(), new byte[length]);
+        return file;
+    }
+}
@@ -20,6 +20,7 @@ import static org.forgerock.util.time.Duration.duration;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -54,4 +55,20 @@ public class FixedTimeRotationPolicyTest {
             assertThat(rotate).isFalse();
         }
     }
+
+    @Test
+    public void TestNextRotationTime() {
+        // given
+        final List<Duration> rotationTimes = Arrays.asList(duration("6 hours"), duration("1 hour"));
+        final FixedTimeRotationPolicy rotationPolicy = new FixedTimeRotationPolicy(rotationTimes);
+        final DateTime midnight = new DateMidnight(2015, 6, 1).toDateTime();
+
+        // then
+        assertThat(rotationPolicy.getNextRotationTime(midnight.getMillis()))
+                .isEqualTo(midnight.plusHours(1).getMillis());
+        assertThat(rotationPolicy.getNextRotationTime(midnight.plusHours(1).getMillis()))
+                .isEqualTo(midnight.plusHours(6).getMillis());
+        assertThat(rotationPolicy.getNextRotationTime(midnight.plusHours(7).getMillis()))
+                .isEqualTo(new DateMidnight(2015, 6, 2).toDateTime().plusHours(1).getMillis());
+    }
 }
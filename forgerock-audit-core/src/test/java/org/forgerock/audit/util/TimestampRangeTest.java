@@ -0,0 +1,64 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.forgerock.json.resource.QueryFilters;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class TimestampRangeTest {
+
+    private static final String JAN = "2015-01-01T00:00:00.000Z";
+    private static final String FEB = "2015-02-01T00:00:00.000Z";
+    private static final String MAR = "2015-03-01T00:00:00.000Z";
+
+    @DataProvider
+    private Object[][] filters() {
+        return new Object[][] {
+            // filter, min timestamp, max timestamp, may match
+            { "/timestamp gt \"" + FEB + "\"", JAN, FEB, false },
+            { "/timestamp ge \"" + FEB + "\"", JAN, FEB, true },
+            { "/timestamp lt \"" + FEB + "\"", FEB, MAR, false },
+            { "/timestamp le \"" + FEB + "\"", FEB, MAR, true },
+            { "/timestamp eq \"" + MAR + "\"", JAN, FEB, false },
+            { "/timestamp gt \"" + JAN + "\" and /timestamp lt \"" + FEB + "\"", FEB, MAR, false },
+            { "/timestamp gt \"" + JAN + "\" and /transactionId eq \"tx\"", JAN, FEB, true },
+            { "/timestamp eq \"" + JAN + "\" or /timestamp eq \"" + MAR + "\"", FEB, FEB, false },
+            { "/timestamp eq \"" + JAN + "\" or /transactionId eq \"tx\"", FEB, FEB, true },
+            { "!(/timestamp gt \"" + FEB + "\")", MAR, MAR, true },
+            { "/timestamp gt \"" + JAN + "\"", null, null, false },
+            { "true", null, null, true },
+        };
+    }
+
+    @Test(dataProvider = "filters")
+    public void shouldSkipEventsOutOfTheRangeOfTheFilter(String filter, String min, String max, boolean mayMatch) {
+        final TimestampRange range = TimestampRange.of(QueryFilters.parse(filter));
+
+        assertThat(range.overlaps(min, max)).isEqualTo(mayMatch);
+    }
+
+    @Test
+    public void shouldTellIfTheRangeIsAfterATimestamp() {
+        assertThat(TimestampRange.of(QueryFilters.parse("/timestamp gt \"" + FEB + "\"")).isAfter(FEB)).isTrue();
+        assertThat(TimestampRange.of(QueryFilters.parse("/timestamp ge \"" + FEB + "\"")).isAfter(FEB)).isFalse();
+        assertThat(TimestampRange.of(QueryFilters.parse("/timestamp ge \"" + FEB + "\"")).isAfter(JAN)).isTrue();
+        assertThat(TimestampRange.of(QueryFilters.parse("/timestamp lt \"" + FEB + "\"")).isAfter(JAN)).isFalse();
+    }
+}
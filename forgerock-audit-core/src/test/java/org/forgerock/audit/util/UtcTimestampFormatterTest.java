@@ -0,0 +1,84 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class UtcTimestampFormatterTest {
+
+    @DataProvider
+    private Object[][] timestamps() {
+        return new Object[][] {
+            { 1L },
+            { 999L },
+            { 1000L },
+            { 1446459330000L },
+            { 1446459330007L },
+            { 1446459330099L },
+            { 1446459330999L },
+            { 1446459331000L },
+            { 253402300799999L }, // 9999-12-31T23:59:59.999Z
+            { -1L },
+        };
+    }
+
+    @Test(dataProvider = "timestamps")
+    public void shouldFormatLikeJodaTime(long timestamp) {
+        assertThat(UtcTimestampFormatter.format(timestamp))
+                .isEqualTo(new DateTime(timestamp, DateTimeZone.UTC).toString());
+    }
+
+    @Test
+    public void shouldFormatLateTimestampsOfThePreviousSeconds() {
+        // given
+        UtcTimestampFormatter.format(1446459331500L);
+
+        // when
+        final String late = UtcTimestampFormatter.format(1446459330999L);
+        final String latest = UtcTimestampFormatter.format(1446459331001L);
+
+        // then
+        assertThat(late).isEqualTo("2015-11-02T10:15:30.999Z");
+        assertThat(latest).isEqualTo("2015-11-02T10:15:31.001Z");
+    }
+
+    @Test
+    public void shouldCacheTheCurrentSecondAfterAFarFutureTimestamp() {
+        // given
+        UtcTimestampFormatter.format(253402300799999L);
+
+        // when
+        final long now = System.currentTimeMillis();
+        final String formatted = UtcTimestampFormatter.format(now);
+
+        // then
+        assertThat(formatted).isEqualTo(new DateTime(now, DateTimeZone.UTC).toString());
+        assertThat(UtcTimestampFormatter.getCachedSecond()).isEqualTo(now / 1000);
+    }
+
+    @Test
+    public void shouldShareTheUtcDateUtil() {
+        assertThat(DateUtil.getDateUtil("UTC")).isSameAs(DateUtil.getDateUtil(DateTimeZone.UTC));
+        assertThat(DateUtil.getDateUtil("UTC").formatDateTime(1446459330123L))
+                .isEqualTo("2015-11-02T10:15:30.123Z");
+    }
+}
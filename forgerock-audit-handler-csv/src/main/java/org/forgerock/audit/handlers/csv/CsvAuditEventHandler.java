@@ -19,11 +19,10 @@ import static java.lang.String.format;
 import static org.forgerock.audit.events.AuditEventHelper.ARRAY_TYPE;
 import static org.forgerock.audit.events.AuditEventHelper.OBJECT_TYPE;
 import static org.forgerock.audit.events.AuditEventHelper.dotNotationToJsonPointer;
-import static org.forgerock.audit.events.AuditEventHelper.getAuditEventProperties;
-import static org.forgerock.audit.events.AuditEventHelper.getAuditEventSchema;
-import static org.forgerock.audit.events.AuditEventHelper.getPropertyType;
-import static org.forgerock.audit.events.AuditEventHelper.jsonPointerToDotNotation;
-import static org.forgerock.audit.util.JsonSchemaUtils.generateJsonPointers;
+import static org.forgerock.audit.util.ArchiveCompression.getCompressedFile;
+import static org.forgerock.audit.util.ArchiveCompression.getUncompressedFile;
+import static org.forgerock.audit.util.ArchiveCompression.isCompressed;
+import static org.forgerock.audit.util.ArchiveCompression.openArchive;
 import static org.forgerock.audit.util.JsonValueUtils.JSONVALUE_FILTER_VISITOR;
 import static org.forgerock.audit.util.JsonValueUtils.expand;
 import static org.forgerock.json.JsonValue.field;
@@ -34,36 +33,51 @@ import static org.forgerock.json.resource.Responses.newQueryResponse;
 import static org.forgerock.json.resource.Responses.newResourceResponse;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.SortedSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import javax.inject.Inject;
 
 import org.forgerock.audit.Audit;
+import org.forgerock.audit.events.CompactAuditEvent;
 import org.forgerock.audit.events.EventTopicsMetaData;
+import org.forgerock.audit.events.TopicSchema;
 import org.forgerock.audit.events.handlers.AuditEventHandlerBase;
+import org.forgerock.audit.events.handlers.CompactAuditEventHandler;
+import org.forgerock.audit.events.handlers.FileBasedEventHandlerConfiguration.FileRotation;
+import org.forgerock.audit.handlers.csv.CsvAuditEventHandlerConfiguration.CsvFormatting;
+import org.forgerock.audit.handlers.csv.CsvAuditEventHandlerConfiguration.CsvIndexing;
 import org.forgerock.audit.handlers.csv.CsvAuditEventHandlerConfiguration.CsvSecurity;
 import org.forgerock.audit.handlers.csv.CsvAuditEventHandlerConfiguration.EventBufferingConfiguration;
+import org.forgerock.audit.handlers.csv.CsvMappedFileScanner.CompletionListener;
+import org.forgerock.audit.handlers.csv.CsvMappedFileScanner.RecordVisitor;
+import org.forgerock.audit.handlers.csv.CsvQueryExecutor.Scan;
+import org.forgerock.audit.handlers.csv.CsvQueryExecutor.Sink;
+import org.forgerock.audit.metrics.LatencyHistogram;
+import org.forgerock.audit.metrics.MetricRegistry;
+import org.forgerock.audit.metrics.Metrics;
 import org.forgerock.audit.providers.KeyStoreHandlerProvider;
 import org.forgerock.audit.retention.TimeStampFileNamingPolicy;
 import org.forgerock.audit.secure.JcaKeyStoreHandler;
 import org.forgerock.audit.secure.KeyStoreHandler;
-import org.forgerock.audit.util.JsonValueUtils;
+import org.forgerock.audit.util.TimestampRange;
 import org.forgerock.json.JsonPointer;
 import org.forgerock.json.JsonValue;
 import org.forgerock.json.resource.ActionRequest;
@@ -98,7 +112,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 /**
  * Handles AuditEvents by writing them to a CSV file.
  */
-public class CsvAuditEventHandler extends AuditEventHandlerBase {
+public class CsvAuditEventHandler extends AuditEventHandlerBase implements CompactAuditEventHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(CsvAuditEventHandler.class);
 
@@ -107,6 +121,8 @@ public class CsvAuditEventHandler extends AuditEventHandlerBase {
 
     static final String SECURE_CSV_FILENAME_PREFIX = "tamper-evident-";
 
+    private static final String TIMESTAMP = "timestamp";
+
     private static final ObjectMapper mapper = new ObjectMapper();
     private static final Random random;
 
@@ -121,12 +137,21 @@ public class CsvAuditEventHandler extends AuditEventHandlerBase {
     private final CsvAuditEventHandlerConfiguration configuration;
     private final CsvPreference csvPreference;
     private final ConcurrentMap<String, CsvWriter> writers = new ConcurrentHashMap<>();
-    private final Map<String, Set<String>> fieldOrderByTopic;
-    /** Caches a JSON pointer for each field. */
-    private final Map<String, JsonPointer> jsonPointerByField;
-    /** Caches the dot notation for each field. */
-    private final Map<String, String> fieldDotNotationByField;
+    private final ConcurrentMap<String, CsvIndex> indexes = new ConcurrentHashMap<>();
+    /** Caches the range of timestamps of the rotated files that have already been fully scanned. */
+    private final ConcurrentMap<String, ConcurrentMap<File, ArchiveTimestamps>> archiveTimestampsByTopic =
+            new ConcurrentHashMap<>();
+    private final CsvQueryExecutor queryExecutor =
+            new CsvQueryExecutor(Runtime.getRuntime().availableProcessors());
+    private final Map<String, TopicSchema> schemaByTopic;
+    /** Extracts the cells of the rows of each topic. */
+    private final Map<String, CsvRowExtractor> rowExtractorByTopic;
+    /** Splits the raw bytes of the files, {@code null} if the quote or delimiter characters are not ASCII. */
+    private final CsvRecordTokenizer recordTokenizer;
     private KeyStoreHandler keyStoreHandler;
+    /** Records the metrics of the handler, the names being prefixed with {@code handler.<name>}. */
+    private final MetricRegistry metricRegistry;
+    private final ConcurrentMap<String, LatencyHistogram> flushLatencyByTopic = new ConcurrentHashMap<>();
 
     /**
      * Create a new CsvAuditEventHandler instance.
@@ -138,15 +163,41 @@ public class CsvAuditEventHandler extends AuditEventHandlerBase {
      * @param keyStoreHandlerProvider
      *          The secure storage to use for keys.
      */
+    public CsvAuditEventHandler(
+            final CsvAuditEventHandlerConfiguration configuration,
+            final EventTopicsMetaData eventTopicsMetaData,
+            KeyStoreHandlerProvider keyStoreHandlerProvider) {
+        this(configuration, eventTopicsMetaData, keyStoreHandlerProvider, null);
+    }
+
+    /**
+     * Create a new CsvAuditEventHandler instance recording its metrics.
+     *
+     * @param configuration
+     *          Configuration parameters that can be adjusted by system administrators.
+     * @param eventTopicsMetaData
+     *          Meta-data for all audit event topics.
+     * @param keyStoreHandlerProvider
+     *          The secure storage to use for keys.
+     * @param metricRegistry
+     *          The registry of the metrics, may be {@code null} to not record metrics.
+     */
     @Inject
     public CsvAuditEventHandler(
             final CsvAuditEventHandlerConfiguration configuration,
             final EventTopicsMetaData eventTopicsMetaData,
-            @Audit KeyStoreHandlerProvider keyStoreHandlerProvider) {
+            @Audit KeyStoreHandlerProvider keyStoreHandlerProvider,
+            @Audit MetricRegistry metricRegistry) {
 
         super(configuration.getName(), eventTopicsMetaData, configuration.getTopics(), configuration.isEnabled());
         this.configuration = configuration;
+        this.metricRegistry = Metrics.prefixed(Metrics.orNoOp(metricRegistry),
+                Metrics.name("handler", configuration.getName()));
         this.csvPreference = createCsvPreference(this.configuration);
+        final CsvFormatting formatting = configuration.getFormatting();
+        this.recordTokenizer = CsvRecordTokenizer.isSupported(formatting.getQuoteChar(), formatting.getDelimiterChar())
+                ? new CsvRecordTokenizer(formatting.getQuoteChar(), formatting.getDelimiterChar())
+                : null;
         CsvSecurity security = configuration.getSecurity();
         if (security.isEnabled()) {
             Duration duration = security.getSignatureIntervalDuration();
@@ -166,26 +217,19 @@ public class CsvAuditEventHandler extends AuditEventHandlerBase {
             }
         }
 
-        Map<String, Set<String>> fieldOrderByTopic = new HashMap<>();
-        Map<String, JsonPointer> jsonPointerByField = new HashMap<>();
-        Map<String, String> fieldDotNotationByField = new HashMap<>();
+        Map<String, TopicSchema> schemaByTopic = new HashMap<>();
+        Map<String, CsvRowExtractor> rowExtractorByTopic = new HashMap<>();
         for (String topic : this.eventTopicsMetaData.getTopics()) {
-            try {
-                Set<String> fieldOrder = getFieldOrder(topic, this.eventTopicsMetaData);
-                for (String field : fieldOrder) {
-                    if (!jsonPointerByField.containsKey(field)) {
-                        jsonPointerByField.put(field, new JsonPointer(field));
-                        fieldDotNotationByField.put(field, jsonPointerToDotNotation(field));
-                    }
-                }
-                fieldOrderByTopic.put(topic, Collections.unmodifiableSet(fieldOrder));
-            } catch (ResourceException e) {
+            TopicSchema schema = this.eventTopicsMetaData.getTopicSchema(topic);
+            if (schema.size() == 0) {
                 logger.error(topic + " topic schema meta-data misconfigured.");
+                continue;
             }
+            schemaByTopic.put(topic, schema);
+            rowExtractorByTopic.put(topic, new CsvRowExtractor(schema));
         }
-        this.fieldOrderByTopic = Collections.unmodifiableMap(fieldOrderByTopic);
-        this.jsonPointerByField = Collections.unmodifiableMap(jsonPointerByField);
-        this.fieldDotNotationByField = Collections.unmodifiableMap(fieldDotNotationByField);
+        this.schemaByTopic = Collections.unmodifiableMap(schemaByTopic);
+        this.rowExtractorByTopic = Collections.unmodifiableMap(rowExtractorByTopic);
     }
 
     private CsvPreference createCsvPreference(final CsvAuditEventHandlerConfiguration config) {
@@ -221,6 +265,49 @@ public class CsvAuditEventHandler extends AuditEventHandlerBase {
                 logger.error("Error when creating audit file: {}", auditLogFile, e);
             }
         }
+        openIndexes();
+        if (configuration.getQuerying().isMemoryMapped() && recordTokenizer == null) {
+            logger.warn("Memory mapped CSV scans require ASCII quote and delimiter characters, they are disabled");
+        }
+    }
+
+    private void openIndexes() {
+        final CsvIndexing indexing = configuration.getIndexing();
+        if (!indexing.isEnabled()) {
+            return;
+        }
+        if (recordTokenizer == null) {
+            logger.warn("CSV indexing requires ASCII quote and delimiter characters, indexing is disabled");
+            return;
+        }
+        for (String topic : eventTopicsMetaData.getTopics()) {
+            File auditLogFile = getAuditLogFile(topic);
+            CsvIndex index =
+                    new CsvIndex(auditLogFile, recordTokenizer, getIndexableFields(topic, indexing.getFields()));
+            try {
+                index.open();
+                indexes.put(topic, index);
+            } catch (IOException e) {
+                logger.error("Error when indexing audit file: {}", auditLogFile, e);
+            }
+        }
+    }
+
+    private List<String> getIndexableFields(final String topic, final List<String> fields) {
+        final List<String> indexableFields = new ArrayList<>();
+        final TopicSchema schema = eventTopicsMetaData.getTopicSchema(topic);
+        for (String field : fields) {
+            final String propertyType =
+                    schema.getPropertyType(new JsonPointer(dotNotationToJsonPointer(field)));
+            if (propertyType == null) {
+                logger.debug("Field {} is not defined for topic {}, it won't be indexed", field, topic);
+            } else if (propertyType.equals(OBJECT_TYPE) || propertyType.equals(ARRAY_TYPE)) {
+                logger.warn("Field {} of topic {} can't be indexed as it is not a simple value", field, topic);
+            } else {
+                indexableFields.add(field);
+            }
+        }
+        return indexableFields;
     }
 
     /** {@inheritDoc} */
@@ -237,7 +324,7 @@ public class CsvAuditEventHandler extends AuditEventHandlerBase {
     public Promise<ResourceResponse, ResourceException> publishEvent(Context context, String topic, JsonValue event) {
         try {
             checkTopic(topic);
-            publishEventWithRetry(topic, event);
+            publishEventWithRetry(topic, rowExtractorByTopic.get(topic).extract(event));
             return newResourceResponse(
                     event.get(ResourceResponse.FIELD_CONTENT_ID).asString(), null, event).asPromise();
         } catch (ResourceException e) {
@@ -245,21 +332,38 @@ public class CsvAuditEventHandler extends AuditEventHandlerBase {
         }
     }
 
+    /**
+     * Create a csv audit log entry from the compact form of the event.
+     * {@inheritDoc}
+     */
+    @Override
+    public Promise<ResourceResponse, ResourceException> publishCompactEvent(Context context, String topic,
+            CompactAuditEvent event) {
+        try {
+            checkTopic(topic);
+            publishEventWithRetry(topic, rowExtractorByTopic.get(topic).extract(event));
+            final JsonValue content = event.getValue();
+            return newResourceResponse(
+                    content.get(ResourceResponse.FIELD_CONTENT_ID).asString(), null, content).asPromise();
+        } catch (ResourceException e) {
+            return e.asPromise();
+        }
+    }
+
     private void checkTopic(String topic) throws ResourceException {
-        final JsonValue auditEventProperties = getAuditEventProperties(eventTopicsMetaData.getSchema(topic));
-        if (auditEventProperties == null || auditEventProperties.isNull()) {
+        if (!schemaByTopic.containsKey(topic)) {
             throw new InternalServerErrorException("No audit event properties defined for audit event: " + topic);
         }
     }
 
     /**
-     * Publishes the provided event, and returns the writer used.
+     * Publishes the provided row.
      */
-    private void publishEventWithRetry(final String topic, final JsonValue event)
+    private void publishEventWithRetry(final String topic, final String[] row)
                     throws ResourceException {
         final CsvWriter csvWriter = getWriter(topic);
         try {
-            writeEvent(topic, csvWriter, event);
+            writeEvent(topic, csvWriter, row);
         } catch (IOException ex) {
             // Re-try once in case the writer stream became closed for some reason
             logger.debug("IOException while writing ({})", ex.getMessage());
@@ -279,7 +383,7 @@ public class CsvAuditEventHandler extends AuditEventHandlerBase {
                 }
             }
             try {
-                writeEvent(topic, newCsvWriter, event);
+                writeEvent(topic, newCsvWriter, row);
             } catch (IOException e) {
                 throw new BadRequestException(e);
             }
@@ -292,7 +396,7 @@ public class CsvAuditEventHandler extends AuditEventHandlerBase {
      * Uses lazy synchronization in case another thread may be resetting the writer. If the writer is still null
      * after synchronizing then the writer is reset.
      * <br/>
-     * This method is only intended for use by {@link #publishEventWithRetry(String, JsonValue)}.
+     * This method is only intended for use by {@link #publishEventWithRetry(String, String[])}.
      */
     private CsvWriter getWriter(String topic) throws BadRequestException {
         CsvWriter csvWriter = writers.get(topic);
@@ -309,40 +413,74 @@ public class CsvAuditEventHandler extends AuditEventHandlerBase {
         return csvWriter;
     }
 
-    private CsvWriter writeEvent(final String topic, CsvWriter csvWriter, final JsonValue event)
+    private CsvWriter writeEvent(final String topic, CsvWriter csvWriter, final String[] row)
                     throws IOException {
-        writeEntry(topic, csvWriter, event);
+        csvWriter.writeEvent(row);
         EventBufferingConfiguration bufferConfig = configuration.getBuffering();
         if (!bufferConfig.isEnabled() || !bufferConfig.isAutoFlush()) {
+            final long start = System.nanoTime();
             csvWriter.flush();
+            getFlushLatency(topic).recordSince(start);
         }
         return csvWriter;
     }
 
-    private Set<String> getFieldOrder(final String topic, final EventTopicsMetaData eventTopicsMetaData)
-            throws ResourceException {
-        final Set<String> fieldOrder = new LinkedHashSet<>();
-        fieldOrder.addAll(generateJsonPointers(getAuditEventSchema(eventTopicsMetaData.getSchema(topic))));
-        return fieldOrder;
+    private LatencyHistogram getFlushLatency(final String topic) {
+        LatencyHistogram flushLatency = flushLatencyByTopic.get(topic);
+        if (flushLatency == null) {
+            flushLatency = metricRegistry.latencyHistogram(Metrics.name(topic, "flush"));
+            flushLatencyByTopic.putIfAbsent(topic, flushLatency);
+        }
+        return flushLatency;
     }
 
     private synchronized CsvWriter openWriter(final String topic, final File auditFile) throws IOException {
-        final CsvWriter writer = createCsvWriter(auditFile, topic);
+        CsvWriter writer;
+        try {
+            writer = createCsvWriter(auditFile, topic);
+        } catch (CsvHeaderMismatchException e) {
+            // the schema of the topic changed since the file was created, e.g. a field was added to it
+            rotateMismatchingFile(auditFile);
+            writer = createCsvWriter(auditFile, topic);
+        }
         writers.put(topic, writer);
         return writer;
     }
 
+    /**
+     * Renames the file, and its keystore if it is secure, as a rotated file, so that a new file is started with the
+     * headers of the current schema.
+     */
+    private void rotateMismatchingFile(final File auditFile) throws IOException {
+        final File rotatedFile = getFileNamingPolicy(auditFile).getNextName();
+        logger.warn("The headers of {} do not match the schema of its topic, rotating it to {}",
+                auditFile, rotatedFile);
+        if (!auditFile.renameTo(rotatedFile)) {
+            throw new IOException(format("Unable to rename file %s to %s when rotating", auditFile, rotatedFile));
+        }
+        final File keyStoreFile = new File(auditFile.getPath() + ".keystore");
+        if (configuration.getSecurity().isEnabled() && keyStoreFile.exists()) {
+            final File rotatedKeyStoreFile = new File(rotatedFile.getPath() + ".keystore");
+            if (!keyStoreFile.renameTo(rotatedKeyStoreFile)) {
+                throw new IOException(
+                        format("Unable to rename file %s to %s when rotating", keyStoreFile, rotatedKeyStoreFile));
+            }
+        }
+    }
+
     private synchronized CsvWriter createCsvWriter(final File auditFile, String topic) throws IOException {
-        String[] headers = buildHeaders(fieldOrderByTopic.get(topic));
+        String[] headers = buildHeaders(schemaByTopic.get(topic));
+        final MetricRegistry topicMetrics = Metrics.prefixed(metricRegistry, topic);
         if (configuration.getSecurity().isEnabled()) {
-            return new SecureCsvWriter(auditFile, headers, csvPreference, configuration, keyStoreHandler, random);
+            return new SecureCsvWriter(auditFile, headers, csvPreference, configuration, keyStoreHandler, random,
+                    topicMetrics);
         } else {
-            return new StandardCsvWriter(auditFile, headers, csvPreference, configuration);
+            return new StandardCsvWriter(auditFile, headers, csvPreference, configuration, topicMetrics);
         }
     }
 
     private ICsvMapReader createCsvMapReader(final File auditFile) throws IOException {
-        CsvMapReader csvReader = new CsvMapReader(new FileReader(auditFile), csvPreference);
+        CsvMapReader csvReader = new CsvMapReader(new InputStreamReader(openArchive(auditFile)), csvPreference);
 
         if (configuration.getSecurity().isEnabled()) {
             return new CsvSecureMapReader(csvReader);
@@ -351,11 +489,10 @@ public class CsvAuditEventHandler extends AuditEventHandlerBase {
         }
     }
 
-    private String[] buildHeaders(final Collection<String> fieldOrder) {
-        final String[] headers = new String[fieldOrder.size()];
-        fieldOrder.toArray(headers);
+    private String[] buildHeaders(final TopicSchema schema) {
+        final String[] headers = new String[schema.size()];
         for (int i = 0; i < headers.length; i++) {
-            headers[i] = jsonPointerToDotNotation(headers[i]);
+            headers[i] = schema.getField(i).getDotNotation();
         }
         return headers;
     }
@@ -369,11 +506,15 @@ public class CsvAuditEventHandler extends AuditEventHandlerBase {
             Context context,
             String topic,
             QueryRequest query,
-            QueryResourceHandler handler) {
+            final QueryResourceHandler handler) {
         try {
-            for (final JsonValue value : getEntries(topic, query.getQueryFilter())) {
-                handler.handleResource(newResourceResponse(value.get(FIELD_CONTENT_ID).asString(), null, value));
-            }
+            queryEntries(topic, query.getQueryFilter(), query.getPageSize(), new Sink() {
+                @Override
+                public boolean accept(JsonValue entry) {
+                    return handler.handleResource(
+                            newResourceResponse(entry.get(FIELD_CONTENT_ID).asString(), null, entry));
+                }
+            });
             return newQueryResponse().asPromise();
         } catch (Exception e) {
             return new BadRequestException(e).asPromise();
@@ -387,11 +528,18 @@ public class CsvAuditEventHandler extends AuditEventHandlerBase {
     @Override
     public Promise<ResourceResponse, ResourceException> readEvent(Context context, String topic, String resourceId) {
         try {
-            final Set<JsonValue> entry = getEntries(topic, QueryFilters.parse("/_id eq \"" + resourceId + "\""));
-            if (entry.isEmpty()) {
+            final List<JsonValue> entries = new ArrayList<>(1);
+            queryEntries(topic, QueryFilters.parse("/_id eq \"" + resourceId + "\""), 1, new Sink() {
+                @Override
+                public boolean accept(JsonValue entry) {
+                    entries.add(entry);
+                    return false;
+                }
+            });
+            if (entries.isEmpty()) {
                 throw new NotFoundException(topic + " audit log not found");
             }
-            final JsonValue resource = entry.iterator().next();
+            final JsonValue resource = entries.get(0);
             return newResourceResponse(resource.get(FIELD_CONTENT_ID).asString(), null, resource).asPromise();
         } catch (ResourceException e) {
             return e.asPromise();
@@ -446,18 +594,6 @@ public class CsvAuditEventHandler extends AuditEventHandlerBase {
         return new File(configuration.getLogDirectory(), prefix + type + ".csv");
     }
 
-    private void writeEntry(final String topic, final CsvWriter csvWriter, final JsonValue obj) throws IOException {
-        Set<String> fieldOrder = fieldOrderByTopic.get(topic);
-        Map<String, String> cells = new HashMap<>(fieldOrder.size());
-        for (String key : fieldOrder) {
-            final String value = JsonValueUtils.extractValueAsString(obj, key);
-            if (value != null && !value.isEmpty()) {
-                cells.put(fieldDotNotationByField.get(key), value);
-            }
-        }
-        csvWriter.writeEvent(cells);
-    }
-
     private synchronized CsvWriter resetAndReopenWriter(final String topic, boolean forceRotation)
             throws BadRequestException {
         closeWriter(topic);
@@ -491,54 +627,354 @@ public class CsvAuditEventHandler extends AuditEventHandlerBase {
     }
 
     /**
-     * Parser the csv file corresponding the the specified audit entry type and returns a set of matching audit entries.
+     * Parses the csv file corresponding to the specified audit entry type, and its rotated files, and passes the
+     * matching audit entries to the sink.
+     * <p>
+     * Files are scanned in parallel, the current file and the most recent rotated files first. The rotated files
+     * whose timestamps are known to be outside of the range required by the filter are skipped.
      *
      * @param auditEntryType the audit log type
      * @param queryFilter the query filter to apply to the entries
-     * @return  A audit log entry; null if no entry exists
-     * @throws IOException If unable to get an entry from the CSV file.
+     * @param limit the maximum number of entries to return, or zero for no limit
+     * @param sink the receiver of the matching entries
+     * @throws IOException If unable to get an entry from the CSV files.
      */
-    private Set<JsonValue> getEntries(final String auditEntryType, QueryFilter<JsonPointer> queryFilter)
-            throws IOException {
+    private void queryEntries(final String auditEntryType, final QueryFilter<JsonPointer> queryFilter,
+            final int limit, final Sink sink) throws IOException {
+        final QueryFilter<JsonPointer> filter =
+                queryFilter == null ? QueryFilter.<JsonPointer>alwaysTrue() : queryFilter;
+        final List<Scan> scans = new ArrayList<>();
         final File auditFile = getAuditLogFile(auditEntryType);
-        final Set<JsonValue> results = new HashSet<>();
-        if (queryFilter == null) {
-            queryFilter = QueryFilter.alwaysTrue();
-        }
         if (auditFile.exists()) {
-            try (ICsvMapReader reader = createCsvMapReader(auditFile)) {
-                // the header elements are used to map the values to the bean (names must match)
-                final String[] header = convertDotNotationToSlashes(reader.getHeader(true));
-                final CellProcessor[] processors = createCellProcessors(auditEntryType, header);
-                Map<String, Object> entry;
-                while ((entry = reader.read(header, processors)) != null) {
-                    entry = convertDotNotationToSlashes(entry);
-                    final JsonValue jsonEntry = expand(entry);
-                    if (queryFilter.accept(JSONVALUE_FILTER_VISITOR, jsonEntry)) {
-                        results.add(jsonEntry);
+            if (!addIndexedScan(scans, auditEntryType, filter)) {
+                addScans(scans, auditEntryType, auditFile, filter, null);
+            }
+        }
+        final List<File> archives = getArchiveFiles(auditFile);
+        final ConcurrentMap<File, ArchiveTimestamps> timestampsByArchive = getArchiveTimestamps(auditEntryType);
+        timestampsByArchive.keySet().retainAll(archives);
+        final TimestampRange range = TimestampRange.of(filter);
+        // archives are listed from the oldest to the newest
+        for (int i = archives.size() - 1; i >= 0; i--) {
+            final File archive = getCurrentArchive(archives.get(i));
+            final ArchiveTimestamps timestamps = timestampsByArchive.get(archive);
+            if (timestamps != null && timestamps.isCurrent(archive)
+                    && !range.overlaps(timestamps.min, timestamps.max)) {
+                logger.trace("Skipping audit file {} as its events are out of the queried range", archive);
+                continue;
+            }
+            final List<Scan> archiveScans = new ArrayList<>();
+            try {
+                addScans(archiveScans, auditEntryType, archive, filter, timestampsByArchive);
+            } catch (IOException e) {
+                if (archive.exists()) {
+                    throw e;
+                }
+                logger.debug("Audit file {} removed before it could be queried", archive);
+            }
+            for (Scan scan : archiveScans) {
+                scans.add(ignoringRemoval(archive, scan));
+            }
+        }
+        queryExecutor.execute(scans, limit, sink);
+    }
+
+    /**
+     * Adds the scans of the whole file, either read with super-csv or memory mapped and split in chunks. Compressed
+     * archives can only be read sequentially, with super-csv.
+     *
+     * @param timestampsByArchive if not {@code null}, records the range of timestamps of the file once it has been
+     *          fully scanned
+     */
+    private void addScans(final List<Scan> scans, final String auditEntryType, final File file,
+            final QueryFilter<JsonPointer> queryFilter, final Map<File, ArchiveTimestamps> timestampsByArchive)
+            throws IOException {
+        if (recordTokenizer != null && configuration.getQuerying().isMemoryMapped() && !isCompressed(file)) {
+            addMappedScans(scans, auditEntryType, file, queryFilter, timestampsByArchive);
+        } else {
+            scans.add(new Scan() {
+                @Override
+                public void scan(Sink scanSink) throws IOException {
+                    // the archive may have been compressed since the scan was created
+                    final File current = timestampsByArchive == null ? file : getCurrentArchive(file);
+                    scanEntries(auditEntryType, current, queryFilter, scanSink, timestampsByArchive);
+                }
+            });
+        }
+    }
+
+    /**
+     * Gets the compressed form of the archive if it replaced the archive in the meantime.
+     */
+    private static File getCurrentArchive(final File archive) {
+        if (!isCompressed(archive) && !archive.exists()) {
+            final File compressed = getCompressedFile(archive);
+            if (compressed.exists()) {
+                return compressed;
+            }
+        }
+        return archive;
+    }
+
+    private Scan ignoringRemoval(final File archive, final Scan scan) {
+        return new Scan() {
+            @Override
+            public void scan(Sink sink) throws IOException {
+                try {
+                    scan.scan(sink);
+                } catch (IOException e) {
+                    if (archive.exists()) {
+                        throw e;
                     }
+                    logger.debug("Audit file {} removed before it could be queried", archive);
                 }
+            }
 
+            @Override
+            public void cancel() {
+                scan.cancel();
+            }
+        };
+    }
+
+    /**
+     * Scans the whole file, passing the matching entries to the sink.
+     *
+     * @param timestampsByArchive if not {@code null}, records the range of timestamps of the file once it has been
+     *          fully scanned
+     */
+    private void scanEntries(final String auditEntryType, final File file, final QueryFilter<JsonPointer> queryFilter,
+            final Sink sink, final Map<File, ArchiveTimestamps> timestampsByArchive) throws IOException {
+        final long length = file.length();
+        final long lastModified = file.lastModified();
+        try (ICsvMapReader reader = createCsvMapReader(file)) {
+            final String[] fileHeader = reader.getHeader(true);
+            if (fileHeader == null) {
+                return;
+            }
+            // the header elements are used to map the values to the bean (names must match)
+            final String[] header = convertDotNotationToSlashes(fileHeader);
+            final CellProcessor[] processors = createCellProcessors(getJsonColumns(auditEntryType, header));
+            String minTimestamp = null;
+            String maxTimestamp = null;
+            Map<String, Object> entry;
+            while ((entry = reader.read(header, processors)) != null) {
+                final Object timestamp = entry.get(TIMESTAMP);
+                if (timestamp instanceof String) {
+                    final String value = (String) timestamp;
+                    if (minTimestamp == null || value.compareToIgnoreCase(minTimestamp) < 0) {
+                        minTimestamp = value;
+                    }
+                    if (maxTimestamp == null || value.compareToIgnoreCase(maxTimestamp) > 0) {
+                        maxTimestamp = value;
+                    }
+                }
+                entry = convertDotNotationToSlashes(entry);
+                final JsonValue jsonEntry = expand(entry);
+                if (queryFilter.accept(JSONVALUE_FILTER_VISITOR, jsonEntry) && !sink.accept(jsonEntry)) {
+                    return;
+                }
+            }
+            // without a timestamp column, comparisons on the timestamp can't be used to skip the file
+            if (timestampsByArchive != null && Arrays.asList(header).contains(TIMESTAMP)) {
+                timestampsByArchive.put(file, new ArchiveTimestamps(length, lastModified, minTimestamp, maxTimestamp));
             }
         }
-        return results;
     }
 
-    private CellProcessor[] createCellProcessors(final String auditEntryType, final String[] headers)
-            throws ResourceException {
-        final List<CellProcessor> cellProcessors = new ArrayList<>();
-        final JsonValue auditEvent = eventTopicsMetaData.getSchema(auditEntryType);
+    /**
+     * Adds the scans of the chunks of the memory mapped file. The filter is evaluated on the raw cells when
+     * possible, so that only the matching rows are converted to JSON.
+     */
+    private void addMappedScans(final List<Scan> scans, final String auditEntryType, final File file,
+            final QueryFilter<JsonPointer> queryFilter, final Map<File, ArchiveTimestamps> timestampsByArchive)
+            throws IOException {
+        final long length = file.length();
+        final long lastModified = file.lastModified();
+        final CsvMappedFileScanner scanner = CsvMappedFileScanner.open(file, recordTokenizer);
+        if (scanner == null) {
+            return;
+        }
+        final String[] header = getEntryHeader(scanner.getHeader());
+        final boolean[] jsonColumns = getJsonColumns(auditEntryType, header);
+        final CellProcessor[] processors = createCellProcessors(jsonColumns);
+        final CsvRowFilter rowFilter = CsvRowFilter.compile(queryFilter, header, jsonColumns);
+        final int timestampColumn = Arrays.asList(header).indexOf(TIMESTAMP);
+        CompletionListener listener = null;
+        if (timestampsByArchive != null && timestampColumn >= 0) {
+            listener = new CompletionListener() {
+                @Override
+                public void completed(String min, String max) {
+                    timestampsByArchive.put(file, new ArchiveTimestamps(length, lastModified, min, max));
+                }
+            };
+        }
+        final RecordVisitor visitor = new RecordVisitor() {
+            @Override
+            public boolean visit(String[] cells, Sink sink) {
+                if (rowFilter != null && !rowFilter.matches(cells)) {
+                    return true;
+                }
+                final JsonValue jsonEntry = toJsonEntry(header, processors, cells);
+                if (rowFilter == null && !queryFilter.accept(JSONVALUE_FILTER_VISITOR, jsonEntry)) {
+                    return true;
+                }
+                return sink.accept(jsonEntry);
+            }
+        };
+        scans.addAll(scanner.createScans(configuration.getQuerying().getChunkSize(), visitor, timestampColumn,
+                listener));
+    }
 
-        for (String header: headers) {
-            final String propertyType = getPropertyType(auditEvent, new JsonPointer(header));
-            if ((propertyType.equals(OBJECT_TYPE) || propertyType.equals(ARRAY_TYPE))) {
-                cellProcessors.add(new Optional(new ParseJsonValue()));
-            } else {
-                cellProcessors.add(new Optional());
+    /**
+     * Adds the scan of the rows of the current file selected by its index.
+     *
+     * @return {@code false} if the audit entry type is not indexed, or if its index can't narrow down the filter;
+     *          in this case, the whole file must be scanned.
+     */
+    private boolean addIndexedScan(final List<Scan> scans, final String auditEntryType,
+            final QueryFilter<JsonPointer> queryFilter) throws IOException {
+        final CsvIndex index = indexes.get(auditEntryType);
+        if (index == null) {
+            return false;
+        }
+        index.refresh();
+        final String[] fileHeader = index.getHeaders();
+        final SortedSet<Long> offsets = index.findCandidates(queryFilter);
+        if (fileHeader == null || offsets == null) {
+            return false;
+        }
+        final String[] header = getEntryHeader(fileHeader);
+        final CellProcessor[] processors = createCellProcessors(getJsonColumns(auditEntryType, header));
+        final File auditFile = getAuditLogFile(auditEntryType);
+        scans.add(new Scan() {
+            @Override
+            public void scan(Sink sink) throws IOException {
+                try (FileChannel channel = FileChannel.open(auditFile.toPath(), StandardOpenOption.READ)) {
+                    for (long offset : offsets) {
+                        final String[] cells = index.readRecord(channel, offset);
+                        if (cells == null) {
+                            continue;
+                        }
+                        final JsonValue jsonEntry = toJsonEntry(header, processors, cells);
+                        if (queryFilter.accept(JSONVALUE_FILTER_VISITOR, jsonEntry) && !sink.accept(jsonEntry)) {
+                            return;
+                        }
+                    }
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Returns the header of the entries, as JSON pointers, from the header of a file read without super-csv.
+     */
+    private String[] getEntryHeader(final String[] fileHeader) {
+        // the HMAC and SIGNATURE columns of secure files are not part of the entries
+        return convertDotNotationToSlashes(configuration.getSecurity().isEnabled()
+                ? Arrays.copyOf(fileHeader, fileHeader.length - 2)
+                : fileHeader);
+    }
+
+    private JsonValue toJsonEntry(final String[] header, final CellProcessor[] processors, final String[] cells) {
+        final Map<String, Object> entry = new LinkedHashMap<>();
+        for (int i = 0; i < header.length; i++) {
+            entry.put(header[i], processors[i].execute(i < cells.length ? cells[i] : null, null));
+        }
+        return expand(entry);
+    }
+
+    private TimeStampFileNamingPolicy getFileNamingPolicy(final File auditFile) {
+        final FileRotation rotation = configuration.getFileRotation();
+        return rotation.isRotationEnabled()
+                ? new TimeStampFileNamingPolicy(
+                        auditFile, rotation.getRotationFileSuffix(), rotation.getRotationFilePrefix())
+                : new TimeStampFileNamingPolicy(auditFile, null, null);
+    }
+
+    private List<File> getArchiveFiles(final File auditFile) {
+        if (!auditFile.getParentFile().isDirectory()) {
+            return Collections.emptyList();
+        }
+        final List<File> archives = getFileNamingPolicy(auditFile).listFiles();
+        // an archive and its compressed form coexist if the archive could not be deleted once compressed
+        final Set<File> uncompressed = new HashSet<>();
+        for (File archive : archives) {
+            if (!isCompressed(archive)) {
+                uncompressed.add(archive);
+            }
+        }
+        final List<File> files = new ArrayList<>(archives.size());
+        for (File archive : archives) {
+            if (!isCompressed(archive) || !uncompressed.contains(getUncompressedFile(archive))) {
+                files.add(archive);
+            }
+        }
+        return files;
+    }
+
+    private ConcurrentMap<File, ArchiveTimestamps> getArchiveTimestamps(final String auditEntryType) {
+        ConcurrentMap<File, ArchiveTimestamps> timestamps = archiveTimestampsByTopic.get(auditEntryType);
+        if (timestamps == null) {
+            timestamps = new ConcurrentHashMap<>();
+            final ConcurrentMap<File, ArchiveTimestamps> existing =
+                    archiveTimestampsByTopic.putIfAbsent(auditEntryType, timestamps);
+            if (existing != null) {
+                timestamps = existing;
+            }
+        }
+        return timestamps;
+    }
+
+    /**
+     * Range of the timestamps found in a rotated file. Rotated files are not written to anymore, the range remains
+     * valid as long as the file is not replaced.
+     */
+    private static final class ArchiveTimestamps {
+        private final long length;
+        private final long lastModified;
+        private final String min;
+        private final String max;
+
+        ArchiveTimestamps(long length, long lastModified, String min, String max) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.min = min;
+            this.max = max;
+        }
+
+        boolean isCurrent(File file) {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
+    }
+
+    /**
+     * Indicates for each column if it holds an object or an array, serialized as JSON.
+     */
+    private boolean[] getJsonColumns(final String auditEntryType, final String[] headers)
+            throws ResourceException {
+        final TopicSchema schema = eventTopicsMetaData.getTopicSchema(auditEntryType);
+        final boolean[] jsonColumns = new boolean[headers.length];
+        for (int i = 0; i < headers.length; i++) {
+            final TopicSchema.Field field = schema.getField(headers[i]);
+            final String propertyType = field != null
+                    ? field.getType()
+                    : schema.getPropertyType(new JsonPointer(headers[i]));
+            if (propertyType == null) {
+                throw new InternalServerErrorException("Unknown audit event property: " + headers[i]);
             }
+            jsonColumns[i] = propertyType.equals(OBJECT_TYPE) || propertyType.equals(ARRAY_TYPE);
         }
+        return jsonColumns;
+    }
 
-        return cellProcessors.toArray(new CellProcessor[cellProcessors.size()]);
+    private CellProcessor[] createCellProcessors(final boolean[] jsonColumns) {
+        final CellProcessor[] cellProcessors = new CellProcessor[jsonColumns.length];
+        for (int i = 0; i < jsonColumns.length; i++) {
+            cellProcessors[i] = jsonColumns[i] ? new Optional(new ParseJsonValue()) : new Optional();
+        }
+        return cellProcessors;
     }
 
     /**
@@ -583,7 +1019,21 @@ public class CsvAuditEventHandler extends AuditEventHandlerBase {
             logger.error("Unable to close filewriters during {} cleanup", this.getClass().getName(), e);
             throw new InternalServerErrorException(
                     "Unable to close filewriters during " + this.getClass().getName() + " cleanup", e);
+        } finally {
+            closeIndexes();
+            queryExecutor.shutdown();
+        }
+    }
+
+    private void closeIndexes() {
+        for (CsvIndex index : indexes.values()) {
+            try {
+                index.close();
+            } catch (IOException e) {
+                logger.warn("Unable to save the index of the audit files; it will be rebuilt on next startup", e);
+            }
         }
+        indexes.clear();
     }
 
     private Map<String, Object> convertDotNotationToSlashes(final Map<String, Object> entries) {
@@ -15,6 +15,9 @@
  */
 package org.forgerock.audit.handlers.csv;
 
+import java.util.LinkedList;
+import java.util.List;
+
 import org.forgerock.audit.events.handlers.FileBasedEventHandlerConfiguration;
 import org.forgerock.util.Reject;
 import org.forgerock.util.time.Duration;
@@ -47,6 +50,14 @@ import com.fasterxml.jackson.annotation.JsonPropertyDescription;
  *    "buffering" : {
  *      "enabled" : "true",
  *      "autoFlush" : "true"
+ *    },
+ *    "indexing" : {
+ *      "enabled" : "true",
+ *      "fields" : [ "transactionId", "timestamp", "userId" ]
+ *    },
+ *    "querying" : {
+ *      "memoryMapped" : "true",
+ *      "chunkSize" : 8388608
  *    }
  *  }
  * </pre>
@@ -67,6 +78,14 @@ public class CsvAuditEventHandlerConfiguration extends FileBasedEventHandlerConf
     @JsonPropertyDescription("audit.handlers.csv.buffering")
     protected EventBufferingConfiguration buffering = new EventBufferingConfiguration();
 
+    /** Event indexing is disabled by default. */
+    @JsonPropertyDescription("audit.handlers.csv.indexing")
+    private CsvIndexing indexing = new CsvIndexing();
+
+    /** Queries use the super-csv readers by default. */
+    @JsonPropertyDescription("audit.handlers.csv.querying")
+    private CsvQuerying querying = new CsvQuerying();
+
     /**
      * Returns the directory where CSV file is located.
      *
@@ -143,6 +162,44 @@ public class CsvAuditEventHandlerConfiguration extends FileBasedEventHandlerConf
         this.buffering = bufferingConfiguration;
     }
 
+    /**
+     * Returns the configuration for events indexing.
+     *
+     * @return the configuration
+     */
+    public CsvIndexing getIndexing() {
+        return indexing;
+    }
+
+    /**
+     * Sets the configuration for events indexing.
+     *
+     * @param indexing
+     *            The configuration
+     */
+    public void setIndexing(CsvIndexing indexing) {
+        this.indexing = Reject.checkNotNull(indexing);
+    }
+
+    /**
+     * Returns the configuration for events querying.
+     *
+     * @return the configuration
+     */
+    public CsvQuerying getQuerying() {
+        return querying;
+    }
+
+    /**
+     * Sets the configuration for events querying.
+     *
+     * @param querying
+     *            The configuration
+     */
+    public void setQuerying(CsvQuerying querying) {
+        this.querying = Reject.checkNotNull(querying);
+    }
+
     /**
      * Contains the csv writer configuration parameters
      */
@@ -364,4 +421,113 @@ public class CsvAuditEventHandlerConfiguration extends FileBasedEventHandlerConf
         }
 
     }
+
+    /**
+     * Configuration of the index kept alongside each CSV file to serve reads and queries without scanning the file.
+     */
+    public static class CsvIndexing {
+
+        @JsonPropertyDescription("audit.handlers.csv.indexing.enabled")
+        private boolean enabled;
+
+        @JsonPropertyDescription("audit.handlers.csv.indexing.fields")
+        private final List<String> fields = new LinkedList<>();
+
+        /**
+         * Indicates if event indexing is enabled. When enabled, the {@code _id} field is always indexed.
+         *
+         * @return {@code true} if indexing is enabled.
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Sets the indexing status.
+         *
+         * @param enabled
+         *            Indicates if indexing is enabled.
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Gets the fields indexed in addition to {@code _id}, in dot notation (e.g. {@code transactionId},
+         * {@code timestamp} or {@code userId}). Object and array fields can't be indexed.
+         *
+         * @return the additional indexed fields.
+         */
+        public List<String> getFields() {
+            return fields;
+        }
+
+        /**
+         * Sets the fields indexed in addition to {@code _id}, in dot notation.
+         *
+         * @param fields
+         *            the additional indexed fields.
+         */
+        public void setFields(List<String> fields) {
+            this.fields.addAll(fields);
+        }
+    }
+
+    /**
+     * Configuration of the queries on the CSV files.
+     */
+    public static class CsvQuerying {
+
+        /** Default size of the chunks of memory mapped files: 8 MB. */
+        public static final long DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+        @JsonPropertyDescription("audit.handlers.csv.querying.memoryMapped")
+        private boolean memoryMapped;
+
+        @JsonPropertyDescription("audit.handlers.csv.querying.chunkSize")
+        private long chunkSize = DEFAULT_CHUNK_SIZE;
+
+        /**
+         * Indicates if queries scan the CSV files through memory mappings. When enabled, each file is split in
+         * chunks parsed in parallel, and query filters are evaluated before the matching rows are converted to JSON.
+         * <p>
+         * Mapped files are only released by the garbage collector, which prevents them from being renamed or
+         * deleted on some platforms until then.
+         *
+         * @return {@code true} if files are memory mapped.
+         */
+        public boolean isMemoryMapped() {
+            return memoryMapped;
+        }
+
+        /**
+         * Sets if queries scan the CSV files through memory mappings.
+         *
+         * @param memoryMapped
+         *            Indicates if files are memory mapped.
+         */
+        public void setMemoryMapped(boolean memoryMapped) {
+            this.memoryMapped = memoryMapped;
+        }
+
+        /**
+         * Gets the size of the chunks parsed in parallel when files are memory mapped.
+         *
+         * @return the size of the chunks, in bytes.
+         */
+        public long getChunkSize() {
+            return chunkSize;
+        }
+
+        /**
+         * Sets the size of the chunks parsed in parallel when files are memory mapped.
+         *
+         * @param chunkSize
+         *            the size of the chunks, in bytes; must be positive.
+         */
+        public void setChunkSize(long chunkSize) {
+            Reject.ifFalse(chunkSize > 0, "The chunk size must be positive");
+            this.chunkSize = chunkSize;
+        }
+    }
 }
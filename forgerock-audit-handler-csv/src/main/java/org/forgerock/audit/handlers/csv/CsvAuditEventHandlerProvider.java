@@ -0,0 +1,46 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+
+package org.forgerock.audit.handlers.csv;
+
+import org.forgerock.audit.DependencyProvider;
+import org.forgerock.audit.events.EventTopicsMetaData;
+import org.forgerock.audit.events.handlers.AuditEventHandlerProvider;
+import org.forgerock.audit.metrics.MetricRegistry;
+import org.forgerock.audit.providers.KeyStoreHandlerProvider;
+
+/**
+ * Creates {@link CsvAuditEventHandler} instances without reflection; registered with
+ * {@link java.util.ServiceLoader}.
+ */
+public final class CsvAuditEventHandlerProvider
+        extends AuditEventHandlerProvider<CsvAuditEventHandler, CsvAuditEventHandlerConfiguration> {
+
+    /**
+     * Construct a new instance.
+     */
+    public CsvAuditEventHandlerProvider() {
+        super(CsvAuditEventHandler.class, CsvAuditEventHandlerConfiguration.class);
+    }
+
+    @Override
+    protected CsvAuditEventHandler newHandler(CsvAuditEventHandlerConfiguration configuration,
+            EventTopicsMetaData eventTopicsMetaData, DependencyProvider dependencyProvider) {
+        return new CsvAuditEventHandler(configuration, eventTopicsMetaData,
+                getDependency(dependencyProvider, KeyStoreHandlerProvider.class),
+                getDependency(dependencyProvider, MetricRegistry.class));
+    }
+}
@@ -18,10 +18,10 @@ package org.forgerock.audit.handlers.csv;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
-import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.supercsv.io.CsvListWriter;
 import org.supercsv.io.CsvMapWriter;
 import org.supercsv.prefs.CsvPreference;
 
@@ -47,10 +47,19 @@ class CsvFormatter {
         return buffer.takeBufferContents();
     }
 
-    public String formatEvent(Map<String, String> values, String[] headers) throws IOException {
+    /**
+     * Formats a row of cells.
+     *
+     * @param values
+     *          The cells, in the order of the columns of the header; {@code null} cells are left empty.
+     * @return the CSV line.
+     * @throws IOException
+     *          If the row can't be formatted.
+     */
+    public String formatEvent(String[] values) throws IOException {
         final StringBuilderWriter buffer = new StringBuilderWriter();
-        final CsvMapWriter writer = new CsvMapWriter(buffer, csvPreference, false);
-        writer.write(values, headers);
+        final CsvListWriter writer = new CsvListWriter(buffer, csvPreference);
+        writer.write(values);
         String line = buffer.takeBufferContents();
         logger.trace("Formatted event: {}", line);
         return line;
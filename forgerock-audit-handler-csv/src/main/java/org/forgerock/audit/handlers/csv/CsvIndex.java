@@ -0,0 +1,656 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.csv;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+import static org.forgerock.audit.events.AuditEventHelper.jsonPointerToDotNotation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.forgerock.json.JsonPointer;
+import org.forgerock.util.query.QueryFilter;
+import org.forgerock.util.query.QueryFilterVisitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sidecar index of a CSV audit file, mapping the values of some columns to the byte offsets of the rows holding
+ * them. The {@code _id} column is always indexed, other columns (e.g. {@code transactionId}, {@code timestamp},
+ * {@code userId}) are optional.
+ * <p>
+ * The index tails the CSV file: each {@link #refresh()} only parses the rows appended since the previous call, so
+ * keeping it up to date costs one pass over the written bytes. Rows are indexed once they are complete on disk,
+ * which keeps the index consistent with buffered and asynchronous writers. When the CSV file is rotated or
+ * replaced, the index detects it and is rebuilt from the start of the new file.
+ * <p>
+ * The index is saved next to the CSV file by {@link #close()} and loaded back by {@link #open()}. A missing or stale
+ * saved index is rebuilt by scanning the CSV file.
+ * <p>
+ * Values are compared ignoring case, as done by
+ * {@link org.forgerock.audit.util.JsonValueUtils#JSONVALUE_FILTER_VISITOR}, so that the rows found through the index
+ * are a superset of the rows matching a filter. Callers must still apply the filter to each row read back.
+ */
+class CsvIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(CsvIndex.class);
+
+    /** Suffix appended to the name of the CSV file to get the name of the saved index. */
+    static final String INDEX_FILE_SUFFIX = ".idx";
+    /** Name of the column that is always indexed. */
+    static final String ID_FIELD = "_id";
+
+    private static final int MAGIC = 0x43535649;
+    private static final int VERSION = 1;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int FINGERPRINT_SIZE = 256;
+
+    private final File file;
+    private final File indexFile;
+    private final CsvRecordTokenizer tokenizer;
+    private final List<String> fields;
+    private final Map<String, NavigableMap<String, Offsets>> offsetsByValueByField = new LinkedHashMap<>();
+
+    private String[] headers;
+    private int[] columns;
+    private long indexedLength;
+    private String fileKey;
+    private byte[] fingerprint = new byte[0];
+
+    /**
+     * Creates an empty index for a CSV file.
+     *
+     * @param file
+     *          The CSV file to index.
+     * @param tokenizer
+     *          The tokenizer matching the CSV file format.
+     * @param secondaryFields
+     *          The columns to index in addition to {@code _id}, in dot notation.
+     */
+    CsvIndex(File file, CsvRecordTokenizer tokenizer, Collection<String> secondaryFields) {
+        this.file = file;
+        this.indexFile = new File(file.getPath() + INDEX_FILE_SUFFIX);
+        this.tokenizer = tokenizer;
+        List<String> fields = new ArrayList<>();
+        fields.add(ID_FIELD);
+        for (String field : secondaryFields) {
+            if (!fields.contains(field)) {
+                fields.add(field);
+            }
+        }
+        this.fields = Collections.unmodifiableList(fields);
+        clear();
+    }
+
+    /**
+     * Returns the indexed columns, in dot notation.
+     *
+     * @return the indexed columns, {@code _id} being the first one.
+     */
+    List<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Returns the header row of the indexed CSV file.
+     *
+     * @return the headers, or {@code null} if the header row has not been read yet.
+     */
+    synchronized String[] getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Loads the saved index if it matches the CSV file, then catches up with the rows written since it was saved.
+     * If the saved index is missing or stale, the index is rebuilt from the whole CSV file.
+     *
+     * @throws IOException
+     *          If the CSV file can't be read.
+     */
+    synchronized void open() throws IOException {
+        if (indexFile.exists()) {
+            try {
+                load();
+            } catch (IOException e) {
+                logger.info("Ignoring unreadable CSV index {}: {}", indexFile, e.getMessage());
+                clear();
+            }
+        }
+        refresh();
+    }
+
+    /**
+     * Saves the index next to the CSV file so that it can be reloaded by {@link #open()}.
+     *
+     * @throws IOException
+     *          If the index can't be saved.
+     */
+    synchronized void close() throws IOException {
+        refresh();
+        save();
+    }
+
+    /**
+     * Indexes the rows appended to the CSV file since the last call. If the CSV file has been rotated or replaced
+     * since then, the index is rebuilt.
+     *
+     * @throws IOException
+     *          If the CSV file can't be read.
+     */
+    synchronized void refresh() throws IOException {
+        if (!file.exists()) {
+            clear();
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+            final String currentFileKey = readFileKey();
+            if (!isIndexOf(channel, currentFileKey)) {
+                logger.debug("CSV file {} has been replaced, rebuilding its index", file);
+                clear();
+            }
+            fileKey = currentFileKey;
+            scan(channel);
+        }
+    }
+
+    /**
+     * Returns the offsets of the rows whose {@code _id} matches the provided one.
+     *
+     * @param id
+     *          The event identifier.
+     * @return the offsets of the matching rows, in file order.
+     */
+    synchronized SortedSet<Long> findById(String id) {
+        final SortedSet<Long> result = new TreeSet<>();
+        addAll(result, offsetsByValueByField.get(ID_FIELD).get(id));
+        return result;
+    }
+
+    /**
+     * Returns the offsets of the rows that may match the provided filter.
+     *
+     * @param filter
+     *          The query filter.
+     * @return the offsets of the candidate rows in file order, or {@code null} if the indexed columns can't be used
+     *          to narrow down the filter; in that case, the whole file has to be scanned.
+     */
+    synchronized SortedSet<Long> findCandidates(QueryFilter<JsonPointer> filter) {
+        return filter.accept(candidatesVisitor, null);
+    }
+
+    /**
+     * Reads back the cells of the row starting at the provided offset.
+     *
+     * @param offset
+     *          The offset of the row, as returned by the find methods.
+     * @return the cells of the row, or {@code null} if there is no complete row at this offset.
+     * @throws IOException
+     *          If the CSV file can't be read.
+     */
+    String[] readRecord(long offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+            return readRecord(channel, offset);
+        }
+    }
+
+    /**
+     * Reads back the cells of the row starting at the provided offset using an already opened channel.
+     *
+     * @param channel
+     *          The channel to the CSV file.
+     * @param offset
+     *          The offset of the row, as returned by the find methods.
+     * @return the cells of the row, or {@code null} if there is no complete row at this offset.
+     * @throws IOException
+     *          If the CSV file can't be read.
+     */
+    String[] readRecord(FileChannel channel, long offset) throws IOException {
+        byte[] bytes = new byte[4096];
+        int filled = 0;
+        while (true) {
+            final int read = channel.read(ByteBuffer.wrap(bytes, filled, bytes.length - filled), offset + filled);
+            if (read <= 0) {
+                return null;
+            }
+            filled += read;
+            final ByteBuffer view = ByteBuffer.wrap(bytes, 0, filled);
+            // a quote may have been split from its escaping quote, so always rescan the record from its start
+            final int end = tokenizer.findRecordEnd(view, 0, filled);
+            if (end != -1) {
+                return tokenizer.tokenize(view, 0, end);
+            }
+            if (filled == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+        }
+    }
+
+    private void clear() {
+        headers = null;
+        columns = null;
+        indexedLength = 0;
+        fileKey = null;
+        fingerprint = new byte[0];
+        offsetsByValueByField.clear();
+        for (String field : fields) {
+            offsetsByValueByField.put(field, new TreeMap<String, Offsets>(String.CASE_INSENSITIVE_ORDER));
+        }
+    }
+
+    private String readFileKey() throws IOException {
+        final Object key = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+        return key == null ? null : key.toString();
+    }
+
+    /**
+     * Checks that the indexed bytes are still the first bytes of the CSV file.
+     */
+    private boolean isIndexOf(FileChannel channel, String currentFileKey) throws IOException {
+        if (indexedLength == 0) {
+            return true;
+        }
+        if (channel.size() < indexedLength) {
+            return false;
+        }
+        if (fileKey != null && currentFileKey != null && !fileKey.equals(currentFileKey)) {
+            return false;
+        }
+        return Arrays.equals(fingerprint, readFingerprint(channel, indexedLength));
+    }
+
+    private byte[] readFingerprint(FileChannel channel, long length) throws IOException {
+        final int size = (int) Math.min(FINGERPRINT_SIZE, length);
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        long position = length - size;
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) <= 0) {
+                break;
+            }
+        }
+        return buffer.array();
+    }
+
+    private void scan(FileChannel channel) throws IOException {
+        final long size = channel.size();
+        if (size <= indexedLength) {
+            return;
+        }
+        byte[] bytes = new byte[READ_BUFFER_SIZE];
+        long bufferOffset = indexedLength;
+        int filled = 0;
+        int start = 0;
+        while (bufferOffset + filled < size) {
+            if (filled == bytes.length) {
+                if (start > 0) {
+                    System.arraycopy(bytes, start, bytes, 0, filled - start);
+                    filled -= start;
+                    bufferOffset += start;
+                    start = 0;
+                } else {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                }
+            }
+            final int read = channel.read(ByteBuffer.wrap(bytes, filled, bytes.length - filled), bufferOffset + filled);
+            if (read <= 0) {
+                break;
+            }
+            filled += read;
+            final ByteBuffer view = ByteBuffer.wrap(bytes, 0, filled);
+            int end;
+            while ((end = tokenizer.findRecordEnd(view, start, filled)) != -1) {
+                addRecord(tokenizer.tokenize(view, start, end), bufferOffset + start);
+                start = end;
+            }
+        }
+        if (bufferOffset + start > indexedLength) {
+            indexedLength = bufferOffset + start;
+            fingerprint = readFingerprint(channel, indexedLength);
+        }
+    }
+
+    private void addRecord(String[] cells, long offset) {
+        if (headers == null) {
+            setHeaders(cells);
+            return;
+        }
+        for (int i = 0; i < columns.length; i++) {
+            final int column = columns[i];
+            if (column < 0 || column >= cells.length || cells[column] == null) {
+                continue;
+            }
+            final NavigableMap<String, Offsets> offsetsByValue = offsetsByValueByField.get(fields.get(i));
+            Offsets offsets = offsetsByValue.get(cells[column]);
+            if (offsets == null) {
+                offsets = new Offsets();
+                offsetsByValue.put(cells[column], offsets);
+            }
+            offsets.add(offset);
+        }
+    }
+
+    private void setHeaders(String[] headers) {
+        this.headers = headers;
+        this.columns = new int[fields.size()];
+        final List<String> headerList = Arrays.asList(headers);
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = headerList.indexOf(fields.get(i));
+        }
+    }
+
+    private void save() throws IOException {
+        final File tmpFile = new File(indexFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(indexedLength);
+            writeString(out, fileKey);
+            out.writeInt(fingerprint.length);
+            out.write(fingerprint);
+            out.writeInt(headers == null ? -1 : headers.length);
+            if (headers != null) {
+                for (String header : headers) {
+                    writeString(out, header);
+                }
+            }
+            out.writeInt(fields.size());
+            for (String field : fields) {
+                writeString(out, field);
+                final NavigableMap<String, Offsets> offsetsByValue = offsetsByValueByField.get(field);
+                out.writeInt(offsetsByValue.size());
+                for (Map.Entry<String, Offsets> entry : offsetsByValue.entrySet()) {
+                    writeString(out, entry.getKey());
+                    entry.getValue().writeTo(out);
+                }
+            }
+        }
+        Files.move(tmpFile.toPath(), indexFile.toPath(), REPLACE_EXISTING);
+    }
+
+    private void load() throws IOException {
+        clear();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unsupported index format");
+            }
+            final long length = in.readLong();
+            final String key = readString(in);
+            final byte[] print = new byte[in.readInt()];
+            in.readFully(print);
+            final int headerCount = in.readInt();
+            if (headerCount >= 0) {
+                final String[] savedHeaders = new String[headerCount];
+                for (int i = 0; i < headerCount; i++) {
+                    savedHeaders[i] = readString(in);
+                }
+                setHeaders(savedHeaders);
+            }
+            final int fieldCount = in.readInt();
+            final List<String> savedFields = new ArrayList<>(fieldCount);
+            for (int i = 0; i < fieldCount; i++) {
+                final String field = readString(in);
+                savedFields.add(field);
+                final NavigableMap<String, Offsets> offsetsByValue = offsetsByValueByField.get(field);
+                final int valueCount = in.readInt();
+                for (int j = 0; j < valueCount; j++) {
+                    final String value = readString(in);
+                    final Offsets offsets = Offsets.readFrom(in);
+                    if (offsetsByValue != null) {
+                        offsetsByValue.put(value, offsets);
+                    }
+                }
+            }
+            if (!savedFields.equals(fields)) {
+                throw new IOException("Indexed fields have changed");
+            }
+            indexedLength = length;
+            fileKey = key;
+            fingerprint = print;
+        } catch (IOException e) {
+            clear();
+            throw e;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void addAll(SortedSet<Long> result, Offsets offsets) {
+        if (offsets != null) {
+            offsets.addTo(result);
+        }
+    }
+
+    private static void addAll(SortedSet<Long> result, Collection<Offsets> offsets) {
+        for (Offsets value : offsets) {
+            value.addTo(result);
+        }
+    }
+
+    private NavigableMap<String, Offsets> getIndexedValues(JsonPointer field, Object valueAssertion) {
+        if (!(valueAssertion instanceof String) || columns == null) {
+            return null;
+        }
+        final int fieldIndex = fields.indexOf(jsonPointerToDotNotation(field.toString()));
+        // a field missing from the file is absent from every row, which the filters don't treat as a mismatch
+        if (fieldIndex < 0 || columns[fieldIndex] < 0) {
+            return null;
+        }
+        return offsetsByValueByField.get(fields.get(fieldIndex));
+    }
+
+    /**
+     * Computes the candidate rows of a filter, {@code null} meaning that all the rows are candidates.
+     */
+    private final QueryFilterVisitor<SortedSet<Long>, Void, JsonPointer> candidatesVisitor =
+            new QueryFilterVisitor<SortedSet<Long>, Void, JsonPointer>() {
+
+                @Override
+                public SortedSet<Long> visitAndFilter(Void p, List<QueryFilter<JsonPointer>> subFilters) {
+                    SortedSet<Long> result = null;
+                    for (QueryFilter<JsonPointer> subFilter : subFilters) {
+                        final SortedSet<Long> candidates = subFilter.accept(this, p);
+                        if (candidates != null) {
+                            if (result == null) {
+                                result = candidates;
+                            } else {
+                                result.retainAll(candidates);
+                            }
+                        }
+                    }
+                    return result;
+                }
+
+                @Override
+                public SortedSet<Long> visitOrFilter(Void p, List<QueryFilter<JsonPointer>> subFilters) {
+                    final SortedSet<Long> result = new TreeSet<>();
+                    for (QueryFilter<JsonPointer> subFilter : subFilters) {
+                        final SortedSet<Long> candidates = subFilter.accept(this, p);
+                        if (candidates == null) {
+                            return null;
+                        }
+                        result.addAll(candidates);
+                    }
+                    return result;
+                }
+
+                @Override
+                public SortedSet<Long> visitBooleanLiteralFilter(Void p, boolean value) {
+                    return value ? null : new TreeSet<Long>();
+                }
+
+                @Override
+                public SortedSet<Long> visitEqualsFilter(Void p, JsonPointer field, Object valueAssertion) {
+                    final NavigableMap<String, Offsets> values = getIndexedValues(field, valueAssertion);
+                    if (values == null) {
+                        return null;
+                    }
+                    final SortedSet<Long> result = new TreeSet<>();
+                    addAll(result, values.get(valueAssertion));
+                    return result;
+                }
+
+                @Override
+                public SortedSet<Long> visitGreaterThanFilter(Void p, JsonPointer field, Object valueAssertion) {
+                    final NavigableMap<String, Offsets> values = getIndexedValues(field, valueAssertion);
+                    if (values == null) {
+                        return null;
+                    }
+                    final SortedSet<Long> result = new TreeSet<>();
+                    addAll(result, values.tailMap((String) valueAssertion, false).values());
+                    return result;
+                }
+
+                @Override
+                public SortedSet<Long> visitGreaterThanOrEqualToFilter(Void p, JsonPointer field,
+                        Object valueAssertion) {
+                    final NavigableMap<String, Offsets> values = getIndexedValues(field, valueAssertion);
+                    if (values == null) {
+                        return null;
+                    }
+                    final SortedSet<Long> result = new TreeSet<>();
+                    addAll(result, values.tailMap((String) valueAssertion, true).values());
+                    return result;
+                }
+
+                @Override
+                public SortedSet<Long> visitLessThanFilter(Void p, JsonPointer field, Object valueAssertion) {
+                    final NavigableMap<String, Offsets> values = getIndexedValues(field, valueAssertion);
+                    if (values == null) {
+                        return null;
+                    }
+                    final SortedSet<Long> result = new TreeSet<>();
+                    addAll(result, values.headMap((String) valueAssertion, false).values());
+                    return result;
+                }
+
+                @Override
+                public SortedSet<Long> visitLessThanOrEqualToFilter(Void p, JsonPointer field,
+                        Object valueAssertion) {
+                    final NavigableMap<String, Offsets> values = getIndexedValues(field, valueAssertion);
+                    if (values == null) {
+                        return null;
+                    }
+                    final SortedSet<Long> result = new TreeSet<>();
+                    addAll(result, values.headMap((String) valueAssertion, true).values());
+                    return result;
+                }
+
+                @Override
+                public SortedSet<Long> visitContainsFilter(Void p, JsonPointer field, Object valueAssertion) {
+                    return null;
+                }
+
+                @Override
+                public SortedSet<Long> visitExtendedMatchFilter(Void p, JsonPointer field, String matchingRuleId,
+                        Object valueAssertion) {
+                    return null;
+                }
+
+                @Override
+                public SortedSet<Long> visitNotFilter(Void p, QueryFilter<JsonPointer> subFilter) {
+                    return null;
+                }
+
+                @Override
+                public SortedSet<Long> visitPresentFilter(Void p, JsonPointer field) {
+                    return null;
+                }
+
+                @Override
+                public SortedSet<Long> visitStartsWithFilter(Void p, JsonPointer field, Object valueAssertion) {
+                    return null;
+                }
+            };
+
+    /**
+     * Compact growable list of row offsets; most values (e.g. event ids) map to a single row.
+     */
+    private static final class Offsets {
+        private long[] values = new long[1];
+        private int size;
+
+        void add(long offset) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = offset;
+        }
+
+        void addTo(Collection<Long> result) {
+            for (int i = 0; i < size; i++) {
+                result.add(values[i]);
+            }
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeLong(values[i]);
+            }
+        }
+
+        static Offsets readFrom(DataInputStream in) throws IOException {
+            final int size = in.readInt();
+            final Offsets offsets = new Offsets();
+            offsets.values = new long[Math.max(size, 1)];
+            for (int i = 0; i < size; i++) {
+                offsets.values[i] = in.readLong();
+            }
+            offsets.size = size;
+            return offsets;
+        }
+    }
+}
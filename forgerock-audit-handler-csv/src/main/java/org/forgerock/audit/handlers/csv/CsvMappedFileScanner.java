@@ -0,0 +1,382 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.csv;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.READ;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.forgerock.audit.handlers.csv.CsvQueryExecutor.Scan;
+import org.forgerock.audit.handlers.csv.CsvQueryExecutor.Sink;
+import org.forgerock.util.Reject;
+
+/**
+ * Scans a CSV file through memory mappings, splitting it in chunks that can be parsed in parallel.
+ * <p>
+ * Chunks are cut at fixed byte offsets, which may fall in the middle of a record or even of a quoted cell. Each
+ * chunk first counts its quote characters; once the counts of all the preceding chunks are known, the parity of
+ * their sum tells if the chunk starts within quotes, hence where its first record starts. A chunk then parses the
+ * records starting within its bounds, the last one possibly ending in the next chunk.
+ * <p>
+ * Only the records found in the file when it is opened are scanned, and an incomplete last record (still being
+ * written) is ignored.
+ * <p>
+ * Each chunk maps its own bytes plus a small overflow for the record ending after it; the rare record exceeding this
+ * overflow gets the mapping of the chunk extended, doubling it as needed, through the file channel which is kept open
+ * until the chunks have all been scanned or cancelled.
+ * <p>
+ * Mapped buffers are released by the garbage collector only, which prevents mapped files from being renamed or
+ * deleted on some platforms until then.
+ */
+final class CsvMappedFileScanner {
+
+    /** The largest region of a file that can be mapped at once. */
+    private static final long MAX_MAPPING_SIZE = Integer.MAX_VALUE;
+
+    /** The bytes first mapped to read the header, and past the end of a chunk to read the record ending after it. */
+    static final int OVERFLOW_MAPPING_SIZE = 64 * 1024;
+
+    /**
+     * Visitor of the records of the file.
+     */
+    interface RecordVisitor {
+        /**
+         * Visits a record. This method is called concurrently by the chunks of the file.
+         *
+         * @param cells
+         *          The cells of the record, empty cells being {@code null}.
+         * @param sink
+         *          The receiver of the entries of the scan of the chunk.
+         * @return {@code false} to stop scanning the chunk.
+         */
+        boolean visit(String[] cells, Sink sink);
+    }
+
+    /**
+     * Listener notified once all the records of the file have been visited.
+     */
+    interface CompletionListener {
+        /**
+         * Notifies that the whole file has been scanned.
+         *
+         * @param min
+         *          The smallest value of the tracked column, {@code null} if the column has no values.
+         * @param max
+         *          The greatest value of the tracked column, {@code null} if the column has no values.
+         */
+        void completed(String min, String max);
+    }
+
+    private final File file;
+    private final CsvRecordTokenizer tokenizer;
+    private final long length;
+    private final long dataStart;
+    private final String[] header;
+
+    private CsvMappedFileScanner(File file, CsvRecordTokenizer tokenizer, long length, long dataStart,
+            String[] header) {
+        this.file = file;
+        this.tokenizer = tokenizer;
+        this.length = length;
+        this.dataStart = dataStart;
+        this.header = header;
+    }
+
+    /**
+     * Reads the header of the file and prepares the scan of the records following it.
+     *
+     * @param file
+     *          The CSV file.
+     * @param tokenizer
+     *          The tokenizer matching the format of the file.
+     * @return the scanner, or {@code null} if the file has no complete header yet.
+     * @throws IOException
+     *          If the file can't be read.
+     */
+    static CsvMappedFileScanner open(File file, CsvRecordTokenizer tokenizer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+            final long length = channel.size();
+            if (length == 0) {
+                return null;
+            }
+            long mappingSize = Math.min(length, OVERFLOW_MAPPING_SIZE);
+            MappedByteBuffer buffer = channel.map(READ_ONLY, 0, mappingSize);
+            int headerEnd = tokenizer.findRecordEnd(buffer, 0, buffer.limit());
+            while (headerEnd == -1) {
+                if (mappingSize == Math.min(length, MAX_MAPPING_SIZE)) {
+                    return null;
+                }
+                mappingSize = Math.min(Math.min(length, MAX_MAPPING_SIZE), 2 * mappingSize);
+                buffer = channel.map(READ_ONLY, 0, mappingSize);
+                headerEnd = tokenizer.findRecordEnd(buffer, 0, buffer.limit());
+            }
+            final String[] header = tokenizer.tokenize(buffer, 0, headerEnd);
+            return new CsvMappedFileScanner(file, tokenizer, length, headerEnd, header);
+        }
+    }
+
+    /**
+     * Gets the cells of the header of the file.
+     *
+     * @return the header.
+     */
+    String[] getHeader() {
+        return header;
+    }
+
+    /**
+     * Creates the scans of the chunks of the file. The scans must be run in the order of the list, possibly
+     * concurrently: a scan waits for the scans of the preceding chunks to have counted their quotes.
+     * <p>
+     * The chunks are mapped right away, and the file is kept open until the scans are over, so that the scans are
+     * not affected if the file is renamed or deleted in the meantime, as when rotated files get compressed.
+     *
+     * @param chunkSize
+     *          The size of the chunks, in bytes.
+     * @param visitor
+     *          The visitor of the records.
+     * @param trackedColumn
+     *          The column whose range of values is reported to the listener, or {@code -1}.
+     * @param listener
+     *          The listener notified once all the chunks have been fully scanned, may be {@code null}.
+     * @return the scans of the chunks.
+     * @throws IOException
+     *          If the file can't be mapped.
+     */
+    List<Scan> createScans(long chunkSize, RecordVisitor visitor, int trackedColumn, CompletionListener listener)
+            throws IOException {
+        Reject.ifFalse(chunkSize > 0, "The chunk size must be positive");
+        final int chunkCount = (int) ((length - dataStart + chunkSize - 1) / chunkSize);
+        final FileChannel channel = FileChannel.open(file.toPath(), READ);
+        final Chunks chunks = new Chunks(chunkCount, trackedColumn, listener, channel);
+        final List<Scan> scans = new ArrayList<>(chunkCount);
+        try {
+            for (int i = 0; i < chunkCount; i++) {
+                // map the preceding byte too, to tell if a record starts right at the beginning of the chunk
+                final long mappingStart = dataStart + i * chunkSize - 1;
+                final long chunkEnd = Math.min(mappingStart + 1 + chunkSize, length);
+                final long mappingSize = Math.min(Math.min(chunkEnd + OVERFLOW_MAPPING_SIZE, length) - mappingStart,
+                        MAX_MAPPING_SIZE);
+                scans.add(new ChunkScan(chunks, i, mappingStart, channel.map(READ_ONLY, mappingStart, mappingSize),
+                        (int) (chunkEnd - mappingStart), visitor));
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        if (chunkCount == 0) {
+            chunks.release();
+            chunks.completed(null, null);
+        }
+        return scans;
+    }
+
+    /**
+     * State shared by the scans of the chunks of a file.
+     */
+    private static final class Chunks {
+        private final int[] quoteParities;
+        private final CountDownLatch[] quotesCounted;
+        private final int trackedColumn;
+        private final CompletionListener listener;
+        private final FileChannel channel;
+        private int remaining;
+        private int unreleased;
+        private String min;
+        private String max;
+
+        Chunks(int count, int trackedColumn, CompletionListener listener, FileChannel channel) {
+            this.quoteParities = new int[count];
+            this.quotesCounted = new CountDownLatch[count];
+            Arrays.fill(quoteParities, -1);
+            for (int i = 0; i < count; i++) {
+                quotesCounted[i] = new CountDownLatch(1);
+            }
+            this.trackedColumn = trackedColumn;
+            this.listener = listener;
+            this.channel = channel;
+            this.remaining = count;
+            this.unreleased = count;
+        }
+
+        MappedByteBuffer map(long position, long size) throws IOException {
+            return channel.map(READ_ONLY, position, size);
+        }
+
+        /**
+         * Notifies that a chunk no longer needs the file channel, closing it once no chunk needs it.
+         */
+        synchronized void release() throws IOException {
+            unreleased--;
+            if (unreleased <= 0 && channel.isOpen()) {
+                channel.close();
+            }
+        }
+
+        void setQuoteParity(int chunk, int parity) {
+            quoteParities[chunk] = parity;
+        }
+
+        void quotesCounted(int chunk) {
+            quotesCounted[chunk].countDown();
+        }
+
+        /**
+         * Releases the chunks waiting for chunks that won't be scanned.
+         */
+        void cancel() {
+            for (CountDownLatch latch : quotesCounted) {
+                latch.countDown();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // the mappings remain valid
+            }
+        }
+
+        /**
+         * Waits for the preceding chunks and tells if the chunk starts within quotes.
+         */
+        boolean startsQuoted(int chunk) throws IOException {
+            int parity = 0;
+            for (int i = 0; i < chunk; i++) {
+                try {
+                    quotesCounted[i].await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the preceding CSV chunks");
+                }
+                if (quoteParities[i] == -1) {
+                    throw new IOException("A preceding chunk of the CSV file failed or was cancelled");
+                }
+                parity ^= quoteParities[i];
+            }
+            return parity == 1;
+        }
+
+        synchronized void completed(String chunkMin, String chunkMax) {
+            if (chunkMin != null && (min == null || chunkMin.compareToIgnoreCase(min) < 0)) {
+                min = chunkMin;
+            }
+            if (chunkMax != null && (max == null || chunkMax.compareToIgnoreCase(max) > 0)) {
+                max = chunkMax;
+            }
+            remaining--;
+            if (remaining <= 0 && listener != null) {
+                listener.completed(min, max);
+            }
+        }
+    }
+
+    /**
+     * Scan of the records starting within {@code [1, chunkEnd)} of the buffer, which maps the file from the byte
+     * preceding the chunk.
+     */
+    private final class ChunkScan extends Scan {
+        private final Chunks chunks;
+        private final int index;
+        private final long mappingStart;
+        private MappedByteBuffer buffer;
+        private final int chunkEnd;
+        private final RecordVisitor visitor;
+
+        ChunkScan(Chunks chunks, int index, long mappingStart, MappedByteBuffer buffer, int chunkEnd,
+                RecordVisitor visitor) {
+            this.chunks = chunks;
+            this.index = index;
+            this.mappingStart = mappingStart;
+            this.buffer = buffer;
+            this.chunkEnd = chunkEnd;
+            this.visitor = visitor;
+        }
+
+        @Override
+        public void cancel() {
+            chunks.cancel();
+        }
+
+        @Override
+        public void scan(Sink sink) throws IOException {
+            try {
+                scanChunk(sink);
+            } finally {
+                chunks.release();
+            }
+        }
+
+        private void scanChunk(Sink sink) throws IOException {
+            final int chunkStart = 1;
+            try {
+                chunks.setQuoteParity(index, tokenizer.countQuotes(buffer, chunkStart, chunkEnd) & 1);
+            } finally {
+                chunks.quotesCounted(index);
+            }
+            int position = tokenizer.findRecordStart(buffer, chunkStart, buffer.limit(), chunks.startsQuoted(index));
+            String min = null;
+            String max = null;
+            while (position != -1 && position < chunkEnd) {
+                int recordEnd = tokenizer.findRecordEnd(buffer, position, buffer.limit());
+                while (recordEnd == -1 && extendMapping()) {
+                    recordEnd = tokenizer.findRecordEnd(buffer, position, buffer.limit());
+                }
+                if (recordEnd == -1) {
+                    // the last record is still being written
+                    break;
+                }
+                final String[] cells = tokenizer.tokenize(buffer, position, recordEnd);
+                final int column = chunks.trackedColumn;
+                if (column >= 0 && column < cells.length && cells[column] != null) {
+                    final String value = cells[column];
+                    if (min == null || value.compareToIgnoreCase(min) < 0) {
+                        min = value;
+                    }
+                    if (max == null || value.compareToIgnoreCase(max) > 0) {
+                        max = value;
+                    }
+                }
+                if (!visitor.visit(cells, sink)) {
+                    return;
+                }
+                position = recordEnd;
+            }
+            chunks.completed(min, max);
+        }
+
+        /**
+         * Doubles the mapping of the chunk for a record ending after it.
+         *
+         * @return {@code false} if the mapping already reaches the end of the file, or can't grow anymore.
+         */
+        private boolean extendMapping() throws IOException {
+            final long maxSize = Math.min(length - mappingStart, MAX_MAPPING_SIZE);
+            if (buffer.limit() >= maxSize) {
+                return false;
+            }
+            buffer = chunks.map(mappingStart, Math.min(2L * buffer.limit(), maxSize));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.csv;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.forgerock.json.JsonValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the scans of several CSV files, or of chunks of them, in parallel on a bounded pool of threads, and streams
+ * the matching entries back to the calling thread as they are found. Scans are started in the order they are
+ * provided.
+ * <p>
+ * Entries are handed over through a small bounded queue, so the scanners never get far ahead of the consumer. As
+ * soon as the consumer has enough entries, the remaining scans are stopped.
+ */
+class CsvQueryExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(CsvQueryExecutor.class);
+
+    private static final int RESULT_QUEUE_SIZE = 256;
+    private static final long OFFER_TIMEOUT_MILLISECONDS = 100;
+    private static final Object SCAN_COMPLETED = new Object();
+
+    /**
+     * Scan of a CSV file, or of a part of it.
+     */
+    abstract static class Scan {
+        /**
+         * Scans the file, pushing the matching entries to the sink until it refuses them.
+         *
+         * @param sink
+         *          The receiver of the matching entries.
+         * @throws IOException
+         *          If the file can't be read.
+         */
+        abstract void scan(Sink sink) throws IOException;
+
+        /**
+         * Notifies that the query is over, whether or not this scan has been run. Scans waiting for other scans
+         * must stop waiting.
+         */
+        void cancel() {
+            // nothing to release by default
+        }
+    }
+
+    /**
+     * Receiver of the entries found by the scans.
+     */
+    interface Sink {
+        /**
+         * Receives an entry.
+         *
+         * @param entry
+         *          The matching entry.
+         * @return {@code true} if more entries are wanted, {@code false} to stop scanning.
+         */
+        boolean accept(JsonValue entry);
+    }
+
+    private final int threads;
+    private ExecutorService executor;
+
+    /**
+     * Creates an executor using at most the provided number of threads. Threads are only started when a query
+     * spans several files.
+     *
+     * @param threads
+     *          The maximum number of threads scanning files at the same time.
+     */
+    CsvQueryExecutor(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Runs the scans and passes the entries they find to the consumer, on the calling thread.
+     *
+     * @param scans
+     *          The scans to run.
+     * @param limit
+     *          The maximum number of entries to pass to the consumer, or a negative or zero value for no limit.
+     * @param consumer
+     *          The receiver of the entries.
+     * @throws IOException
+     *          If one of the scans failed.
+     */
+    void execute(final List<? extends Scan> scans, final int limit, final Sink consumer) throws IOException {
+        if (scans.isEmpty()) {
+            return;
+        }
+        if (scans.size() == 1) {
+            scans.get(0).scan(new LimitingSink(consumer, limit));
+            return;
+        }
+        final AtomicBoolean stopped = new AtomicBoolean(false);
+        final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(RESULT_QUEUE_SIZE);
+        final List<Future<?>> futures = new ArrayList<>(scans.size());
+        try {
+            final ExecutorService service = getExecutor();
+            for (final Scan scan : scans) {
+                futures.add(service.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        Object outcome = SCAN_COMPLETED;
+                        try {
+                            scan.scan(new Sink() {
+                                @Override
+                                public boolean accept(JsonValue entry) {
+                                    return offer(queue, entry, stopped);
+                                }
+                            });
+                        } catch (Exception e) {
+                            outcome = new ScanFailure(e);
+                        }
+                        offer(queue, outcome, stopped);
+                    }
+                }));
+            }
+            consume(queue, scans.size(), new LimitingSink(consumer, limit));
+        } catch (RejectedExecutionException e) {
+            throw new IOException("The CSV query executor has been shut down", e);
+        } finally {
+            stopped.set(true);
+            for (Future<?> future : futures) {
+                future.cancel(false);
+            }
+            for (Scan scan : scans) {
+                scan.cancel();
+            }
+        }
+    }
+
+    /**
+     * Stops the threads of this executor.
+     */
+    synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads);
+        }
+        return executor;
+    }
+
+    private void consume(BlockingQueue<Object> queue, int scanCount, Sink consumer) throws IOException {
+        int pending = scanCount;
+        try {
+            while (pending > 0) {
+                final Object item = queue.take();
+                if (item == SCAN_COMPLETED) {
+                    pending--;
+                } else if (item instanceof ScanFailure) {
+                    final Exception cause = ((ScanFailure) item).cause;
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    throw new IOException(cause);
+                } else if (!consumer.accept((JsonValue) item)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for CSV query results");
+        }
+    }
+
+    private static boolean offer(BlockingQueue<Object> queue, Object item, AtomicBoolean stopped) {
+        try {
+            while (!stopped.get()) {
+                if (queue.offer(item, OFFER_TIMEOUT_MILLISECONDS, MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.debug("CSV scan interrupted");
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * Stops accepting entries once the limit is reached.
+     */
+    private static final class LimitingSink implements Sink {
+        private final Sink delegate;
+        private final int limit;
+        private int count;
+
+        LimitingSink(Sink delegate, int limit) {
+            this.delegate = delegate;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean accept(JsonValue entry) {
+            if (!delegate.accept(entry)) {
+                return false;
+            }
+            count++;
+            return limit <= 0 || count < limit;
+        }
+    }
+
+    /**
+     * Carries the failure of a scan back to the consumer.
+     */
+    private static final class ScanFailure {
+        private final Exception cause;
+
+        ScanFailure(Exception cause) {
+            this.cause = cause;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.csv;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.forgerock.util.Reject;
+
+/**
+ * Splits the raw UTF-8 bytes of a CSV file into records and cells without going through a {@link java.io.Reader}.
+ * <p>
+ * Working on bytes allows callers to know the exact byte offset of every record, which is what the
+ * {@link CsvIndex} stores. Only single byte (ASCII) quote and delimiter characters are supported; records end
+ * with a line feed that is not enclosed in quotes, an optional preceding carriage return being dropped.
+ * <p>
+ * Empty cells, quoted or not, are returned as {@code null} to match the behaviour of the super-csv readers
+ * combined with the {@link org.supercsv.cellprocessor.Optional} cell processor.
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ */
+final class CsvRecordTokenizer {
+
+    private static final byte LINE_FEED = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    private final byte quote;
+    private final byte delimiter;
+
+    /**
+     * Creates a tokenizer for the provided quote and delimiter characters.
+     *
+     * @param quoteChar
+     *          The quote character, must be an ASCII character.
+     * @param delimiterChar
+     *          The delimiter character, must be an ASCII character.
+     */
+    CsvRecordTokenizer(char quoteChar, char delimiterChar) {
+        Reject.ifFalse(isSupported(quoteChar, delimiterChar),
+                "Only ASCII quote and delimiter characters are supported");
+        this.quote = (byte) quoteChar;
+        this.delimiter = (byte) delimiterChar;
+    }
+
+    /**
+     * Indicates if a tokenizer can be created for the provided quote and delimiter characters.
+     *
+     * @param quoteChar
+     *          The quote character.
+     * @param delimiterChar
+     *          The delimiter character.
+     * @return {@code true} if both characters are single byte characters.
+     */
+    static boolean isSupported(char quoteChar, char delimiterChar) {
+        return quoteChar < 0x80 && delimiterChar < 0x80
+                && quoteChar != LINE_FEED && delimiterChar != LINE_FEED && quoteChar != delimiterChar;
+    }
+
+    /**
+     * Finds the end of the record starting at {@code start}.
+     *
+     * @param buffer
+     *          The bytes to scan, read with absolute gets.
+     * @param start
+     *          The position of the first byte of the record.
+     * @param limit
+     *          The position after the last readable byte.
+     * @return the position just after the end of line of the record, or {@code -1} if the record is not complete
+     *          within {@code [start, limit)}.
+     */
+    int findRecordEnd(ByteBuffer buffer, int start, int limit) {
+        return findRecordEnd(buffer, start, limit, false);
+    }
+
+    /**
+     * Finds the first record starting at or after {@code position}.
+     *
+     * @param buffer
+     *          The bytes to scan, read with absolute gets; the byte preceding {@code position} must be readable.
+     * @param position
+     *          The position to start from.
+     * @param limit
+     *          The position after the last readable byte.
+     * @param quoted
+     *          Indicates if {@code position} is within quotes, that is if an odd number of quote characters
+     *          precede it since the beginning of the file.
+     * @return the position of the first byte of the record, or {@code -1} if no record starts within
+     *          {@code [position, limit)}.
+     */
+    int findRecordStart(ByteBuffer buffer, int position, int limit, boolean quoted) {
+        if (!quoted && buffer.get(position - 1) == LINE_FEED) {
+            return position;
+        }
+        final int end = findRecordEnd(buffer, position, limit, quoted);
+        return end < limit ? end : -1;
+    }
+
+    private int findRecordEnd(ByteBuffer buffer, int start, int limit, boolean initiallyQuoted) {
+        boolean quoted = initiallyQuoted;
+        for (int i = start; i < limit; i++) {
+            final byte b = buffer.get(i);
+            if (b == quote) {
+                // an escaped quote toggles twice, leaving the state unchanged
+                quoted = !quoted;
+            } else if (b == LINE_FEED && !quoted) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Counts the quote characters in {@code [start, end)}.
+     *
+     * @param buffer
+     *          The bytes to scan, read with absolute gets.
+     * @param start
+     *          The position of the first byte to scan.
+     * @param end
+     *          The position after the last byte to scan.
+     * @return the number of quote characters, escaped or not.
+     */
+    int countQuotes(ByteBuffer buffer, int start, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == quote) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Splits a complete record into its cells.
+     *
+     * @param buffer
+     *          The bytes holding the record, read with absolute gets.
+     * @param start
+     *          The position of the first byte of the record.
+     * @param end
+     *          The position after the end of line of the record, as returned by
+     *          {@link #findRecordEnd(ByteBuffer, int, int)}.
+     * @return the decoded cells, empty cells being {@code null}.
+     */
+    String[] tokenize(ByteBuffer buffer, int start, int end) {
+        int limit = end;
+        if (limit > start && buffer.get(limit - 1) == LINE_FEED) {
+            limit--;
+        }
+        if (limit > start && buffer.get(limit - 1) == CARRIAGE_RETURN) {
+            limit--;
+        }
+        final List<String> cells = new ArrayList<>();
+        final byte[] scratch = new byte[Math.max(limit - start, 0)];
+        int position = start;
+        while (true) {
+            int length = 0;
+            if (position < limit && buffer.get(position) == quote) {
+                position++;
+                while (position < limit) {
+                    final byte b = buffer.get(position++);
+                    if (b == quote) {
+                        if (position < limit && buffer.get(position) == quote) {
+                            scratch[length++] = quote;
+                            position++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        scratch[length++] = b;
+                    }
+                }
+                // like super-csv, keep anything found between the closing quote and the next delimiter
+                while (position < limit && buffer.get(position) != delimiter) {
+                    scratch[length++] = buffer.get(position++);
+                }
+            } else {
+                while (position < limit && buffer.get(position) != delimiter) {
+                    scratch[length++] = buffer.get(position++);
+                }
+            }
+            cells.add(length == 0 ? null : new String(scratch, 0, length, StandardCharsets.UTF_8));
+            if (position >= limit) {
+                break;
+            }
+            // skip the delimiter
+            position++;
+        }
+        return cells.toArray(new String[cells.size()]);
+    }
+}
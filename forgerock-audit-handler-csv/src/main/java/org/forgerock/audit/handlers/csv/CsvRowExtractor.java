@@ -0,0 +1,115 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.csv;
+
+import org.forgerock.audit.events.CompactAuditEvent;
+import org.forgerock.audit.events.TopicSchema;
+import org.forgerock.json.JsonValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Extracts the cells of the CSV rows of a topic from its audit events.
+ * <p>
+ * The columns are the field slots of the compiled schema of the topic, so that writing an event only walks their
+ * pre-parsed pointers, or reads their slots if the event is in compact form. String values are written as is, other
+ * values as JSON; {@code null} and empty values leave their cell empty.
+ * <p>
+ * Objects of this type are threadsafe.
+ */
+final class CsvRowExtractor {
+
+    private static final Logger logger = LoggerFactory.getLogger(CsvRowExtractor.class);
+
+    private static final ObjectWriter jsonWriter = new ObjectMapper().writer();
+
+    private final TopicSchema schema;
+    private final TopicSchema.Field[] fields;
+
+    /**
+     * Creates the extractor of the fields of a topic.
+     *
+     * @param schema
+     *          The compiled schema of the topic, whose field slots are the columns.
+     */
+    CsvRowExtractor(TopicSchema schema) {
+        this.schema = schema;
+        fields = schema.getFields().toArray(new TopicSchema.Field[schema.size()]);
+    }
+
+    /**
+     * Extracts the cells of a row.
+     *
+     * @param event
+     *          The audit event.
+     * @return the cells, in the order of the columns; empty cells are {@code null}.
+     */
+    String[] extract(JsonValue event) {
+        final String[] row = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            final JsonValue value = fields[i].getValue(event);
+            if (value == null || value.isNull()) {
+                continue;
+            }
+            final String cell = value.isString() ? value.asString() : toJson(i, value.getObject());
+            if (cell != null && !cell.isEmpty()) {
+                row[i] = cell;
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Extracts the cells of a row from the compact form of an event.
+     *
+     * @param event
+     *          The audit event.
+     * @return the cells, in the order of the columns; empty cells are {@code null}.
+     */
+    String[] extract(CompactAuditEvent event) {
+        if (event.getSchema() != schema) {
+            return extract(event.getValue());
+        }
+        final String[] row = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            Object value = event.get(i);
+            if (value instanceof JsonValue) {
+                value = ((JsonValue) value).getObject();
+            }
+            if (value == null) {
+                continue;
+            }
+            final String cell = value instanceof String ? (String) value : toJson(i, value);
+            if (cell != null && !cell.isEmpty()) {
+                row[i] = cell;
+            }
+        }
+        return row;
+    }
+
+    private String toJson(int column, Object value) {
+        try {
+            return jsonWriter.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            logger.error("Unable to write the value for field {} as a string.", fields[column]);
+            return null;
+        }
+    }
+}
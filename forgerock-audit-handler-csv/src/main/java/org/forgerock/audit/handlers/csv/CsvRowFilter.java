@@ -0,0 +1,334 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.csv;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.forgerock.json.JsonPointer;
+import org.forgerock.util.query.QueryFilter;
+import org.forgerock.util.query.QueryFilterVisitor;
+
+/**
+ * Query filter compiled against the columns of a CSV file, evaluated on the raw cells of its rows.
+ * <p>
+ * Evaluating the filter before turning a row into a {@link org.forgerock.json.JsonValue} means that only the
+ * matching rows pay for the conversion. The results are the same as those of
+ * {@link org.forgerock.audit.util.JsonValueUtils#JSONVALUE_FILTER_VISITOR} applied to the converted row: string
+ * comparisons ignore case, values of other types never match a cell, and a field missing from the file is only
+ * matched by an equality assertion.
+ * <p>
+ * Filters on object or array columns, on parents of columns, and presence filters can't be evaluated on raw cells;
+ * {@link #compile(QueryFilter, String[], boolean[])} returns {@code null} for them.
+ */
+abstract class CsvRowFilter {
+
+    /** Resolution of a field that can only be evaluated on the JSON form of the row. */
+    private static final int UNSUPPORTED = -2;
+    /** Resolution of a field that isn't part of the rows. */
+    private static final int ABSENT = -1;
+
+    private static final CsvRowFilter TRUE = new Constant(true);
+    private static final CsvRowFilter FALSE = new Constant(false);
+
+    /**
+     * Evaluates the filter on a row.
+     *
+     * @param cells
+     *          The cells of the row, empty cells being {@code null}.
+     * @return {@code true} if the row matches.
+     */
+    abstract boolean matches(String[] cells);
+
+    /**
+     * Compiles the filter for the provided columns.
+     *
+     * @param filter
+     *          The query filter.
+     * @param header
+     *          The name of the columns, as JSON pointers.
+     * @param jsonColumns
+     *          Indicates for each column if it holds an object or an array.
+     * @return the compiled filter, or {@code null} if the filter can't be evaluated on raw cells.
+     */
+    static CsvRowFilter compile(QueryFilter<JsonPointer> filter, String[] header, boolean[] jsonColumns) {
+        final JsonPointer[] columns = new JsonPointer[header.length];
+        for (int i = 0; i < header.length; i++) {
+            columns[i] = new JsonPointer(header[i]);
+            for (String token : columns[i]) {
+                if (isIndexToken(token)) {
+                    // such columns are rebuilt as arrays when converting the row
+                    return null;
+                }
+            }
+        }
+        return filter.accept(new Compiler(columns, jsonColumns), null);
+    }
+
+    private static boolean isIndexToken(String token) {
+        if (token.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (!Character.isDigit(token.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAncestor(JsonPointer ancestor, JsonPointer pointer) {
+        if (ancestor.size() >= pointer.size()) {
+            return false;
+        }
+        for (int i = 0; i < ancestor.size(); i++) {
+            if (!ancestor.get(i).equals(pointer.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compiles the query filters, returning {@code null} for the filters that can't be evaluated on raw cells.
+     */
+    private static final class Compiler implements QueryFilterVisitor<CsvRowFilter, Void, JsonPointer> {
+        private final JsonPointer[] columns;
+        private final boolean[] jsonColumns;
+
+        Compiler(JsonPointer[] columns, boolean[] jsonColumns) {
+            this.columns = columns;
+            this.jsonColumns = jsonColumns;
+        }
+
+        private int resolve(JsonPointer field) {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].equals(field)) {
+                    return jsonColumns[i] ? UNSUPPORTED : i;
+                }
+            }
+            for (int i = 0; i < columns.length; i++) {
+                if (isAncestor(field, columns[i]) || (jsonColumns[i] && isAncestor(columns[i], field))) {
+                    return UNSUPPORTED;
+                }
+            }
+            return ABSENT;
+        }
+
+        private List<CsvRowFilter> compileAll(List<QueryFilter<JsonPointer>> subFilters) {
+            final List<CsvRowFilter> filters = new ArrayList<>(subFilters.size());
+            for (QueryFilter<JsonPointer> subFilter : subFilters) {
+                final CsvRowFilter filter = subFilter.accept(this, null);
+                if (filter == null) {
+                    return null;
+                }
+                filters.add(filter);
+            }
+            return filters;
+        }
+
+        private CsvRowFilter comparison(JsonPointer field, Operator operator, Object valueAssertion) {
+            final int column = resolve(field);
+            if (column == UNSUPPORTED) {
+                return null;
+            } else if (column == ABSENT) {
+                // an equality assertion on a missing field holds for all its (zero) values
+                return operator == Operator.EQUALS ? TRUE : FALSE;
+            } else if (!(valueAssertion instanceof String)) {
+                // cells are strings, which are not comparable with numbers and booleans
+                return FALSE;
+            }
+            return new Comparison(column, operator, (String) valueAssertion);
+        }
+
+        @Override
+        public CsvRowFilter visitAndFilter(Void p, List<QueryFilter<JsonPointer>> subFilters) {
+            final List<CsvRowFilter> filters = compileAll(subFilters);
+            return filters == null ? null : new And(filters);
+        }
+
+        @Override
+        public CsvRowFilter visitOrFilter(Void p, List<QueryFilter<JsonPointer>> subFilters) {
+            final List<CsvRowFilter> filters = compileAll(subFilters);
+            return filters == null ? null : new Or(filters);
+        }
+
+        @Override
+        public CsvRowFilter visitNotFilter(Void p, QueryFilter<JsonPointer> subFilter) {
+            final CsvRowFilter filter = subFilter.accept(this, p);
+            return filter == null ? null : new Not(filter);
+        }
+
+        @Override
+        public CsvRowFilter visitBooleanLiteralFilter(Void p, boolean value) {
+            return value ? TRUE : FALSE;
+        }
+
+        @Override
+        public CsvRowFilter visitEqualsFilter(Void p, JsonPointer field, Object valueAssertion) {
+            return comparison(field, Operator.EQUALS, valueAssertion);
+        }
+
+        @Override
+        public CsvRowFilter visitGreaterThanFilter(Void p, JsonPointer field, Object valueAssertion) {
+            return comparison(field, Operator.GREATER_THAN, valueAssertion);
+        }
+
+        @Override
+        public CsvRowFilter visitGreaterThanOrEqualToFilter(Void p, JsonPointer field, Object valueAssertion) {
+            return comparison(field, Operator.GREATER_THAN_OR_EQUAL_TO, valueAssertion);
+        }
+
+        @Override
+        public CsvRowFilter visitLessThanFilter(Void p, JsonPointer field, Object valueAssertion) {
+            return comparison(field, Operator.LESS_THAN, valueAssertion);
+        }
+
+        @Override
+        public CsvRowFilter visitLessThanOrEqualToFilter(Void p, JsonPointer field, Object valueAssertion) {
+            return comparison(field, Operator.LESS_THAN_OR_EQUAL_TO, valueAssertion);
+        }
+
+        @Override
+        public CsvRowFilter visitContainsFilter(Void p, JsonPointer field, Object valueAssertion) {
+            return comparison(field, Operator.CONTAINS, valueAssertion);
+        }
+
+        @Override
+        public CsvRowFilter visitStartsWithFilter(Void p, JsonPointer field, Object valueAssertion) {
+            return comparison(field, Operator.STARTS_WITH, valueAssertion);
+        }
+
+        @Override
+        public CsvRowFilter visitExtendedMatchFilter(Void p, JsonPointer field, String matchingRuleId,
+                Object valueAssertion) {
+            // extended filters are not supported
+            return FALSE;
+        }
+
+        @Override
+        public CsvRowFilter visitPresentFilter(Void p, JsonPointer field) {
+            return null;
+        }
+    }
+
+    private enum Operator {
+        EQUALS, GREATER_THAN, GREATER_THAN_OR_EQUAL_TO, LESS_THAN, LESS_THAN_OR_EQUAL_TO, CONTAINS, STARTS_WITH
+    }
+
+    private static final class Comparison extends CsvRowFilter {
+        private final int column;
+        private final Operator operator;
+        private final String assertion;
+        private final String lowerCaseAssertion;
+
+        Comparison(int column, Operator operator, String assertion) {
+            this.column = column;
+            this.operator = operator;
+            this.assertion = assertion;
+            this.lowerCaseAssertion = assertion.toLowerCase(Locale.ENGLISH);
+        }
+
+        @Override
+        boolean matches(String[] cells) {
+            final String value = column < cells.length ? cells[column] : null;
+            if (value == null) {
+                return false;
+            }
+            switch (operator) {
+            case EQUALS:
+                return assertion.compareToIgnoreCase(value) == 0;
+            case GREATER_THAN:
+                return assertion.compareToIgnoreCase(value) < 0;
+            case GREATER_THAN_OR_EQUAL_TO:
+                return assertion.compareToIgnoreCase(value) <= 0;
+            case LESS_THAN:
+                return assertion.compareToIgnoreCase(value) > 0;
+            case LESS_THAN_OR_EQUAL_TO:
+                return assertion.compareToIgnoreCase(value) >= 0;
+            case CONTAINS:
+                return value.toLowerCase(Locale.ENGLISH).contains(lowerCaseAssertion);
+            case STARTS_WITH:
+                return value.toLowerCase(Locale.ENGLISH).startsWith(lowerCaseAssertion);
+            default:
+                throw new IllegalStateException("Unexpected operator " + operator);
+            }
+        }
+    }
+
+    private static final class And extends CsvRowFilter {
+        private final CsvRowFilter[] filters;
+
+        And(List<CsvRowFilter> filters) {
+            this.filters = filters.toArray(new CsvRowFilter[filters.size()]);
+        }
+
+        @Override
+        boolean matches(String[] cells) {
+            for (CsvRowFilter filter : filters) {
+                if (!filter.matches(cells)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Or extends CsvRowFilter {
+        private final CsvRowFilter[] filters;
+
+        Or(List<CsvRowFilter> filters) {
+            this.filters = filters.toArray(new CsvRowFilter[filters.size()]);
+        }
+
+        @Override
+        boolean matches(String[] cells) {
+            for (CsvRowFilter filter : filters) {
+                if (filter.matches(cells)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Not extends CsvRowFilter {
+        private final CsvRowFilter filter;
+
+        Not(CsvRowFilter filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        boolean matches(String[] cells) {
+            return !filter.matches(cells);
+        }
+    }
+
+    private static final class Constant extends CsvRowFilter {
+        private final boolean value;
+
+        Constant(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        boolean matches(String[] cells) {
+            return value;
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package org.forgerock.audit.handlers.csv;
 
 import static org.forgerock.audit.handlers.csv.CsvSecureConstants.KEYSTORE_TYPE;
+import static org.forgerock.audit.util.ArchiveCompression.getUncompressedFile;
 
 import java.io.File;
 import java.security.PublicKey;
@@ -76,7 +77,8 @@ class CsvSecureArchiveVerifier {
 
     private SecureStorage openSecureStorageForCsvFile(File csvFile, String keystorePassword, PublicKey publicKey)
             throws Exception {
-        String keystorePath = csvFile.getPath() + ".keystore";
+        // the keystore of a compressed archive is left uncompressed, named after the original archive
+        String keystorePath = getUncompressedFile(csvFile).getPath() + ".keystore";
         KeyStoreHandler keyStoreHandler = new JcaKeyStoreHandler(KEYSTORE_TYPE, keystorePath, keystorePassword);
         return new KeyStoreSecureStorage(keyStoreHandler, publicKey);
     }
@@ -74,6 +74,25 @@ class CsvSecureUtils {
         return tmp.toString().getBytes(StandardCharsets.UTF_8);
     }
 
+    /**
+     * Gets the data covered by the HMAC of a row.
+     *
+     * @param values
+     *          The cells of the row, in the order of the header.
+     * @param length
+     *          The number of cells covered by the HMAC, the extra columns excluded.
+     * @return the bytes to sign.
+     */
+    static byte[] dataToSign(String[] values, int length) {
+        StringBuilder tmp = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            if (values[i] != null) {
+                tmp.append(values[i]);
+            }
+        }
+        return tmp.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
     private CsvSecureUtils() {
         // Prevent from instantiating
     }
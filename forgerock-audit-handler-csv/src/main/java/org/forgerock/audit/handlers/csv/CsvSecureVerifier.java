@@ -17,12 +17,12 @@ package org.forgerock.audit.handlers.csv;
 
 import static org.forgerock.audit.handlers.csv.CsvSecureConstants.*;
 import static org.forgerock.audit.handlers.csv.CsvSecureUtils.*;
+import static org.forgerock.audit.util.ArchiveCompression.openArchive;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.security.SignatureException;
 import java.util.Arrays;
 import java.util.Map;
@@ -159,8 +159,8 @@ class CsvSecureVerifier {
         }
     }
 
-    private CsvMapReader newBufferedCsvMapReader() throws FileNotFoundException {
-        return new CsvMapReader(new BufferedReader(new FileReader(csvFile)), csvPreference);
+    private CsvMapReader newBufferedCsvMapReader() throws IOException {
+        return new CsvMapReader(new BufferedReader(new InputStreamReader(openArchive(csvFile))), csvPreference);
     }
 
     private VerificationResult newVerificationFailureResult(String msg) {
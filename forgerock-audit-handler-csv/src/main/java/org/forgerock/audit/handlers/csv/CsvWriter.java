@@ -41,6 +41,13 @@ interface CsvWriter extends AutoCloseable {
      */
     void writeEvent(Map<String, String> values) throws IOException;
 
+    /**
+     * Write a row into the CSV files.
+     * @param values The values of the row, in the order of the column's header; {@code null} values are left empty.
+     * @throws IOException
+     */
+    void writeEvent(String[] values) throws IOException;
+
     /**
      * Flush the data into the CSV file.
      * @throws IOException
@@ -31,7 +31,7 @@ import java.io.Writer;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.SignatureException;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.Executors;
@@ -45,6 +45,9 @@ import javax.crypto.spec.SecretKeySpec;
 
 import org.forgerock.audit.events.handlers.writers.RotatableWriter;
 import org.forgerock.audit.events.handlers.writers.TextWriter;
+import org.forgerock.audit.metrics.LatencyHistogram;
+import org.forgerock.audit.metrics.MetricRegistry;
+import org.forgerock.audit.metrics.Metrics;
 import org.forgerock.audit.events.handlers.writers.TextWriterAdapter;
 import org.forgerock.audit.events.handlers.writers.RotatableWriter.RolloverLifecycleHook;
 import org.forgerock.audit.rotation.RotationContext;
@@ -83,6 +86,8 @@ class SecureCsvWriter implements CsvWriter, RolloverLifecycleHook {
     private KeyStoreSecureStorage secureStorage;
     private final Duration signatureInterval;
     private ScheduledFuture<?> scheduledSignature;
+    private final LatencyHistogram hmacLatency;
+    private final LatencyHistogram signatureLatency;
 
     private String lastHMAC;
     private byte[] lastSignature;
@@ -93,13 +98,20 @@ class SecureCsvWriter implements CsvWriter, RolloverLifecycleHook {
 
     SecureCsvWriter(File csvFile, String[] headers, CsvPreference csvPreference, CsvAuditEventHandlerConfiguration config,
             KeyStoreHandler keyStoreHandler, Random random) throws IOException {
+        this(csvFile, headers, csvPreference, config, keyStoreHandler, random, Metrics.noOpRegistry());
+    }
+
+    SecureCsvWriter(File csvFile, String[] headers, CsvPreference csvPreference, CsvAuditEventHandlerConfiguration config,
+            KeyStoreHandler keyStoreHandler, Random random, MetricRegistry metrics) throws IOException {
         Reject.ifFalse(config.getSecurity().isEnabled(), "SecureCsvWriter should only be used if security is enabled");
         final boolean fileAlreadyInitialized = csvFile.exists() && csvFile.length() > 0;
         this.random = random;
         this.keyStoreFile = new File(csvFile.getPath() + ".keystore");
         this.headers = checkNotNull(headers, "The headers can't be null.");
         this.csvFormatter = new CsvFormatter(csvPreference);
-        this.csvWriter = constructWriter(csvFile, fileAlreadyInitialized, config);
+        this.hmacLatency = metrics.latencyHistogram("hmac");
+        this.signatureLatency = metrics.latencyHistogram("signature");
+        this.csvWriter = constructWriter(csvFile, fileAlreadyInitialized, config, metrics);
         this.hmacCalculator = new HmacCalculator(CsvSecureConstants.HMAC_ALGORITHM);
 
         try {
@@ -136,11 +148,11 @@ class SecureCsvWriter implements CsvWriter, RolloverLifecycleHook {
                 final String[] actualHeaders = verifier.getHeaders();
                 if (actualHeaders != null) {
                     if (actualHeaders.length != headers.length) {
-                        throw new IOException("Resuming an existing CSV file but the headers do not match.");
+                        throw new CsvHeaderMismatchException();
                     }
                     for (int idx = 0; idx < actualHeaders.length; idx++) {
                         if (!actualHeaders[idx].equals(headers[idx])) {
-                            throw new IOException("Resuming an existing CSV file but the headers do not match.");
+                            throw new CsvHeaderMismatchException();
                         }
                     }
                 }
@@ -170,6 +182,9 @@ class SecureCsvWriter implements CsvWriter, RolloverLifecycleHook {
                     }
                 }
             };
+        } catch (CsvHeaderMismatchException e) {
+            csvWriter.close();
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException("Error when initializing a secure CSV writer", e);
         }
@@ -201,12 +216,13 @@ class SecureCsvWriter implements CsvWriter, RolloverLifecycleHook {
         return randomBytes;
     }
 
-    private Writer constructWriter(File csvFile, boolean append, CsvAuditEventHandlerConfiguration config)
-            throws IOException {
+    private Writer constructWriter(File csvFile, boolean append, CsvAuditEventHandlerConfiguration config,
+            MetricRegistry metrics) throws IOException {
         TextWriter textWriter;
         if (config.getFileRotation().isRotationEnabled()) {
             rotatableWriter = new RotatableWriter(csvFile, config, append, this);
             rotatableWriter.registerRotationHooks(new SecureCsvWriterRotationHooks());
+            rotatableWriter.setRotationLatency(metrics.latencyHistogram("rotation"));
             textWriter = rotatableWriter;
         } else {
             textWriter = new TextWriter.Stream(new FileOutputStream(csvFile, append));
@@ -268,7 +284,9 @@ class SecureCsvWriter implements CsvWriter, RolloverLifecycleHook {
         // and the signature's row write, as the calculation uses the lastHMAC.
         signatureLock.lock();
         try {
+            final long start = System.nanoTime();
             lastSignature = secureStorage.sign(dataToSign(lastSignature, lastHMAC));
+            signatureLatency.recordSince(start);
             logger.trace("Calculated new Signature");
             Map<String, String> values = singletonMap(HEADER_SIGNATURE, Base64.encode(lastSignature));
             writeEvent(writer, values);
@@ -310,32 +328,49 @@ class SecureCsvWriter implements CsvWriter, RolloverLifecycleHook {
         writeEvent(csvWriter, values);
     }
 
+    @Override
+    public void writeEvent(String[] values) throws IOException {
+        writeRow(csvWriter, Arrays.copyOf(values, headers.length + 2));
+    }
+
     /**
      * Write a row into the CSV files.
      * @param values The keys of the {@link Map} have to match the column's header.
      * @throws IOException
      */
     public void writeEvent(Writer writer, Map<String, String> values) throws IOException {
+        final String[] row = new String[headers.length + 2];
+        for (int i = 0; i < headers.length; i++) {
+            row[i] = values.get(headers[i]);
+        }
+        row[headers.length] = values.get(HEADER_HMAC);
+        row[headers.length + 1] = values.get(HEADER_SIGNATURE);
+        writeRow(writer, row);
+    }
+
+    /**
+     * Writes a row whose last 2 cells are the HMAC and the signature; the HMAC is calculated unless the row holds a
+     * signature.
+     */
+    private void writeRow(Writer writer, String[] row) throws IOException {
+        final boolean signatureRow = row[headers.length + 1] != null;
         signatureLock.lock();
         try {
             if (!headerWritten) {
                 writeHeader(headers);
             }
-            String[] extendedHeaders = addExtraColumns(headers);
 
-            Map<String, String> extendedValues = new HashMap<>(values);
-            if (!values.containsKey(CsvSecureConstants.HEADER_SIGNATURE)) {
-                insertHMACSignature(extendedValues, headers);
+            if (!signatureRow) {
+                insertHMACSignature(row);
             }
 
-            writer.write(csvFormatter.formatEvent(extendedValues, extendedHeaders));
+            writer.write(csvFormatter.formatEvent(row));
             writer.flush();
             // Store the current key
             secureStorage.writeCurrentKey(hmacCalculator.getCurrentKey());
 
             // Schedule a signature task only if needed.
-            if (!values.containsKey(HEADER_SIGNATURE)
-                    && (scheduledSignature == null || scheduledSignature.isDone())) {
+            if (!signatureRow && (scheduledSignature == null || scheduledSignature.isDone())) {
                 logger.trace("Triggering a new signature task to be executed in {}", signatureInterval);
                 try {
                     scheduledSignature = scheduler.schedule(signatureTask, signatureInterval.getValue(),
@@ -351,10 +386,12 @@ class SecureCsvWriter implements CsvWriter, RolloverLifecycleHook {
         }
     }
 
-    private void insertHMACSignature(Map<String, String> values, String[] nameMapping) throws IOException {
+    private void insertHMACSignature(String[] row) throws IOException {
         try {
-            lastHMAC = hmacCalculator.calculate(dataToSign(logger, values, nameMapping));
-            values.put(CsvSecureConstants.HEADER_HMAC, lastHMAC);
+            final long start = System.nanoTime();
+            lastHMAC = hmacCalculator.calculate(dataToSign(row, headers.length));
+            hmacLatency.recordSince(start);
+            row[headers.length] = lastHMAC;
         } catch (SignatureException ex) {
             logger.error(ex.getMessage(), ex);
             throw new IOException(ex);
@@ -28,6 +28,9 @@ import java.util.Map;
 import org.forgerock.audit.events.handlers.writers.AsynchronousTextWriter;
 import org.forgerock.audit.events.handlers.writers.RotatableWriter;
 import org.forgerock.audit.events.handlers.writers.TextWriter;
+import org.forgerock.audit.metrics.Gauge;
+import org.forgerock.audit.metrics.MetricRegistry;
+import org.forgerock.audit.metrics.Metrics;
 import org.forgerock.audit.events.handlers.writers.TextWriterAdapter;
 import org.forgerock.audit.handlers.csv.CsvAuditEventHandlerConfiguration.EventBufferingConfiguration;
 import org.forgerock.util.Reject;
@@ -51,6 +54,11 @@ class StandardCsvWriter implements CsvWriter {
 
     StandardCsvWriter(File csvFile, String[] headers, CsvPreference csvPreference,
             CsvAuditEventHandlerConfiguration config) throws IOException {
+        this(csvFile, headers, csvPreference, config, Metrics.noOpRegistry());
+    }
+
+    StandardCsvWriter(File csvFile, String[] headers, CsvPreference csvPreference,
+            CsvAuditEventHandlerConfiguration config, MetricRegistry metrics) throws IOException {
         Reject.ifTrue(config.getSecurity().isEnabled(), "StandardCsvWriter should not be used if security is enabled");
         boolean fileAlreadyInitialized = csvFile.exists();
         if (fileAlreadyInitialized) {
@@ -61,11 +69,11 @@ class StandardCsvWriter implements CsvWriter {
                     fileAlreadyInitialized = false;
                 } else {
                     if (actualHeaders.length != headers.length) {
-                        throw new IOException("Resuming an existing CSV file but the headers do not match.");
+                        throw new CsvHeaderMismatchException();
                     }
                     for (int idx = 0; idx < actualHeaders.length; idx++) {
                         if (!actualHeaders[idx].equals(headers[idx])) {
-                            throw new IOException("Resuming an existing CSV file but the headers do not match.");
+                            throw new CsvHeaderMismatchException();
                         }
                     }
                 }
@@ -73,7 +81,7 @@ class StandardCsvWriter implements CsvWriter {
         }
         this.headers = checkNotNull(headers, "The headers can't be null.");
         csvFormatter = new CsvFormatter(csvPreference);
-        csvWriter = constructWriter(csvFile, fileAlreadyInitialized, config);
+        csvWriter = constructWriter(csvFile, fileAlreadyInitialized, config, metrics);
 
         if (rotatableWriter != null) {
             rotatableWriter.registerRotationHooks(new CsvRotationHooks(csvFormatter, headers));
@@ -85,11 +93,12 @@ class StandardCsvWriter implements CsvWriter {
         }
     }
 
-    private Writer constructWriter(File csvFile, boolean append, CsvAuditEventHandlerConfiguration config)
-            throws IOException {
+    private Writer constructWriter(File csvFile, boolean append, CsvAuditEventHandlerConfiguration config,
+            MetricRegistry metrics) throws IOException {
         TextWriter textWriter;
         if (config.getFileRotation().isRotationEnabled()) {
             rotatableWriter = new RotatableWriter(csvFile, config, append);
+            rotatableWriter.setRotationLatency(metrics.latencyHistogram("rotation"));
             textWriter = rotatableWriter;
         }
         else {
@@ -98,7 +107,15 @@ class StandardCsvWriter implements CsvWriter {
 
         if (config.getBuffering().isEnabled()) {
             EventBufferingConfiguration bufferConfig = config.getBuffering();
-            textWriter = new AsynchronousTextWriter("CsvHandler", bufferConfig.isAutoFlush(), textWriter);
+            final AsynchronousTextWriter asynchronousWriter =
+                    new AsynchronousTextWriter("CsvHandler", bufferConfig.isAutoFlush(), textWriter);
+            metrics.registerGauge("queue", new Gauge() {
+                @Override
+                public long getValue() {
+                    return asynchronousWriter.getQueueSize();
+                }
+            });
+            textWriter = asynchronousWriter;
         }
         return new TextWriterAdapter(textWriter);
     }
@@ -128,7 +145,16 @@ class StandardCsvWriter implements CsvWriter {
      */
     @Override
     public void writeEvent(Map<String, String> values) throws IOException {
-        csvWriter.write(csvFormatter.formatEvent(values, headers));
+        final String[] row = new String[headers.length];
+        for (int i = 0; i < headers.length; i++) {
+            row[i] = values.get(headers[i]);
+        }
+        writeEvent(row);
+    }
+
+    @Override
+    public void writeEvent(String[] values) throws IOException {
+        csvWriter.write(csvFormatter.formatEvent(values));
     }
 
     /**
@@ -39,10 +39,12 @@ import org.forgerock.audit.DependencyProviderBase;
 import org.forgerock.audit.events.EventTopicsMetaData;
 import org.forgerock.audit.events.handlers.AuditEventHandler;
 import org.forgerock.audit.events.handlers.FileBasedEventHandlerConfiguration.FileRotation;
+import org.forgerock.audit.handlers.csv.CsvAuditEventHandlerConfiguration.CsvQuerying;
 import org.forgerock.audit.handlers.csv.CsvAuditEventHandlerConfiguration.EventBufferingConfiguration;
 import org.forgerock.audit.json.AuditJsonConfig;
 import org.forgerock.audit.providers.DefaultKeyStoreHandlerProvider;
 import org.forgerock.audit.providers.KeyStoreHandlerProvider;
+import org.forgerock.audit.retention.TimeStampFileNamingPolicy;
 import org.forgerock.audit.secure.JcaKeyStoreHandler;
 import org.forgerock.audit.secure.KeyStoreHandler;
 import org.forgerock.audit.secure.KeyStoreHandlerDecorator;
@@ -236,6 +238,61 @@ public class CsvAuditEventHandlerTest {
         assertResourceEquals(resource, event);
     }
 
+    @DataProvider
+    private Object[][] queryModeData() {
+        return new Object[][] {
+                // label, are files memory mapped ?
+                { "super-csv reader", false },
+                { "memory mapped chunks", true }
+        };
+    }
+
+    @Test(dataProvider="queryModeData")
+    public void testQueryIncludesRotatedFiles(String label, boolean isMemoryMapped) throws Exception {
+        //given
+        final Path logDirectory = Files.createTempDirectory("CsvAuditEventHandlerTest");
+        logDirectory.toFile().deleteOnExit();
+        final CsvAuditEventHandlerBuilder csvAuditEventHandlerBuilder =
+                csvAuditEventHandler().loggingTo(logDirectory).withRotationEnabled();
+        if (isMemoryMapped) {
+            // tiny chunks, so that records span several chunks
+            csvAuditEventHandlerBuilder.withMemoryMappedQueries(16);
+        }
+        final CsvAuditEventHandler csvHandler = csvAuditEventHandlerBuilder.build();
+        final Context context = new RootContext();
+        try {
+            csvHandler.publishEvent(context, "access", buildEvent(1));
+            csvHandler.handleAction(context, "access", Requests.newActionRequest("access", ROTATE_FILE_ACTION_NAME));
+            csvHandler.publishEvent(context, "access", buildEvent(2));
+
+            final QueryResourceHandler queryResourceHandler = mock(QueryResourceHandler.class);
+            when(queryResourceHandler.handleResource(any(ResourceResponse.class))).thenReturn(true);
+            final ArgumentCaptor<ResourceResponse> resourceCaptor = ArgumentCaptor.forClass(ResourceResponse.class);
+            final QueryResourceHandler pagedResourceHandler = mock(QueryResourceHandler.class);
+            when(pagedResourceHandler.handleResource(any(ResourceResponse.class))).thenReturn(true);
+
+            //when
+            final Promise<QueryResponse, ResourceException> promise = csvHandler.queryEvents(context, "access",
+                    Requests.newQueryRequest("access").setQueryFilter(QueryFilters.parse("true")),
+                    queryResourceHandler);
+            final Promise<QueryResponse, ResourceException> pagedPromise = csvHandler.queryEvents(context, "access",
+                    Requests.newQueryRequest("access").setQueryFilter(QueryFilters.parse("true")).setPageSize(1),
+                    pagedResourceHandler);
+            final Promise<ResourceResponse, ResourceException> readPromise =
+                    csvHandler.readEvent(context, "access", "_id1");
+
+            //then
+            assertThat(promise).succeeded();
+            verify(queryResourceHandler, times(2)).handleResource(resourceCaptor.capture());
+            assertThat(resourceCaptor.getAllValues()).extracting("id").containsOnly("_id1", "_id2");
+            assertThat(pagedPromise).succeeded();
+            verify(pagedResourceHandler, times(1)).handleResource(any(ResourceResponse.class));
+            assertThat(readPromise).succeeded();
+        } finally {
+            csvHandler.shutdown();
+        }
+    }
+
     private CreateRequest makeCreateRequest() {
         return Requests.newCreateRequest("access", buildEvent());
     }
@@ -296,6 +353,31 @@ public class CsvAuditEventHandlerTest {
         assertThat(logDirectory.resolve("access.csv").toFile()).hasContent(expectedContent);
     }
 
+    @Test
+    public void shouldRotateAnExistingFileWhoseHeadersDoNotMatchTheSchema() throws Exception {
+        final Path logDirectory = Files.createTempDirectory("CsvAuditEventHandlerTest");
+        logDirectory.toFile().deleteOnExit();
+        final File auditFile = logDirectory.resolve("access.csv").toFile();
+        final String previousContent = "\"_id\",\"timestamp\"\n\"0\",\"123455\"\n";
+        Files.write(auditFile.toPath(), previousContent.getBytes(StandardCharsets.UTF_8));
+        final CsvAuditEventHandler csvHandler = csvAuditEventHandler().loggingTo(logDirectory).build();
+        try {
+            final JsonValue content = json(object(
+                    field("_id", "1"),
+                    field("timestamp", "123456"),
+                    field("transactionId", "A10000")));
+            csvHandler.publishEvent(new RootContext(), "access", content);
+        } finally {
+            csvHandler.shutdown();
+        }
+
+        assertThat(auditFile).hasContent("\"_id\",\"timestamp\",\"transactionId\"\n"
+                + "\"1\",\"123456\",\"A10000\"");
+        final List<File> rotatedFiles = new TimeStampFileNamingPolicy(auditFile, null, null).listFiles();
+        assertThat(rotatedFiles).hasSize(1);
+        assertThat(rotatedFiles.get(0)).hasContent(previousContent);
+    }
+
     @DataProvider
     private Object[][] rotateActionData() {
         return new Object[][] {
@@ -454,6 +536,14 @@ public class CsvAuditEventHandlerTest {
             return this;
         }
 
+        private CsvAuditEventHandlerBuilder withMemoryMappedQueries(long chunkSize) {
+            CsvQuerying querying = new CsvQuerying();
+            querying.setMemoryMapped(true);
+            querying.setChunkSize(chunkSize);
+            config.setQuerying(querying);
+            return this;
+        }
+
         private CsvAuditEventHandlerBuilder withRotationConfig(FileRotation fileRotation) {
             config.setFileRotation(fileRotation);
             return this;
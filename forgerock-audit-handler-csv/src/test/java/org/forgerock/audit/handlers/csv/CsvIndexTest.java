@@ -0,0 +1,129 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.csv;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SortedSet;
+
+import org.forgerock.json.resource.QueryFilters;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class CsvIndexTest {
+
+    private static final String HEADER = "\"_id\",\"timestamp\",\"transactionId\"\n";
+
+    private final CsvRecordTokenizer tokenizer = new CsvRecordTokenizer('"', ',');
+
+    @Test
+    public void shouldFindRowsById() throws Exception {
+        // given
+        final File file = createCsvFile(HEADER
+                + "\"id1\",\"2015-01-01T00:00:00.000Z\",\"tx1\"\n"
+                + "\"id2\",\"2015-01-02T00:00:00.000Z\",\"tx2\"\n");
+        final CsvIndex index = new CsvIndex(file, tokenizer, asList("transactionId"));
+
+        // when
+        index.open();
+        final SortedSet<Long> offsets = index.findCandidates(QueryFilters.parse("/_id eq \"ID2\""));
+
+        // then
+        assertThat(offsets).hasSize(1);
+        assertThat(index.readRecord(offsets.first()))
+                .containsExactly("id2", "2015-01-02T00:00:00.000Z", "tx2");
+    }
+
+    @Test
+    public void shouldNarrowDownRangesAndConjunctions() throws Exception {
+        // given
+        final File file = createCsvFile(HEADER
+                + "\"id1\",\"2015-01-01T00:00:00.000Z\",\"tx1\"\n"
+                + "\"id2\",\"2015-01-02T00:00:00.000Z\",\"tx1\"\n"
+                + "\"id3\",\"2015-01-03T00:00:00.000Z\",\"tx2\"\n");
+        final CsvIndex index = new CsvIndex(file, tokenizer, asList("timestamp", "transactionId"));
+        index.open();
+
+        // when
+        final SortedSet<Long> range = index.findCandidates(
+                QueryFilters.parse("/timestamp gt \"2015-01-01T00:00:00.000Z\""));
+        final SortedSet<Long> conjunction = index.findCandidates(
+                QueryFilters.parse("/timestamp gt \"2015-01-01T00:00:00.000Z\" and /transactionId eq \"tx1\""));
+        final SortedSet<Long> unindexed = index.findCandidates(QueryFilters.parse("/_id co \"id\""));
+
+        // then
+        assertThat(range).hasSize(2);
+        assertThat(conjunction).hasSize(1);
+        assertThat(index.readRecord(conjunction.first())[0]).isEqualTo("id2");
+        assertThat(unindexed).isNull();
+    }
+
+    @Test
+    public void shouldIndexRowsAppendedAfterOpening() throws Exception {
+        // given
+        final File file = createCsvFile(HEADER + "\"id1\",\"t1\",\"tx1\"\n");
+        final CsvIndex index = new CsvIndex(file, tokenizer, asList("transactionId"));
+        index.open();
+
+        // when
+        final String appended = "\"id2\",\"multi\nline\",\"tx2\"\n\"id3\",\"t3\",\"tx3";
+        Files.write(file.toPath(), appended.getBytes(StandardCharsets.UTF_8), APPEND);
+        index.refresh();
+
+        // then
+        assertThat(index.readRecord(index.findById("id2").first())).containsExactly("id2", "multi\nline", "tx2");
+        assertThat(index.findById("id3")).as("incomplete row must not be indexed").isEmpty();
+    }
+
+    @Test
+    public void shouldReloadSavedIndexAndRebuildItWhenFileIsReplaced() throws Exception {
+        // given
+        final File file = createCsvFile(HEADER + "\"id1\",\"t1\",\"tx1\"\n");
+        final CsvIndex index = new CsvIndex(file, tokenizer, asList("transactionId"));
+        index.open();
+        index.close();
+
+        // when
+        final CsvIndex reloaded = new CsvIndex(file, tokenizer, asList("transactionId"));
+        reloaded.open();
+        Files.delete(file.toPath());
+        Files.write(file.toPath(), (HEADER + "\"id9\",\"t9\",\"tx9\"\n").getBytes(StandardCharsets.UTF_8));
+        final SortedSet<Long> staleOffsets = reloaded.findById("id1");
+        reloaded.refresh();
+
+        // then
+        assertThat(new File(file.getPath() + CsvIndex.INDEX_FILE_SUFFIX)).exists();
+        assertThat(staleOffsets).hasSize(1);
+        assertThat(reloaded.findById("id1")).isEmpty();
+        assertThat(reloaded.findById("id9")).hasSize(1);
+    }
+
+    private File createCsvFile(String content) throws Exception {
+        final Path directory = Files.createTempDirectory("CsvIndexTest");
+        directory.toFile().deleteOnExit();
+        final Path file = directory.resolve("access.csv");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        file.toFile().deleteOnExit();
+        new File(file.toString() + CsvIndex.INDEX_FILE_SUFFIX).deleteOnExit();
+        return file.toFile();
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.csv;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.forgerock.audit.handlers.csv.CsvMappedFileScanner.CompletionListener;
+import org.forgerock.audit.handlers.csv.CsvMappedFileScanner.RecordVisitor;
+import org.forgerock.audit.handlers.csv.CsvQueryExecutor.Sink;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.QueryFilters;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class CsvMappedFileScannerTest {
+
+    private static final String HEADER = "\"_id\",\"timestamp\",\"message\"\n";
+    private static final String[] COLUMNS = { "_id", "timestamp", "message" };
+    private static final boolean[] JSON_COLUMNS = { false, false, false };
+
+    private final CsvRecordTokenizer tokenizer = new CsvRecordTokenizer('"', ',');
+    private final CsvQueryExecutor executor = new CsvQueryExecutor(4);
+
+    @AfterClass
+    public void shutdownExecutor() {
+        executor.shutdown();
+    }
+
+    @DataProvider
+    private Object[][] chunkSizes() {
+        return new Object[][] { { 1L }, { 7L }, { 16L }, { 1024L * 1024L } };
+    }
+
+    @Test(dataProvider = "chunkSizes")
+    public void shouldVisitEachRecordOnceWhateverTheChunkSize(long chunkSize) throws Exception {
+        // given
+        final File file = createCsvFile(HEADER
+                + "\"id1\",\"t1\",\"single line\"\n"
+                + "\"id2\",\"t3\",\"multi\nline \"\"quoted\"\"\n\"\n"
+                + "\"id3\",\"t2\",\n"
+                + "\"id4\",\"t4\",\"incomplete");
+        final List<String> ids = Collections.synchronizedList(new ArrayList<String>());
+        final String[] range = new String[2];
+        final CsvMappedFileScanner scanner = CsvMappedFileScanner.open(file, tokenizer);
+
+        // when
+        executor.execute(scanner.createScans(chunkSize, new RecordVisitor() {
+            @Override
+            public boolean visit(String[] cells, Sink sink) {
+                ids.add(cells[0] + ":" + cells[2]);
+                return true;
+            }
+        }, 1, new CompletionListener() {
+            @Override
+            public void completed(String min, String max) {
+                range[0] = min;
+                range[1] = max;
+            }
+        }), 0, acceptAll());
+
+        // then
+        assertThat(scanner.getHeader()).containsExactly(COLUMNS);
+        assertThat(ids).containsOnly("id1:single line", "id2:multi\nline \"quoted\"\n", "id3:null");
+        assertThat(range).containsExactly("t1", "t3");
+    }
+
+    @Test
+    public void shouldExtendTheMappingOfAChunkForALongRecord() throws Exception {
+        // given
+        final StringBuilder message = new StringBuilder();
+        while (message.length() < 3 * CsvMappedFileScanner.OVERFLOW_MAPPING_SIZE) {
+            message.append("long \"\"quoted\"\" message\n");
+        }
+        final String quotedMessage = message.toString().replace("\"\"", "\"");
+        final File file = createCsvFile(HEADER
+                + "\"id1\",\"t1\",\"" + message + "\"\n"
+                + "\"id2\",\"t2\",\"short message\"\n");
+        final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+        final CsvMappedFileScanner scanner = CsvMappedFileScanner.open(file, tokenizer);
+
+        // when
+        executor.execute(scanner.createScans(1024, new RecordVisitor() {
+            @Override
+            public boolean visit(String[] cells, Sink sink) {
+                messages.add(cells[2]);
+                return true;
+            }
+        }, -1, null), 0, acceptAll());
+
+        // then
+        assertThat(messages).containsOnly(quotedMessage, "short message");
+    }
+
+    @Test
+    public void shouldStopOnceEnoughEntriesAreFound() throws Exception {
+        // given
+        final StringBuilder content = new StringBuilder(HEADER);
+        for (int i = 0; i < 100; i++) {
+            content.append("\"id").append(i).append("\",\"t").append(i).append("\",\"message\"\n");
+        }
+        final CsvMappedFileScanner scanner = CsvMappedFileScanner.open(createCsvFile(content.toString()), tokenizer);
+        final CsvRowFilter rowFilter =
+                CsvRowFilter.compile(QueryFilters.parse("/_id sw \"ID\""), COLUMNS, JSON_COLUMNS);
+        final List<JsonValue> entries = Collections.synchronizedList(new ArrayList<JsonValue>());
+
+        // when
+        executor.execute(scanner.createScans(64, new RecordVisitor() {
+            @Override
+            public boolean visit(String[] cells, Sink sink) {
+                return !rowFilter.matches(cells) || sink.accept(new JsonValue(cells[0]));
+            }
+        }, -1, null), 5, new Sink() {
+            @Override
+            public boolean accept(JsonValue entry) {
+                entries.add(entry);
+                return true;
+            }
+        });
+
+        // then
+        assertThat(entries).hasSize(5);
+    }
+
+    @Test
+    public void shouldEvaluateFiltersOnRawCells() {
+        final String[] row = { "ID1", "2015-01-01T00:00:00.000Z", null };
+
+        assertThat(matches("/_id eq \"id1\"", row)).isTrue();
+        assertThat(matches("/timestamp gt \"2015\" and !(/message co \"x\")", row)).isTrue();
+        assertThat(matches("/message eq \"x\"", row)).isFalse();
+        assertThat(matches("/missing eq \"x\"", row)).as("absent fields match equality assertions").isTrue();
+        assertThat(matches("/missing sw \"x\"", row)).isFalse();
+        assertThat(matches("/_id eq 1", row)).isFalse();
+        assertThat(CsvRowFilter.compile(QueryFilters.parse("/_id pr"), COLUMNS, JSON_COLUMNS)).isNull();
+    }
+
+    private boolean matches(String filter, String[] row) {
+        return CsvRowFilter.compile(QueryFilters.parse(filter), COLUMNS, JSON_COLUMNS).matches(row);
+    }
+
+    private static Sink acceptAll() {
+        return new Sink() {
+            @Override
+            public boolean accept(JsonValue entry) {
+                return true;
+            }
+        };
+    }
+
+    private File createCsvFile(String content) throws Exception {
+        final Path file = Files.createTempFile("CsvMappedFileScannerTest", ".csv");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        file.toFile().deleteOnExit();
+        return file.toFile();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.csv;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.json.JsonValue.array;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
+import org.forgerock.audit.events.CompactAuditEvent;
+import org.forgerock.audit.events.TopicSchema;
+import org.forgerock.json.JsonValue;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class CsvRowExtractorTest {
+
+    private static final TopicSchema SCHEMA = compileSchema();
+
+    @Test
+    public void shouldExtractCellsInColumnOrder() {
+        // given
+        final CsvRowExtractor extractor = new CsvRowExtractor(SCHEMA);
+        final JsonValue event = newEvent();
+
+        // when
+        final String[] row = extractor.extract(event);
+
+        // then
+        assertThat(row).containsExactly(
+                "id1", null, null, "SUCCESS", "{\"code\":200}", "[\"a\",\"b\"]", "3");
+    }
+
+    @Test
+    public void shouldExtractCellsFromSlots() {
+        // given
+        final CsvRowExtractor extractor = new CsvRowExtractor(SCHEMA);
+        final JsonValue event = newEvent();
+
+        // when
+        final String[] row = extractor.extract(CompactAuditEvent.wrap(SCHEMA, event));
+        final String[] otherSchemaRow = extractor.extract(CompactAuditEvent.wrap(compileSchema(), event));
+
+        // then
+        assertThat(row).containsExactly(extractor.extract(event));
+        assertThat(otherSchemaRow).containsExactly(row);
+    }
+
+    private static TopicSchema compileSchema() {
+        return TopicSchema.compile("test", json(object(
+                field("schema", object(
+                        field("id", "/"),
+                        field("properties", object(
+                                field("_id", type("string")),
+                                field("missing", type("string")),
+                                field("empty", type("string")),
+                                field("response", object(
+                                        field("type", "object"),
+                                        field("properties", object(
+                                                field("status", type("string")),
+                                                field("detail", type("object")))))),
+                                field("tags", type("array")),
+                                field("count", type("number")))))))));
+    }
+
+    private static JsonValue newEvent() {
+        return json(object(
+                field("_id", "id1"),
+                field("empty", ""),
+                field("response", object(field("status", "SUCCESS"), field("detail", object(field("code", 200))))),
+                field("tags", array("a", "b")),
+                field("count", 3)));
+    }
+
+    private static Object type(String type) {
+        return object(field("type", type));
+    }
+}
@@ -137,7 +137,7 @@ public class CsvWriterTest {
         try {
             new SecureCsvWriter(csvFile, new String[] { "child1", "child2", "child3", "enfant4" }, csvPreference, configuration, keyStoreHandler, random);
             fail("Should have failed because headers do not match.");
-        } catch (RuntimeException e) {
+        } catch (CsvHeaderMismatchException e) {
             // This is ok, we expect to have this exception.
         }
     }
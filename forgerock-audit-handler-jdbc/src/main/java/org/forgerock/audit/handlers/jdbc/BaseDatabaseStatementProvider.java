@@ -24,12 +24,11 @@ import java.util.List;
 import java.util.Map;
 
 import org.forgerock.audit.AuditException;
-import org.forgerock.audit.events.AuditEventHelper;
+import org.forgerock.audit.events.TopicSchema;
 import org.forgerock.audit.handlers.jdbc.Parameter.Type;
 import org.forgerock.json.JsonPointer;
 import org.forgerock.json.JsonValue;
 import org.forgerock.json.resource.QueryRequest;
-import org.forgerock.json.resource.ResourceException;
 import org.forgerock.util.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,7 +45,7 @@ abstract class BaseDatabaseStatementProvider implements DatabaseStatementProvide
      */
     @Override
     public JdbcAuditEvent buildReadEvent(final TableMapping mapping, final String id,
-            final JsonValue eventTopicMetaData) throws AuditException {
+            final TopicSchema schema) throws AuditException {
         final String idTableColumn = mapping.getFieldToColumn().get("_id");
 
         // build the read sql statement
@@ -58,7 +57,7 @@ abstract class BaseDatabaseStatementProvider implements DatabaseStatementProvide
                         selectStatement,
                         Collections.singletonList(
                                 new Parameter(
-                                        getParameterType(eventTopicMetaData, new JsonPointer("_id")),
+                                        getParameterType(schema, "_id"),
                                         id)));
         return jdbcAuditEvent;
     }
@@ -68,7 +67,7 @@ abstract class BaseDatabaseStatementProvider implements DatabaseStatementProvide
      */
     @Override
     public JdbcAuditEvent buildCreateEvent(final JsonValue content, final TableMapping tableMapping,
-            final JsonValue eventTopicMetaData) throws AuditException {
+            final TopicSchema schema) throws AuditException {
         final Map<String, String> fieldToColumn = tableMapping.getFieldToColumn();
 
         String columns = joinAsString(", ", fieldToColumn.values());
@@ -80,11 +79,14 @@ abstract class BaseDatabaseStatementProvider implements DatabaseStatementProvide
         final SqlStatementParser sqlStatementParser = new SqlStatementParser(insertStatement);
         final List<Parameter> params = new LinkedList<>();
         for (String field : sqlStatementParser.getNamedParameters()) {
-            final JsonPointer fieldPointer = new JsonPointer(field);
+            final TopicSchema.Field schemaField = schema.getField(field);
+            final JsonValue value = schemaField != null
+                    ? schemaField.getValue(content)
+                    : content.get(new JsonPointer(field));
             final Parameter parameter =
                     new Parameter(
-                            getParameterType(eventTopicMetaData, fieldPointer),
-                            content.get(fieldPointer) == null ? null : content.get(fieldPointer).getObject());
+                            getParameterType(schema, field),
+                            value == null ? null : value.getObject());
             params.add(parameter);
         }
         return new JdbcAuditEvent(sqlStatementParser.getSqlStatement(), params);
@@ -95,7 +97,7 @@ abstract class BaseDatabaseStatementProvider implements DatabaseStatementProvide
      */
     @Override
     public abstract JdbcAuditEvent buildQueryEvent(final TableMapping mapping, final QueryRequest queryRequest,
-            final JsonValue eventTopicMetaData) throws AuditException;
+            final TopicSchema schema) throws AuditException;
 
     /**
      * Creates a named parameter given a {@link JsonPointer}. A named parameter has the following format: ${SOME_VALUE}.
@@ -121,19 +123,21 @@ abstract class BaseDatabaseStatementProvider implements DatabaseStatementProvide
 
     /**
      * Gets the Type of the sql parameter.
-     * @param eventTopicMetaData The event topic metadata.
-     * @param field The field to get the type of.
+     * @param schema The compiled schema of the event topic.
+     * @param field The field to get the type of, in JSON pointer form.
      * @return The parameter type.
      * @throws AuditException If unable to get the parameter type.
      */
-    protected Type getParameterType(final JsonValue eventTopicMetaData, final JsonPointer field)
-            throws AuditException {
-        try {
-            return Utils.asEnum(AuditEventHelper.getPropertyType(eventTopicMetaData, field), Type.class);
-        } catch (ResourceException e) {
-            final String error = String.format("Unable to get type for filed %s", field);
-            logger.error(error, field);
-            throw new AuditException(error, e);
+    protected Type getParameterType(final TopicSchema schema, final String field) throws AuditException {
+        final TopicSchema.Field schemaField = schema.getField(field);
+        final String type = schemaField != null
+                ? schemaField.getType()
+                : schema.getPropertyType(new JsonPointer(field));
+        if (type == null) {
+            final String error = String.format("Unable to get type for field %s", field);
+            logger.error(error);
+            throw new AuditException(error);
         }
+        return Utils.asEnum(type, Type.class);
     }
 }
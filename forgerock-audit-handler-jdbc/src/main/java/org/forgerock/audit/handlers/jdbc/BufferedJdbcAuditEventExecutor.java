@@ -34,6 +34,9 @@ import java.util.concurrent.TimeUnit;
 import javax.sql.DataSource;
 
 import org.forgerock.audit.AuditException;
+import org.forgerock.audit.metrics.Gauge;
+import org.forgerock.audit.metrics.LatencyHistogram;
+import org.forgerock.audit.metrics.MetricRegistry;
 import org.forgerock.util.Reject;
 import org.forgerock.util.time.Duration;
 import org.slf4j.Logger;
@@ -57,6 +60,8 @@ class BufferedJdbcAuditEventExecutor implements JdbcAuditEventExecutor {
     private final boolean autoFlush;
     private final int maxBatchedEvents;
     private final DataSource dataSource;
+    /** Records how long writing a batch of events takes, from getting the connection to the commit. */
+    private final LatencyHistogram batchLatency;
 
     /**
      * Created a BufferedJdbcAuditEventExecutor with a given queue capacity, and the {@link JdbcAuditEventExecutor}
@@ -66,9 +71,11 @@ class BufferedJdbcAuditEventExecutor implements JdbcAuditEventExecutor {
      * @param delegate The {@link JdbcAuditEventExecutor} to delegate the operations too.
      * @param writeInterval The interval to trigger write events.
      * @param threads The number of writer threads.
+     * @param metrics The registry of the metrics of the queue and batches.
      */
     public BufferedJdbcAuditEventExecutor(int capacity, boolean autoFlush, JdbcAuditEventExecutor delegate,
-                                          Duration writeInterval, int threads, int maxBatchedEvents, final DataSource dataSource) {
+                                          Duration writeInterval, int threads, int maxBatchedEvents, final DataSource dataSource,
+                                          final MetricRegistry metrics) {
         Reject.ifNull(delegate);
         this.autoFlush = autoFlush;
         this.delegate = delegate;
@@ -82,6 +89,13 @@ class BufferedJdbcAuditEventExecutor implements JdbcAuditEventExecutor {
         this.queueWatcher.scheduleAtFixedRate(
                 new QueueWatcherThread(workerPool), 0, writeInterval.to(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
         this.maxBatchedEvents = maxBatchedEvents;
+        this.batchLatency = metrics.latencyHistogram("batch");
+        metrics.registerGauge("queue", new Gauge() {
+            @Override
+            public long getValue() {
+                return queue.size();
+            }
+        });
     }
 
     public void flush() {
@@ -177,6 +191,7 @@ class BufferedJdbcAuditEventExecutor implements JdbcAuditEventExecutor {
                 return;
             }
 
+            final long start = System.nanoTime();
             Connection connection = null;
             try {
                 connection = dataSource.getConnection();
@@ -196,6 +211,7 @@ class BufferedJdbcAuditEventExecutor implements JdbcAuditEventExecutor {
                     preparedStatement.executeBatch();
                 }
                 CleanupHelper.commit(connection);
+                batchLatency.recordSince(start);
             } catch (SQLException e) {
                 logger.error("Unable to create events in the queue.", e);
                 CleanupHelper.rollback(connection);
@@ -16,6 +16,7 @@
 package org.forgerock.audit.handlers.jdbc;
 
 import org.forgerock.audit.AuditException;
+import org.forgerock.audit.events.TopicSchema;
 import org.forgerock.json.JsonValue;
 import org.forgerock.json.resource.QueryRequest;
 
@@ -28,29 +29,32 @@ interface DatabaseStatementProvider {
      * Builds a {@link JdbcAuditEvent} that can be used to create a prepared statement to create an event.
      * @param content The content of the audit event.
      * @param tableMapping The TableMapping of json fields to table columns.
+     * @param schema The compiled schema of the topic of the event.
      * @return A {@link JdbcAuditEvent}.
      * @throws AuditException If unable to create the {@link JdbcAuditEvent}.
      */
     JdbcAuditEvent buildCreateEvent(JsonValue content, TableMapping tableMapping,
-            JsonValue eventTopicMetaData) throws AuditException;
+            TopicSchema schema) throws AuditException;
 
     /**
      * Builds a {@link JdbcAuditEvent} that can be used to create a prepared statement to read an event.
      * @param mapping The TableMapping of json fields to table columns.
      * @param id The id of the object to read.
+     * @param schema The compiled schema of the topic of the event.
      * @return A {@link JdbcAuditEvent}.
      * @throws AuditException If unable to create the {@link JdbcAuditEvent}.
      */
-    JdbcAuditEvent buildReadEvent(TableMapping mapping, String id, JsonValue eventTopicMetaData)
+    JdbcAuditEvent buildReadEvent(TableMapping mapping, String id, TopicSchema schema)
             throws AuditException;
 
     /**
      * Builds a {@link JdbcAuditEvent} that can be used to create a prepared statement to query an event.
      * @param mapping The TableMapping of json fields to table columns.
      * @param queryRequest The QueryRequest sent to the audit event handler.
+     * @param schema The compiled schema of the queried topic.
      * @return A {@link JdbcAuditEvent}.
      * @throws AuditException If unable to create the {@link JdbcAuditEvent}.
      */
     JdbcAuditEvent buildQueryEvent(TableMapping mapping, QueryRequest queryRequest,
-            JsonValue eventTopicMetaData) throws AuditException;
+            TopicSchema schema) throws AuditException;
 }
@@ -23,8 +23,7 @@ import java.util.LinkedList;
 import java.util.List;
 
 import org.forgerock.audit.AuditException;
-import org.forgerock.json.JsonPointer;
-import org.forgerock.json.JsonValue;
+import org.forgerock.audit.events.TopicSchema;
 import org.forgerock.json.resource.QueryRequest;
 import org.forgerock.json.resource.SortKey;
 import org.slf4j.Logger;
@@ -45,7 +44,7 @@ class GenericDatabaseStatementProvider extends BaseDatabaseStatementProvider {
      */
     @Override
     public JdbcAuditEvent buildQueryEvent(final TableMapping mapping, final QueryRequest queryRequest,
-            final JsonValue eventTopicMetaData) throws AuditException {
+            final TopicSchema schema) throws AuditException {
         final TableMappingParametersPair tableMappingParametersPair = new TableMappingParametersPair(mapping);
         final String querySelectStatement = buildQuerySql(queryRequest, tableMappingParametersPair);
         logger.info("Built query select statement: {}", querySelectStatement);
@@ -53,10 +52,9 @@ class GenericDatabaseStatementProvider extends BaseDatabaseStatementProvider {
         final SqlStatementParser sqlStatementParser = new SqlStatementParser(querySelectStatement);
         final List<Parameter> params = new LinkedList<>();
         for (String field : sqlStatementParser.getNamedParameters()) {
-            final JsonPointer fieldPointer = new JsonPointer(field);
             params.add(
                     new Parameter(
-                            getParameterType(eventTopicMetaData, fieldPointer),
+                            getParameterType(schema, field),
                             tableMappingParametersPair.getParameters().get(field)));
         }
         return new JdbcAuditEvent(sqlStatementParser.getSqlStatement(), params);
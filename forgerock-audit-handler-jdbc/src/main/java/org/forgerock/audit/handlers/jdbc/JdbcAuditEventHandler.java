@@ -30,10 +30,13 @@ import org.forgerock.audit.AuditException;
 import org.forgerock.audit.events.AuditEvent;
 import org.forgerock.audit.events.AuditEventHelper;
 import org.forgerock.audit.events.EventTopicsMetaData;
+import org.forgerock.audit.events.TopicSchema;
 import org.forgerock.audit.events.handlers.AuditEventHandler;
 import org.forgerock.audit.events.handlers.AuditEventHandlerBase;
 import org.forgerock.audit.handlers.jdbc.JdbcAuditEventHandlerConfiguration.ConnectionPool;
 import org.forgerock.audit.handlers.jdbc.JdbcAuditEventHandlerConfiguration.EventBufferingConfiguration;
+import org.forgerock.audit.metrics.MetricRegistry;
+import org.forgerock.audit.metrics.Metrics;
 import org.forgerock.http.util.Json;
 import org.forgerock.json.JsonPointer;
 import org.forgerock.json.JsonValue;
@@ -69,6 +72,7 @@ public class JdbcAuditEventHandler extends AuditEventHandlerBase {
     private DatabaseStatementProvider databaseStatementProvider;
     private boolean sharedDataSource;
     private JdbcAuditEventExecutor jdbcAuditEventExecutor;
+    private final MetricRegistry metricRegistry;
 
     /**
      * Create a new JdbcAuditEventHandler instance.
@@ -80,14 +84,36 @@ public class JdbcAuditEventHandler extends AuditEventHandlerBase {
      * @param dataSource
      *          Connection pool. If this parameter is null, then a Hikari data source will be created.
      */
+    public JdbcAuditEventHandler(
+            final JdbcAuditEventHandlerConfiguration configuration,
+            final EventTopicsMetaData eventTopicsMetaData,
+            final DataSource dataSource) {
+        this(configuration, eventTopicsMetaData, dataSource, null);
+    }
+
+    /**
+     * Create a new JdbcAuditEventHandler instance recording its metrics.
+     *
+     * @param configuration
+     *          Configuration parameters that can be adjusted by system administrators.
+     * @param eventTopicsMetaData
+     *          Meta-data for all audit event topics.
+     * @param dataSource
+     *          Connection pool. If this parameter is null, then a Hikari data source will be created.
+     * @param metricRegistry
+     *          The registry of the metrics, may be {@code null} to not record metrics.
+     */
     @Inject
     public JdbcAuditEventHandler(
             final JdbcAuditEventHandlerConfiguration configuration,
             final EventTopicsMetaData eventTopicsMetaData,
-            @Audit final DataSource dataSource) {
+            @Audit final DataSource dataSource,
+            @Audit final MetricRegistry metricRegistry) {
         super(configuration.getName(), eventTopicsMetaData, configuration.getTopics(), configuration.isEnabled());
         this.configuration = configuration;
         this.dataSource = dataSource;
+        this.metricRegistry = Metrics.prefixed(Metrics.orNoOp(metricRegistry),
+                Metrics.name("handler", configuration.getName()));
     }
 
     /**
@@ -113,7 +139,8 @@ public class JdbcAuditEventHandler extends AuditEventHandlerBase {
                     Duration.duration(bufferConfig.getWriteInterval()),
                     bufferConfig.getWriterThreads(),
                     bufferConfig.getMaxBatchedEvents(),
-                    dataSource);
+                    dataSource,
+                    metricRegistry);
         } else {
             this.jdbcAuditEventExecutor = jdbcAuditEventExecutor;
         }
@@ -124,6 +151,10 @@ public class JdbcAuditEventHandler extends AuditEventHandlerBase {
      */
     @Override
     public void shutdown() throws ResourceException {
+        if (jdbcAuditEventExecutor == null) {
+            // not started
+            return;
+        }
         if (!sharedDataSource && dataSource instanceof HikariDataSource) {
             ((HikariDataSource) dataSource).close();
         }
@@ -138,7 +169,7 @@ public class JdbcAuditEventHandler extends AuditEventHandlerBase {
         try {
             final TableMapping mapping = getTableMapping(topic);
             final JdbcAuditEvent jdbcAuditEvent = databaseStatementProvider.buildCreateEvent(
-                    event, mapping, eventTopicsMetaData.getSchema(topic));
+                    event, mapping, eventTopicsMetaData.getTopicSchema(topic));
             jdbcAuditEventExecutor.createAuditEvent(jdbcAuditEvent);
         } catch (AuditException e) {
             final String error = String.format("Unable to create audit entry for %s", topic);
@@ -163,7 +194,7 @@ public class JdbcAuditEventHandler extends AuditEventHandlerBase {
             final List<Map<String, Object>> results =
                     jdbcAuditEventExecutor.queryAuditEvent(
                             databaseStatementProvider.buildQueryEvent(
-                                    mapping, queryRequest, eventTopicsMetaData.getSchema(topic)));
+                                    mapping, queryRequest, eventTopicsMetaData.getTopicSchema(topic)));
 
             for (Map<String, Object> entry : results) {
                 final JsonValue result = processEntry(entry, mapping, topic);
@@ -189,7 +220,7 @@ public class JdbcAuditEventHandler extends AuditEventHandlerBase {
             final List<Map<String, Object>> results =
                     jdbcAuditEventExecutor.readAuditEvent(
                             databaseStatementProvider.buildReadEvent(
-                                    mapping, resourceId, eventTopicsMetaData.getSchema(topic)));
+                                    mapping, resourceId, eventTopicsMetaData.getTopicSchema(topic)));
 
             if (results.isEmpty()) {
                 return new NotFoundException(String.format("Entry not found for id: %s", resourceId)).asPromise();
@@ -215,13 +246,19 @@ public class JdbcAuditEventHandler extends AuditEventHandlerBase {
     private JsonValue processEntry(final Map<String, Object> sqlResult, final TableMapping tableMapping,
             final String auditEventTopic) throws AuditException {
         final JsonValue result = JsonValue.json(object());
+        final TopicSchema schema = eventTopicsMetaData.getTopicSchema(auditEventTopic);
         try {
             for (Map.Entry<String, String> entry : tableMapping.getFieldToColumn().entrySet()) {
                 final Object value = sqlResult.get(entry.getValue().toLowerCase());
                 if (value != null) {
-                    final JsonPointer field = new JsonPointer(entry.getKey());
+                    final TopicSchema.Field schemaField = schema.getField(entry.getKey());
+                    final JsonPointer field =
+                            schemaField != null ? schemaField.getPointer() : new JsonPointer(entry.getKey());
                     final String fieldType =
-                            AuditEventHelper.getPropertyType(eventTopicsMetaData.getSchema(auditEventTopic), field);
+                            schemaField != null ? schemaField.getType() : schema.getPropertyType(field);
+                    if (fieldType == null) {
+                        throw new AuditException("Unknown audit event property: " + entry.getKey());
+                    }
                     if (AuditEventHelper.ARRAY_TYPE.equalsIgnoreCase(fieldType)
                             || AuditEventHelper.OBJECT_TYPE.equalsIgnoreCase(fieldType)) {
                         // parse stringified json
@@ -22,8 +22,7 @@ import java.util.LinkedList;
 import java.util.List;
 
 import org.forgerock.audit.AuditException;
-import org.forgerock.json.JsonPointer;
-import org.forgerock.json.JsonValue;
+import org.forgerock.audit.events.TopicSchema;
 import org.forgerock.json.resource.QueryRequest;
 import org.forgerock.json.resource.SortKey;
 import org.slf4j.Logger;
@@ -43,7 +42,7 @@ class OracleDatabaseStatementProvider extends BaseDatabaseStatementProvider {
      */
     @Override
     public JdbcAuditEvent buildQueryEvent(final TableMapping mapping, final QueryRequest queryRequest,
-            final JsonValue eventTopicMetaData) throws AuditException {
+            final TopicSchema schema) throws AuditException {
         final String querySelectStatement;
         final TableMappingParametersPair tableMappingParametersPair = new TableMappingParametersPair(mapping);
 
@@ -55,7 +54,7 @@ class OracleDatabaseStatementProvider extends BaseDatabaseStatementProvider {
         for (String field : sqlStatementParser.getNamedParameters()) {
             params.add(
                     new Parameter(
-                            getParameterType(eventTopicMetaData, new JsonPointer(field)),
+                            getParameterType(schema, field),
                             tableMappingParametersPair.getParameters().get(field)));
         }
         return new JdbcAuditEvent(sqlStatementParser.getSqlStatement(), params);
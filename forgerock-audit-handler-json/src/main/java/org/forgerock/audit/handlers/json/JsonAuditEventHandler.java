@@ -0,0 +1,380 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.json;
+
+import static java.lang.String.format;
+import static org.forgerock.audit.handlers.json.JsonFileIndex.ID_FIELD;
+import static org.forgerock.audit.util.ArchiveCompression.getUncompressedFile;
+import static org.forgerock.audit.util.ArchiveCompression.isCompressed;
+import static org.forgerock.audit.util.ArchiveCompression.openArchive;
+import static org.forgerock.audit.util.JsonValueUtils.JSONVALUE_FILTER_VISITOR;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.json.resource.ResourceResponse.FIELD_CONTENT_ID;
+import static org.forgerock.json.resource.Responses.newActionResponse;
+import static org.forgerock.json.resource.Responses.newQueryResponse;
+import static org.forgerock.json.resource.Responses.newResourceResponse;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+
+import org.forgerock.audit.Audit;
+import org.forgerock.audit.events.EventTopicsMetaData;
+import org.forgerock.audit.events.handlers.AuditEventHandlerBase;
+import org.forgerock.audit.events.handlers.FileBasedEventHandlerConfiguration.FileRotation;
+import org.forgerock.audit.metrics.Gauge;
+import org.forgerock.audit.metrics.LatencyHistogram;
+import org.forgerock.audit.metrics.MetricRegistry;
+import org.forgerock.audit.metrics.Metrics;
+import org.forgerock.audit.retention.TimeStampFileNamingPolicy;
+import org.forgerock.json.JsonPointer;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ActionRequest;
+import org.forgerock.json.resource.ActionResponse;
+import org.forgerock.json.resource.BadRequestException;
+import org.forgerock.json.resource.InternalServerErrorException;
+import org.forgerock.json.resource.NotFoundException;
+import org.forgerock.json.resource.QueryRequest;
+import org.forgerock.json.resource.QueryResourceHandler;
+import org.forgerock.json.resource.QueryResponse;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.services.context.Context;
+import org.forgerock.util.promise.Promise;
+import org.forgerock.util.query.QueryFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Handles AuditEvents by writing them to JSON Lines files, one file per topic and one JSON object per line.
+ * <p>
+ * Events are written as they are, without flattening nested objects, which makes them cheaper to write than CSV
+ * rows and directly consumable by log shippers. The files support the same buffering, rotation and retention as the
+ * CSV files.
+ * <p>
+ * Reads look the event up in an index of the current file, mapping event identifiers to the offsets of their lines,
+ * then scan the rotated files. Queries scan the current file, then the rotated files from the newest to the oldest.
+ */
+public class JsonAuditEventHandler extends AuditEventHandlerBase {
+
+    private static final Logger logger = LoggerFactory.getLogger(JsonAuditEventHandler.class);
+
+    /** Name of action to force file rotation. */
+    public static final String ROTATE_FILE_ACTION_NAME = "rotate";
+
+    /** Suffix of the names of the JSON files, following the name of the topic. */
+    static final String FILE_NAME_SUFFIX = ".audit.json";
+
+    //checkstyle:off
+    private static final ObjectMapper mapper = new ObjectMapper();
+    //checkstyle:on
+
+    private final JsonAuditEventHandlerConfiguration configuration;
+    private final ConcurrentMap<String, JsonFileWriter> writers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, JsonFileIndex> indexes = new ConcurrentHashMap<>();
+    /** Records the metrics of the handler, the names being prefixed with {@code handler.<name>}. */
+    private final MetricRegistry metricRegistry;
+    private final ConcurrentMap<String, LatencyHistogram> flushLatencyByTopic = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new JsonAuditEventHandler instance.
+     *
+     * @param configuration
+     *          Configuration parameters that can be adjusted by system administrators.
+     * @param eventTopicsMetaData
+     *          Meta-data for all audit event topics.
+     * @param metricRegistry
+     *          The registry of the metrics, may be {@code null} to not record metrics.
+     */
+    @Inject
+    public JsonAuditEventHandler(
+            final JsonAuditEventHandlerConfiguration configuration,
+            final EventTopicsMetaData eventTopicsMetaData,
+            @Audit final MetricRegistry metricRegistry) {
+        super(configuration.getName(), eventTopicsMetaData, configuration.getTopics(), configuration.isEnabled());
+        this.configuration = configuration;
+        this.metricRegistry = Metrics.prefixed(Metrics.orNoOp(metricRegistry),
+                Metrics.name("handler", configuration.getName()));
+    }
+
+    @Override
+    public void startup() throws ResourceException {
+        logger.trace("Audit logging to: {}", configuration.getLogDirectory());
+        final File directory = new File(configuration.getLogDirectory());
+        if (!directory.isDirectory()) {
+            if (directory.exists()) {
+                logger.warn("Specified path is file but should be a directory: {}", configuration.getLogDirectory());
+            } else if (!directory.mkdirs()) {
+                logger.warn("Unable to create audit directory in the path: {}", configuration.getLogDirectory());
+            }
+        }
+        for (String topic : eventTopicsMetaData.getTopics()) {
+            final File auditLogFile = getAuditLogFile(topic);
+            try {
+                writers.put(topic, new JsonFileWriter(auditLogFile, configuration,
+                        Metrics.prefixed(metricRegistry, topic)));
+            } catch (IOException e) {
+                logger.error("Error when creating audit file: {}", auditLogFile, e);
+                continue;
+            }
+            final JsonFileIndex index = new JsonFileIndex(auditLogFile);
+            indexes.put(topic, index);
+            metricRegistry.registerGauge(Metrics.name(topic, "indexed"), new Gauge() {
+                @Override
+                public long getValue() {
+                    return index.size();
+                }
+            });
+        }
+    }
+
+    @Override
+    public void shutdown() throws ResourceException {
+        for (JsonFileWriter writer : writers.values()) {
+            writer.close();
+        }
+        writers.clear();
+        indexes.clear();
+    }
+
+    /**
+     * Appends the event to the JSON file of the topic.
+     * {@inheritDoc}
+     */
+    @Override
+    public Promise<ResourceResponse, ResourceException> publishEvent(Context context, String topic, JsonValue event) {
+        try {
+            final JsonFileWriter writer = writers.get(topic);
+            if (writer == null) {
+                throw new InternalServerErrorException("No audit file opened for audit event: " + topic);
+            }
+            if (writer.write(event)) {
+                final long start = System.nanoTime();
+                writer.flush();
+                getFlushLatency(topic).recordSince(start);
+            }
+            return newResourceResponse(event.get(FIELD_CONTENT_ID).asString(), null, event).asPromise();
+        } catch (ResourceException e) {
+            return e.asPromise();
+        } catch (IOException e) {
+            return new InternalServerErrorException("Unable to write the " + topic + " audit event", e).asPromise();
+        }
+    }
+
+    private LatencyHistogram getFlushLatency(final String topic) {
+        LatencyHistogram flushLatency = flushLatencyByTopic.get(topic);
+        if (flushLatency == null) {
+            flushLatency = metricRegistry.latencyHistogram(Metrics.name(topic, "flush"));
+            flushLatencyByTopic.putIfAbsent(topic, flushLatency);
+        }
+        return flushLatency;
+    }
+
+    /**
+     * Reads the event through the index of the current file, or else from the rotated files.
+     * {@inheritDoc}
+     */
+    @Override
+    public Promise<ResourceResponse, ResourceException> readEvent(Context context, String topic, String resourceId) {
+        try {
+            JsonValue event = readIndexedEvent(topic, resourceId);
+            if (event == null) {
+                final List<JsonValue> events = new ArrayList<>(1);
+                final QueryFilter<JsonPointer> filter = QueryFilter.equalTo(new JsonPointer(ID_FIELD), resourceId);
+                scanFiles(getArchiveFiles(getAuditLogFile(topic)), filter, 1, new QueryResourceHandler() {
+                    @Override
+                    public boolean handleResource(ResourceResponse resource) {
+                        events.add(resource.getContent());
+                        return false;
+                    }
+                });
+                if (events.isEmpty()) {
+                    throw new NotFoundException(topic + " audit log not found");
+                }
+                event = events.get(0);
+            }
+            return newResourceResponse(event.get(FIELD_CONTENT_ID).asString(), null, event).asPromise();
+        } catch (ResourceException e) {
+            return e.asPromise();
+        } catch (IOException e) {
+            return new InternalServerErrorException(e).asPromise();
+        }
+    }
+
+    /**
+     * Reads the event from the current file if the index has it, returns {@code null} otherwise.
+     */
+    private JsonValue readIndexedEvent(String topic, String resourceId) throws IOException {
+        final JsonFileIndex index = indexes.get(topic);
+        if (index == null) {
+            return null;
+        }
+        index.refresh();
+        final Long offset = index.find(resourceId);
+        if (offset == null) {
+            return null;
+        }
+        final byte[] line;
+        try (FileChannel channel = FileChannel.open(getAuditLogFile(topic).toPath(), StandardOpenOption.READ)) {
+            line = JsonFileIndex.readLine(channel, offset);
+        }
+        if (line == null) {
+            return null;
+        }
+        final JsonValue event = new JsonValue(mapper.readValue(line, Object.class));
+        // the file may have been rotated after being indexed
+        return resourceId.equalsIgnoreCase(event.get(ID_FIELD).asString()) ? event : null;
+    }
+
+    /**
+     * Scans the current JSON file of the topic, then its rotated files from the newest to the oldest.
+     * {@inheritDoc}
+     */
+    @Override
+    public Promise<QueryResponse, ResourceException> queryEvents(Context context, String topic, QueryRequest query,
+            QueryResourceHandler handler) {
+        try {
+            final File auditFile = getAuditLogFile(topic);
+            final List<File> files = new ArrayList<>();
+            files.add(auditFile);
+            files.addAll(getArchiveFiles(auditFile));
+            final QueryFilter<JsonPointer> filter = query.getQueryFilter() == null
+                    ? QueryFilter.<JsonPointer>alwaysTrue()
+                    : query.getQueryFilter();
+            scanFiles(files, filter, query.getPageSize(), handler);
+            return newQueryResponse().asPromise();
+        } catch (IOException e) {
+            return new InternalServerErrorException(e).asPromise();
+        }
+    }
+
+    /**
+     * Passes the events of the files matching the filter to the handler, up to the limit if it is positive.
+     */
+    private void scanFiles(List<File> files, QueryFilter<JsonPointer> filter, int limit,
+            QueryResourceHandler handler) throws IOException {
+        int remaining = limit > 0 ? limit : Integer.MAX_VALUE;
+        for (File file : files) {
+            if (!file.exists()) {
+                continue;
+            }
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(openArchive(file), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final JsonValue event = parseLine(file, line);
+                    if (event == null || !filter.accept(JSONVALUE_FILTER_VISITOR, event)) {
+                        continue;
+                    }
+                    if (!handler.handleResource(newResourceResponse(event.get(FIELD_CONTENT_ID).asString(), null,
+                            event)) || --remaining == 0) {
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                if (file.exists()) {
+                    throw e;
+                }
+                logger.debug("Audit file {} removed before it could be queried", file);
+            }
+        }
+    }
+
+    private JsonValue parseLine(File file, String line) {
+        if (line.isEmpty()) {
+            return null;
+        }
+        try {
+            return new JsonValue(mapper.readValue(line, Object.class));
+        } catch (IOException e) {
+            // the last line of the current file may still be partially written
+            logger.debug("Skipping an unreadable line of the audit file {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public Promise<ActionResponse, ResourceException> handleAction(Context context, String topic,
+            ActionRequest request) {
+        final String action = request.getAction();
+        if (topic == null) {
+            return new BadRequestException(format("Topic is required for action %s", action)).asPromise();
+        }
+        if (!action.equals(ROTATE_FILE_ACTION_NAME)) {
+            return new BadRequestException(format("This action is unknown for the JSON handler: %s", action))
+                    .asPromise();
+        }
+        final JsonFileWriter writer = writers.get(topic);
+        if (writer == null || !configuration.getFileRotation().isRotationEnabled()) {
+            return new BadRequestException("Unable to rotate file for topic: " + topic).asPromise();
+        }
+        try {
+            if (!writer.forceRotation()) {
+                return new BadRequestException("Unable to rotate file for topic: " + topic).asPromise();
+            }
+        } catch (IOException e) {
+            return new BadRequestException("Error when rotating file for topic: " + topic, e).asPromise();
+        }
+        return newActionResponse(json(object(field("rotated", "true")))).asPromise();
+    }
+
+    private File getAuditLogFile(final String topic) {
+        return new File(configuration.getLogDirectory(), topic + FILE_NAME_SUFFIX);
+    }
+
+    /**
+     * Lists the rotated files of the audit file, from the newest to the oldest.
+     */
+    private List<File> getArchiveFiles(final File auditFile) {
+        if (auditFile.getParentFile() == null || !auditFile.getParentFile().isDirectory()) {
+            return new ArrayList<>();
+        }
+        final FileRotation rotation = configuration.getFileRotation();
+        final List<File> archives = new TimeStampFileNamingPolicy(
+                auditFile, rotation.getRotationFileSuffix(), rotation.getRotationFilePrefix()).listFiles();
+        // an archive and its compressed form coexist if the archive could not be deleted once compressed
+        final Set<File> uncompressed = new HashSet<>();
+        for (File archive : archives) {
+            if (!isCompressed(archive)) {
+                uncompressed.add(archive);
+            }
+        }
+        final List<File> files = new ArrayList<>(archives.size());
+        for (int i = archives.size() - 1; i >= 0; i--) {
+            final File archive = archives.get(i);
+            if (!isCompressed(archive) || !uncompressed.contains(getUncompressedFile(archive))) {
+                files.add(archive);
+            }
+        }
+        return files;
+    }
+}
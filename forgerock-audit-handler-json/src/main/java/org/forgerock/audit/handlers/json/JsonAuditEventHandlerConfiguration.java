@@ -0,0 +1,145 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.json;
+
+import org.forgerock.audit.events.handlers.FileBasedEventHandlerConfiguration;
+import org.forgerock.util.Reject;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyDescription;
+
+/**
+ * A configuration for the JSON audit event handler, writing one JSON Lines file per topic.
+ * <p>
+ * This configuration object can be created from JSON. Example of valid JSON configuration:
+ *
+ * <pre>
+ *  {
+ *    "name" : "json",
+ *    "topics": [ "access", "activity", "config", "authentication" ],
+ *    "logDirectory" : "/path/to/audit/files/",
+ *    "buffering" : {
+ *      "enabled" : "true",
+ *      "autoFlush" : "true"
+ *    },
+ *    "fileRotation" : {
+ *      "rotationEnabled" : "true",
+ *      "maxFileSize" : 104857600
+ *    },
+ *    "fileRetention" : {
+ *      "maxNumberOfHistoryFiles" : 10
+ *    }
+ *  }
+ * </pre>
+ */
+public class JsonAuditEventHandlerConfiguration extends FileBasedEventHandlerConfiguration {
+
+    @JsonProperty(required=true)
+    @JsonPropertyDescription("audit.handlers.json.logDirectory")
+    private String logDirectory;
+
+    /** Event buffering is disabled by default. */
+    @JsonPropertyDescription("audit.handlers.json.buffering")
+    private EventBufferingConfiguration buffering = new EventBufferingConfiguration();
+
+    /**
+     * Returns the directory where the JSON files are located.
+     *
+     * @return the location of the JSON files.
+     */
+    public String getLogDirectory() {
+        return logDirectory;
+    }
+
+    /**
+     * Sets the directory where the JSON files are located.
+     *
+     * @param directory
+     *            the directory.
+     */
+    public void setLogDirectory(String directory) {
+        logDirectory = directory;
+    }
+
+    /**
+     * Returns the configuration for events buffering.
+     *
+     * @return the configuration
+     */
+    public EventBufferingConfiguration getBuffering() {
+        return buffering;
+    }
+
+    /**
+     * Sets the configuration for events buffering.
+     *
+     * @param buffering
+     *            The configuration
+     */
+    public void setBuffering(EventBufferingConfiguration buffering) {
+        this.buffering = Reject.checkNotNull(buffering);
+    }
+
+    /**
+     * Configuration of event buffering.
+     */
+    public static class EventBufferingConfiguration {
+
+        @JsonPropertyDescription("audit.handlers.json.buffering.enabled")
+        private boolean enabled;
+
+        @JsonPropertyDescription("audit.handlers.json.buffering.autoFlush")
+        private boolean autoFlush = true;
+
+        /**
+         * Indicates if event buffering is enabled.
+         *
+         * @return {@code true} if buffering is enabled.
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Sets the buffering status.
+         *
+         * @param enabled
+         *            Indicates if buffering is enabled.
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Indicates if events are automatically flushed after being written.
+         *
+         * @return {@code true} if events must be flushed
+         */
+        public boolean isAutoFlush() {
+            return autoFlush;
+        }
+
+        /**
+         * Sets the auto flush indicator.
+         *
+         * @param auto
+         *            Indicates if events are automatically flushed after being written.
+         */
+        public void setAutoFlush(boolean auto) {
+            this.autoFlush = auto;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.json;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * In-memory index of a JSON Lines audit file, mapping the {@code _id} of each event to the byte offset of its line.
+ * <p>
+ * The index tails the file: each {@link #refresh()} only parses the lines appended since the previous call, and
+ * only up to their {@code _id} field. Lines are indexed once they are complete on disk, which keeps the index
+ * consistent with buffered and asynchronous writers. When the file is rotated or replaced, the index detects it and
+ * is rebuilt from the start of the new file.
+ * <p>
+ * Identifiers are compared ignoring case, as done by
+ * {@link org.forgerock.audit.util.JsonValueUtils#JSONVALUE_FILTER_VISITOR}.
+ */
+class JsonFileIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(JsonFileIndex.class);
+
+    /** Name of the indexed field. */
+    static final String ID_FIELD = "_id";
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final byte NEW_LINE = '\n';
+    private static final JsonFactory factory = new JsonFactory();
+
+    private final File file;
+    private final NavigableMap<String, Long> offsetById = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private long indexedLength;
+    private String fileKey;
+
+    /**
+     * Creates an empty index for a JSON file.
+     *
+     * @param file
+     *          The JSON file to index.
+     */
+    JsonFileIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Indexes the lines appended to the file since the last call. If the file has been rotated or replaced since
+     * then, the index is rebuilt.
+     *
+     * @throws IOException
+     *          If the file can't be read.
+     */
+    synchronized void refresh() throws IOException {
+        if (!file.exists()) {
+            clear();
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+            final String currentFileKey = readFileKey();
+            if (channel.size() < indexedLength
+                    || (fileKey != null && currentFileKey != null && !fileKey.equals(currentFileKey))) {
+                logger.debug("JSON file {} has been replaced, rebuilding its index", file);
+                clear();
+            }
+            fileKey = currentFileKey;
+            scan(channel);
+        }
+    }
+
+    /**
+     * Returns the offset of the line of the event with the provided identifier.
+     *
+     * @param id
+     *          The event identifier.
+     * @return the offset of the line, or {@code null} if the event is not in the indexed part of the file.
+     */
+    synchronized Long find(String id) {
+        return offsetById.get(id);
+    }
+
+    /**
+     * Returns the number of indexed events.
+     *
+     * @return the number of events.
+     */
+    synchronized int size() {
+        return offsetById.size();
+    }
+
+    /**
+     * Reads back the line starting at the provided offset.
+     *
+     * @param channel
+     *          The channel to the JSON file.
+     * @param offset
+     *          The offset of the line, as returned by {@link #find(String)}.
+     * @return the UTF-8 bytes of the line, without its end of line, or {@code null} if there is no complete line at
+     *          this offset.
+     * @throws IOException
+     *          If the file can't be read.
+     */
+    static byte[] readLine(FileChannel channel, long offset) throws IOException {
+        byte[] bytes = new byte[4096];
+        int filled = 0;
+        while (true) {
+            final int read = channel.read(ByteBuffer.wrap(bytes, filled, bytes.length - filled), offset + filled);
+            if (read <= 0) {
+                return null;
+            }
+            for (int i = filled; i < filled + read; i++) {
+                if (bytes[i] == NEW_LINE) {
+                    return Arrays.copyOf(bytes, i);
+                }
+            }
+            filled += read;
+            if (filled == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+        }
+    }
+
+    private void clear() {
+        offsetById.clear();
+        indexedLength = 0;
+        fileKey = null;
+    }
+
+    private String readFileKey() throws IOException {
+        final Object key = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+        return key == null ? null : key.toString();
+    }
+
+    private void scan(FileChannel channel) throws IOException {
+        final long size = channel.size();
+        byte[] bytes = new byte[READ_BUFFER_SIZE];
+        long bufferOffset = indexedLength;
+        int filled = 0;
+        int start = 0;
+        while (bufferOffset + filled < size) {
+            if (filled == bytes.length) {
+                if (start > 0) {
+                    System.arraycopy(bytes, start, bytes, 0, filled - start);
+                    filled -= start;
+                    bufferOffset += start;
+                    start = 0;
+                } else {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                }
+            }
+            final int read = channel.read(ByteBuffer.wrap(bytes, filled, bytes.length - filled), bufferOffset + filled);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = filled; i < filled + read; i++) {
+                if (bytes[i] == NEW_LINE) {
+                    addLine(bytes, start, i - start, bufferOffset + start);
+                    start = i + 1;
+                }
+            }
+            filled += read;
+        }
+        indexedLength = bufferOffset + start;
+    }
+
+    private void addLine(byte[] bytes, int start, int length, long offset) {
+        final String id = parseId(bytes, start, length);
+        if (id != null) {
+            offsetById.put(id, offset);
+        }
+    }
+
+    /**
+     * Reads the top-level {@code _id} field of the event, skipping the other fields without building them.
+     */
+    private String parseId(byte[] bytes, int start, int length) {
+        try (JsonParser parser = factory.createParser(bytes, start, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if (ID_FIELD.equals(name)) {
+                    return value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                }
+                parser.skipChildren();
+            }
+        } catch (IOException e) {
+            logger.debug("Unable to index a line of the JSON file {}: {}", file, e.getMessage());
+        }
+        return null;
+    }
+}
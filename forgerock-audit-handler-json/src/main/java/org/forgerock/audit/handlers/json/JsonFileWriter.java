@@ -0,0 +1,171 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.json;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.forgerock.audit.events.handlers.writers.AsynchronousTextWriter;
+import org.forgerock.audit.events.handlers.writers.RotatableWriter;
+import org.forgerock.audit.events.handlers.writers.TextWriter;
+import org.forgerock.audit.handlers.json.JsonAuditEventHandlerConfiguration.EventBufferingConfiguration;
+import org.forgerock.audit.metrics.Gauge;
+import org.forgerock.audit.metrics.MetricRegistry;
+import org.forgerock.json.JsonValue;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Writes audit events to a JSON Lines file, one JSON object per line.
+ * <p>
+ * Each thread serializes the events with its own {@link JsonGenerator}, created once and reused for all the
+ * events, into a reused buffer; each line is then passed to the underlying {@link TextWriter} in a single write,
+ * so that lines written by concurrent threads are never interleaved.
+ */
+class JsonFileWriter {
+
+    //checkstyle:off
+    private static final ObjectMapper mapper = new ObjectMapper();
+    //checkstyle:on
+
+    private final TextWriter writer;
+    /** The rotatable writer, {@code null} if file rotation is disabled. */
+    private final RotatableWriter rotatableWriter;
+    /** Whether each event is flushed by the writing thread, rather than by the asynchronous writer. */
+    private final boolean flushEachEvent;
+    private final ThreadLocal<LineFormatter> formatters = new ThreadLocal<>();
+
+    /**
+     * Opens the JSON file in append mode.
+     *
+     * @param file
+     *          The JSON file.
+     * @param config
+     *          The configuration of the buffering, rotation and retention of the file.
+     * @param metrics
+     *          The registry of the metrics of the file.
+     * @throws IOException
+     *          If the file can't be opened.
+     */
+    JsonFileWriter(File file, JsonAuditEventHandlerConfiguration config, MetricRegistry metrics) throws IOException {
+        TextWriter textWriter;
+        if (config.getFileRotation().isRotationEnabled()) {
+            rotatableWriter = new RotatableWriter(file, config, true);
+            rotatableWriter.setRotationLatency(metrics.latencyHistogram("rotation"));
+            textWriter = rotatableWriter;
+        } else {
+            rotatableWriter = null;
+            textWriter = new TextWriter.Stream(new FileOutputStream(file, true));
+        }
+
+        final EventBufferingConfiguration bufferConfig = config.getBuffering();
+        if (bufferConfig.isEnabled()) {
+            final AsynchronousTextWriter asynchronousWriter =
+                    new AsynchronousTextWriter("JsonHandler", bufferConfig.isAutoFlush(), textWriter);
+            metrics.registerGauge("queue", new Gauge() {
+                @Override
+                public long getValue() {
+                    return asynchronousWriter.getQueueSize();
+                }
+            });
+            textWriter = asynchronousWriter;
+        }
+        this.writer = textWriter;
+        this.flushEachEvent = !bufferConfig.isEnabled() || !bufferConfig.isAutoFlush();
+    }
+
+    /**
+     * Writes the event as a line of the file.
+     *
+     * @param event
+     *          The event to write.
+     * @return {@code true} if the event must be flushed by the caller.
+     * @throws IOException
+     *          If the event can't be serialized or written.
+     */
+    boolean write(JsonValue event) throws IOException {
+        LineFormatter formatter = formatters.get();
+        if (formatter == null) {
+            formatter = new LineFormatter();
+            formatters.set(formatter);
+        }
+        final String line;
+        try {
+            line = formatter.format(event);
+        } catch (IOException | RuntimeException e) {
+            // the generator may have been left in the middle of the event
+            formatters.remove();
+            throw e;
+        }
+        writer.write(line);
+        return flushEachEvent;
+    }
+
+    /**
+     * Flushes the events written to the file.
+     *
+     * @throws IOException
+     *          If the events can't be flushed.
+     */
+    void flush() throws IOException {
+        writer.flush();
+    }
+
+    /**
+     * Forces rotation of the file.
+     * <p>
+     * Rotation is possible only if file rotation is enabled.
+     *
+     * @return {@code true} if rotation was done, {@code false} otherwise.
+     * @throws IOException
+     *          If an error occurs
+     */
+    boolean forceRotation() throws IOException {
+        return rotatableWriter != null && rotatableWriter.forceRotation();
+    }
+
+    /**
+     * Writes the pending events and closes the file.
+     */
+    void close() {
+        writer.shutdown();
+    }
+
+    /**
+     * Serializes the events of a thread with a reused generator and buffer.
+     */
+    private static final class LineFormatter {
+        private final StringWriter buffer = new StringWriter();
+        private final JsonGenerator generator;
+
+        LineFormatter() throws IOException {
+            generator = mapper.getFactory().createGenerator(buffer);
+            // lines are separated by the formatter, not by the generator
+            generator.setRootValueSeparator(null);
+        }
+
+        String format(JsonValue event) throws IOException {
+            buffer.getBuffer().setLength(0);
+            mapper.writeValue(generator, event.getObject());
+            generator.flush();
+            buffer.write('\n');
+            return buffer.toString();
+        }
+    }
+}
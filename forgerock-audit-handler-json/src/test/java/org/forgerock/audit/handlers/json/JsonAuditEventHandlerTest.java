@@ -0,0 +1,160 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.json;
+
+import static java.util.Collections.singleton;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.audit.events.EventTopicsMetaDataBuilder.coreTopicSchemas;
+import static org.forgerock.audit.handlers.json.JsonAuditEventHandler.ROTATE_FILE_ACTION_NAME;
+import static org.forgerock.json.JsonValue.array;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.util.test.assertj.AssertJPromiseAssert.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.BadRequestException;
+import org.forgerock.json.resource.NotFoundException;
+import org.forgerock.json.resource.QueryFilters;
+import org.forgerock.json.resource.QueryRequest;
+import org.forgerock.json.resource.QueryResourceHandler;
+import org.forgerock.json.resource.Requests;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.services.context.Context;
+import org.forgerock.services.context.RootContext;
+import org.testng.annotations.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@SuppressWarnings("javadoc")
+public class JsonAuditEventHandlerTest {
+
+    private final Context context = new RootContext();
+
+    @Test
+    public void shouldWriteOneJsonObjectPerLine() throws Exception {
+        Path logDirectory = Files.createTempDirectory("JsonAuditEventHandlerTest");
+        JsonAuditEventHandler handler = newHandler(logDirectory, false);
+        handler.startup();
+        try {
+            handler.publishEvent(context, "access", event("id1", "tx1"));
+            handler.publishEvent(context, "access", event("id2", "tx2"));
+        } finally {
+            handler.shutdown();
+        }
+
+        File file = logDirectory.resolve("access" + JsonAuditEventHandler.FILE_NAME_SUFFIX).toFile();
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertThat(lines).hasSize(2);
+        ObjectMapper mapper = new ObjectMapper();
+        assertThat(mapper.readValue(lines.get(0), Object.class)).isEqualTo(event("id1", "tx1").getObject());
+        assertThat(mapper.readValue(lines.get(1), Object.class)).isEqualTo(event("id2", "tx2").getObject());
+    }
+
+    @Test
+    public void shouldReadEventsThroughTheIndex() throws Exception {
+        JsonAuditEventHandler handler = newHandler(Files.createTempDirectory("JsonAuditEventHandlerTest"), false);
+        handler.startup();
+        try {
+            handler.publishEvent(context, "access", event("id1", "tx1"));
+            handler.publishEvent(context, "access", event("id2", "tx2"));
+
+            ResourceResponse response = handler.readEvent(context, "access", "id2").get();
+            assertThat(response.getId()).isEqualTo("id2");
+            assertThat(response.getContent().get("transactionId").asString()).isEqualTo("tx2");
+            assertThat(response.getContent().get("http").get("headers").get("accept").asList())
+                    .containsExactly("application/json");
+            assertThat(handler.readEvent(context, "access", "unknown")).failedWithException()
+                    .isInstanceOf(NotFoundException.class);
+            assertThat(handler.readEvent(context, "access", "quoted\" or \\ id")).failedWithException()
+                    .isInstanceOf(NotFoundException.class);
+        } finally {
+            handler.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldQueryAndReadTheRotatedFiles() throws Exception {
+        JsonAuditEventHandler handler = newHandler(Files.createTempDirectory("JsonAuditEventHandlerTest"), true);
+        handler.startup();
+        try {
+            handler.publishEvent(context, "access", event("id1", "tx1"));
+            assertThat(handler.handleAction(context, "access",
+                    Requests.newActionRequest("access", ROTATE_FILE_ACTION_NAME))).succeeded();
+            handler.publishEvent(context, "access", event("id2", "tx1"));
+            handler.publishEvent(context, "access", event("id3", "tx2"));
+
+            assertThat(query(handler, "/transactionId eq \"tx1\"")).containsExactly("id2", "id1");
+            assertThat(query(handler, "true")).containsExactly("id2", "id3", "id1");
+            assertThat(handler.readEvent(context, "access", "id1").get().getId()).isEqualTo("id1");
+        } finally {
+            handler.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldRejectUnknownActions() throws Exception {
+        JsonAuditEventHandler handler = newHandler(Files.createTempDirectory("JsonAuditEventHandlerTest"), false);
+        handler.startup();
+        try {
+            assertThat(handler.handleAction(context, "access", Requests.newActionRequest("access", "unknown")))
+                    .failedWithException().isInstanceOf(BadRequestException.class);
+        } finally {
+            handler.shutdown();
+        }
+    }
+
+    private static JsonAuditEventHandler newHandler(Path logDirectory, boolean rotationEnabled) {
+        logDirectory.toFile().deleteOnExit();
+        JsonAuditEventHandlerConfiguration configuration = new JsonAuditEventHandlerConfiguration();
+        configuration.setName("json");
+        configuration.setTopics(singleton("access"));
+        configuration.setLogDirectory(logDirectory.toString());
+        configuration.getFileRotation().setRotationEnabled(rotationEnabled);
+        return new JsonAuditEventHandler(configuration, coreTopicSchemas().build(), null);
+    }
+
+    private static JsonValue event(String id, String transactionId) {
+        return json(object(
+                field("_id", id),
+                field("transactionId", transactionId),
+                field("timestamp", "2015-01-01T00:00:01.000Z"),
+                field("eventName", "AM-ACCESS-ATTEMPT"),
+                field("http", object(
+                        field("method", "GET"),
+                        field("headers", object(field("accept", array("application/json"))))))));
+    }
+
+    private List<String> query(JsonAuditEventHandler handler, String filter) throws Exception {
+        final List<String> ids = new ArrayList<>();
+        QueryRequest request = Requests.newQueryRequest("access").setQueryFilter(QueryFilters.parse(filter));
+        handler.queryEvents(context, "access", request, new QueryResourceHandler() {
+            @Override
+            public boolean handleResource(ResourceResponse resource) {
+                ids.add(resource.getId());
+                return true;
+            }
+        }).getOrThrow();
+        return ids;
+    }
+}
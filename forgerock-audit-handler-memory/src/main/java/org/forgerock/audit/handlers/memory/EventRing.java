@@ -0,0 +1,307 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.memory;
+
+import static org.forgerock.audit.util.TimestampRange.ORDER;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The most recent events of a topic, in a ring of fixed capacity, with indexes on their {@code _id} and
+ * {@code transactionId}.
+ * <p>
+ * The events are kept in their serialized form, which is both compact and immune to changes made to the event
+ * after its publication. Events are discarded, oldest first, when the ring is full or when they are older than the
+ * maximum age; the greatest timestamp of the discarded events is remembered, so that queries needing older events
+ * can be detected. Indexed values are compared ignoring case, like the query filters do.
+ */
+final class EventRing {
+
+    /**
+     * An event of the ring.
+     */
+    static final class Entry {
+
+        private final String id;
+        private final String transactionId;
+        private final String timestamp;
+        private final long insertionTime;
+        private final byte[] content;
+
+        /**
+         * Creates an entry.
+         *
+         * @param id The {@code _id} of the event, not {@code null}.
+         * @param transactionId The {@code transactionId} of the event, may be {@code null}.
+         * @param timestamp The {@code timestamp} of the event, may be {@code null}.
+         * @param insertionTime The time when the event was published, in milliseconds since the epoch.
+         * @param content The event, serialized as JSON.
+         */
+        Entry(String id, String transactionId, String timestamp, long insertionTime, byte[] content) {
+            this.id = id;
+            this.transactionId = transactionId;
+            this.timestamp = timestamp;
+            this.insertionTime = insertionTime;
+            this.content = content;
+        }
+
+        String getId() {
+            return id;
+        }
+
+        String getTimestamp() {
+            return timestamp;
+        }
+
+        byte[] getContent() {
+            return content;
+        }
+    }
+
+    private final Entry[] entries;
+    private final long maxAge;
+    private final Map<String, Entry> byId = new HashMap<>();
+    private final Map<String, ArrayDeque<Entry>> byTransactionId = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /** Position of the oldest entry. */
+    private int first;
+    private int size;
+    private String discardedUpTo;
+
+    /**
+     * Creates an empty ring.
+     *
+     * @param capacity The maximum number of events.
+     * @param maxAge The maximum age of the events in milliseconds, or a negative value to keep them regardless of
+     *               their age.
+     */
+    EventRing(int capacity, long maxAge) {
+        this.entries = new Entry[capacity];
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Adds an event, discarding the oldest events if the ring is full or if they are too old.
+     *
+     * @param entry The event.
+     */
+    void add(Entry entry) {
+        lock.writeLock().lock();
+        try {
+            discardOlderThan(entry.insertionTime);
+            if (size == entries.length) {
+                discardOldest();
+            }
+            entries[(first + size) % entries.length] = entry;
+            size++;
+            // a duplicated _id resolves to the most recent event
+            byId.put(key(entry.id), entry);
+            if (entry.transactionId != null) {
+                final String transactionId = key(entry.transactionId);
+                ArrayDeque<Entry> transaction = byTransactionId.get(transactionId);
+                if (transaction == null) {
+                    transaction = new ArrayDeque<>(4);
+                    byTransactionId.put(transactionId, transaction);
+                }
+                transaction.addLast(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Discards the events older than the maximum age, which {@link #add(Entry)} otherwise only does when a new event
+     * comes, so that the greatest timestamp of the discarded events stays accurate while no event is published.
+     *
+     * @param now The current time, in milliseconds since the epoch.
+     */
+    void discardExpired(long now) {
+        if (maxAge < 0) {
+            return;
+        }
+        lock.readLock().lock();
+        try {
+            if (size == 0 || isFresh(entries[first], now)) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            discardOlderThan(now);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void discardOlderThan(long now) {
+        if (maxAge < 0) {
+            return;
+        }
+        while (size > 0 && entries[first].insertionTime < now - maxAge) {
+            discardOldest();
+        }
+    }
+
+    private void discardOldest() {
+        final Entry oldest = entries[first];
+        entries[first] = null;
+        first = (first + 1) % entries.length;
+        size--;
+        final String id = key(oldest.id);
+        if (byId.get(id) == oldest) {
+            byId.remove(id);
+        }
+        if (oldest.transactionId != null) {
+            final String transactionId = key(oldest.transactionId);
+            final ArrayDeque<Entry> transaction = byTransactionId.get(transactionId);
+            // entries leave the ring in the order they entered it, so the oldest of its transaction is the first
+            transaction.pollFirst();
+            if (transaction.isEmpty()) {
+                byTransactionId.remove(transactionId);
+            }
+        }
+        if (oldest.timestamp != null
+                && (discardedUpTo == null || ORDER.compare(oldest.timestamp, discardedUpTo) > 0)) {
+            discardedUpTo = oldest.timestamp;
+        }
+    }
+
+    /**
+     * Returns the event with the provided id.
+     *
+     * @param id The {@code _id} of the event.
+     * @param now The current time, in milliseconds since the epoch.
+     * @return the event, or {@code null} if the ring doesn't have it.
+     */
+    Entry get(String id, long now) {
+        lock.readLock().lock();
+        try {
+            final Entry entry = byId.get(key(id));
+            return entry != null && isFresh(entry, now) ? entry : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the events of a transaction, oldest first.
+     *
+     * @param transactionId The {@code transactionId} of the events.
+     * @param now The current time, in milliseconds since the epoch.
+     * @return the events.
+     */
+    List<Entry> getTransaction(String transactionId, long now) {
+        lock.readLock().lock();
+        try {
+            final ArrayDeque<Entry> transaction = byTransactionId.get(key(transactionId));
+            if (transaction == null) {
+                return Collections.emptyList();
+            }
+            final List<Entry> result = new ArrayList<>(transaction.size());
+            for (Entry entry : transaction) {
+                if (isFresh(entry, now)) {
+                    result.add(entry);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns all the events, oldest first.
+     *
+     * @param now The current time, in milliseconds since the epoch.
+     * @return the events.
+     */
+    List<Entry> getAll(long now) {
+        lock.readLock().lock();
+        try {
+            final List<Entry> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                final Entry entry = entries[(first + i) % entries.length];
+                if (isFresh(entry, now)) {
+                    result.add(entry);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the greatest timestamp of the events discarded from the ring.
+     *
+     * @return the timestamp, or {@code null} if no event was discarded.
+     */
+    String getDiscardedUpTo() {
+        lock.readLock().lock();
+        try {
+            return discardedUpTo;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of events in the ring, including the ones too old to be returned.
+     *
+     * @return the number of events.
+     */
+    int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Discards all the events.
+     */
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            while (size > 0) {
+                discardOldest();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean isFresh(Entry entry, long now) {
+        return maxAge < 0 || entry.insertionTime >= now - maxAge;
+    }
+
+    private static String key(String value) {
+        return value.toLowerCase(Locale.ENGLISH);
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.memory;
+
+import static org.forgerock.audit.handlers.memory.MemoryQueryPlan.ID;
+import static org.forgerock.audit.util.JsonValueUtils.JSONVALUE_FILTER_VISITOR;
+import static org.forgerock.json.resource.ResourceResponse.FIELD_CONTENT_ID;
+import static org.forgerock.json.resource.Responses.newQueryResponse;
+import static org.forgerock.json.resource.Responses.newResourceResponse;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import org.forgerock.audit.Audit;
+import org.forgerock.audit.events.AuditEventBuilder;
+import org.forgerock.audit.events.EventTopicsMetaData;
+import org.forgerock.audit.events.handlers.AuditEventHandler;
+import org.forgerock.audit.events.handlers.AuditEventHandlerBase;
+import org.forgerock.audit.events.handlers.FallThroughAuditEventHandler;
+import org.forgerock.audit.handlers.memory.EventRing.Entry;
+import org.forgerock.audit.metrics.Counter;
+import org.forgerock.audit.metrics.Gauge;
+import org.forgerock.audit.metrics.MetricRegistry;
+import org.forgerock.audit.metrics.Metrics;
+import org.forgerock.audit.util.UtcTimestampFormatter;
+import org.forgerock.json.JsonPointer;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.BadRequestException;
+import org.forgerock.json.resource.InternalServerErrorException;
+import org.forgerock.json.resource.NotFoundException;
+import org.forgerock.json.resource.QueryRequest;
+import org.forgerock.json.resource.QueryResourceHandler;
+import org.forgerock.json.resource.QueryResponse;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.services.context.Context;
+import org.forgerock.util.Reject;
+import org.forgerock.util.promise.Promise;
+import org.forgerock.util.query.QueryFilter;
+import org.forgerock.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Handles AuditEvents by keeping the most recent ones of each topic in memory, so that reads and queries of recent
+ * events, e.g. by dashboards, are answered without loading the handlers of the audit sinks.
+ * <p>
+ * Each topic keeps at most {@code maxEvents} events, for at most {@code maxAge}, in an {@link EventRing} indexed on
+ * {@code _id} and {@code transactionId}. Queries requiring one of these fields to be equal to a value are answered
+ * from the indexes, and the other queries scan the events of the topic, skipping the events older than the minimum
+ * {@code timestamp} of the query filter, if any, without reading them.
+ * <p>
+ * If a {@code fallThroughHandler} is configured, reads of events not found in memory are delegated to it, as are
+ * the queries which may match events published before the handler started, or already discarded from memory; that
+ * is the queries that don't require a {@code timestamp} after the ones of these events.
+ */
+public class MemoryAuditEventHandler extends AuditEventHandlerBase implements FallThroughAuditEventHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(MemoryAuditEventHandler.class);
+
+    //checkstyle:off
+    private static final ObjectMapper mapper = new ObjectMapper();
+    //checkstyle:on
+
+    private final Map<String, EventRing> rings;
+    private final String fallThroughHandlerName;
+    private volatile AuditEventHandler fallThroughHandler;
+    /** The timestamp before which events may have been published before this handler started. */
+    private volatile String startTimestamp;
+    private final Counter fallThroughs;
+    /** Records the metrics of the handler, the names being prefixed with {@code handler.<name>}. */
+    private final MetricRegistry metrics;
+
+    /**
+     * Create a new MemoryAuditEventHandler instance.
+     *
+     * @param configuration
+     *          Configuration parameters that can be adjusted by system administrators.
+     * @param eventTopicsMetaData
+     *          Meta-data for all audit event topics.
+     * @param metricRegistry
+     *          The registry of the metrics, may be {@code null} to not record metrics.
+     */
+    @Inject
+    public MemoryAuditEventHandler(
+            final MemoryAuditEventHandlerConfiguration configuration,
+            final EventTopicsMetaData eventTopicsMetaData,
+            @Audit final MetricRegistry metricRegistry) {
+        super(configuration.getName(), eventTopicsMetaData, configuration.getTopics(), configuration.isEnabled());
+        Reject.ifTrue(configuration.getMaxEvents() <= 0, "The 'maxEvents' kept in memory must be positive");
+
+        final long maxAge = parseMaxAge(configuration.getMaxAge());
+        this.metrics = Metrics.prefixed(Metrics.orNoOp(metricRegistry),
+                Metrics.name("handler", configuration.getName()));
+        final Map<String, EventRing> ringsByTopic = new HashMap<>();
+        for (String topic : this.eventTopicsMetaData.getTopics()) {
+            ringsByTopic.put(topic, new EventRing(configuration.getMaxEvents(), maxAge));
+        }
+        this.rings = Collections.unmodifiableMap(ringsByTopic);
+        this.fallThroughHandlerName = configuration.getFallThroughHandler();
+        this.fallThroughs = metrics.counter("fallThrough");
+    }
+
+    private static long parseMaxAge(String maxAge) {
+        try {
+            final Duration duration = Duration.duration(maxAge);
+            return duration.isUnlimited() || duration.isZero() ? -1 : duration.to(TimeUnit.MILLISECONDS);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid maximum age of the events kept in memory: '{}'", maxAge);
+            return -1;
+        }
+    }
+
+    @Override
+    public String getFallThroughHandlerName() {
+        return fallThroughHandlerName;
+    }
+
+    @Override
+    public void setFallThroughHandler(AuditEventHandler handler) {
+        this.fallThroughHandler = handler;
+    }
+
+    @Override
+    public void startup() throws ResourceException {
+        startTimestamp = UtcTimestampFormatter.format(System.currentTimeMillis());
+        for (Map.Entry<String, EventRing> entry : rings.entrySet()) {
+            final EventRing ring = entry.getValue();
+            metrics.registerGauge(Metrics.name(entry.getKey(), "events"), new Gauge() {
+                @Override
+                public long getValue() {
+                    return ring.size();
+                }
+            });
+        }
+    }
+
+    @Override
+    public void shutdown() throws ResourceException {
+        for (EventRing ring : rings.values()) {
+            ring.clear();
+        }
+    }
+
+    @Override
+    public Promise<ResourceResponse, ResourceException> publishEvent(Context context, String topic, JsonValue event) {
+        try {
+            final EventRing ring = getRing(topic);
+            final String id = event.get(FIELD_CONTENT_ID).asString();
+            if (id == null) {
+                throw new BadRequestException("The " + topic + " audit event has no " + FIELD_CONTENT_ID);
+            }
+            final byte[] content = mapper.writeValueAsBytes(event.getObject());
+            ring.add(new Entry(id,
+                    event.get(AuditEventBuilder.TRANSACTION_ID).asString(),
+                    event.get(AuditEventBuilder.TIMESTAMP).asString(),
+                    System.currentTimeMillis(),
+                    content));
+            return newResourceResponse(id, null, event).asPromise();
+        } catch (ResourceException e) {
+            return e.asPromise();
+        } catch (IOException e) {
+            return new BadRequestException(e).asPromise();
+        }
+    }
+
+    @Override
+    public Promise<ResourceResponse, ResourceException> readEvent(Context context, String topic, String resourceId) {
+        try {
+            final EventRing ring = getRing(topic);
+            final long now = System.currentTimeMillis();
+            ring.discardExpired(now);
+            final Entry entry = ring.get(resourceId, now);
+            if (entry == null) {
+                final AuditEventHandler fallThrough = fallThroughHandler;
+                if (fallThrough != null) {
+                    fallThroughs.increment();
+                    return fallThrough.readEvent(context, topic, resourceId);
+                }
+                throw new NotFoundException(topic + " audit event not found");
+            }
+            return newResourceResponse(entry.getId(), null, toJson(entry)).asPromise();
+        } catch (ResourceException e) {
+            return e.asPromise();
+        }
+    }
+
+    @Override
+    public Promise<QueryResponse, ResourceException> queryEvents(Context context, String topic, QueryRequest query,
+            QueryResourceHandler handler) {
+        try {
+            final EventRing ring = getRing(topic);
+            final QueryFilter<JsonPointer> filter = query.getQueryFilter();
+            final MemoryQueryPlan plan = MemoryQueryPlan.of(filter);
+            final long now = System.currentTimeMillis();
+            ring.discardExpired(now);
+            final AuditEventHandler fallThrough = fallThroughHandler;
+            if (fallThrough != null && !isInMemory(ring, plan)) {
+                fallThroughs.increment();
+                return fallThrough.queryEvents(context, topic, query, handler);
+            }
+
+            final List<Entry> candidates = plan.getIndexedField() == null
+                    ? ring.getAll(now)
+                    : plan.getIndexedField().equals(ID)
+                            ? toList(ring.get(plan.getIndexedValue(), now))
+                            : ring.getTransaction(plan.getIndexedValue(), now);
+            int remaining = query.getPageSize() > 0 ? query.getPageSize() : Integer.MAX_VALUE;
+            for (Entry entry : candidates) {
+                if (!plan.mayMatch(entry.getTimestamp())) {
+                    continue;
+                }
+                final JsonValue event = toJson(entry);
+                if (filter.accept(JSONVALUE_FILTER_VISITOR, event)) {
+                    if (!handler.handleResource(newResourceResponse(entry.getId(), null, event)) || --remaining == 0) {
+                        break;
+                    }
+                }
+            }
+            return newQueryResponse().asPromise();
+        } catch (ResourceException e) {
+            return e.asPromise();
+        } catch (Exception e) {
+            return new BadRequestException(e).asPromise();
+        }
+    }
+
+    /**
+     * Indicates if all the events that may match the query are kept in memory.
+     */
+    private boolean isInMemory(EventRing ring, MemoryQueryPlan plan) {
+        final String start = startTimestamp;
+        if (start == null || !plan.isAfter(start)) {
+            return false;
+        }
+        final String discardedUpTo = ring.getDiscardedUpTo();
+        return discardedUpTo == null || plan.isAfter(discardedUpTo);
+    }
+
+    private EventRing getRing(String topic) throws ResourceException {
+        final EventRing ring = rings.get(topic);
+        if (ring == null) {
+            throw new InternalServerErrorException("Unable to keep " + topic + " audit events in memory");
+        }
+        return ring;
+    }
+
+    private static List<Entry> toList(Entry entry) {
+        return entry == null ? Collections.<Entry>emptyList() : Collections.singletonList(entry);
+    }
+
+    private static JsonValue toJson(Entry entry) throws ResourceException {
+        try {
+            return new JsonValue(mapper.readValue(entry.getContent(), Object.class));
+        } catch (IOException e) {
+            throw new InternalServerErrorException("Unable to read the audit event " + entry.getId(), e);
+        }
+    }
+}
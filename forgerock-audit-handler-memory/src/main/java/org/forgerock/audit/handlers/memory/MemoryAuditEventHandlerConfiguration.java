@@ -0,0 +1,104 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.memory;
+
+import org.forgerock.audit.events.handlers.EventHandlerConfiguration;
+
+import com.fasterxml.jackson.annotation.JsonPropertyDescription;
+
+/**
+ * Configuration object for the {@link MemoryAuditEventHandler}.
+ * <p>
+ * This configuration object can be created from JSON. Example of valid JSON configuration:
+ *
+ * <pre>
+    {
+      "name" : "recent",
+      "topics": [ "access", "activity" ],
+      "maxEvents" : 10000,
+      "maxAge" : "15 minutes",
+      "fallThroughHandler" : "csv"
+    }
+   </pre>
+ */
+public class MemoryAuditEventHandlerConfiguration extends EventHandlerConfiguration {
+
+    @JsonPropertyDescription("audit.handlers.memory.maxEvents")
+    private int maxEvents = 10000;
+
+    @JsonPropertyDescription("audit.handlers.memory.maxAge")
+    private String maxAge = "disabled";
+
+    @JsonPropertyDescription("audit.handlers.memory.fallThroughHandler")
+    private String fallThroughHandler;
+
+    /**
+     * Returns the maximum number of events kept for each topic.
+     *
+     * @return the maximum number of events.
+     */
+    public int getMaxEvents() {
+        return maxEvents;
+    }
+
+    /**
+     * Sets the maximum number of events kept for each topic; the oldest events are discarded first.
+     *
+     * @param maxEvents
+     *          the maximum number of events.
+     */
+    public void setMaxEvents(int maxEvents) {
+        this.maxEvents = maxEvents;
+    }
+
+    /**
+     * Returns how long the events are kept.
+     *
+     * @return the duration, e.g. {@code 15 minutes}, or {@code disabled} to only limit the number of events.
+     */
+    public String getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Sets how long the events are kept.
+     *
+     * @param maxAge
+     *          the duration, e.g. {@code 15 minutes}, or {@code disabled} to only limit the number of events.
+     */
+    public void setMaxAge(String maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Returns the name of the handler answering the reads and queries of the events no longer kept in memory.
+     *
+     * @return the name of the handler, or {@code null} if all reads and queries are answered from memory.
+     */
+    public String getFallThroughHandler() {
+        return fallThroughHandler;
+    }
+
+    /**
+     * Sets the name of the handler answering the reads and queries of the events no longer kept in memory.
+     *
+     * @param fallThroughHandler
+     *          the name of the handler, or {@code null} to answer all reads and queries from memory.
+     */
+    public void setFallThroughHandler(String fallThroughHandler) {
+        this.fallThroughHandler = fallThroughHandler;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.memory;
+
+import java.util.List;
+
+import org.forgerock.audit.util.TimestampRange;
+import org.forgerock.json.JsonPointer;
+import org.forgerock.util.query.QueryFilter;
+import org.forgerock.util.query.QueryFilterVisitor;
+
+/**
+ * What a query filter tells about the events it can match, so that the {@link MemoryAuditEventHandler} can avoid
+ * scanning all the events of a topic.
+ * <p>
+ * A filter requiring an {@code _id} or a {@code transactionId} to be equal to a value is answered from the indexes,
+ * and the {@link TimestampRange} of the filter lets the scan skip the older events without reading them, and tells
+ * whether the events kept in memory are enough to answer the query.
+ */
+final class MemoryQueryPlan {
+
+    static final JsonPointer ID = new JsonPointer("/_id");
+    static final JsonPointer TRANSACTION_ID = new JsonPointer("/transactionId");
+
+    private static final MemoryQueryPlan SCAN = new MemoryQueryPlan(null, null, TimestampRange.UNBOUNDED);
+
+    private final JsonPointer indexedField;
+    private final String indexedValue;
+    private final TimestampRange timestampRange;
+
+    private MemoryQueryPlan(JsonPointer indexedField, String indexedValue, TimestampRange timestampRange) {
+        this.indexedField = indexedField;
+        this.indexedValue = indexedValue;
+        this.timestampRange = timestampRange;
+    }
+
+    /**
+     * Computes the plan of a query filter.
+     *
+     * @param filter
+     *          The query filter.
+     * @return the plan of the filter.
+     */
+    static MemoryQueryPlan of(QueryFilter<JsonPointer> filter) {
+        final MemoryQueryPlan index = filter.accept(INDEX_VISITOR, null);
+        return new MemoryQueryPlan(index.indexedField, index.indexedValue, TimestampRange.of(filter));
+    }
+
+    /**
+     * Returns the field whose index gives all the events that can match, if any.
+     *
+     * @return {@link #ID}, {@link #TRANSACTION_ID} or {@code null} if the events have to be scanned.
+     */
+    JsonPointer getIndexedField() {
+        return indexedField;
+    }
+
+    /**
+     * Returns the value of the indexed field that the events must have.
+     *
+     * @return the value, or {@code null} if the events have to be scanned.
+     */
+    String getIndexedValue() {
+        return indexedValue;
+    }
+
+    /**
+     * Indicates if an event with the provided timestamp may match, as far as its timestamp is concerned.
+     *
+     * @param timestamp
+     *          The timestamp of an event, or {@code null} if the event has no timestamp.
+     * @return {@code false} if the timestamp is out of the range of the filter.
+     */
+    boolean mayMatch(String timestamp) {
+        return timestampRange.overlaps(timestamp, timestamp);
+    }
+
+    /**
+     * Indicates if all the events that can match have a timestamp after the provided one.
+     *
+     * @param timestamp
+     *          A timestamp.
+     * @return {@code true} if no event at or before the timestamp can match.
+     */
+    boolean isAfter(String timestamp) {
+        return timestampRange.isAfter(timestamp);
+    }
+
+    /**
+     * Finds the index answering a filter, the timestamp range of the plans it returns being left unbounded.
+     */
+    private static final QueryFilterVisitor<MemoryQueryPlan, Void, JsonPointer> INDEX_VISITOR =
+            new QueryFilterVisitor<MemoryQueryPlan, Void, JsonPointer>() {
+
+                @Override
+                public MemoryQueryPlan visitAndFilter(Void p, List<QueryFilter<JsonPointer>> subFilters) {
+                    for (QueryFilter<JsonPointer> subFilter : subFilters) {
+                        final MemoryQueryPlan plan = subFilter.accept(this, p);
+                        if (plan.indexedField != null) {
+                            return plan;
+                        }
+                    }
+                    return SCAN;
+                }
+
+                @Override
+                public MemoryQueryPlan visitOrFilter(Void p, List<QueryFilter<JsonPointer>> subFilters) {
+                    return subFilters.size() == 1 ? subFilters.get(0).accept(this, p) : SCAN;
+                }
+
+                @Override
+                public MemoryQueryPlan visitEqualsFilter(Void p, JsonPointer field, Object valueAssertion) {
+                    if (valueAssertion instanceof String && (field.equals(ID) || field.equals(TRANSACTION_ID))) {
+                        return new MemoryQueryPlan(field, (String) valueAssertion, TimestampRange.UNBOUNDED);
+                    }
+                    return SCAN;
+                }
+
+                @Override
+                public MemoryQueryPlan visitGreaterThanFilter(Void p, JsonPointer field, Object valueAssertion) {
+                    return SCAN;
+                }
+
+                @Override
+                public MemoryQueryPlan visitGreaterThanOrEqualToFilter(Void p, JsonPointer field,
+                        Object valueAssertion) {
+                    return SCAN;
+                }
+
+                @Override
+                public MemoryQueryPlan visitBooleanLiteralFilter(Void p, boolean value) {
+                    return SCAN;
+                }
+
+                @Override
+                public MemoryQueryPlan visitContainsFilter(Void p, JsonPointer field, Object valueAssertion) {
+                    return SCAN;
+                }
+
+                @Override
+                public MemoryQueryPlan visitExtendedMatchFilter(Void p, JsonPointer field, String operator,
+                        Object valueAssertion) {
+                    return SCAN;
+                }
+
+                @Override
+                public MemoryQueryPlan visitLessThanFilter(Void p, JsonPointer field, Object valueAssertion) {
+                    return SCAN;
+                }
+
+                @Override
+                public MemoryQueryPlan visitLessThanOrEqualToFilter(Void p, JsonPointer field,
+                        Object valueAssertion) {
+                    return SCAN;
+                }
+
+                @Override
+                public MemoryQueryPlan visitNotFilter(Void p, QueryFilter<JsonPointer> subFilter) {
+                    return SCAN;
+                }
+
+                @Override
+                public MemoryQueryPlan visitPresentFilter(Void p, JsonPointer field) {
+                    return SCAN;
+                }
+
+                @Override
+                public MemoryQueryPlan visitStartsWithFilter(Void p, JsonPointer field, Object valueAssertion) {
+                    return SCAN;
+                }
+            };
+}
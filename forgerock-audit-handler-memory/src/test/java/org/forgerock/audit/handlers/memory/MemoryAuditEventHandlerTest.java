@@ -0,0 +1,228 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.memory;
+
+import static java.util.Collections.singleton;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.audit.events.EventTopicsMetaDataBuilder.coreTopicSchemas;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.json.resource.Responses.newQueryResponse;
+import static org.forgerock.util.test.assertj.AssertJPromiseAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.forgerock.audit.AuditService;
+import org.forgerock.audit.AuditServiceBuilder;
+import org.forgerock.audit.AuditServiceProxy;
+import org.forgerock.audit.DependencyProvider;
+import org.forgerock.audit.DependencyProviderBase;
+import org.forgerock.audit.events.handlers.AuditEventHandler;
+import org.forgerock.audit.metrics.InMemoryMetricRegistry;
+import org.forgerock.audit.metrics.MetricRegistry;
+import org.forgerock.audit.util.UtcTimestampFormatter;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.NotFoundException;
+import org.forgerock.json.resource.QueryFilters;
+import org.forgerock.json.resource.QueryRequest;
+import org.forgerock.json.resource.QueryResourceHandler;
+import org.forgerock.json.resource.Requests;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.services.context.Context;
+import org.forgerock.services.context.RootContext;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class MemoryAuditEventHandlerTest {
+
+    private final Context context = new RootContext();
+
+    @Test
+    public void shouldReadPublishedEvent() throws Exception {
+        MemoryAuditEventHandler handler = newHandler(10, null);
+        handler.publishEvent(context, "access", event("id1", "tx1", "2015-01-01T00:00:01.000Z"));
+
+        ResourceResponse response = handler.readEvent(context, "access", "id1").get();
+
+        assertThat(response.getId()).isEqualTo("id1");
+        assertThat(response.getContent().get("transactionId").asString()).isEqualTo("tx1");
+    }
+
+    @Test
+    public void shouldKeepACopyOfThePublishedEvent() throws Exception {
+        MemoryAuditEventHandler handler = newHandler(10, null);
+        JsonValue event = event("id1", "tx1", "2015-01-01T00:00:01.000Z");
+        handler.publishEvent(context, "access", event);
+
+        event.put("transactionId", "changed");
+
+        ResourceResponse response = handler.readEvent(context, "access", "id1").get();
+        assertThat(response.getContent().get("transactionId").asString()).isEqualTo("tx1");
+    }
+
+    @Test
+    public void shouldDiscardTheOldestEventsBeyondTheCapacity() throws Exception {
+        MemoryAuditEventHandler handler = newHandler(2, null);
+        handler.publishEvent(context, "access", event("id1", "tx1", "2015-01-01T00:00:01.000Z"));
+        handler.publishEvent(context, "access", event("id2", "tx1", "2015-01-01T00:00:02.000Z"));
+        handler.publishEvent(context, "access", event("id3", "tx2", "2015-01-01T00:00:03.000Z"));
+
+        assertThat(handler.readEvent(context, "access", "id1")).failedWithException()
+                .isInstanceOf(NotFoundException.class);
+        assertThat(query(handler, "true")).containsExactly("id2", "id3");
+        assertThat(query(handler, "/transactionId eq \"tx1\"")).containsExactly("id2");
+    }
+
+    @Test
+    public void shouldQueryFromIndexesAndTimestamps() throws Exception {
+        MemoryAuditEventHandler handler = newHandler(10, null);
+        handler.publishEvent(context, "access", event("id1", "tx1", "2015-01-01T00:00:01.000Z"));
+        handler.publishEvent(context, "access", event("id2", "tx2", "2015-01-01T00:00:02.000Z"));
+        handler.publishEvent(context, "access", event("id3", "tx1", "2015-01-01T00:00:03.000Z"));
+
+        assertThat(query(handler, "/_id eq \"id2\"")).containsExactly("id2");
+        assertThat(query(handler, "/transactionId eq \"tx1\"")).containsExactly("id1", "id3");
+        assertThat(query(handler, "/timestamp ge \"2015-01-01T00:00:02.000Z\"")).containsExactly("id2", "id3");
+        assertThat(query(handler, "/transactionId eq \"tx1\" and /timestamp gt \"2015-01-01T00:00:01.000Z\""))
+                .containsExactly("id3");
+    }
+
+    @Test
+    public void shouldFallThroughForEventsNotInMemory() throws Exception {
+        AuditEventHandler fallThrough = mock(AuditEventHandler.class);
+        when(fallThrough.readEvent(any(Context.class), anyString(), anyString()))
+                .thenReturn(new NotFoundException().<ResourceResponse>asPromise());
+        when(fallThrough.queryEvents(any(Context.class), anyString(), any(QueryRequest.class),
+                any(QueryResourceHandler.class))).thenReturn(newQueryResponse().asPromise());
+        MemoryAuditEventHandler handler = newHandler(10, "csv");
+        handler.setFallThroughHandler(fallThrough);
+        handler.startup();
+        String recent = UtcTimestampFormatter.format(System.currentTimeMillis() + 1000);
+        handler.publishEvent(context, "access", event("id1", "tx1", recent));
+
+        handler.readEvent(context, "access", "id2");
+        query(handler, "/transactionId eq \"tx1\"");
+        List<String> recentEvents = query(handler, "/timestamp ge \"" + recent + "\"");
+
+        verify(fallThrough).readEvent(context, "access", "id2");
+        verify(fallThrough).queryEvents(eq(context), eq("access"), any(QueryRequest.class),
+                any(QueryResourceHandler.class));
+        assertThat(recentEvents).containsExactly("id1");
+    }
+
+    @Test
+    public void shouldFallThroughOnceTheEventsExpiredWithoutNewEvents() throws Exception {
+        AuditEventHandler fallThrough = mock(AuditEventHandler.class);
+        when(fallThrough.queryEvents(any(Context.class), anyString(), any(QueryRequest.class),
+                any(QueryResourceHandler.class))).thenReturn(newQueryResponse().asPromise());
+        MemoryAuditEventHandler handler = newHandler(10, "csv", "10 milliseconds");
+        handler.setFallThroughHandler(fallThrough);
+        handler.startup();
+        String recent = UtcTimestampFormatter.format(System.currentTimeMillis() + 1000);
+        handler.publishEvent(context, "access", event("id1", "tx1", recent));
+        Thread.sleep(50);
+
+        query(handler, "/timestamp ge \"" + recent + "\"");
+
+        verify(fallThrough).queryEvents(eq(context), eq("access"), any(QueryRequest.class),
+                any(QueryResourceHandler.class));
+    }
+
+    @Test
+    public void shouldNotFallThroughForEventsInMemory() throws Exception {
+        AuditEventHandler fallThrough = mock(AuditEventHandler.class);
+        MemoryAuditEventHandler handler = newHandler(10, "csv");
+        handler.setFallThroughHandler(fallThrough);
+        handler.startup();
+        handler.publishEvent(context, "access", event("id1", "tx1", "2015-01-01T00:00:01.000Z"));
+
+        assertThat(handler.readEvent(context, "access", "id1")).succeeded();
+        verify(fallThrough, never()).readEvent(any(Context.class), anyString(), anyString());
+    }
+
+    @Test
+    public void shouldKeepTheGaugesOfTheHandlerCarriedOverByANewAuditService() throws Exception {
+        InMemoryMetricRegistry metricRegistry = new InMemoryMetricRegistry();
+        DependencyProviderBase dependencyProvider = new DependencyProviderBase();
+        dependencyProvider.register(MetricRegistry.class, metricRegistry);
+        AuditServiceProxy auditService = new AuditServiceProxy(newAuditService(dependencyProvider));
+        auditService.startup();
+        AuditEventHandler handler = auditService.getRegisteredHandler("memory");
+        handler.publishEvent(context, "access", event("id1", "tx1", "2015-01-01T00:00:01.000Z"));
+
+        auditService.setDelegate(newAuditService(dependencyProvider));
+
+        assertThat(auditService.getRegisteredHandler("memory")).isSameAs(handler);
+        assertThat(metricRegistry.snapshot().get("handler.memory.access.events").get("value").asLong())
+                .isEqualTo(1L);
+        auditService.shutdown();
+    }
+
+    private static AuditService newAuditService(DependencyProvider dependencyProvider) throws Exception {
+        MemoryAuditEventHandlerConfiguration configuration = new MemoryAuditEventHandlerConfiguration();
+        configuration.setName("memory");
+        configuration.setTopics(singleton("access"));
+        configuration.setMaxEvents(10);
+        return AuditServiceBuilder.newAuditService()
+                .withDependencyProvider(dependencyProvider)
+                .withAuditEventHandler(MemoryAuditEventHandler.class, configuration)
+                .build();
+    }
+
+    private static MemoryAuditEventHandler newHandler(int maxEvents, String fallThroughHandler) {
+        return newHandler(maxEvents, fallThroughHandler, new MemoryAuditEventHandlerConfiguration().getMaxAge());
+    }
+
+    private static MemoryAuditEventHandler newHandler(int maxEvents, String fallThroughHandler, String maxAge) {
+        MemoryAuditEventHandlerConfiguration configuration = new MemoryAuditEventHandlerConfiguration();
+        configuration.setName("memory");
+        configuration.setTopics(singleton("access"));
+        configuration.setMaxEvents(maxEvents);
+        configuration.setMaxAge(maxAge);
+        configuration.setFallThroughHandler(fallThroughHandler);
+        return new MemoryAuditEventHandler(configuration, coreTopicSchemas().build(), null);
+    }
+
+    private static JsonValue event(String id, String transactionId, String timestamp) {
+        return json(object(
+                field("_id", id),
+                field("transactionId", transactionId),
+                field("timestamp", timestamp),
+                field("eventName", "AM-ACCESS-ATTEMPT")));
+    }
+
+    private List<String> query(MemoryAuditEventHandler handler, String filter) throws Exception {
+        final List<String> ids = new ArrayList<>();
+        QueryRequest request = Requests.newQueryRequest("access").setQueryFilter(QueryFilters.parse(filter));
+        handler.queryEvents(context, "access", request, new QueryResourceHandler() {
+            @Override
+            public boolean handleResource(ResourceResponse resource) {
+                ids.add(resource.getId());
+                return true;
+            }
+        }).getOrThrow();
+        return ids;
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.segment;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.forgerock.audit.events.TopicSchema;
+import org.forgerock.json.JsonValue;
+
+/**
+ * Encodes audit events into the records of a segment, and decodes them back.
+ * <p>
+ * A record is made of its length and the CRC-32 of its payload, as two big-endian ints, followed by the payload.
+ * The payload is a tagged binary form of the JSON value of the event: integers are zig-zag variable-length
+ * encoded, strings are prefixed with their variable-length UTF-8 size, and member names found in the dictionary of
+ * the segment are replaced by their position in it. The dictionary is built from the schema of the topic when the
+ * segment is created and stored in its header, so that a segment remains readable after the schema changes.
+ */
+final class RecordCodec {
+
+    /** Size of the length and CRC preceding the payload of each record. */
+    static final int RECORD_HEADER_SIZE = 8;
+    /** Maximum size of the payload of a record, larger lengths denote a corrupted record: 64 MB. */
+    static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    private static final byte NULL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte STRING = 5;
+    private static final byte ARRAY = 6;
+    private static final byte OBJECT = 7;
+
+    private final List<String> names;
+    private final Map<String, Integer> codeByName = new HashMap<>();
+
+    /**
+     * Creates a codec using the provided dictionary of member names.
+     *
+     * @param names
+     *          The member names, in the order of their codes.
+     */
+    RecordCodec(Collection<String> names) {
+        this.names = Collections.unmodifiableList(new ArrayList<>(names));
+        for (int i = 0; i < this.names.size(); i++) {
+            codeByName.put(this.names.get(i), i + 1);
+        }
+    }
+
+    /**
+     * Creates a codec whose dictionary holds the member names of the fields of the topic.
+     *
+     * @param schema
+     *          The schema of the topic, may be {@code null}.
+     * @return the codec.
+     */
+    static RecordCodec forSchema(TopicSchema schema) {
+        final Set<String> names = new LinkedHashSet<>();
+        if (schema != null) {
+            for (TopicSchema.Field field : schema.getFields()) {
+                names.addAll(Arrays.asList(field.getDotNotation().split("\\.")));
+            }
+        }
+        return new RecordCodec(names);
+    }
+
+    /**
+     * Returns the dictionary of member names.
+     *
+     * @return the member names, in the order of their codes.
+     */
+    List<String> getNames() {
+        return names;
+    }
+
+    /**
+     * Encodes the event as a complete record, header included.
+     *
+     * @param event
+     *          The event.
+     * @return the bytes of the record.
+     */
+    byte[] encode(JsonValue event) {
+        final Output out = new Output();
+        out.size = RECORD_HEADER_SIZE;
+        write(out, event.getObject());
+        final int length = out.size - RECORD_HEADER_SIZE;
+        writeInt(out.bytes, 0, length);
+        writeInt(out.bytes, 4, crc(out.bytes, RECORD_HEADER_SIZE, length));
+        return Arrays.copyOf(out.bytes, out.size);
+    }
+
+    /**
+     * Decodes the payload of a record.
+     *
+     * @param payload
+     *          The bytes of the payload.
+     * @return the JSON value of the event.
+     * @throws IOException
+     *          If the payload is not a valid encoded event.
+     */
+    JsonValue decode(byte[] payload) throws IOException {
+        final Input in = new Input(payload);
+        try {
+            final Object value = read(in);
+            if (in.position != payload.length) {
+                throw new IOException("Unexpected bytes after the encoded event");
+            }
+            return new JsonValue(value);
+        } catch (ArrayIndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IOException("Truncated encoded event", e);
+        }
+    }
+
+    /**
+     * Computes the CRC-32 of a range of bytes.
+     *
+     * @param bytes
+     *          The bytes.
+     * @param offset
+     *          The offset of the range.
+     * @param length
+     *          The length of the range.
+     * @return the CRC-32, as an int.
+     */
+    static int crc(byte[] bytes, int offset, int length) {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private void write(Output out, Object value) {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            out.writeByte(LONG);
+            final long number = ((Number) value).longValue();
+            out.writeVarLong((number << 1) ^ (number >> 63));
+        } else if (value instanceof Number) {
+            out.writeByte(DOUBLE);
+            out.writeFixedLong(Double.doubleToLongBits(((Number) value).doubleValue()));
+        } else if (value instanceof Map) {
+            final Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(OBJECT);
+            out.writeVarLong(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                final String name = String.valueOf(entry.getKey());
+                final Integer code = codeByName.get(name);
+                if (code != null) {
+                    out.writeVarLong(code);
+                } else {
+                    out.writeVarLong(0);
+                    writeString(out, name);
+                }
+                write(out, entry.getValue());
+            }
+        } else if (value instanceof Collection) {
+            final Collection<?> collection = (Collection<?>) value;
+            out.writeByte(ARRAY);
+            out.writeVarLong(collection.size());
+            for (Object element : collection) {
+                write(out, element);
+            }
+        } else {
+            out.writeByte(STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    private static void writeString(Output out, String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeVarLong(bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    private Object read(Input in) throws IOException {
+        final byte tag = in.readByte();
+        switch (tag) {
+        case NULL:
+            return null;
+        case FALSE:
+            return Boolean.FALSE;
+        case TRUE:
+            return Boolean.TRUE;
+        case LONG:
+            final long zigZag = in.readVarLong();
+            final long number = (zigZag >>> 1) ^ -(zigZag & 1);
+            // as parsed from JSON, small integers are ints
+            return number == (int) number ? Integer.valueOf((int) number) : Long.valueOf(number);
+        case DOUBLE:
+            return Double.longBitsToDouble(in.readFixedLong());
+        case STRING:
+            return readString(in);
+        case ARRAY:
+            final int length = in.readSize();
+            final List<Object> list = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) {
+                list.add(read(in));
+            }
+            return list;
+        case OBJECT:
+            final int size = in.readSize();
+            final Map<String, Object> map = new LinkedHashMap<>();
+            for (int i = 0; i < size; i++) {
+                final int code = in.readCode();
+                final String name;
+                if (code == 0) {
+                    name = readString(in);
+                } else if (code <= names.size()) {
+                    name = names.get(code - 1);
+                } else {
+                    throw new IOException("Unknown member name code " + code);
+                }
+                map.put(name, read(in));
+            }
+            return map;
+        default:
+            throw new IOException("Unknown value tag " + tag);
+        }
+    }
+
+    private static String readString(Input in) throws IOException {
+        final int length = in.readSize();
+        final String value = new String(in.bytes, in.position, length, StandardCharsets.UTF_8);
+        in.position += length;
+        return value;
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /** Growable output buffer. */
+    private static final class Output {
+        private byte[] bytes = new byte[512];
+        private int size;
+
+        private void ensureCapacity(int additional) {
+            if (size + additional > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + additional));
+            }
+        }
+
+        void writeByte(byte value) {
+            ensureCapacity(1);
+            bytes[size++] = value;
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            long remaining = value;
+            while ((remaining & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((remaining & 0x7F) | 0x80);
+                remaining >>>= 7;
+            }
+            bytes[size++] = (byte) remaining;
+        }
+
+        void writeFixedLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeBytes(byte[] value) {
+            ensureCapacity(value.length);
+            System.arraycopy(value, 0, bytes, size, value.length);
+            size += value.length;
+        }
+    }
+
+    /** Input over the bytes of a payload. */
+    private static final class Input {
+        private final byte[] bytes;
+        private int position;
+
+        Input(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        byte readByte() {
+            return bytes[position++];
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed variable-length integer");
+        }
+
+        /** Reads a count of bytes or values, each of them taking at least one of the remaining bytes. */
+        int readSize() throws IOException {
+            final long value = readVarLong();
+            if (value < 0 || value > bytes.length - position) {
+                throw new IOException("Invalid size " + value);
+            }
+            return (int) value;
+        }
+
+        int readCode() throws IOException {
+            final long value = readVarLong();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new IOException("Invalid member name code " + value);
+            }
+            return (int) value;
+        }
+
+        long readFixedLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (bytes[position++] & 0xFF);
+            }
+            return value;
+        }
+    }
+}
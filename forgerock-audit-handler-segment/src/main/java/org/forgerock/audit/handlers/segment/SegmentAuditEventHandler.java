@@ -0,0 +1,321 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.segment;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.forgerock.audit.util.JsonValueUtils.JSONVALUE_FILTER_VISITOR;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.json.resource.ResourceResponse.FIELD_CONTENT_ID;
+import static org.forgerock.json.resource.Responses.newActionResponse;
+import static org.forgerock.json.resource.Responses.newQueryResponse;
+import static org.forgerock.json.resource.Responses.newResourceResponse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import javax.inject.Inject;
+
+import org.forgerock.audit.Audit;
+import org.forgerock.audit.events.EventTopicsMetaData;
+import org.forgerock.audit.events.handlers.AuditEventHandlerBase;
+import org.forgerock.audit.metrics.Gauge;
+import org.forgerock.audit.metrics.MetricRegistry;
+import org.forgerock.audit.metrics.Metrics;
+import org.forgerock.audit.util.TimestampRange;
+import org.forgerock.json.JsonPointer;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ActionRequest;
+import org.forgerock.json.resource.ActionResponse;
+import org.forgerock.json.resource.BadRequestException;
+import org.forgerock.json.resource.InternalServerErrorException;
+import org.forgerock.json.resource.NotFoundException;
+import org.forgerock.json.resource.QueryRequest;
+import org.forgerock.json.resource.QueryResourceHandler;
+import org.forgerock.json.resource.QueryResponse;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.services.context.Context;
+import org.forgerock.util.promise.Promise;
+import org.forgerock.util.query.QueryFilter;
+import org.forgerock.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Handles AuditEvents by appending them to segmented binary logs, one log per topic.
+ * <p>
+ * Events are encoded as compact records, their field names being replaced by codes from a dictionary built from the
+ * schema of the topic, and appended to the active segment of the topic without any formatting or flushing. Each
+ * segment is indexed by event identifier and, sparsely, by timestamp: reads are served from the index, and queries
+ * skip the segments, and the beginning of the segments, out of the range of timestamps of their filter.
+ * <p>
+ * Segments are rolled over and deleted by the same rotation and retention policies as the CSV files.
+ *
+ * @see SegmentLog
+ */
+public class SegmentAuditEventHandler extends AuditEventHandlerBase {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentAuditEventHandler.class);
+
+    /** Name of action to force the rollover of the active segment. */
+    public static final String ROTATE_FILE_ACTION_NAME = "rotate";
+
+    /** Suffix of the names of the active segments, following the name of the topic. */
+    static final String FILE_NAME_SUFFIX = ".audit.seg";
+
+    private static final Duration FIVE_SECONDS = Duration.duration("5s");
+
+    private final SegmentAuditEventHandlerConfiguration configuration;
+    private final ConcurrentMap<String, SegmentLog> logs = new ConcurrentHashMap<>();
+    /** Records the metrics of the handler, the names being prefixed with {@code handler.<name>}. */
+    private final MetricRegistry metricRegistry;
+    private ScheduledExecutorService rotator;
+
+    /**
+     * Create a new SegmentAuditEventHandler instance.
+     *
+     * @param configuration
+     *          Configuration parameters that can be adjusted by system administrators.
+     * @param eventTopicsMetaData
+     *          Meta-data for all audit event topics.
+     * @param metricRegistry
+     *          The registry of the metrics, may be {@code null} to not record metrics.
+     */
+    @Inject
+    public SegmentAuditEventHandler(
+            final SegmentAuditEventHandlerConfiguration configuration,
+            final EventTopicsMetaData eventTopicsMetaData,
+            @Audit final MetricRegistry metricRegistry) {
+        super(configuration.getName(), eventTopicsMetaData, configuration.getTopics(), configuration.isEnabled());
+        this.configuration = configuration;
+        this.metricRegistry = Metrics.prefixed(Metrics.orNoOp(metricRegistry),
+                Metrics.name("handler", configuration.getName()));
+    }
+
+    @Override
+    public void startup() throws ResourceException {
+        logger.trace("Audit logging to: {}", configuration.getLogDirectory());
+        final File directory = new File(configuration.getLogDirectory());
+        if (!directory.isDirectory()) {
+            if (directory.exists()) {
+                logger.warn("Specified path is file but should be a directory: {}", configuration.getLogDirectory());
+            } else if (!directory.mkdirs()) {
+                logger.warn("Unable to create audit directory in the path: {}", configuration.getLogDirectory());
+            }
+        }
+        for (String topic : eventTopicsMetaData.getTopics()) {
+            final File segment = getActiveSegment(topic);
+            final SegmentLog log = new SegmentLog(segment, configuration,
+                    RecordCodec.forSchema(eventTopicsMetaData.getTopicSchema(topic)));
+            try {
+                log.open();
+            } catch (IOException e) {
+                logger.error("Error when opening audit segment: {}", segment, e);
+                continue;
+            }
+            log.setRotationLatency(metricRegistry.latencyHistogram(Metrics.name(topic, "rotation")));
+            metricRegistry.registerGauge(Metrics.name(topic, "segments"), new Gauge() {
+                @Override
+                public long getValue() {
+                    return log.getSealedSegmentCount();
+                }
+            });
+            logs.put(topic, log);
+        }
+        scheduleRotationAndRetentionChecks();
+    }
+
+    /**
+     * Applies the rotation and retention policies to the logs of all topics at the configured interval.
+     */
+    private void scheduleRotationAndRetentionChecks() {
+        Duration checkInterval;
+        try {
+            checkInterval = Duration.duration(configuration.getRotationRetentionCheckInterval());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid rotation and retention check interval value: '{}'",
+                    configuration.getRotationRetentionCheckInterval());
+            checkInterval = FIVE_SECONDS;
+        }
+        if (checkInterval.isUnlimited() || checkInterval.isZero()) {
+            logger.error("Rotation and retention check interval set to an invalid value: {}", checkInterval);
+            return;
+        }
+        rotator = Executors.newScheduledThreadPool(1);
+        rotator.scheduleAtFixedRate(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        for (SegmentLog log : logs.values()) {
+                            try {
+                                log.rotateIfNeeded();
+                            } catch (Exception e) {
+                                logger.error("Failure when applying a rotation policy", e);
+                            }
+                            try {
+                                log.deleteSegmentsIfNeeded();
+                            } catch (Exception e) {
+                                logger.error("Failure when applying a retention policy", e);
+                            }
+                        }
+                    }
+                },
+                checkInterval.to(MILLISECONDS),
+                checkInterval.to(MILLISECONDS),
+                MILLISECONDS);
+    }
+
+    @Override
+    public void shutdown() throws ResourceException {
+        if (rotator != null) {
+            boolean interrupted = false;
+            rotator.shutdown();
+            try {
+                while (!rotator.awaitTermination(500, MILLISECONDS)) {
+                    logger.debug("Waiting to terminate the rotator thread.");
+                }
+            } catch (InterruptedException ex) {
+                logger.error("Unable to terminate the rotator thread", ex);
+                interrupted = true;
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            rotator = null;
+        }
+        for (SegmentLog log : logs.values()) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                logger.error("Unable to close the audit segment", e);
+            }
+        }
+        logs.clear();
+    }
+
+    /**
+     * Appends the event to the active segment of the topic.
+     * {@inheritDoc}
+     */
+    @Override
+    public Promise<ResourceResponse, ResourceException> publishEvent(Context context, String topic, JsonValue event) {
+        try {
+            getLog(topic).append(event);
+            return newResourceResponse(event.get(FIELD_CONTENT_ID).asString(), null, event).asPromise();
+        } catch (ResourceException e) {
+            return e.asPromise();
+        } catch (IOException e) {
+            return new InternalServerErrorException("Unable to write the " + topic + " audit event", e).asPromise();
+        }
+    }
+
+    /**
+     * Reads the event through the indexes of the segments, from the active one to the oldest one.
+     * {@inheritDoc}
+     */
+    @Override
+    public Promise<ResourceResponse, ResourceException> readEvent(Context context, String topic, String resourceId) {
+        try {
+            final JsonValue event = getLog(topic).read(resourceId);
+            if (event == null) {
+                throw new NotFoundException(topic + " audit log not found");
+            }
+            return newResourceResponse(event.get(FIELD_CONTENT_ID).asString(), null, event).asPromise();
+        } catch (ResourceException e) {
+            return e.asPromise();
+        } catch (IOException e) {
+            return new InternalServerErrorException(e).asPromise();
+        }
+    }
+
+    /**
+     * Scans the segments which may hold events in the range of timestamps of the filter, from the oldest one to the
+     * active one.
+     * {@inheritDoc}
+     */
+    @Override
+    public Promise<QueryResponse, ResourceException> queryEvents(Context context, String topic, QueryRequest query,
+            final QueryResourceHandler handler) {
+        try {
+            final QueryFilter<JsonPointer> filter = query.getQueryFilter() == null
+                    ? QueryFilter.<JsonPointer>alwaysTrue()
+                    : query.getQueryFilter();
+            final int limit = query.getPageSize() > 0 ? query.getPageSize() : Integer.MAX_VALUE;
+            getLog(topic).query(TimestampRange.of(filter), new SegmentLog.EventVisitor() {
+                private int remaining = limit;
+
+                @Override
+                public boolean visit(JsonValue event) {
+                    if (!filter.accept(JSONVALUE_FILTER_VISITOR, event)) {
+                        return true;
+                    }
+                    return handler.handleResource(newResourceResponse(event.get(FIELD_CONTENT_ID).asString(), null,
+                            event)) && --remaining > 0;
+                }
+            });
+            return newQueryResponse().asPromise();
+        } catch (ResourceException e) {
+            return e.asPromise();
+        } catch (IOException e) {
+            return new InternalServerErrorException(e).asPromise();
+        }
+    }
+
+    @Override
+    public Promise<ActionResponse, ResourceException> handleAction(Context context, String topic,
+            ActionRequest request) {
+        final String action = request.getAction();
+        if (topic == null) {
+            return new BadRequestException(format("Topic is required for action %s", action)).asPromise();
+        }
+        if (!action.equals(ROTATE_FILE_ACTION_NAME)) {
+            return new BadRequestException(format("This action is unknown for the segment handler: %s", action))
+                    .asPromise();
+        }
+        final SegmentLog log = logs.get(topic);
+        if (log == null) {
+            return new BadRequestException("Unable to rotate file for topic: " + topic).asPromise();
+        }
+        try {
+            if (!log.forceRotation()) {
+                return new BadRequestException("Unable to rotate file for topic: " + topic).asPromise();
+            }
+        } catch (IOException e) {
+            return new BadRequestException("Error when rotating file for topic: " + topic, e).asPromise();
+        }
+        return newActionResponse(json(object(field("rotated", "true")))).asPromise();
+    }
+
+    private SegmentLog getLog(String topic) throws InternalServerErrorException {
+        final SegmentLog log = logs.get(topic);
+        if (log == null) {
+            throw new InternalServerErrorException("No audit segment opened for audit event: " + topic);
+        }
+        return log;
+    }
+
+    private File getActiveSegment(final String topic) {
+        return new File(configuration.getLogDirectory(), topic + FILE_NAME_SUFFIX);
+    }
+}
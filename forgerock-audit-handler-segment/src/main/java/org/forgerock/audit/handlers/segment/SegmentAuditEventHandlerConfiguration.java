@@ -0,0 +1,125 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.segment;
+
+import org.forgerock.audit.events.handlers.FileBasedEventHandlerConfiguration;
+import org.forgerock.util.Reject;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyDescription;
+
+/**
+ * A configuration for the segment log audit event handler.
+ * <p>
+ * The segments are rolled over and deleted by the file rotation and retention policies; a size based rotation
+ * should be enabled to bound the size of the segments. This configuration object can be created from JSON.
+ * Example of valid JSON configuration:
+ *
+ * <pre>
+ *  {
+ *    "name" : "segments",
+ *    "topics": [ "access", "activity", "config", "authentication" ],
+ *    "logDirectory" : "/path/to/audit/segments/",
+ *    "syncOnWrite" : false,
+ *    "timeIndexInterval" : 65536,
+ *    "fileRotation" : {
+ *      "rotationEnabled" : "true",
+ *      "maxFileSize" : 67108864,
+ *      "rotationFileSuffix" : "-yyyy.MM.dd-HH.mm.ss.SSS"
+ *    },
+ *    "fileRetention" : {
+ *      "maxDiskSpaceToUse" : 10737418240
+ *    }
+ *  }
+ * </pre>
+ */
+public class SegmentAuditEventHandlerConfiguration extends FileBasedEventHandlerConfiguration {
+
+    /** Default number of bytes between two entries of the time index of a segment: 64 KB. */
+    public static final int DEFAULT_TIME_INDEX_INTERVAL = 64 * 1024;
+
+    @JsonProperty(required=true)
+    @JsonPropertyDescription("audit.handlers.segment.logDirectory")
+    private String logDirectory;
+
+    @JsonPropertyDescription("audit.handlers.segment.syncOnWrite")
+    private boolean syncOnWrite;
+
+    @JsonPropertyDescription("audit.handlers.segment.timeIndexInterval")
+    private int timeIndexInterval = DEFAULT_TIME_INDEX_INTERVAL;
+
+    /**
+     * Returns the directory where the segments are located.
+     *
+     * @return the location of the segments.
+     */
+    public String getLogDirectory() {
+        return logDirectory;
+    }
+
+    /**
+     * Sets the directory where the segments are located.
+     *
+     * @param directory
+     *            the directory.
+     */
+    public void setLogDirectory(String directory) {
+        logDirectory = directory;
+    }
+
+    /**
+     * Indicates if each event is synchronized to the storage device before being acknowledged. Otherwise, the
+     * events are only synchronized when a segment is rolled over or closed, and the events not yet synchronized may
+     * be lost if the system crashes.
+     *
+     * @return {@code true} if each event is synchronized.
+     */
+    public boolean isSyncOnWrite() {
+        return syncOnWrite;
+    }
+
+    /**
+     * Sets if each event is synchronized to the storage device before being acknowledged.
+     *
+     * @param syncOnWrite
+     *            Indicates if each event is synchronized.
+     */
+    public void setSyncOnWrite(boolean syncOnWrite) {
+        this.syncOnWrite = syncOnWrite;
+    }
+
+    /**
+     * Gets the number of bytes between two entries of the sparse time index of a segment. Time-range queries start
+     * scanning a segment from the entry preceding the first event in the range, so smaller intervals skip more
+     * events at the cost of a larger index.
+     *
+     * @return the interval, in bytes.
+     */
+    public int getTimeIndexInterval() {
+        return timeIndexInterval;
+    }
+
+    /**
+     * Sets the number of bytes between two entries of the sparse time index of a segment.
+     *
+     * @param timeIndexInterval
+     *            the interval, in bytes; must be positive.
+     */
+    public void setTimeIndexInterval(int timeIndexInterval) {
+        Reject.ifFalse(timeIndexInterval > 0, "The time index interval must be positive");
+        this.timeIndexInterval = timeIndexInterval;
+    }
+}
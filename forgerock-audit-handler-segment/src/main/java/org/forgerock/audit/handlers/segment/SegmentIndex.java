@@ -0,0 +1,345 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.segment;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.forgerock.audit.util.TimestampRange;
+
+/**
+ * Index of the records of a segment: a hash index of the {@code _id} of the events, and a sparse time index.
+ * <p>
+ * The time index holds an entry every {@code interval} bytes of the segment, recording the greatest timestamp of
+ * the records preceding the entry. As events may be published out of order, this running maximum is what allows a
+ * scan for events from a given timestamp to start at the last entry whose maximum is before it. The index also
+ * records the range of the timestamps of the segment, so that whole segments are skipped by time-range queries.
+ * <p>
+ * The index of the segment being written is kept in memory. When the segment is rolled over, its index is saved
+ * next to it, the event identifiers forming an open addressing hash table which is read in place through a memory
+ * mapping. Identifiers are compared ignoring case, as done by
+ * {@link org.forgerock.audit.util.JsonValueUtils#JSONVALUE_FILTER_VISITOR}; the events found through the index
+ * must still be checked by the caller, as distinct identifiers may have the same hash.
+ */
+final class SegmentIndex {
+
+    /** Suffix appended to the name of a segment to get the name of its saved index. */
+    static final String INDEX_FILE_SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x46525349;
+    private static final int VERSION = 1;
+    private static final int SLOT_SIZE = 12;
+    private static final int MIN_CAPACITY = 16;
+
+    private final int interval;
+    private int recordCount;
+    private String minTimestamp;
+    private String maxTimestamp;
+    private final List<String> entryTimestamps = new ArrayList<>();
+    private long[] entryOffsets = new long[16];
+    private long lastEntryOffset;
+
+    /** The offsets of the records by lower case identifier, {@code null} once the index is saved and loaded. */
+    private final Map<String, Long> offsetById;
+    /** The hash table of a loaded index, {@code null} while the index is being built. */
+    private final ByteBuffer slots;
+    private final int capacity;
+
+    /**
+     * Creates an empty index.
+     *
+     * @param interval
+     *          The number of bytes between two entries of the time index.
+     * @param firstOffset
+     *          The offset of the first record of the segment.
+     */
+    SegmentIndex(int interval, long firstOffset) {
+        this.interval = interval;
+        this.lastEntryOffset = firstOffset;
+        this.offsetById = new HashMap<>();
+        this.slots = null;
+        this.capacity = 0;
+    }
+
+    private SegmentIndex(ByteBuffer slots, int capacity) {
+        this.interval = 0;
+        this.offsetById = null;
+        this.slots = slots;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds a record at the end of the index.
+     *
+     * @param id
+     *          The identifier of the event, may be {@code null}.
+     * @param timestamp
+     *          The timestamp of the event, may be {@code null}.
+     * @param offset
+     *          The offset of the record in the segment.
+     */
+    synchronized void add(String id, String timestamp, long offset) {
+        if (offset - lastEntryOffset >= interval) {
+            addEntry(maxTimestamp, offset);
+            lastEntryOffset = offset;
+        }
+        if (id != null) {
+            offsetById.put(id.toLowerCase(Locale.ROOT), offset);
+        }
+        if (timestamp != null) {
+            if (minTimestamp == null || TimestampRange.ORDER.compare(timestamp, minTimestamp) < 0) {
+                minTimestamp = timestamp;
+            }
+            if (maxTimestamp == null || TimestampRange.ORDER.compare(timestamp, maxTimestamp) > 0) {
+                maxTimestamp = timestamp;
+            }
+        }
+        recordCount++;
+    }
+
+    private void addEntry(String timestamp, long offset) {
+        if (entryTimestamps.size() == entryOffsets.length) {
+            entryOffsets = Arrays.copyOf(entryOffsets, entryOffsets.length * 2);
+        }
+        entryOffsets[entryTimestamps.size()] = offset;
+        entryTimestamps.add(timestamp);
+    }
+
+    /**
+     * Returns the offsets of the records which may hold the event with the provided identifier.
+     *
+     * @param id
+     *          The identifier of the event.
+     * @return the offsets of the candidate records.
+     */
+    synchronized List<Long> find(String id) {
+        final String key = id.toLowerCase(Locale.ROOT);
+        if (offsetById != null) {
+            final Long offset = offsetById.get(key);
+            return offset == null ? Collections.<Long>emptyList() : Collections.singletonList(offset);
+        }
+        final List<Long> offsets = new ArrayList<>(1);
+        final int hash = hash(key);
+        for (int i = 0; i < capacity; i++) {
+            final int slot = ((hash + i) & (capacity - 1)) * SLOT_SIZE;
+            final long offset = slots.getLong(slot + 4);
+            if (offset == 0) {
+                break;
+            }
+            if (slots.getInt(slot) == hash) {
+                offsets.add(offset);
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Returns the offset from which the records with a timestamp after the provided one must be scanned.
+     *
+     * @param from
+     *          The minimum timestamp of the records, or {@code null} to scan all the records.
+     * @param firstOffset
+     *          The offset of the first record of the segment.
+     * @return the offset of the first record to scan.
+     */
+    synchronized long getScanStart(String from, long firstOffset) {
+        if (from == null) {
+            return firstOffset;
+        }
+        // the running maximums are sorted: find the last entry preceded only by records before the timestamp
+        int low = 0;
+        int high = entryTimestamps.size() - 1;
+        long start = firstOffset;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final String maximum = entryTimestamps.get(middle);
+            if (maximum == null || TimestampRange.ORDER.compare(maximum, from) < 0) {
+                start = entryOffsets[middle];
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return start;
+    }
+
+    /**
+     * Indicates if the segment may hold records in the provided range of timestamps.
+     *
+     * @param range
+     *          The range of timestamps.
+     * @return {@code false} if all the records of the segment are out of the range.
+     */
+    synchronized boolean overlaps(TimestampRange range) {
+        return recordCount > 0 && range.overlaps(minTimestamp, maxTimestamp);
+    }
+
+    /**
+     * Returns the number of records of the segment.
+     *
+     * @return the number of records.
+     */
+    synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Saves the index, so that it can be loaded back by {@link #load(File, long)}.
+     *
+     * @param file
+     *          The file of the index.
+     * @param segmentLength
+     *          The length of the indexed segment, to detect stale indexes.
+     * @throws IOException
+     *          If the index can't be saved.
+     */
+    synchronized void save(File file, long segmentLength) throws IOException {
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(segmentLength);
+            out.writeInt(recordCount);
+            writeString(out, minTimestamp);
+            writeString(out, maxTimestamp);
+            out.writeInt(entryTimestamps.size());
+            for (int i = 0; i < entryTimestamps.size(); i++) {
+                writeString(out, entryTimestamps.get(i));
+                out.writeLong(entryOffsets[i]);
+            }
+            final int tableCapacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(offsetById.size() * 2) << 1);
+            final int[] hashes = new int[tableCapacity];
+            final long[] offsets = new long[tableCapacity];
+            for (Map.Entry<String, Long> entry : offsetById.entrySet()) {
+                final int hash = hash(entry.getKey());
+                int slot = hash & (tableCapacity - 1);
+                while (offsets[slot] != 0) {
+                    slot = (slot + 1) & (tableCapacity - 1);
+                }
+                hashes[slot] = hash;
+                offsets[slot] = entry.getValue();
+            }
+            out.writeInt(tableCapacity);
+            for (int i = 0; i < tableCapacity; i++) {
+                out.writeInt(hashes[i]);
+                out.writeLong(offsets[i]);
+            }
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), REPLACE_EXISTING);
+    }
+
+    /**
+     * Loads a saved index.
+     *
+     * @param file
+     *          The file of the index.
+     * @param segmentLength
+     *          The length of the indexed segment.
+     * @return the index, or {@code null} if the saved index does not match the length of the segment.
+     * @throws IOException
+     *          If the index can't be read.
+     */
+    static SegmentIndex load(File file, long segmentLength) throws IOException {
+        final ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Unsupported segment index format");
+            }
+            if (buffer.getLong() != segmentLength) {
+                return null;
+            }
+            final int recordCount = buffer.getInt();
+            final String minTimestamp = readString(buffer);
+            final String maxTimestamp = readString(buffer);
+            final int entryCount = buffer.getInt();
+            final List<String> timestamps = new ArrayList<>(Math.min(entryCount, buffer.remaining()));
+            final long[] offsets = new long[Math.max(entryCount, 1)];
+            for (int i = 0; i < entryCount; i++) {
+                timestamps.add(readString(buffer));
+                offsets[i] = buffer.getLong();
+            }
+            final int tableCapacity = buffer.getInt();
+            if (Integer.bitCount(tableCapacity) != 1 || buffer.remaining() != (long) tableCapacity * SLOT_SIZE) {
+                throw new IOException("Invalid segment index hash table");
+            }
+            final SegmentIndex index = new SegmentIndex(buffer.slice(), tableCapacity);
+            index.recordCount = recordCount;
+            index.minTimestamp = minTimestamp;
+            index.maxTimestamp = maxTimestamp;
+            index.entryTimestamps.addAll(timestamps);
+            index.entryOffsets = offsets;
+            return index;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated segment index", e);
+        }
+    }
+
+    /**
+     * Spreads the bits of the hash code of the identifier, so that consecutive identifiers don't cluster.
+     */
+    private static int hash(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        final int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new IOException("Truncated segment index");
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
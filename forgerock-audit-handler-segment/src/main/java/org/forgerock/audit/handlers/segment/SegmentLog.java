@@ -0,0 +1,738 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.segment;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.forgerock.audit.handlers.segment.RecordCodec.MAX_RECORD_SIZE;
+import static org.forgerock.audit.handlers.segment.RecordCodec.RECORD_HEADER_SIZE;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.forgerock.audit.events.handlers.FileBasedEventHandlerConfiguration.FileRetention;
+import org.forgerock.audit.events.handlers.FileBasedEventHandlerConfiguration.FileRotation;
+import org.forgerock.audit.metrics.LatencyHistogram;
+import org.forgerock.audit.metrics.Metrics;
+import org.forgerock.audit.retention.CachingFileNamingPolicy;
+import org.forgerock.audit.retention.DiskSpaceUsedRetentionPolicy;
+import org.forgerock.audit.retention.FreeDiskSpaceRetentionPolicy;
+import org.forgerock.audit.retention.RetentionPolicy;
+import org.forgerock.audit.retention.SizeBasedRetentionPolicy;
+import org.forgerock.audit.retention.TimeStampFileNamingPolicy;
+import org.forgerock.audit.rotation.FixedTimeRotationPolicy;
+import org.forgerock.audit.rotation.RotatableObject;
+import org.forgerock.audit.rotation.RotationHooks;
+import org.forgerock.audit.rotation.RotationPolicy;
+import org.forgerock.audit.rotation.SizeBasedRotationPolicy;
+import org.forgerock.audit.rotation.TimeLimitRotationPolicy;
+import org.forgerock.audit.util.TimestampRange;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.util.Reject;
+import org.forgerock.util.time.Duration;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The append-only log of the events of a topic, made of segment files.
+ * <p>
+ * Events are appended as records to the active segment, whose index is kept in memory. The active segment is
+ * rolled over by the configured rotation policies, and in any case before it reaches {@link #MAX_SEGMENT_SIZE}:
+ * it is then renamed by the {@link TimeStampFileNamingPolicy}, sealed, and its index is saved next to it. Sealed
+ * segments are deleted by the configured retention policies, along with their index.
+ * <p>
+ * Segments are read through memory mappings: the mappings of the sealed segments are kept between reads, the
+ * mapping of the active segment is kept as well and only replaced when a read needs records appended after it.
+ * When the active segment is opened again, its records are checked and the incomplete or corrupted records found
+ * at its end, e.g. after a crash, are truncated.
+ * <p>
+ * A segment starts with a header holding the dictionary of its {@link RecordCodec}.
+ */
+final class SegmentLog implements RotatableObject {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentLog.class);
+
+    /** Size from which segments are always rolled over, so that they can be memory mapped: 1 GB. */
+    static final long MAX_SEGMENT_SIZE = 1024 * 1024 * 1024;
+
+    private static final int MAGIC = 0x46525347;
+    private static final int VERSION = 1;
+    private static final Duration ZERO = Duration.duration("zero");
+
+    /**
+     * Receives the events read from the segments.
+     */
+    interface EventVisitor {
+        /**
+         * Visits an event.
+         *
+         * @param event
+         *          The event.
+         * @return {@code false} to stop reading the events.
+         */
+        boolean visit(JsonValue event);
+    }
+
+    /** Receives the records found by a scan of a segment. */
+    private interface RecordVisitor {
+        boolean visit(long offset, byte[] payload) throws IOException;
+    }
+
+    private final File file;
+    private final CachingFileNamingPolicy namingPolicy;
+    /** Encodes the events of the segments created from now on. */
+    private final RecordCodec newSegmentCodec;
+    private final int timeIndexInterval;
+    private final boolean syncOnWrite;
+    private final List<RotationPolicy> rotationPolicies = new LinkedList<>();
+    private final List<RetentionPolicy> retentionPolicies = new LinkedList<>();
+    private long rotationSizeThreshold = MAX_SEGMENT_SIZE;
+    private final ConcurrentMap<File, SealedSegment> sealedSegments = new ConcurrentHashMap<>();
+    private volatile LatencyHistogram rotationLatency = Metrics.noOpRegistry().latencyHistogram("rotation");
+
+    /* The active segment, guarded by this. */
+    private FileChannel channel;
+    private volatile RecordCodec codec;
+    private int headerLength;
+    private long length;
+    private SegmentIndex index;
+    private DateTime lastRotationTime;
+    /** The mapping of the active segment up to the records it had when last read, {@code null} if not mapped yet. */
+    private ByteBuffer activeMapping;
+
+    /**
+     * Creates the log of a topic; it must then be opened.
+     *
+     * @param file
+     *          The active segment.
+     * @param configuration
+     *          The configuration of the handler.
+     * @param codec
+     *          The codec of the segments to create.
+     */
+    SegmentLog(File file, SegmentAuditEventHandlerConfiguration configuration, RecordCodec codec) {
+        final FileRotation rotation = configuration.getFileRotation();
+        this.file = file;
+        this.namingPolicy = new CachingFileNamingPolicy(new TimeStampFileNamingPolicy(
+                file, rotation.getRotationFileSuffix(), rotation.getRotationFilePrefix()));
+        this.newSegmentCodec = codec;
+        this.timeIndexInterval = configuration.getTimeIndexInterval();
+        this.syncOnWrite = configuration.isSyncOnWrite();
+        if (rotation.isRotationEnabled()) {
+            addRotationPolicies(rotation);
+        }
+        addRetentionPolicies(configuration.getFileRetention());
+    }
+
+    /**
+     * Sets the histogram recording the duration of the rollovers.
+     *
+     * @param rotationLatency
+     *          The histogram, not {@code null}.
+     */
+    void setRotationLatency(LatencyHistogram rotationLatency) {
+        this.rotationLatency = Reject.checkNotNull(rotationLatency);
+    }
+
+    /**
+     * Opens the active segment, creating it if needed, or else recovering its records.
+     *
+     * @throws IOException
+     *          If the active segment can't be opened.
+     */
+    synchronized void open() throws IOException {
+        if (file.length() > 0) {
+            recover();
+            lastRotationTime = new DateTime(file.lastModified(), DateTimeZone.UTC);
+        } else {
+            createSegment();
+            lastRotationTime = DateTime.now(DateTimeZone.UTC);
+        }
+    }
+
+    private void recover() throws IOException {
+        channel = FileChannel.open(file.toPath(), READ, WRITE);
+        activeMapping = null;
+        try {
+            final long size = channel.size();
+            if (size > MAX_SEGMENT_SIZE + MAX_RECORD_SIZE + RECORD_HEADER_SIZE) {
+                throw new IOException("The segment " + file + " is too large to be memory mapped");
+            }
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            codec = readHeader(buffer, file);
+            headerLength = buffer.position();
+            index = new SegmentIndex(timeIndexInterval, headerLength);
+            final long end = scan(buffer, headerLength, size, codec, indexer(index, codec));
+            if (end < size) {
+                logger.warn("Truncating {} bytes of incomplete or corrupted records at the end of {}",
+                        size - end, file);
+                channel.truncate(end);
+            }
+            length = end;
+        } catch (IOException e) {
+            channel.close();
+            channel = null;
+            throw e;
+        }
+    }
+
+    private void createSegment() throws IOException {
+        final byte[] header = writeHeader(newSegmentCodec);
+        channel = FileChannel.open(file.toPath(), CREATE, TRUNCATE_EXISTING, READ, WRITE);
+        activeMapping = null;
+        writeFully(channel, header, 0);
+        codec = newSegmentCodec;
+        headerLength = header.length;
+        length = header.length;
+        index = new SegmentIndex(timeIndexInterval, headerLength);
+    }
+
+    /**
+     * Appends the event to the active segment.
+     *
+     * @param event
+     *          The event.
+     * @throws IOException
+     *          If the event can't be written.
+     */
+    void append(JsonValue event) throws IOException {
+        // encode outside of the lock, unless the segment is rolled over in the meantime
+        final RecordCodec encoder = codec;
+        byte[] record = encoder.encode(event);
+        if (record.length - RECORD_HEADER_SIZE > MAX_RECORD_SIZE) {
+            throw new IOException("The event is too large to be stored: " + record.length + " bytes");
+        }
+        synchronized (this) {
+            checkOpen();
+            if (codec != encoder) {
+                record = codec.encode(event);
+            }
+            writeFully(channel, record, length);
+            index.add(getString(event, ResourceResponse.FIELD_CONTENT_ID), getString(event, "timestamp"), length);
+            length += record.length;
+            if (syncOnWrite) {
+                channel.force(false);
+            }
+            if (length >= rotationSizeThreshold) {
+                rotate();
+            }
+        }
+    }
+
+    /**
+     * Rolls the active segment over if any of the rotation policies requires it.
+     *
+     * @throws IOException
+     *          If the segment can't be rolled over.
+     */
+    @Override
+    public synchronized void rotateIfNeeded() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        for (RotationPolicy rotationPolicy : rotationPolicies) {
+            if (rotationPolicy.shouldRotateFile(this)) {
+                rotate();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Rolls the active segment over, unless it is empty.
+     *
+     * @return {@code true} if the segment was rolled over.
+     * @throws IOException
+     *          If a new active segment can't be created.
+     */
+    synchronized boolean forceRotation() throws IOException {
+        checkOpen();
+        return rotate();
+    }
+
+    private boolean rotate() throws IOException {
+        if (index.getRecordCount() == 0) {
+            lastRotationTime = DateTime.now(DateTimeZone.UTC);
+            return false;
+        }
+        final File sealed = namingPolicy.getNextName();
+        if (sealed.exists()) {
+            logger.warn("Unable to roll over the segment {} as {} already exists", file, sealed);
+            return false;
+        }
+        final long start = System.nanoTime();
+        channel.force(true);
+        channel.close();
+        channel = null;
+        activeMapping = null;
+        if (!file.renameTo(sealed)) {
+            logger.error("Unable to rename the segment {}; further events will continue to be appended to it", file);
+            channel = FileChannel.open(file.toPath(), READ, WRITE);
+            return false;
+        }
+        try {
+            index.save(getIndexFile(sealed), length);
+        } catch (IOException e) {
+            logger.warn("Unable to save the index of the segment {}; it will be rebuilt when read", sealed, e);
+        }
+        namingPolicy.archived(sealed);
+        createSegment();
+        lastRotationTime = DateTime.now(DateTimeZone.UTC);
+        rotationLatency.recordSince(start);
+        return true;
+    }
+
+    /**
+     * Deletes the sealed segments as required by the retention policies.
+     */
+    void deleteSegmentsIfNeeded() {
+        namingPolicy.refreshIfStale();
+        final Set<File> filesToDelete = new HashSet<>();
+        for (RetentionPolicy retentionPolicy : retentionPolicies) {
+            try {
+                filesToDelete.addAll(retentionPolicy.deleteFiles(namingPolicy));
+            } catch (IOException e) {
+                logger.error("Failure when applying a retention policy to segment {}", file, e);
+            }
+        }
+        for (File segment : filesToDelete) {
+            logger.info("Deleting segment {}", segment.getAbsolutePath());
+            sealedSegments.remove(segment);
+            if (segment.delete() || !segment.exists()) {
+                namingPolicy.deleted(segment);
+                final File indexFile = getIndexFile(segment);
+                if (indexFile.exists() && !indexFile.delete()) {
+                    logger.warn("Could not delete segment index {}", indexFile.getAbsolutePath());
+                }
+            } else {
+                logger.warn("Could not delete segment {}", segment.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Reads the most recent event with the provided identifier.
+     *
+     * @param id
+     *          The identifier of the event.
+     * @return the event, or {@code null} if it is not found.
+     * @throws IOException
+     *          If the segments can't be read.
+     */
+    JsonValue read(String id) throws IOException {
+        ByteBuffer buffer = null;
+        RecordCodec activeCodec;
+        List<Long> offsets;
+        synchronized (this) {
+            checkOpen();
+            activeCodec = codec;
+            offsets = index.find(id);
+            if (!offsets.isEmpty()) {
+                buffer = mapActiveSegment();
+            }
+        }
+        if (buffer != null) {
+            final JsonValue event = readMatchingRecord(buffer, activeCodec, offsets, id);
+            if (event != null) {
+                return event;
+            }
+        }
+        final List<File> segments = namingPolicy.listFiles();
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            final SealedSegment segment = getSealedSegment(segments.get(i));
+            if (segment != null) {
+                final JsonValue event = readMatchingRecord(segment.buffer, segment.codec, segment.index.find(id), id);
+                if (event != null) {
+                    return event;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Passes the events that may fall in the range of timestamps to the visitor, from the oldest segment to the
+     * active one. Events before the range may be visited as well.
+     *
+     * @param range
+     *          The range of timestamps.
+     * @param visitor
+     *          The visitor of the events.
+     * @throws IOException
+     *          If the segments can't be read.
+     */
+    void query(TimestampRange range, EventVisitor visitor) throws IOException {
+        final List<File> segments = namingPolicy.listFiles();
+        sealedSegments.keySet().retainAll(segments);
+        for (File file : segments) {
+            final SealedSegment segment = getSealedSegment(file);
+            if (segment == null || !segment.index.overlaps(range)) {
+                continue;
+            }
+            final long start = segment.index.getScanStart(range.getLower(), segment.headerLength);
+            if (!visitEvents(segment.buffer, start, segment.buffer.limit(), segment.codec, visitor, file)) {
+                return;
+            }
+        }
+        final ByteBuffer buffer;
+        final long start;
+        final long end;
+        final RecordCodec activeCodec;
+        synchronized (this) {
+            checkOpen();
+            if (!index.overlaps(range)) {
+                return;
+            }
+            start = index.getScanStart(range.getLower(), headerLength);
+            end = length;
+            activeCodec = codec;
+            buffer = mapActiveSegment();
+        }
+        visitEvents(buffer, start, end, activeCodec, visitor, file);
+    }
+
+    /**
+     * Returns the number of sealed segments.
+     *
+     * @return the number of sealed segments.
+     */
+    int getSealedSegmentCount() {
+        return namingPolicy.listFiles().size();
+    }
+
+    @Override
+    public synchronized long getBytesWritten() {
+        return length;
+    }
+
+    @Override
+    public synchronized DateTime getLastRotationTime() {
+        return lastRotationTime;
+    }
+
+    /**
+     * Segments have no header or footer to write when they are rolled over, the hooks are not used.
+     * {@inheritDoc}
+     */
+    @Override
+    public void registerRotationHooks(RotationHooks rotationHooks) {
+        // nothing to do
+    }
+
+    /**
+     * Synchronizes and closes the active segment, and releases the sealed segments.
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        sealedSegments.clear();
+        activeMapping = null;
+        if (channel != null) {
+            try {
+                channel.force(true);
+            } finally {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * Returns a mapping of the active segment covering all its records, mapping it again only if records have been
+     * appended since it was last mapped. Must be called with the lock held.
+     */
+    private ByteBuffer mapActiveSegment() throws IOException {
+        if (activeMapping == null || activeMapping.limit() < length) {
+            activeMapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        return activeMapping;
+    }
+
+    private void checkOpen() throws IOException {
+        if (channel == null) {
+            throw new IOException("The segment " + file + " is closed");
+        }
+    }
+
+    private SealedSegment getSealedSegment(File segment) throws IOException {
+        SealedSegment sealed = sealedSegments.get(segment);
+        if (sealed == null) {
+            try {
+                sealed = SealedSegment.open(segment, timeIndexInterval);
+            } catch (IOException e) {
+                if (!segment.exists()) {
+                    logger.debug("Segment {} removed before it could be read", segment);
+                    return null;
+                }
+                throw e;
+            }
+            final SealedSegment existing = sealedSegments.putIfAbsent(segment, sealed);
+            if (existing != null) {
+                sealed = existing;
+            }
+        }
+        return sealed;
+    }
+
+    private static JsonValue readMatchingRecord(ByteBuffer buffer, RecordCodec codec, List<Long> offsets, String id)
+            throws IOException {
+        for (long offset : offsets) {
+            final byte[] payload = readRecord(buffer, offset, buffer.limit());
+            if (payload == null) {
+                throw new IOException("Corrupted record at offset " + offset);
+            }
+            final JsonValue event = codec.decode(payload);
+            if (id.equalsIgnoreCase(getString(event, ResourceResponse.FIELD_CONTENT_ID))) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    private static boolean visitEvents(ByteBuffer buffer, long start, long end, final RecordCodec codec,
+            final EventVisitor visitor, File segment) throws IOException {
+        final boolean[] stopped = new boolean[1];
+        final long scanned = scan(buffer, start, end, codec, new RecordVisitor() {
+            @Override
+            public boolean visit(long offset, byte[] payload) throws IOException {
+                stopped[0] = !visitor.visit(codec.decode(payload));
+                return !stopped[0];
+            }
+        });
+        if (!stopped[0] && scanned < end) {
+            logger.warn("Skipping the end of the segment {} from the corrupted record at offset {}", segment, scanned);
+        }
+        return !stopped[0];
+    }
+
+    private static RecordVisitor indexer(final SegmentIndex index, final RecordCodec codec) {
+        return new RecordVisitor() {
+            @Override
+            public boolean visit(long offset, byte[] payload) throws IOException {
+                final JsonValue event = codec.decode(payload);
+                index.add(getString(event, ResourceResponse.FIELD_CONTENT_ID), getString(event, "timestamp"), offset);
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Scans the valid records from the start offset, up to the end offset or the first incomplete or corrupted
+     * record.
+     *
+     * @return the offset following the last visited record.
+     */
+    private static long scan(ByteBuffer buffer, long start, long end, RecordCodec codec, RecordVisitor visitor)
+            throws IOException {
+        long offset = start;
+        while (offset < end) {
+            final byte[] payload = readRecord(buffer, offset, end);
+            if (payload == null) {
+                break;
+            }
+            final long next = offset + RECORD_HEADER_SIZE + payload.length;
+            if (!visitor.visit(offset, payload)) {
+                return next;
+            }
+            offset = next;
+        }
+        return offset;
+    }
+
+    /**
+     * Reads the payload of the record at the offset, checking its length and CRC.
+     *
+     * @return the payload, or {@code null} if the record is incomplete or corrupted.
+     */
+    private static byte[] readRecord(ByteBuffer buffer, long offset, long end) {
+        if (end - offset < RECORD_HEADER_SIZE) {
+            return null;
+        }
+        final int position = (int) offset;
+        final int payloadLength = buffer.getInt(position);
+        if (payloadLength < 0 || payloadLength > MAX_RECORD_SIZE
+                || end - offset - RECORD_HEADER_SIZE < payloadLength) {
+            return null;
+        }
+        final byte[] payload = new byte[payloadLength];
+        final ByteBuffer view = buffer.duplicate();
+        view.position(position + RECORD_HEADER_SIZE);
+        view.get(payload);
+        return RecordCodec.crc(payload, 0, payloadLength) == buffer.getInt(position + 4) ? payload : null;
+    }
+
+    private static String getString(JsonValue event, String field) {
+        final Object value = event.get(field).getObject();
+        return value instanceof String ? (String) value : null;
+    }
+
+    private static byte[] writeHeader(RecordCodec codec) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(codec.getNames().size());
+            for (String name : codec.getNames()) {
+                final byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(utf8.length);
+                out.write(utf8);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the header of a segment, leaving the buffer positioned on its first record.
+     */
+    private static RecordCodec readHeader(ByteBuffer buffer, File segment) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("The file " + segment + " is not a segment of audit events");
+            }
+            final int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining()) {
+                throw new IOException("Corrupted header of the segment " + segment);
+            }
+            final List<String> names = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                final byte[] utf8 = new byte[buffer.getInt()];
+                buffer.get(utf8);
+                names.add(new String(utf8, StandardCharsets.UTF_8));
+            }
+            return new RecordCodec(names);
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IOException("Corrupted header of the segment " + segment, e);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, byte[] bytes, long position) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static File getIndexFile(File segment) {
+        return new File(segment.getPath() + SegmentIndex.INDEX_FILE_SUFFIX);
+    }
+
+    private void addRotationPolicies(final FileRotation fileRotation) {
+        final long maxFileSize = fileRotation.getMaxFileSize();
+        if (maxFileSize > 0) {
+            rotationPolicies.add(new SizeBasedRotationPolicy(maxFileSize));
+            rotationSizeThreshold = Math.min(maxFileSize, MAX_SEGMENT_SIZE);
+        }
+        final List<Duration> dailyRotationTimes = new LinkedList<>();
+        for (final String rotationTime : fileRotation.getRotationTimes()) {
+            final Duration duration = parseDuration("rotation time", rotationTime, null);
+            if (duration != null && !duration.isUnlimited()) {
+                dailyRotationTimes.add(duration);
+            }
+        }
+        if (!dailyRotationTimes.isEmpty()) {
+            rotationPolicies.add(new FixedTimeRotationPolicy(dailyRotationTimes));
+        }
+        final Duration rotationInterval = parseDuration("rotation interval", fileRotation.getRotationInterval(), ZERO);
+        if (!(rotationInterval.isZero() || rotationInterval.isUnlimited())) {
+            rotationPolicies.add(new TimeLimitRotationPolicy(rotationInterval));
+        }
+    }
+
+    private void addRetentionPolicies(final FileRetention fileRetention) {
+        if (fileRetention.getMaxNumberOfHistoryFiles() > 0) {
+            retentionPolicies.add(new SizeBasedRetentionPolicy(fileRetention.getMaxNumberOfHistoryFiles()));
+        }
+        if (fileRetention.getMaxDiskSpaceToUse() > 0) {
+            retentionPolicies.add(new DiskSpaceUsedRetentionPolicy(fileRetention.getMaxDiskSpaceToUse()));
+        }
+        if (fileRetention.getMinFreeSpaceRequired() > 0) {
+            retentionPolicies.add(new FreeDiskSpaceRetentionPolicy(fileRetention.getMinFreeSpaceRequired()));
+        }
+    }
+
+    private static Duration parseDuration(String description, String duration, Duration defaultValue) {
+        try {
+            return Duration.duration(duration);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid {} value: '{}'", description, duration);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * A rolled over segment, memory mapped along with its index.
+     */
+    private static final class SealedSegment {
+        private final ByteBuffer buffer;
+        private final RecordCodec codec;
+        private final int headerLength;
+        private final SegmentIndex index;
+
+        private SealedSegment(ByteBuffer buffer, RecordCodec codec, int headerLength, SegmentIndex index) {
+            this.buffer = buffer;
+            this.codec = codec;
+            this.headerLength = headerLength;
+            this.index = index;
+        }
+
+        static SealedSegment open(File segment, int timeIndexInterval) throws IOException {
+            final ByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(segment.toPath(), READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            final RecordCodec codec = readHeader(buffer, segment);
+            final int headerLength = buffer.position();
+            final File indexFile = getIndexFile(segment);
+            SegmentIndex index = null;
+            if (indexFile.exists()) {
+                try {
+                    index = SegmentIndex.load(indexFile, buffer.limit());
+                } catch (IOException e) {
+                    logger.info("Ignoring unreadable segment index {}: {}", indexFile, e.getMessage());
+                }
+            }
+            if (index == null) {
+                logger.debug("Rebuilding the index of the segment {}", segment);
+                index = new SegmentIndex(timeIndexInterval, headerLength);
+                scan(buffer, headerLength, buffer.limit(), codec, indexer(index, codec));
+                try {
+                    index.save(indexFile, buffer.limit());
+                } catch (IOException e) {
+                    logger.warn("Unable to save the index of the segment {}", segment, e);
+                }
+            }
+            return new SealedSegment(buffer, codec, headerLength, index);
+        }
+    }
+}
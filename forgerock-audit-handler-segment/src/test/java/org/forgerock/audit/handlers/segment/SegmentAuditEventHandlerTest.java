@@ -0,0 +1,133 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.segment;
+
+import static java.util.Collections.singleton;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.audit.events.EventTopicsMetaDataBuilder.coreTopicSchemas;
+import static org.forgerock.audit.handlers.segment.SegmentAuditEventHandler.ROTATE_FILE_ACTION_NAME;
+import static org.forgerock.json.JsonValue.array;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.util.test.assertj.AssertJPromiseAssert.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.BadRequestException;
+import org.forgerock.json.resource.NotFoundException;
+import org.forgerock.json.resource.QueryFilters;
+import org.forgerock.json.resource.QueryRequest;
+import org.forgerock.json.resource.QueryResourceHandler;
+import org.forgerock.json.resource.Requests;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.services.context.Context;
+import org.forgerock.services.context.RootContext;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class SegmentAuditEventHandlerTest {
+
+    private final Context context = new RootContext();
+
+    @Test
+    public void shouldReadThePublishedEvents() throws Exception {
+        SegmentAuditEventHandler handler = newHandler(Files.createTempDirectory("SegmentAuditEventHandlerTest"));
+        handler.startup();
+        try {
+            handler.publishEvent(context, "access", event("id1", "tx1"));
+            handler.publishEvent(context, "access", event("id2", "tx2"));
+
+            ResourceResponse response = handler.readEvent(context, "access", "id2").get();
+            assertThat(response.getId()).isEqualTo("id2");
+            assertThat(response.getContent().getObject()).isEqualTo(event("id2", "tx2").getObject());
+            assertThat(handler.readEvent(context, "access", "unknown")).failedWithException()
+                    .isInstanceOf(NotFoundException.class);
+        } finally {
+            handler.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldQueryTheRolledOverSegments() throws Exception {
+        SegmentAuditEventHandler handler = newHandler(Files.createTempDirectory("SegmentAuditEventHandlerTest"));
+        handler.startup();
+        try {
+            handler.publishEvent(context, "access", event("id1", "tx1"));
+            assertThat(handler.handleAction(context, "access",
+                    Requests.newActionRequest("access", ROTATE_FILE_ACTION_NAME))).succeeded();
+            handler.publishEvent(context, "access", event("id2", "tx1"));
+            handler.publishEvent(context, "access", event("id3", "tx2"));
+
+            assertThat(query(handler, "/transactionId eq \"tx1\"", 0)).containsExactly("id1", "id2");
+            assertThat(query(handler, "true", 2)).containsExactly("id1", "id2");
+            assertThat(handler.readEvent(context, "access", "id1").get().getId()).isEqualTo("id1");
+        } finally {
+            handler.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldRejectUnknownActions() throws Exception {
+        SegmentAuditEventHandler handler = newHandler(Files.createTempDirectory("SegmentAuditEventHandlerTest"));
+        handler.startup();
+        try {
+            assertThat(handler.handleAction(context, "access", Requests.newActionRequest("access", "unknown")))
+                    .failedWithException().isInstanceOf(BadRequestException.class);
+        } finally {
+            handler.shutdown();
+        }
+    }
+
+    private static SegmentAuditEventHandler newHandler(Path logDirectory) {
+        logDirectory.toFile().deleteOnExit();
+        SegmentAuditEventHandlerConfiguration configuration = new SegmentAuditEventHandlerConfiguration();
+        configuration.setName("segment");
+        configuration.setTopics(singleton("access"));
+        configuration.setLogDirectory(logDirectory.toString());
+        return new SegmentAuditEventHandler(configuration, coreTopicSchemas().build(), null);
+    }
+
+    private static JsonValue event(String id, String transactionId) {
+        return json(object(
+                field("_id", id),
+                field("transactionId", transactionId),
+                field("timestamp", "2015-01-01T00:00:01.000Z"),
+                field("eventName", "AM-ACCESS-ATTEMPT"),
+                field("elapsedTime", 42L),
+                field("http", object(
+                        field("method", "GET"),
+                        field("headers", object(field("accept", array("application/json"))))))));
+    }
+
+    private List<String> query(SegmentAuditEventHandler handler, String filter, int pageSize) throws Exception {
+        final List<String> ids = new ArrayList<>();
+        QueryRequest request = Requests.newQueryRequest("access").setQueryFilter(QueryFilters.parse(filter))
+                .setPageSize(pageSize);
+        handler.queryEvents(context, "access", request, new QueryResourceHandler() {
+            @Override
+            public boolean handleResource(ResourceResponse resource) {
+                ids.add(resource.getId());
+                return true;
+            }
+        }).getOrThrow();
+        return ids;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+package org.forgerock.audit.handlers.segment;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.json.JsonValue.array;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.forgerock.audit.util.TimestampRange;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.QueryFilters;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class SegmentLogTest {
+
+    private File directory;
+    private File file;
+    private SegmentAuditEventHandlerConfiguration configuration;
+    private final RecordCodec codec = new RecordCodec(asList("_id", "timestamp", "transactionId", "http", "headers"));
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("SegmentLogTest").toFile();
+        directory.deleteOnExit();
+        file = new File(directory, "access" + SegmentAuditEventHandler.FILE_NAME_SUFFIX);
+        configuration = new SegmentAuditEventHandlerConfiguration();
+        configuration.setLogDirectory(directory.getPath());
+        configuration.setTimeIndexInterval(1);
+        configuration.getFileRotation().setRotationFileSuffix("-yyyy.MM.dd-HH.mm.ss.SSS");
+    }
+
+    @Test
+    public void shouldReadBackTheAppendedEvents() throws Exception {
+        SegmentLog log = open();
+        try {
+            log.append(event("id1", "2015-01-01T00:00:01.000Z"));
+            log.append(event("id2", "2015-01-01T00:00:02.000Z"));
+
+            assertThat(log.read("ID2").getObject()).isEqualTo(event("id2", "2015-01-01T00:00:02.000Z").getObject());
+            assertThat(log.read("unknown")).isNull();
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    public void shouldReadTheEventsAppendedAfterThePreviousRead() throws Exception {
+        SegmentLog log = open();
+        try {
+            log.append(event("id1", "2015-01-01T00:00:01.000Z"));
+            assertThat(query(log, "true")).containsExactly("id1");
+            log.append(event("id2", "2015-01-01T00:00:02.000Z"));
+
+            assertThat(log.read("id1").get("_id").asString()).isEqualTo("id1");
+            assertThat(log.read("id2").get("_id").asString()).isEqualTo("id2");
+            assertThat(query(log, "true")).containsExactly("id1", "id2");
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    public void shouldReadTheSealedSegmentsThroughTheirSavedIndex() throws Exception {
+        SegmentLog log = open();
+        try {
+            log.append(event("id1", "2015-01-01T00:00:01.000Z"));
+            assertThat(log.forceRotation()).isTrue();
+            log.append(event("id2", "2015-01-01T00:00:02.000Z"));
+
+            assertThat(log.getSealedSegmentCount()).isEqualTo(1);
+            assertThat(directory.list()).hasSize(3);
+            assertThat(log.read("id1").get("_id").asString()).isEqualTo("id1");
+            assertThat(query(log, "true")).containsExactly("id1", "id2");
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    public void shouldSkipTheEventsBeforeTheRangeOfTheQuery() throws Exception {
+        SegmentLog log = open();
+        try {
+            log.append(event("id1", "2015-01-01T00:00:01.000Z"));
+            log.append(event("id2", "2015-01-01T00:00:02.000Z"));
+            log.forceRotation();
+            log.append(event("id3", "2016-01-01T00:00:01.000Z"));
+            log.append(event("id4", "2016-01-01T00:00:02.000Z"));
+            log.append(event("id5", "2016-01-01T00:00:03.000Z"));
+
+            assertThat(query(log, "/timestamp ge \"2016-01-01T00:00:03.000Z\"")).containsExactly("id5");
+            assertThat(query(log, "/timestamp lt \"2015-06-01\"")).containsExactly("id1", "id2");
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    public void shouldTruncateTheIncompleteRecordsWhenReopened() throws Exception {
+        SegmentLog log = open();
+        log.append(event("id1", "2015-01-01T00:00:01.000Z"));
+        log.append(event("id2", "2015-01-01T00:00:02.000Z"));
+        long length = log.getBytesWritten();
+        log.close();
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[] { 0, 0, 1, 0, 42 });
+        }
+
+        log = open();
+        try {
+            assertThat(file.length()).isEqualTo(length);
+            log.append(event("id3", "2015-01-01T00:00:03.000Z"));
+            assertThat(query(log, "true")).containsExactly("id1", "id2", "id3");
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    public void shouldRebuildTheMissingIndexOfASealedSegment() throws Exception {
+        SegmentLog log = open();
+        log.append(event("id1", "2015-01-01T00:00:01.000Z"));
+        log.forceRotation();
+        log.close();
+        for (File indexFile : directory.listFiles()) {
+            if (indexFile.getName().endsWith(SegmentIndex.INDEX_FILE_SUFFIX)) {
+                assertThat(indexFile.delete()).isTrue();
+            }
+        }
+
+        log = open();
+        try {
+            assertThat(log.read("id1").get("timestamp").asString()).isEqualTo("2015-01-01T00:00:01.000Z");
+        } finally {
+            log.close();
+        }
+    }
+
+    private SegmentLog open() throws Exception {
+        SegmentLog log = new SegmentLog(file, configuration, codec);
+        log.open();
+        return log;
+    }
+
+    private static List<String> query(SegmentLog log, String filter) throws Exception {
+        final List<String> ids = new ArrayList<>();
+        log.query(TimestampRange.of(QueryFilters.parse(filter)), new SegmentLog.EventVisitor() {
+            @Override
+            public boolean visit(JsonValue event) {
+                ids.add(event.get("_id").asString());
+                return true;
+            }
+        });
+        return ids;
+    }
+
+    private static JsonValue event(String id, String timestamp) {
+        return json(object(
+                field("_id", id),
+                field("timestamp", timestamp),
+                field("transactionId", "tx-" + id),
+                field("http", object(field("headers", object(field("accept", array("application/json"))))))));
+    }
+}
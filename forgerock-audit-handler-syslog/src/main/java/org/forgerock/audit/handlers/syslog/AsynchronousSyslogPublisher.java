@@ -73,6 +73,15 @@ class AsynchronousSyslogPublisher implements SyslogPublisher {
         executorService.execute(new WriterTask());
     }
 
+    /**
+     * Returns the number of messages waiting to be sent.
+     *
+     * @return the size of the queue.
+     */
+    int getQueueSize() {
+        return queue.size();
+    }
+
     @Override
     public void publishMessage(String syslogMessage) throws IOException {
         boolean interrupted = false;
@@ -20,12 +20,19 @@ import static org.forgerock.audit.util.ResourceExceptionsUtil.adapt;
 import static org.forgerock.audit.util.ResourceExceptionsUtil.notSupported;
 import static org.forgerock.json.resource.Responses.newResourceResponse;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import javax.inject.Inject;
 
 import org.forgerock.audit.Audit;
+import org.forgerock.audit.events.CompactAuditEvent;
 import org.forgerock.audit.events.EventTopicsMetaData;
 import org.forgerock.audit.events.handlers.AuditEventHandlerBase;
+import org.forgerock.audit.events.handlers.CompactAuditEventHandler;
+import org.forgerock.audit.metrics.Gauge;
+import org.forgerock.audit.metrics.LatencyHistogram;
+import org.forgerock.audit.metrics.MetricRegistry;
+import org.forgerock.audit.metrics.Metrics;
 import org.forgerock.audit.providers.DefaultLocalHostNameProvider;
 import org.forgerock.audit.providers.LocalHostNameProvider;
 import org.forgerock.audit.providers.ProductInfoProvider;
@@ -48,12 +55,16 @@ import org.slf4j.LoggerFactory;
  * The handler publishes audit events formatted using {@link SyslogFormatter} to a syslog daemon using
  * the configured {@link SyslogPublisher}. The publisher is flushed after each write.
  */
-public class SyslogAuditEventHandler extends AuditEventHandlerBase {
+public class SyslogAuditEventHandler extends AuditEventHandlerBase implements CompactAuditEventHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(SyslogAuditEventHandler.class);
 
     private final SyslogPublisher publisher;
     private final SyslogFormatter formatter;
+    /** Records how long handing the messages to the publisher takes, including the wait for the lock. */
+    private final LatencyHistogram publishLatency;
+    /** Records the metrics of the handler, the names being prefixed with {@code handler.<name>}. */
+    private final MetricRegistry metrics;
 
     /**
      * Create a new SyslogAuditEventHandler instance.
@@ -67,12 +78,35 @@ public class SyslogAuditEventHandler extends AuditEventHandlerBase {
      * @param localHostNameProvider
      *          Provides local host name.
      */
+    public SyslogAuditEventHandler(
+            final SyslogAuditEventHandlerConfiguration configuration,
+            final EventTopicsMetaData eventTopicsMetaData,
+            final ProductInfoProvider productInfoProvider,
+            final LocalHostNameProvider localHostNameProvider) {
+        this(configuration, eventTopicsMetaData, productInfoProvider, localHostNameProvider, null);
+    }
+
+    /**
+     * Create a new SyslogAuditEventHandler instance recording its metrics.
+     *
+     * @param configuration
+     *          Configuration parameters that can be adjusted by system administrators.
+     * @param eventTopicsMetaData
+     *          Meta-data for all audit event topics.
+     * @param productInfoProvider
+     *          Provides info such as product name.
+     * @param localHostNameProvider
+     *          Provides local host name.
+     * @param metricRegistry
+     *          The registry of the metrics, may be {@code null} to not record metrics.
+     */
     @Inject
     public SyslogAuditEventHandler(
             final SyslogAuditEventHandlerConfiguration configuration,
             final EventTopicsMetaData eventTopicsMetaData,
             @Audit final ProductInfoProvider productInfoProvider,
-            @Audit final LocalHostNameProvider localHostNameProvider) {
+            @Audit final LocalHostNameProvider localHostNameProvider,
+            @Audit final MetricRegistry metricRegistry) {
 
         super(configuration.getName(), eventTopicsMetaData, configuration.getTopics(), configuration.isEnabled());
         Reject.ifNull(configuration.getProtocol(),
@@ -93,6 +127,9 @@ public class SyslogAuditEventHandler extends AuditEventHandlerBase {
                 configuration,
                 getLocalHostNameProvider(localHostNameProvider),
                 getProductNameProvider(productInfoProvider));
+        this.metrics = Metrics.prefixed(Metrics.orNoOp(metricRegistry),
+                Metrics.name("handler", configuration.getName()));
+        this.publishLatency = metrics.latencyHistogram("send");
 
         logger.debug("Successfully configured Syslog audit event handler.");
     }
@@ -118,7 +155,15 @@ public class SyslogAuditEventHandler extends AuditEventHandlerBase {
     /** {@inheritDoc} */
     @Override
     public void startup() {
-        // nothing to do
+        if (publisher instanceof AsynchronousSyslogPublisher) {
+            final AsynchronousSyslogPublisher asynchronousPublisher = (AsynchronousSyslogPublisher) publisher;
+            metrics.registerGauge("queue", new Gauge() {
+                @Override
+                public long getValue() {
+                    return asynchronousPublisher.getQueueSize();
+                }
+            });
+        }
     }
 
     /**
@@ -135,30 +180,55 @@ public class SyslogAuditEventHandler extends AuditEventHandlerBase {
     public Promise<ResourceResponse, ResourceException> publishEvent(Context context, String topic, JsonValue event) {
 
         try {
-            final String syslogMessage = formatAsSyslogMessage(topic, event);
-            synchronized (publisher) {
-                publisher.publishMessage(syslogMessage);
+            checkTopic(topic);
+            final String syslogMessage;
+            try {
+                syslogMessage = formatter.format(topic, event);
+            } catch (Exception ex) {
+                throw new BadRequestException(ex);
             }
+            return publishMessage(syslogMessage, event);
+        } catch (Exception ex) {
+            return adapt(ex).asPromise();
+        }
+    }
 
-            return newResourceResponse(
-                    event.get(ResourceResponse.FIELD_CONTENT_ID).asString(),
-                    null,
-                    event.clone()).asPromise();
+    @Override
+    public Promise<ResourceResponse, ResourceException> publishCompactEvent(Context context, String topic,
+            CompactAuditEvent event) {
 
+        try {
+            checkTopic(topic);
+            final String syslogMessage;
+            try {
+                syslogMessage = formatter.format(topic, event);
+            } catch (Exception ex) {
+                throw new BadRequestException(ex);
+            }
+            return publishMessage(syslogMessage, event.getValue());
         } catch (Exception ex) {
             return adapt(ex).asPromise();
         }
     }
 
-    private String formatAsSyslogMessage(String topic, JsonValue auditEvent) throws ResourceException {
+    private Promise<ResourceResponse, ResourceException> publishMessage(String syslogMessage, JsonValue event)
+            throws IOException {
+        final long start = System.nanoTime();
+        synchronized (publisher) {
+            publisher.publishMessage(syslogMessage);
+        }
+        publishLatency.recordSince(start);
+
+        return newResourceResponse(
+                event.get(ResourceResponse.FIELD_CONTENT_ID).asString(),
+                null,
+                event.clone()).asPromise();
+    }
+
+    private void checkTopic(String topic) throws ResourceException {
         if (!formatter.canFormat(topic)) {
             throw new InternalServerErrorException("Unable to format " + topic + " audit event");
         }
-        try {
-            return formatter.format(topic, auditEvent);
-        } catch (Exception ex) {
-            throw new BadRequestException(ex);
-        }
     }
 
     @Override
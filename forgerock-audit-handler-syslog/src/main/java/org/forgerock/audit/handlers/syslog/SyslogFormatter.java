@@ -19,24 +19,23 @@ package org.forgerock.audit.handlers.syslog;
 import static java.util.Arrays.asList;
 import static java.util.Collections.unmodifiableSet;
 import static org.forgerock.audit.events.AuditEventBuilder.*;
-import static org.forgerock.audit.events.AuditEventHelper.getAuditEventSchema;
-import static org.forgerock.audit.events.AuditEventHelper.jsonPointerToDotNotation;
-import static org.forgerock.audit.util.JsonSchemaUtils.generateJsonPointers;
 import static org.forgerock.audit.util.JsonValueUtils.extractValueAsString;
 
 import org.forgerock.audit.AuditService;
+import org.forgerock.audit.events.CompactAuditEvent;
 import org.forgerock.audit.events.EventTopicsMetaData;
+import org.forgerock.audit.events.TopicSchema;
 import org.forgerock.audit.providers.LocalHostNameProvider;
 import org.forgerock.audit.providers.ProductInfoProvider;
 import org.forgerock.audit.events.AuditEvent;
 import org.forgerock.audit.handlers.syslog.SyslogAuditEventHandlerConfiguration.SeverityFieldMapping;
 import org.forgerock.json.JsonPointer;
 import org.forgerock.json.JsonValue;
-import org.forgerock.json.resource.ResourceException;
 import org.forgerock.util.Reject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -59,7 +58,8 @@ class SyslogFormatter {
     private static final String NIL_VALUE = "-";
 
     private final Map<String, StructuredDataFormatter> structuredDataFormatters;
-    private final Map<String, SeverityFieldMapping> severityFieldMappings;
+    /** The fields holding the severity of the events, by topic. */
+    private final Map<String, TopicSchema.Field> severityFields;
     private final String hostname;
     private final String appName;
     private final String procId;
@@ -82,8 +82,7 @@ class SyslogFormatter {
         this.procId = String.valueOf(SyslogFormatter.class.hashCode());
         this.appName = getProductName(productInfoProvider);
         this.facility = config.getFacility();
-        this.severityFieldMappings =
-                createSeverityFieldMappings(config.getSeverityFieldMappings(), eventTopicsMetaData);
+        this.severityFields = createSeverityFields(config.getSeverityFieldMappings(), eventTopicsMetaData);
         this.structuredDataFormatters = Collections.unmodifiableMap(
                 createStructuredDataFormatters(appName, eventTopicsMetaData));
     }
@@ -103,10 +102,42 @@ class SyslogFormatter {
         Reject.ifFalse(canFormat(topic), "Unknown event topic");
 
         final Severity severity = getSeverityLevel(topic, auditEvent);
-        final String priority = String.valueOf(calculatePriorityValue(facility, severity));
         final String timestamp = auditEvent.get(TIMESTAMP).asString();
         final String msgId = auditEvent.get(EVENT_NAME).asString();
         final String structuredData = structuredDataFormatters.get(topic).format(auditEvent);
+        return formatMessage(severity, timestamp, msgId, structuredData);
+    }
+
+    /**
+     * Translate the compact form of the provided <code>auditEvent</code> to an RFC-5424 compliant Syslog message.
+     * <p>
+     * The fields are read from the slots of the event, unless its schema is not the one of the topic known by this
+     * formatter, in which case its JSON form is formatted.
+     *
+     * @param topic The topic of the provided <code>auditEvent</code>.
+     * @param auditEvent The audit event to be formatted.
+     *
+     * @return an RFC-5424 compliant Syslog message.
+     *
+     * @throws IllegalArgumentException If this formatter has no meta-data for the specified <code>topic</code>.
+     */
+    public String format(String topic, CompactAuditEvent auditEvent) {
+
+        Reject.ifFalse(canFormat(topic), "Unknown event topic");
+
+        final StructuredDataFormatter structuredDataFormatter = structuredDataFormatters.get(topic);
+        if (!structuredDataFormatter.canRead(auditEvent)) {
+            return format(topic, auditEvent.getValue());
+        }
+        final Severity severity = getSeverityLevel(topic, auditEvent);
+        final String timestamp = getString(auditEvent, structuredDataFormatter.timestampField);
+        final String msgId = getString(auditEvent, structuredDataFormatter.eventNameField);
+        final String structuredData = structuredDataFormatter.format(auditEvent);
+        return formatMessage(severity, timestamp, msgId, structuredData);
+    }
+
+    private String formatMessage(Severity severity, String timestamp, String msgId, String structuredData) {
+        final String priority = String.valueOf(calculatePriorityValue(facility, severity));
         final String msg = "";
 
         return "<" + priority + ">"         // https://tools.ietf.org/html/rfc5424#section-6.2.1    PRI
@@ -132,10 +163,10 @@ class SyslogFormatter {
         return structuredDataFormatters.containsKey(topic);
     }
 
-    private Map<String, SeverityFieldMapping> createSeverityFieldMappings(
+    private Map<String, TopicSchema.Field> createSeverityFields(
             List<SeverityFieldMapping> mappings, EventTopicsMetaData eventTopicsMetaData) {
 
-        Map<String, SeverityFieldMapping> results = new HashMap<>(mappings.size());
+        Map<String, TopicSchema.Field> results = new HashMap<>(mappings.size());
         for (SeverityFieldMapping mapping : mappings) {
 
             if (results.containsKey(mapping.getTopic())) {
@@ -148,26 +179,19 @@ class SyslogFormatter {
                 continue;
             }
 
-            JsonValue auditEventMetaData = eventTopicsMetaData.getSchema(mapping.getTopic());
-            JsonValue auditEventSchema;
-            try {
-                auditEventSchema = getAuditEventSchema(auditEventMetaData);
-            } catch (ResourceException e) {
-                logger.warn(e.getMessage());
-                continue;
-            }
-            Set<String> topicFieldPointers = generateJsonPointers(auditEventSchema);
+            TopicSchema schema = eventTopicsMetaData.getTopicSchema(mapping.getTopic());
             String mappedField = mapping.getField();
             if (mappedField != null && !mappedField.startsWith("/")) {
                 mappedField = "/" + mappedField;
             }
-            if (! topicFieldPointers.contains(mappedField)) {
+            TopicSchema.Field field = mappedField == null ? null : schema.getField(mappedField);
+            if (field == null) {
                 logger.warn("Syslog severity field mapping for topic {} references unknown field {}",
                         mapping.getTopic(), mapping.getField());
                 continue;
             }
 
-            results.put(mapping.getTopic(), mapping);
+            results.put(mapping.getTopic(), field);
         }
         return results;
     }
@@ -178,35 +202,59 @@ class SyslogFormatter {
 
         final Map<String, StructuredDataFormatter> results = new HashMap<>();
         for (String topic : eventTopicsMetaData.getTopics()) {
-            JsonValue schema = eventTopicsMetaData.getSchema(topic);
+            TopicSchema schema = eventTopicsMetaData.getTopicSchema(topic);
             results.put(topic, new StructuredDataFormatter(productName, topic, schema));
         }
         return results;
     }
 
     private Severity getSeverityLevel(String topic, JsonValue auditEvent) {
-        if (severityFieldMappings.containsKey(topic)) {
-            SeverityFieldMapping severityFieldMapping = severityFieldMappings.get(topic);
-            String severityField = severityFieldMapping.getField();
-            if (severityField != null && !severityField.startsWith("/")) {
-                severityField = "/" + severityField;
-            }
-            JsonValue jsonValue = auditEvent.get(new JsonPointer(severityField));
-            String severityValue = jsonValue == null ? null : jsonValue.asString();
-            if (severityValue == null) {
-                logger.debug("{} value not set; defaulting to INFORMATIONAL Syslog SEVERITY level", severityField);
-            } else {
-                try {
-                    return Severity.valueOf(severityValue);
-                } catch (IllegalArgumentException ex) {
-                    logger.debug("{} is not a valid Syslog SEVERITY level; defaulting to INFORMATIONAL", severityValue);
-                }
+        TopicSchema.Field severityField = severityFields.get(topic);
+        if (severityField != null) {
+            JsonValue jsonValue = severityField.getValue(auditEvent);
+            return toSeverityLevel(severityField, jsonValue == null ? null : jsonValue.asString());
+        }
+        // if no mapping was defined, default to INFORMATIONAL
+        return Severity.INFORMATIONAL;
+    }
+
+    private Severity getSeverityLevel(String topic, CompactAuditEvent auditEvent) {
+        TopicSchema.Field severityField = severityFields.get(topic);
+        if (severityField != null) {
+            return toSeverityLevel(severityField, getString(auditEvent, severityField));
+        }
+        // if no mapping was defined, default to INFORMATIONAL
+        return Severity.INFORMATIONAL;
+    }
+
+    private Severity toSeverityLevel(TopicSchema.Field severityField, String severityValue) {
+        if (severityValue == null) {
+            logger.debug("{} value not set; defaulting to INFORMATIONAL Syslog SEVERITY level", severityField);
+        } else {
+            try {
+                return Severity.valueOf(severityValue);
+            } catch (IllegalArgumentException ex) {
+                logger.debug("{} is not a valid Syslog SEVERITY level; defaulting to INFORMATIONAL", severityValue);
             }
         }
-        // if no mapping was defined or the value wasn't a valid severity, default to INFORMATIONAL
+        // if the value wasn't a valid severity, default to INFORMATIONAL
         return Severity.INFORMATIONAL;
     }
 
+    /**
+     * Reads a string field from the slots of an event, with the same outcome as {@link JsonValue#asString()}.
+     */
+    private static String getString(CompactAuditEvent auditEvent, TopicSchema.Field field) {
+        Object value = field == null ? null : auditEvent.get(field);
+        if (value instanceof JsonValue) {
+            value = ((JsonValue) value).getObject();
+        }
+        if (value != null && !(value instanceof String)) {
+            throw new IllegalArgumentException("Expecting a string value for field " + field);
+        }
+        return (String) value;
+    }
+
     /**
      * Calculates the Syslog message PRI value.
      *
@@ -246,6 +294,7 @@ class SyslogFormatter {
     private static class StructuredDataFormatter {
 
         private static final String FORGEROCK_IANA_ENTERPRISE_ID = "36733";
+        private static final JsonPointer ROOT = new JsonPointer();
         /**
          * The set of audit event fields that should not be copied to structured-data.
          */
@@ -253,7 +302,11 @@ class SyslogFormatter {
                 new HashSet<>(asList("_id", TIMESTAMP, EVENT_NAME)));
 
         private final String id;
-        private final Set<String> fieldNames;
+        private final TopicSchema schema;
+        /** The fields copied to structured-data, with their names formatted as SD-PARAM names. */
+        private final TopicSchema.Field[] fields;
+        private final TopicSchema.Field timestampField;
+        private final TopicSchema.Field eventNameField;
 
         /**
          * Construct a new StructuredDataFormatter.
@@ -264,22 +317,25 @@ class SyslogFormatter {
          * @param topic Coarse-grained categorisation of the types of audit events that this formatter handles;
          *              the SD-ID of each STRUCTURED-DATA element is derived from the <code>productName</code>
          *              and <code>topic</code>.
-         * @param auditEventMetaData Schema and additional meta-data for the audit event topic.
+         * @param schema Compiled schema of the audit event topic.
          */
-        public StructuredDataFormatter(String productName, String topic, JsonValue auditEventMetaData) {
+        public StructuredDataFormatter(String productName, String topic, TopicSchema schema) {
 
             Reject.ifNull(productName, "Product name required.");
             Reject.ifNull(topic, "Audit event topic name required.");
-
-            JsonValue auditEventSchema;
-            try {
-                auditEventSchema = getAuditEventSchema(auditEventMetaData);
-            } catch (ResourceException e) {
-                throw new IllegalArgumentException(e.getMessage(), e);
-            }
+            Reject.ifNull(schema, "Audit event topic schema required.");
 
             id = topic + "." + productName + "@" + FORGEROCK_IANA_ENTERPRISE_ID;
-            fieldNames = unmodifiableSet(generateJsonPointers(auditEventSchema));
+            this.schema = schema;
+            timestampField = schema.getField(TIMESTAMP);
+            eventNameField = schema.getField(EVENT_NAME);
+            List<TopicSchema.Field> copiedFields = new ArrayList<>(schema.size());
+            for (TopicSchema.Field field : schema.getFields()) {
+                if (!IGNORED_FIELDS.contains(field.getDotNotation())) {
+                    copiedFields.add(field);
+                }
+            }
+            fields = copiedFields.toArray(new TopicSchema.Field[copiedFields.size()]);
         }
 
         /**
@@ -295,15 +351,11 @@ class SyslogFormatter {
 
             sd.append("[");
             sd.append(id);
-            for (String fieldName : fieldNames) {
-                String formattedName = formatParamName(fieldName);
-                if (IGNORED_FIELDS.contains(formattedName)) {
-                    continue;
-                }
+            for (TopicSchema.Field field : fields) {
                 sd.append(" ");
-                sd.append(formattedName);
+                sd.append(field.getDotNotation());
                 sd.append("=\"");
-                sd.append(formatParamValue(extractValueAsString(auditEvent, fieldName)));
+                sd.append(formatParamValue(extractValueAsString(auditEvent, field.getPointer())));
                 sd.append("\"");
             }
             sd.append("]");
@@ -311,8 +363,50 @@ class SyslogFormatter {
             return sd.toString();
         }
 
-        private String formatParamName(String name) {
-            return jsonPointerToDotNotation(name);
+        /**
+         * Returns <code>true</code> if the slots of the provided compact event can be read by this formatter.
+         *
+         * @param auditEvent The audit event to be formatted.
+         *
+         * @return <code>true</code> if the event was compacted with the schema of this formatter.
+         */
+        public boolean canRead(CompactAuditEvent auditEvent) {
+            return auditEvent.getSchema() == schema;
+        }
+
+        /**
+         * Translate the compact form of the provided <code>auditEvent</code> to an RFC-5424 compliant SD-ELEMENT.
+         *
+         * @param auditEvent The audit event to be formatted, whose slots can be read by this formatter.
+         *
+         * @return an RFC-5424 compliant SD-ELEMENT.
+         */
+        public String format(CompactAuditEvent auditEvent) {
+
+            StringBuilder sd = new StringBuilder();
+
+            sd.append("[");
+            sd.append(id);
+            for (TopicSchema.Field field : fields) {
+                sd.append(" ");
+                sd.append(field.getDotNotation());
+                sd.append("=\"");
+                sd.append(formatParamValue(valueAsString(auditEvent.get(field))));
+                sd.append("\"");
+            }
+            sd.append("]");
+
+            return sd.toString();
+        }
+
+        private String valueAsString(Object value) {
+            if (value instanceof JsonValue) {
+                value = ((JsonValue) value).getObject();
+            }
+            if (value == null || value instanceof String) {
+                return (String) value;
+            }
+            return extractValueAsString(new JsonValue(value), ROOT);
         }
 
         private String formatParamValue(String value) {
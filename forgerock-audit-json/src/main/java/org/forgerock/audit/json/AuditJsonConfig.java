@@ -28,6 +28,8 @@ import org.forgerock.audit.AuditException;
 import org.forgerock.audit.AuditServiceBuilder;
 import org.forgerock.audit.AuditServiceConfiguration;
 import org.forgerock.audit.events.handlers.AuditEventHandler;
+import org.forgerock.audit.events.handlers.AuditEventHandlerProvider;
+import org.forgerock.audit.events.handlers.AuditEventHandlerProviders;
 import org.forgerock.audit.events.handlers.EventHandlerConfiguration;
 import org.forgerock.audit.util.JsonValueUtils;
 import org.forgerock.json.JsonValue;
@@ -35,7 +37,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.annotation.JsonPropertyDescription;
-import com.fasterxml.jackson.databind.AnnotationIntrospector;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.introspect.Annotated;
 import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
@@ -63,9 +64,9 @@ public class AuditJsonConfig {
     private static final ObjectMapper mapper = new ObjectMapper();
     // checkstyle:on
 
-    private static final AnnotationIntrospector defaultAnnotationIntrospector = new JacksonAnnotationIntrospector();
-    private static final AnnotationIntrospector helpAppenderAnnotationIntrospector =
-            new HelpAppenderAnnotationIntrospector();
+    /** The mapper generating configuration schemas, with descriptions pointing to their ".help" translations. */
+    private static final ObjectMapper schemaMapper = new ObjectMapper()
+            .setAnnotationIntrospector(new HelpAppenderAnnotationIntrospector());
 
     private AuditJsonConfig() {
         // prevent instantiation of the class
@@ -240,6 +241,10 @@ public class AuditJsonConfig {
     private static Class<? extends EventHandlerConfiguration> getAuditEventHandlerConfigurationClass(
             String handlerName, Class<? extends AuditEventHandler> handlerClass, ClassLoader classLoader)
             throws AuditException {
+        AuditEventHandlerProvider<?, ?> provider = AuditEventHandlerProviders.getProvider(handlerClass);
+        if (provider != null) {
+            return provider.getConfigurationClass();
+        }
         String className = handlerClass.getName() + "Configuration";
         try {
             return (Class<? extends EventHandlerConfiguration>) Class.forName(className, true, classLoader);
@@ -290,13 +295,10 @@ public class AuditJsonConfig {
                                 classLoader),
                         classLoader);
         try {
-            mapper.setAnnotationIntrospector(helpAppenderAnnotationIntrospector);
             SchemaFactoryWrapper visitor = new SchemaFactoryWrapper();
-            mapper.acceptJsonFormatVisitor(mapper.constructType(eventHandlerConfiguration), visitor);
+            schemaMapper.acceptJsonFormatVisitor(schemaMapper.constructType(eventHandlerConfiguration), visitor);
             JsonSchema jsonSchema = visitor.finalSchema();
-            final JsonValue schema = json(mapper.readValue(mapper.writeValueAsString(jsonSchema), Map.class));
-            mapper.setAnnotationIntrospector(defaultAnnotationIntrospector);
-            return schema;
+            return json(schemaMapper.readValue(schemaMapper.writeValueAsString(jsonSchema), Map.class));
         } catch (IOException e) {
             final String error = String.format("Unable to parse configuration class schema for configuration class %s",
                     eventHandlerConfiguration.getName());
@@ -0,0 +1,114 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+
+package org.forgerock.audit;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.forgerock.http.Handler;
+import org.forgerock.http.protocol.Request;
+import org.forgerock.http.protocol.Response;
+import org.forgerock.http.protocol.Status;
+import org.forgerock.services.context.Context;
+import org.forgerock.util.promise.NeverThrowsException;
+import org.forgerock.util.promise.Promise;
+import org.forgerock.util.promise.PromiseImpl;
+import org.forgerock.util.promise.ResultHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Handles the requests on a bounded pool of worker threads rather than on the threads of the servlet container.
+ * <p>
+ * The container thread returns as soon as the request is queued, and the request remains suspended (the servlet
+ * being asynchronous) until the promise of the delegate handler completes. When all the workers are busy and the
+ * queue is full, requests are immediately answered with {@code 503 Service Unavailable}, so that a burst of slow
+ * audit event handlers can't exhaust the threads of the container.
+ */
+final class AsynchronousHandler implements Handler {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsynchronousHandler.class);
+
+    private final Handler delegate;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates a handler delegating the requests to the provided handler.
+     *
+     * @param delegate The handler of the requests.
+     * @param threads The number of worker threads.
+     * @param queueSize The maximum number of requests waiting for a worker thread.
+     */
+    AsynchronousHandler(Handler delegate, int threads, int queueSize) {
+        this.delegate = delegate;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new Thread(runnable, "Audit HTTP worker " + count.incrementAndGet());
+                    }
+                });
+    }
+
+    @Override
+    public Promise<Response, NeverThrowsException> handle(final Context context, final Request request) {
+        final PromiseImpl<Response, NeverThrowsException> response = PromiseImpl.create();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        delegate.handle(context, request).thenOnResult(new ResultHandler<Response>() {
+                            @Override
+                            public void handleResult(Response result) {
+                                response.handleResult(result);
+                            }
+                        });
+                    } catch (RuntimeException e) {
+                        logger.error("Unable to handle the request to {}", request.getUri(), e);
+                        response.handleResult(new Response(Status.INTERNAL_SERVER_ERROR));
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("All the audit HTTP workers are busy; rejecting the request to {}", request.getUri());
+            return Response.newResponsePromise(new Response(Status.SERVICE_UNAVAILABLE));
+        }
+        return response;
+    }
+
+    /**
+     * Stops the worker threads once the queued requests are handled.
+     */
+    void stop() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
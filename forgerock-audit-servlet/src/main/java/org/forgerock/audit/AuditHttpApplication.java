@@ -29,6 +29,7 @@ import org.forgerock.http.Handler;
 import org.forgerock.http.HttpApplication;
 import org.forgerock.http.HttpApplicationException;
 import org.forgerock.http.io.Buffer;
+import org.forgerock.http.io.IO;
 import org.forgerock.http.routing.Router;
 import org.forgerock.http.routing.RoutingMode;
 import org.forgerock.json.JsonValue;
@@ -41,6 +42,12 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Crest Application that instantiates the AuditService on the crest router.
+ * <p>
+ * Besides the CREST endpoints of the AuditService, events of any topic can be published in bulk by posting
+ * newline-delimited JSON to {@value #AUDIT_BULK_PATH}.
+ * <p>
+ * Requests are handled on a bounded pool of worker threads, while the servlet container suspends them, and their
+ * bodies are buffered in memory up to {@value #BUFFER_MEMORY_LIMIT} bytes, then in temporary files.
  */
 public final class AuditHttpApplication implements HttpApplication {
 
@@ -48,6 +55,23 @@ public final class AuditHttpApplication implements HttpApplication {
     public static final String AUDIT_EVENT_HANDLERS_CONFIG = "/conf/audit-event-handlers.json";
     public static final String EVENT_HANDLERS = "eventHandlers";
     public static final String AUDIT_ROOT_PATH = "/audit";
+    public static final String AUDIT_BULK_PATH = AUDIT_ROOT_PATH + "/_bulk";
+
+    /** The number of threads handling the requests. */
+    static final int WORKER_THREADS = 16;
+    /** The maximum number of requests waiting for a worker thread, beyond which requests are rejected. */
+    static final int WORKER_QUEUE_SIZE = 1024;
+    /** The initial size of the buffers of the request and response bodies. */
+    static final int BUFFER_INITIAL_LENGTH = 8 * 1024;
+    /** The size beyond which a body is buffered in a temporary file. */
+    static final int BUFFER_MEMORY_LIMIT = 256 * 1024;
+    /** The maximum size of a body buffered in a temporary file. */
+    static final int BUFFER_FILE_LIMIT = 1024 * 1024 * 1024;
+    /** The maximum number of characters of a line of a bulk request, longer lines being rejected. */
+    static final int BULK_MAX_LINE_LENGTH = 1024 * 1024;
+
+    private AuditService auditService;
+    private AsynchronousHandler asynchronousHandler;
 
     @Override
     public Handler start() throws HttpApplicationException {
@@ -71,26 +95,34 @@ public final class AuditHttpApplication implements HttpApplication {
             throw new HttpApplicationException(e);
         }
 
-        final AuditService auditService = auditServiceBuilder.build();
+        auditService = auditServiceBuilder.build();
         try {
             auditService.startup();
         } catch (ServiceUnavailableException e) {
             logger.error("Unable to start audit service", e);
             throw new HttpApplicationException(e);
         }
+        router.addRoute(requestUriMatcher(RoutingMode.EQUALITY, AUDIT_BULK_PATH),
+                new BulkIngestHandler(auditService, BULK_MAX_LINE_LENGTH));
         router.addRoute(requestUriMatcher(RoutingMode.STARTS_WITH, AUDIT_ROOT_PATH),
                 CrestHttp.newHttpHandler(Resources.newInternalConnectionFactory(auditService)));
-        return router;
+        asynchronousHandler = new AsynchronousHandler(router, WORKER_THREADS, WORKER_QUEUE_SIZE);
+        return asynchronousHandler;
     }
 
     @Override
     public Factory<Buffer> getBufferFactory() {
-        return null;
+        return IO.newTemporaryStorage(null, BUFFER_INITIAL_LENGTH, BUFFER_MEMORY_LIMIT, BUFFER_FILE_LIMIT);
     }
 
     @Override
     public void stop() {
-
+        if (asynchronousHandler != null) {
+            asynchronousHandler.stop();
+        }
+        if (auditService != null) {
+            auditService.shutdown();
+        }
     }
 
     /** Loads the audit service configuration from JSON. */
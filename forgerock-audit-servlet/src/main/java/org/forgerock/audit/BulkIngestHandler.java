@@ -0,0 +1,403 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+
+package org.forgerock.audit;
+
+import static org.forgerock.json.resource.Requests.newCreateRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.forgerock.http.Handler;
+import org.forgerock.http.protocol.Request;
+import org.forgerock.http.protocol.Response;
+import org.forgerock.http.protocol.Status;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.BadRequestException;
+import org.forgerock.json.resource.CreateRequest;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.services.context.Context;
+import org.forgerock.util.promise.NeverThrowsException;
+import org.forgerock.util.promise.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Handles the bulk publication of audit events of any topic, in a single {@code POST} request.
+ * <p>
+ * The body of the request holds one event per line (newline-delimited JSON, optionally compressed with gzip as
+ * indicated by the {@code Content-Encoding} header), each event being wrapped with its topic:
+ * <pre>
+ *   {"topic" : "access", "event" : { "_id" : "...", "transactionId" : "...", "timestamp" : "...", ... }}
+ *   {"topic" : "activity", "event" : { ... }}
+ * </pre>
+ * The lines are read incrementally and published to the {@link AuditService} in batches, so that they go through
+ * the same filters and handlers as the events created one by one. The response holds the status of each line, in
+ * the same newline-delimited JSON format:
+ * <pre>
+ *   {"line" : 1, "status" : 201, "_id" : "..."}
+ *   {"line" : 2, "status" : 400, "message" : "..."}
+ * </pre>
+ * The response body is streamed: a batch of lines is only read and published once the statuses of the previous
+ * batch have been consumed, so that the memory used by a request stays bounded whatever its size. Lines longer than
+ * the maximum line length are skipped with a {@code 413} status.
+ * <p>
+ * Empty lines are ignored. If the body can't be read to its end, e.g. it is truncated, the lines read so far remain
+ * published and the statuses end with a {@code 400} status for the line which could not be read.
+ */
+final class BulkIngestHandler implements Handler {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkIngestHandler.class);
+
+    /** The media type of newline-delimited JSON. */
+    static final String NDJSON = "application/x-ndjson";
+
+    static final String TOPIC = "topic";
+    static final String EVENT = "event";
+
+    private static final int DEFAULT_BATCH_SIZE = 256;
+    private static final int REQUEST_ENTITY_TOO_LARGE = 413;
+
+    //checkstyle:off
+    private static final ObjectMapper mapper = new ObjectMapper();
+    //checkstyle:on
+
+    private final AuditService auditService;
+    private final int batchSize;
+    private final int maxLineLength;
+
+    /**
+     * Creates a handler publishing the events to the provided service.
+     *
+     * @param auditService The audit service receiving the events.
+     * @param maxLineLength The maximum number of characters of a line, beyond which the line is rejected.
+     */
+    BulkIngestHandler(AuditService auditService, int maxLineLength) {
+        this(auditService, DEFAULT_BATCH_SIZE, maxLineLength);
+    }
+
+    BulkIngestHandler(AuditService auditService, int batchSize, int maxLineLength) {
+        this.auditService = auditService;
+        this.batchSize = batchSize;
+        this.maxLineLength = maxLineLength;
+    }
+
+    @Override
+    public Promise<Response, NeverThrowsException> handle(Context context, Request request) {
+        if (!"POST".equalsIgnoreCase(request.getMethod())) {
+            return Response.newResponsePromise(new Response(Status.METHOD_NOT_ALLOWED));
+        }
+        final Response response = new Response(Status.OK);
+        response.getHeaders().put("Content-Type", NDJSON);
+        response.setEntity(new StatusStream(context, request));
+        return Response.newResponsePromise(response);
+    }
+
+    private static Reader openReader(Request request) throws IOException {
+        InputStream input = request.getEntity().getRawContentInputStream();
+        if ("gzip".equalsIgnoreCase(request.getHeaders().getFirst("Content-Encoding"))) {
+            input = new GZIPInputStream(input);
+        }
+        return new InputStreamReader(input, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a line and hands its event over to the audit service, without waiting for the result.
+     */
+    private PendingEvent publish(Context context, int lineNumber, String line) {
+        try {
+            final JsonValue envelope = new JsonValue(mapper.readValue(line, Object.class));
+            if (!envelope.isMap() || !envelope.get(TOPIC).isString() || !envelope.get(EVENT).isMap()) {
+                throw new BadRequestException("Each line must hold an object with a topic and an event");
+            }
+            final JsonValue event = envelope.get(EVENT);
+            final CreateRequest createRequest = newCreateRequest(envelope.get(TOPIC).asString(),
+                    event.get(ResourceResponse.FIELD_CONTENT_ID).asString(), event);
+            final Promise<ResourceResponse, ResourceException> result =
+                    auditService.handleCreate(context, createRequest);
+            // the service assigns the id of the event if it has none
+            return new PendingEvent(lineNumber, event.get(ResourceResponse.FIELD_CONTENT_ID).asString(), result);
+        } catch (JsonProcessingException e) {
+            return new PendingEvent(lineNumber, new BadRequestException("Invalid JSON: " + e.getOriginalMessage()));
+        } catch (IOException e) {
+            return new PendingEvent(lineNumber, new BadRequestException(e.getMessage()));
+        } catch (ResourceException e) {
+            return new PendingEvent(lineNumber, e);
+        }
+    }
+
+    /**
+     * Waits for the events of the batch to be published, writes their statuses and clears the batch.
+     */
+    private static void writeStatuses(JsonGenerator generator, List<PendingEvent> batch) throws IOException {
+        for (PendingEvent pending : batch) {
+            generator.writeStartObject();
+            generator.writeNumberField("line", pending.lineNumber);
+            ResourceException failure = pending.failure;
+            if (failure == null) {
+                try {
+                    pending.result.getOrThrowUninterruptibly();
+                    generator.writeNumberField("status", Status.CREATED.getCode());
+                    generator.writeStringField(ResourceResponse.FIELD_CONTENT_ID, pending.id);
+                } catch (ResourceException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                generator.writeNumberField("status", failure.getCode());
+                generator.writeStringField("message", failure.getMessage());
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+        generator.flush();
+        batch.clear();
+    }
+
+    /**
+     * The body of the response: reads and publishes the next batch of lines of the request whenever the statuses
+     * of the previous batch have all been consumed.
+     */
+    private final class StatusStream extends InputStream {
+
+        private final Context context;
+        private final Request request;
+        private final List<PendingEvent> batch = new ArrayList<>(batchSize);
+        private final ByteArrayOutputStream statuses = new ByteArrayOutputStream();
+        private final JsonGenerator generator;
+        private LineReader reader;
+        private byte[] chunk = new byte[0];
+        private int position;
+        private int lineNumber;
+        private boolean ended;
+
+        StatusStream(Context context, Request request) {
+            this.context = context;
+            this.request = request;
+            try {
+                this.generator = mapper.getFactory().createGenerator(statuses, JsonEncoding.UTF8);
+            } catch (IOException e) {
+                // the generator writes to memory
+                throw new IllegalStateException(e);
+            }
+            generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return chunk[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            final int count = Math.min(length, chunk.length - position);
+            System.arraycopy(chunk, position, bytes, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return chunk.length - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            ended = true;
+            if (reader != null) {
+                reader.close();
+            }
+        }
+
+        /**
+         * Makes sure there are statuses to consume, publishing the next batch of lines if needed.
+         *
+         * @return {@code false} if all the statuses have been consumed.
+         */
+        private boolean fill() throws IOException {
+            while (position == chunk.length) {
+                if (ended) {
+                    return false;
+                }
+                readBatch();
+                writeStatuses(generator, batch);
+                chunk = statuses.toByteArray();
+                position = 0;
+                statuses.reset();
+            }
+            return true;
+        }
+
+        private void readBatch() throws IOException {
+            try {
+                if (reader == null) {
+                    reader = new LineReader(openReader(request));
+                }
+                String line;
+                while (batch.size() < batchSize && (line = reader.readLine(maxLineLength)) != null) {
+                    lineNumber++;
+                    if (reader.isTooLong()) {
+                        batch.add(new PendingEvent(lineNumber, ResourceException.getException(REQUEST_ENTITY_TOO_LARGE,
+                                "The line is longer than " + maxLineLength + " characters")));
+                    } else if (!line.trim().isEmpty()) {
+                        batch.add(publish(context, lineNumber, line));
+                    }
+                }
+                if (batch.size() < batchSize) {
+                    end();
+                }
+            } catch (IOException e) {
+                // the lines read so far are published, their statuses are kept
+                logger.warn("Unable to read the bulk request", e);
+                batch.add(new PendingEvent(lineNumber + 1,
+                        new BadRequestException("Unable to read the line: " + e.getMessage())));
+                end();
+            }
+        }
+
+        private void end() {
+            ended = true;
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    logger.debug("Unable to close the bulk request", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads lines of bounded length, the characters beyond the maximum length of a line being skipped.
+     */
+    private static final class LineReader {
+
+        private final Reader reader;
+        private final char[] buffer = new char[8192];
+        private final StringBuilder line = new StringBuilder();
+        private int position;
+        private int limit;
+        private int maxLength;
+        private boolean tooLong;
+
+        LineReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * Reads the next line, without its end of line.
+         *
+         * @return the line, empty if it is too long, or {@code null} at the end of the input.
+         */
+        String readLine(int maxLength) throws IOException {
+            this.maxLength = maxLength;
+            line.setLength(0);
+            tooLong = false;
+            boolean read = false;
+            while (true) {
+                if (position == limit) {
+                    limit = Math.max(reader.read(buffer, 0, buffer.length), 0);
+                    position = 0;
+                    if (limit == 0) {
+                        return read ? endLine() : null;
+                    }
+                }
+                read = true;
+                final int start = position;
+                while (position < limit && buffer[position] != '\n') {
+                    position++;
+                }
+                if (!tooLong && line.length() + position - start > maxLength + 1) {
+                    // one more character is allowed for a carriage return
+                    tooLong = true;
+                    line.setLength(0);
+                } else if (!tooLong) {
+                    line.append(buffer, start, position - start);
+                }
+                if (position < limit) {
+                    position++;
+                    return endLine();
+                }
+            }
+        }
+
+        private String endLine() {
+            if (line.length() > 0 && line.charAt(line.length() - 1) == '\r') {
+                line.setLength(line.length() - 1);
+            }
+            if (line.length() > maxLength) {
+                tooLong = true;
+                line.setLength(0);
+            }
+            return tooLong ? "" : line.toString();
+        }
+
+        boolean isTooLong() {
+            return tooLong;
+        }
+
+        void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * An event handed over to the audit service, or the reason why it could not be.
+     */
+    private static final class PendingEvent {
+
+        private final int lineNumber;
+        private final String id;
+        private final Promise<ResourceResponse, ResourceException> result;
+        private final ResourceException failure;
+
+        private PendingEvent(int lineNumber, String id, Promise<ResourceResponse, ResourceException> result) {
+            this.lineNumber = lineNumber;
+            this.id = id;
+            this.result = result;
+            this.failure = null;
+        }
+
+        private PendingEvent(int lineNumber, ResourceException failure) {
+            this.lineNumber = lineNumber;
+            this.id = null;
+            this.result = null;
+            this.failure = failure;
+        }
+    }
+}
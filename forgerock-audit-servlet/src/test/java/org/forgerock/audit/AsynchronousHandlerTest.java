@@ -0,0 +1,92 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+
+package org.forgerock.audit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.http.Handler;
+import org.forgerock.http.protocol.Request;
+import org.forgerock.http.protocol.Response;
+import org.forgerock.http.protocol.Status;
+import org.forgerock.services.context.Context;
+import org.forgerock.services.context.RootContext;
+import org.forgerock.util.promise.NeverThrowsException;
+import org.forgerock.util.promise.Promise;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class AsynchronousHandlerTest {
+
+    @Test
+    public void shouldRelayTheResponseOfTheDelegate() throws Exception {
+        AsynchronousHandler handler = new AsynchronousHandler(new BlockingHandler(null), 1, 1);
+        try {
+            Response response = handler.handle(new RootContext(), new Request()).get(1, TimeUnit.SECONDS);
+
+            assertThat(response.getStatus()).isEqualTo(Status.OK);
+        } finally {
+            handler.stop();
+        }
+    }
+
+    @Test
+    public void shouldRejectRequestsWhenAllWorkersAreBusy() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AsynchronousHandler handler = new AsynchronousHandler(new BlockingHandler(release), 1, 1);
+        try {
+            Promise<Response, NeverThrowsException> running = handler.handle(new RootContext(), new Request());
+            Promise<Response, NeverThrowsException> queued = handler.handle(new RootContext(), new Request());
+            Promise<Response, NeverThrowsException> rejected = handler.handle(new RootContext(), new Request());
+
+            assertThat(rejected.isDone()).isTrue();
+            assertThat(rejected.get().getStatus()).isEqualTo(Status.SERVICE_UNAVAILABLE);
+            release.countDown();
+            assertThat(running.get(1, TimeUnit.SECONDS).getStatus()).isEqualTo(Status.OK);
+            assertThat(queued.get(1, TimeUnit.SECONDS).getStatus()).isEqualTo(Status.OK);
+        } finally {
+            release.countDown();
+            handler.stop();
+        }
+    }
+
+    /**
+     * Answers with {@code 200 OK}, once the latch, if any, is released.
+     */
+    private static final class BlockingHandler implements Handler {
+
+        private final CountDownLatch latch;
+
+        private BlockingHandler(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public Promise<Response, NeverThrowsException> handle(Context context, Request request) {
+            if (latch != null) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return Response.newResponsePromise(new Response(Status.OK));
+        }
+    }
+}
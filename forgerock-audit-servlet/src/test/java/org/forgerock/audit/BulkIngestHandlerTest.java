@@ -0,0 +1,212 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2015 ForgeRock AS.
+ */
+
+package org.forgerock.audit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.json.resource.Responses.newResourceResponse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.forgerock.http.protocol.Request;
+import org.forgerock.http.protocol.Response;
+import org.forgerock.http.protocol.Status;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.CreateRequest;
+import org.forgerock.json.resource.NotSupportedException;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.services.context.Context;
+import org.forgerock.services.context.RootContext;
+import org.forgerock.util.promise.Promise;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@SuppressWarnings("javadoc")
+public class BulkIngestHandlerTest {
+
+    //checkstyle:off
+    private static final ObjectMapper mapper = new ObjectMapper();
+    //checkstyle:on
+
+    private static final int MAX_LINE_LENGTH = 64;
+
+    private AuditService auditService;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        auditService = mock(AuditService.class);
+        when(auditService.handleCreate(any(Context.class), any(CreateRequest.class))).thenAnswer(
+                new Answer<Promise<ResourceResponse, ResourceException>>() {
+                    @Override
+                    public Promise<ResourceResponse, ResourceException> answer(InvocationOnMock invocation) {
+                        CreateRequest request = (CreateRequest) invocation.getArguments()[1];
+                        if (!"access".equals(request.getResourcePath())) {
+                            return new NotSupportedException("Unknown topic").asPromise();
+                        }
+                        return newResourceResponse(null, null, json(object())).asPromise();
+                    }
+                });
+    }
+
+    @Test
+    public void shouldPublishEachLineAndReturnItsStatus() throws Exception {
+        String body = "{\"topic\":\"access\",\"event\":{\"_id\":\"1\",\"transactionId\":\"tx1\"}}\n"
+                + "\n"
+                + "{\"topic\":\"unknown\",\"event\":{\"_id\":\"2\"}}\n"
+                + "not json\n"
+                + "{\"topic\":\"access\",\"event\":{\"_id\":\"3\",\"transactionId\":\"tx3\"}}\n";
+
+        Response response = handle(new BulkIngestHandler(auditService, 2, MAX_LINE_LENGTH),
+                post(body.getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(response.getStatus()).isEqualTo(Status.OK);
+        List<JsonValue> statuses = readStatuses(response);
+        assertThat(statuses).hasSize(4);
+        assertStatus(statuses.get(0), 1, 201);
+        assertThat(statuses.get(0).get("_id").asString()).isEqualTo("1");
+        assertStatus(statuses.get(1), 3, 404);
+        assertStatus(statuses.get(2), 4, 400);
+        assertStatus(statuses.get(3), 5, 201);
+        verify(auditService, times(3)).handleCreate(any(Context.class), any(CreateRequest.class));
+    }
+
+    @Test
+    public void shouldReadGzipCompressedBody() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write("{\"topic\":\"access\",\"event\":{\"_id\":\"1\"}}\n".getBytes(StandardCharsets.UTF_8));
+        }
+        Request request = post(compressed.toByteArray());
+        request.getHeaders().put("Content-Encoding", "gzip");
+
+        Response response = handle(new BulkIngestHandler(auditService, MAX_LINE_LENGTH), request);
+
+        List<JsonValue> statuses = readStatuses(response);
+        assertThat(statuses).hasSize(1);
+        assertStatus(statuses.get(0), 1, 201);
+    }
+
+    @Test
+    public void shouldKeepTheStatusesOfTheLinesReadBeforeATruncatedBody() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(("{\"topic\":\"access\",\"event\":{\"_id\":\"1\"}}\n"
+                    + "{\"topic\":\"access\",\"event\":{\"_id\":\"2\"}}\n").getBytes(StandardCharsets.UTF_8));
+        }
+        // without the gzip trailer
+        Request request = post(Arrays.copyOf(compressed.toByteArray(), compressed.size() - 8));
+        request.getHeaders().put("Content-Encoding", "gzip");
+
+        Response response = handle(new BulkIngestHandler(auditService, MAX_LINE_LENGTH), request);
+
+        assertThat(response.getStatus()).isEqualTo(Status.OK);
+        List<JsonValue> statuses = readStatuses(response);
+        assertThat(statuses).hasSize(3);
+        assertStatus(statuses.get(0), 1, 201);
+        assertStatus(statuses.get(1), 2, 201);
+        assertStatus(statuses.get(2), 3, 400);
+        verify(auditService, times(2)).handleCreate(any(Context.class), any(CreateRequest.class));
+    }
+
+    @Test
+    public void shouldRejectTheLinesLongerThanTheMaximum() throws Exception {
+        StringBuilder longId = new StringBuilder();
+        while (longId.length() < MAX_LINE_LENGTH) {
+            longId.append("id");
+        }
+        String body = "{\"topic\":\"access\",\"event\":{\"_id\":\"" + longId + "\"}}\r\n"
+                + "{\"topic\":\"access\",\"event\":{\"_id\":\"2\"}}\r\n";
+
+        Response response = handle(new BulkIngestHandler(auditService, MAX_LINE_LENGTH),
+                post(body.getBytes(StandardCharsets.UTF_8)));
+
+        List<JsonValue> statuses = readStatuses(response);
+        assertThat(statuses).hasSize(2);
+        assertStatus(statuses.get(0), 1, 413);
+        assertStatus(statuses.get(1), 2, 201);
+        verify(auditService, times(1)).handleCreate(any(Context.class), any(CreateRequest.class));
+    }
+
+    @Test
+    public void shouldPublishTheNextBatchOnceTheStatusesAreConsumed() throws Exception {
+        String body = "{\"topic\":\"access\",\"event\":{\"_id\":\"1\"}}\n"
+                + "{\"topic\":\"access\",\"event\":{\"_id\":\"2\"}}\n";
+
+        Response response = handle(new BulkIngestHandler(auditService, 1, MAX_LINE_LENGTH),
+                post(body.getBytes(StandardCharsets.UTF_8)));
+
+        verify(auditService, never()).handleCreate(any(Context.class), any(CreateRequest.class));
+        InputStream statuses = response.getEntity().getRawContentInputStream();
+        statuses.read();
+        verify(auditService, times(1)).handleCreate(any(Context.class), any(CreateRequest.class));
+        statuses.read(new byte[1024]);
+        statuses.read();
+        verify(auditService, times(2)).handleCreate(any(Context.class), any(CreateRequest.class));
+    }
+
+    @Test
+    public void shouldRejectOtherMethodsThanPost() throws Exception {
+        Request request = new Request();
+        request.setMethod("GET");
+
+        Response response = handle(new BulkIngestHandler(auditService, MAX_LINE_LENGTH), request);
+
+        assertThat(response.getStatus()).isEqualTo(Status.METHOD_NOT_ALLOWED);
+    }
+
+    private static Request post(byte[] body) {
+        Request request = new Request();
+        request.setMethod("POST");
+        request.setEntity(body);
+        return request;
+    }
+
+    private static Response handle(BulkIngestHandler handler, Request request) throws Exception {
+        return handler.handle(new RootContext(), request).get();
+    }
+
+    private static List<JsonValue> readStatuses(Response response) throws Exception {
+        List<JsonValue> statuses = new ArrayList<>();
+        for (String line : response.getEntity().getString().split("\n")) {
+            statuses.add(new JsonValue(mapper.readValue(line, Object.class)));
+        }
+        return statuses;
+    }
+
+    private static void assertStatus(JsonValue status, int line, int code) {
+        assertThat(status.get("line").asInteger()).isEqualTo(line);
+        assertThat(status.get("status").asInteger()).isEqualTo(code);
+    }
+}
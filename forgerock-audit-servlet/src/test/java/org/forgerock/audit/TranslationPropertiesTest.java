@@ -23,6 +23,9 @@ import com.fasterxml.jackson.module.jsonSchema.JsonSchema;
 import com.fasterxml.jackson.module.jsonSchema.factories.SchemaFactoryWrapper;
 import org.forgerock.audit.handlers.csv.CsvAuditEventHandlerConfiguration;
 import org.forgerock.audit.handlers.jdbc.JdbcAuditEventHandlerConfiguration;
+import org.forgerock.audit.handlers.json.JsonAuditEventHandlerConfiguration;
+import org.forgerock.audit.handlers.memory.MemoryAuditEventHandlerConfiguration;
+import org.forgerock.audit.handlers.segment.SegmentAuditEventHandlerConfiguration;
 import org.forgerock.audit.handlers.syslog.SyslogAuditEventHandlerConfiguration;
 import org.forgerock.json.JsonValue;
 import org.testng.annotations.BeforeMethod;
@@ -68,6 +71,24 @@ public class TranslationPropertiesTest {
                 propertyTranslationKeysOf(jsonSchemaForPojo(JdbcAuditEventHandlerConfiguration.class)));
     }
 
+    @Test
+    public void translationsExistForAllJsonAuditEventHandlerConfigurationProperties() throws Exception {
+        assertThat(translationKeys).containsAll(
+                propertyTranslationKeysOf(jsonSchemaForPojo(JsonAuditEventHandlerConfiguration.class)));
+    }
+
+    @Test
+    public void translationsExistForAllSegmentAuditEventHandlerConfigurationProperties() throws Exception {
+        assertThat(translationKeys).containsAll(
+                propertyTranslationKeysOf(jsonSchemaForPojo(SegmentAuditEventHandlerConfiguration.class)));
+    }
+
+    @Test
+    public void translationsExistForAllMemoryAuditEventHandlerConfigurationProperties() throws Exception {
+        assertThat(translationKeys).containsAll(
+                propertyTranslationKeysOf(jsonSchemaForPojo(MemoryAuditEventHandlerConfiguration.class)));
+    }
+
     @Test
     public void translationsExistForAllSyslogAuditEventHandlerConfigurationProperties() throws Exception {
         assertThat(translationKeys).containsAll(